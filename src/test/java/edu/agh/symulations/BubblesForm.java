@@ -14,8 +14,7 @@ import javax.swing.*;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.tree.TreeSelectionModel;
 import java.text.NumberFormat;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Created by Mateusz Pszczolka (SG0220005) on 5/10/2015.
@@ -32,10 +31,18 @@ public class BubblesForm extends JFrame {
     private JLabel warnsText;
     private JLabel summary;
     private XYSeries deepFromTimeSeries;
-    private XYSeriesCollection tissiuDataset;
+    private JFreeChart tensionChart;
     private double depthValue;
 
     public BubblesForm() {
+        this(null, 1.0);
+    }
+
+    /**
+     * @param recording dive to replay instead of following the depth field, or null
+     * @param speed     replay speed in simulated seconds per second
+     */
+    public BubblesForm(RecordedDive recording, double speed) {
         super("Hello World");
         setContentPane(divingControl);
 
@@ -44,18 +51,12 @@ public class BubblesForm extends JFrame {
         setVisible(true);
 
         try {
-            final Simulation simulation = new Simulation(this);
+            final Simulation simulation = recording == null ? new Simulation(this)
+                    : new Simulation(this, recording, speed);
             tissiues.setModel(simulation.getTreeModel());
             tissiues.addTreeSelectionListener(
-                    (TreeSelectionEvent e) -> {
-                        tissiuDataset.removeAllSeries();
-                        Arrays.stream(e.getNewLeadSelectionPath().getPath())
-                                .map(Object::toString)
-                                .filter(name -> name.startsWith("Compartment"))
-                                .map(simulation::getSeries)
-                                .flatMap(Collection::stream)
-                                .forEach(tissiuDataset::addSeries);
-                    });
+                    (TreeSelectionEvent e) -> tensionChart.getXYPlot()
+                            .setDataset(simulation.getTensionDataset(e.getNewLeadSelectionPath())));
         } catch (CalculationException | MyXML.MyXMLException | IllegalActionException e) {
             e.printStackTrace();
         }
@@ -80,15 +81,28 @@ public class BubblesForm extends JFrame {
         this.time.setText(String.format("%1$.1f s", time));
     }
 
-    public void setWarnsText(String text) {
-        text = "<html><span color=\"red\">" +
-                text.replace("\n", "<br>") +
-                "</span></html>";
-        this.warnsText.setText(text);
-    }
-
-    public void addDeepPointToChart(double time, double deep) {
-        deepFromTimeSeries.add(time, deep);
+    /**
+     * Shows a batch of snapshots, called on the EDT once per frame. The depth
+     * points are appended with notifications suspended, so the chart is
+     * redrawn once; the labels show the last snapshot.
+     *
+     * @param snapshots   snapshots published since the previous frame, oldest first
+     * @param metricsText update latency and clock statistics, shown as tool tip of the time
+     */
+    public void applySnapshots(List<UiSnapshot> snapshots, String metricsText) {
+        final UiSnapshot last = snapshots.get(snapshots.size() - 1);
+        deepFromTimeSeries.setNotify(false);
+        for (UiSnapshot snapshot : snapshots) {
+            deepFromTimeSeries.add(snapshot.getDivingTime(), snapshot.getDepth(), false);
+        }
+        deepFromTimeSeries.setNotify(true);
+        setTime(last.getDivingTime());
+        warnsText.setText("<html><span color=\"red\">" + last.getWarnsText().replace("\n", "<br>") + "</span></html>");
+        setSummaryText(String.format("<html>Ceiling %.1f m, GF99 %.0f %%, surfacing GF %.0f %%%s%s</html>",
+                last.getCeilingDepth(), last.getGf99(), last.getSurfaceGf(),
+                Double.isNaN(last.getTimeToSurface()) ? "" : String.format(", TTS %.0f min", last.getTimeToSurface()),
+                last.isUnsafe() ? "<br>diving is dangerous!" : ""));
+        time.setToolTipText(metricsText);
     }
 
     private void createUIComponents() {
@@ -106,9 +120,8 @@ public class BubblesForm extends JFrame {
         ds.addSeries(deepFromTimeSeries);
 
 
-        tissiuDataset = new XYSeriesCollection();
-        JFreeChart tensionChart = ChartFactory.createXYLineChart("Partial tension",
-                "time [s]", "tension [atm]", tissiuDataset, PlotOrientation.VERTICAL, true, true,
+        tensionChart = ChartFactory.createXYLineChart("Partial tension",
+                "time [s]", "tension [atm]", null, PlotOrientation.VERTICAL, true, true,
                 false);
 
         tissueTensionChart = new ChartPanel(tensionChart);
@@ -0,0 +1,170 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+/**
+ * Decompression readouts of a diver, recalculated every tick from the current
+ * tissue tensions:
+ * <ul>
+ * <li>ceiling: the shallowest depth the diver may ascend to now, without a
+ * gradient factor,</li>
+ * <li>GF99: the gradient factor of the leading compartment at the current
+ * depth, in % of the Buhlmann limit (100 % is at the limit),</li>
+ * <li>surfacing GF: the same if the diver surfaced now.</li>
+ * </ul>
+ * These follow from the tensions and the a/b coefficients of a
+ * {@link ZHL16Decompression} directly; no decompression schedule is
+ * calculated and no depths are probed. A calculation is a few straight loops
+ * over the compartments ({@link TissueKernels}) into arrays allocated once.
+ * An instance belongs to one diver and must not be used concurrently.
+ */
+public class DecoReadouts {
+    private final double[] n2A;
+    private final double[] n2B;
+    private final double[] he2A;
+    private final double[] he2B;
+    private final int compartments;
+    private final double surfacePressure;
+    private final double barsPerMeter;
+    private final double[] ceilings;
+    private final double[] gradients;
+    private final double[] surfaceGradients;
+    private TissueState diverState;
+
+    private double ceilingPressure;
+    private double ceilingDepth;
+    private double gf99;
+    private double surfaceGf;
+    private int leadingCompartment;
+
+    /**
+     * Readouts with the coefficients of the given model, at sea level
+     */
+    public DecoReadouts(ZHL16Decompression model, int compartments) {
+        this(model, compartments, DivingProfile.DIVE_HEIGHT);
+    }
+
+    /**
+     * @param model        model of which the coefficients are used; a later
+     *                     change of its model (setModel) is not followed
+     * @param compartments number of compartments
+     * @param diveHeight   height of the water surface
+     */
+    public DecoReadouts(ZHL16Decompression model, int compartments, Length diveHeight) {
+        this.n2A = model.N2A;
+        this.n2B = model.N2B;
+        this.he2A = model.He2A;
+        this.he2B = model.He2B;
+        this.compartments = compartments;
+        surfacePressure = new DepthPressure(Length.ZERO, diveHeight).getValue(Pressure.UNITS_BAR);
+        barsPerMeter = new DepthPressure(new Length(1.0, Length.UNITS_METER), diveHeight)
+                .getValue(Pressure.UNITS_BAR) - surfacePressure;
+        ceilings = new double[compartments];
+        gradients = new double[compartments];
+        surfaceGradients = new double[compartments];
+    }
+
+    /**
+     * Calculates the readouts
+     *
+     * @param n2Tensions      nitrogen tensions in bar
+     * @param he2Tensions     helium tensions in bar
+     * @param ambientPressure ambient pressure in bar at the current depth
+     */
+    public void calculate(double[] n2Tensions, double[] he2Tensions, double ambientPressure) {
+        TissueKernels.buhlmannCeilings(n2Tensions, he2Tensions, n2A, n2B, he2A, he2B, ceilings, compartments);
+        TissueKernels.gradientFactors(ambientPressure, n2Tensions, he2Tensions, n2A, n2B, he2A, he2B,
+                gradients, compartments);
+        TissueKernels.gradientFactors(surfacePressure, n2Tensions, he2Tensions, n2A, n2B, he2A, he2B,
+                surfaceGradients, compartments);
+
+        double maxCeiling = Double.NEGATIVE_INFINITY;
+        double maxGradient = Double.NEGATIVE_INFINITY;
+        double maxSurfaceGradient = Double.NEGATIVE_INFINITY;
+        int leading = -1;
+        for (int i = 0; i < compartments; i++) {
+            if (ceilings[i] > maxCeiling) {
+                maxCeiling = ceilings[i];
+                leading = i;
+            }
+            maxGradient = Math.max(maxGradient, gradients[i]);
+            maxSurfaceGradient = Math.max(maxSurfaceGradient, surfaceGradients[i]);
+        }
+        ceilingPressure = maxCeiling;
+        ceilingDepth = Math.max(0.0, (maxCeiling - surfacePressure) / barsPerMeter);
+        gf99 = Math.max(0.0, maxGradient) * 100.0;
+        surfaceGf = Math.max(0.0, maxSurfaceGradient) * 100.0;
+        leadingCompartment = leading;
+    }
+
+    /**
+     * @see #calculate(double[], double[], double)
+     */
+    public void calculate(TissueState state, double ambientPressure) {
+        calculate(state.getN2Tensions(), state.getHe2Tensions(), ambientPressure);
+    }
+
+    /**
+     * Calculates the readouts for the current tensions of the diver
+     *
+     * @see #calculate(double[], double[], double)
+     */
+    public void calculate(Diver diver, double ambientPressure) {
+        if (diverState == null) {
+            diverState = new TissueState(diver);
+        } else {
+            diverState.load(diver);
+        }
+        calculate(diverState, ambientPressure);
+    }
+
+    /**
+     * Returns the ceiling as ambient pressure in bar; may be below the surface pressure
+     */
+    public double getCeilingPressure() {
+        return ceilingPressure;
+    }
+
+    /**
+     * Returns the ceiling in m, 0 if the diver may surface
+     */
+    public double getCeilingDepth() {
+        return ceilingDepth;
+    }
+
+    /**
+     * Returns the gradient factor in % at the current depth, 0 if no
+     * compartment is supersaturated
+     */
+    public double getGf99() {
+        return gf99;
+    }
+
+    /**
+     * Returns the gradient factor in % the diver would have at the surface
+     */
+    public double getSurfaceGf() {
+        return surfaceGf;
+    }
+
+    /**
+     * Returns the index of the compartment that determines the ceiling
+     */
+    public int getLeadingCompartment() {
+        return leadingCompartment;
+    }
+
+    /**
+     * Returns the ceiling in m of one compartment of the last calculation
+     */
+    public double getCeilingDepth(int compartment) {
+        return Math.max(0.0, (ceilings[compartment] - surfacePressure) / barsPerMeter);
+    }
+
+    /**
+     * Returns the gradient factor in % of one compartment at the current depth
+     */
+    public double getGradientFactor(int compartment) {
+        return gradients[compartment] * 100.0;
+    }
+}
@@ -0,0 +1,157 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Verifies the {@link DecoReadouts} and measures them at 10 Hz for many
+ * divers.
+ * <p>
+ * First the ceilings are compared with probing depths in 1 cm steps against
+ * the tension limits of the {@link SafytyChecker}, and GF99 with the unsafe
+ * flag. Then the readouts of all divers are calculated as fast as possible
+ * (cost and allocation per diver tick), and finally a
+ * {@link SimulationEngine} runs all divers, readouts included, on a 10 Hz
+ * clock in real time.
+ * Usage: DecoReadoutsBenchmark [divers [seconds]]
+ */
+public class DecoReadoutsBenchmark {
+    private static final double TICKS_PER_SECOND = 10.0;
+    private static final double PROBE_STEP = 0.01;
+
+    private static double ambientPressure(double depth) {
+        return new DepthPressure(new Length(depth, Length.UNITS_METER), DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR);
+    }
+
+    /**
+     * Tissue state of a diver on a random square dive, somewhere on the
+     * bottom or on the ascent
+     */
+    private static TissueState randomState(Random random) {
+        final TissueState state = new TissueState();
+        for (int i = 0; i < state.size(); i++) {
+            state.getN2Tensions()[i] = ambientPressure(0.0) * GasMixtures.AIR.getN2Fraction();
+        }
+        final double maxDepth = 10.0 + random.nextInt(40);
+        final DepthSource dive = DepthSource.squareDive(maxDepth, 0.2 + random.nextDouble() * 0.3,
+                300.0 + random.nextInt(1500));
+        final int seconds = 300 + random.nextInt(2400);
+        for (int time = 0; time < seconds; time += 10) {
+            state.exposeToConstantPressure(ambientPressure(dive.getDepth(time)),
+                    GasMixtures.AIR.getN2Fraction(), GasMixtures.AIR.getHe2Fraction(), 10.0);
+        }
+        return state;
+    }
+
+    /**
+     * Shallowest depth, in steps of 1 cm, at which all tensions are within the
+     * limits of the checker
+     */
+    private static double probeCeiling(SafytyChecker checker, TissueState state) {
+        double depth = 0.0;
+        while (TissueKernels.firstUnsafe(state.getN2Tensions(), state.getHe2Tensions(),
+                checker.calculateTensionLimits(state, ambientPressure(depth)), state.size()) >= 0) {
+            depth += PROBE_STEP;
+        }
+        return depth;
+    }
+
+    private static void compareWithProbing(int count) {
+        final Random random = new Random(1);
+        final SafytyChecker checker = new SafytyChecker();
+        final DecoReadouts readouts = new DecoReadouts(checker, Parameters.nCompartments);
+        double maxDifference = 0.0;
+        int withCeiling = 0;
+        int gfMismatches = 0;
+        for (int i = 0; i < count; i++) {
+            final TissueState state = randomState(random);
+            final double depth = random.nextDouble() * 20.0;
+            readouts.calculate(state, ambientPressure(depth));
+            final double probed = probeCeiling(checker, state);
+            maxDifference = Math.max(maxDifference, Math.abs(probed - readouts.getCeilingDepth()));
+            if (probed > 0.0) {
+                withCeiling++;
+            }
+            final boolean unsafe = TissueKernels.firstUnsafe(state.getN2Tensions(), state.getHe2Tensions(),
+                    checker.calculateTensionLimits(state, ambientPressure(depth)), state.size()) >= 0;
+            if (unsafe != readouts.getGf99() > 100.0) {
+                gfMismatches++;
+            }
+        }
+        System.out.println(String.format("Ceiling vs probing: %d states, %d with a ceiling, max difference %.3f m (probe step %.2f m)",
+                count, withCeiling, maxDifference, PROBE_STEP));
+        System.out.println(String.format("GF99 > 100 %% vs unsafe: %d mismatches", gfMismatches));
+    }
+
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int divers = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        compareWithProbing(500);
+
+        // Readouts only: cost per diver tick
+        final Random random = new Random(2);
+        final SafytyChecker checker = new SafytyChecker();
+        final TissueState[] states = new TissueState[Math.min(divers, 1000)];
+        final DecoReadouts[] readouts = new DecoReadouts[divers];
+        final double[] pressures = new double[divers];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = randomState(random);
+        }
+        for (int i = 0; i < divers; i++) {
+            readouts[i] = new DecoReadouts(checker, Parameters.nCompartments);
+            pressures[i] = ambientPressure(random.nextDouble() * 30.0);
+        }
+        double sum = 0.0;
+        final int ticks = 100;
+        long start = 0;
+        long allocated = 0;
+        for (int tick = -ticks; tick < ticks; tick++) {
+            if (tick == 0) {
+                start = System.nanoTime();
+                allocated = allocatedBytes();
+            }
+            for (int i = 0; i < divers; i++) {
+                readouts[i].calculate(states[i % states.length], pressures[i]);
+                sum += readouts[i].getGf99();
+            }
+        }
+        final double nanos = (System.nanoTime() - start) / (double) ticks / divers;
+        final double bytes = (allocatedBytes() - allocated) / (double) ticks / divers;
+        System.out.println(String.format("Readouts: %.0f ns and %.1f bytes per diver tick, %.0f divers per core at %.0f Hz (%.0f)",
+                nanos, bytes, 1.0e9 / nanos / TICKS_PER_SECOND, TICKS_PER_SECOND, sum));
+
+        // Whole diver tick, readouts included, at 10 Hz in real time
+        final SimulationEngine engine = new SimulationEngine(cores, 1.0 / TICKS_PER_SECOND, 1);
+        for (int i = 0; i < divers; i++) {
+            engine.addDiver("diver" + i, DepthSource.squareDive(10.0 + random.nextInt(30),
+                    0.2 + random.nextDouble() * 0.3, 100.0 + random.nextInt(200)));
+        }
+        final SimulationClock clock = engine.createClock(TICKS_PER_SECOND, 1.0 / TICKS_PER_SECOND,
+                SimulationClock.LateTickPolicy.MERGE);
+        clock.start();
+        Thread.sleep(seconds * 1000L);
+        clock.stop();
+        engine.stop();
+        double maxCompute = 0.0;
+        double meanCompute = 0.0;
+        for (DiverSession session : engine.getDivers()) {
+            maxCompute = Math.max(maxCompute, session.getMaxComputeMicros());
+            meanCompute += session.getMeanComputeMicros() / divers;
+        }
+        System.out.println(String.format("%d divers at %.0f Hz on %d cores, %d s: %s; diver tick mean %.1f us, max %.0f us",
+                divers, TICKS_PER_SECOND, cores, seconds, clock.getMetricsText(), meanCompute, maxCompute));
+    }
+}
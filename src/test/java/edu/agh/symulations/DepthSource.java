@@ -0,0 +1,26 @@
+package edu.agh.symulations;
+
+/**
+ * Supplies the depth of a simulated diver, e.g. the depth field of the form or
+ * a scripted profile.
+ */
+@FunctionalInterface
+public interface DepthSource {
+    /**
+     * @param time time in s since the diver joined the simulation
+     * @return depth in m
+     */
+    double getDepth(double time);
+
+    /**
+     * Square dive: descends at the given rate to maxDepth, stays until
+     * bottomEnd and ascends at the same rate.
+     *
+     * @param maxDepth  bottom depth in m
+     * @param rate      descent and ascent rate in m/s
+     * @param bottomEnd time in s at which the ascent starts
+     */
+    static DepthSource squareDive(double maxDepth, double rate, double bottomEnd) {
+        return time -> Math.max(0.0, Math.min(Math.min(maxDepth, time * rate), maxDepth - (time - bottomEnd) * rate));
+    }
+}
@@ -0,0 +1,231 @@
+package edu.agh.symulations;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Replays a {@link RecordedDive} through the same path as a live simulation:
+ * a {@link DiverSession} with its DivingProfile and SafytyChecker, ticked by a
+ * {@link SimulationClock}. The recording is sampled once per step (1 s, as the
+ * live simulation, by default), so a replay gives the warnings a live run of
+ * the same dive would have given.
+ * <p>
+ * A replay runs as fast as possible ({@link #runToEnd()}) or at a multiple of
+ * real time ({@link #play(double)}). {@link #seek(double)} moves to a time of
+ * the recording; the tissues are always calculated from the start, seeking
+ * backwards restarts the replay. Every change of the safety alerts is logged
+ * as an {@link Alarm}.
+ * Usage: DiveReplay file... (prints the alarms and the throughput per file)
+ */
+public class DiveReplay {
+
+    /**
+     * Change of the safety alerts during a replay: a tissue became unsafe or
+     * safe again
+     */
+    public static final class Alarm {
+        private final double time;
+        private final double depth;
+        private final String warnings;
+
+        Alarm(double time, double depth, String warnings) {
+            this.time = time;
+            this.depth = depth;
+            this.warnings = warnings;
+        }
+
+        /**
+         * Returns the time in s since the start of the recording
+         */
+        public double getTime() {
+            return time;
+        }
+
+        public double getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the warnings from this time on, one per line; empty when the
+         * warnings cleared
+         */
+        public String getWarnings() {
+            return warnings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.0f s %6.1f m  %s", time, depth,
+                    warnings.isEmpty() ? "cleared" : warnings.replace("\n", "; "));
+        }
+    }
+
+    private final RecordedDive dive;
+    private final double stepSeconds;
+    private final Consumer<UiSnapshot> listener;
+    private final List<Alarm> alarms = new ArrayList<>();
+    private final SimulationClock clock;
+    private DiverSession session;
+    private double simulatedTime;
+    private long lastAlertMask;
+    private long wallNanos;
+
+    public DiveReplay(RecordedDive dive) {
+        this(dive, 1.0, null);
+    }
+
+    /**
+     * @param dive        the recording
+     * @param stepSeconds simulated time between two samples of the recording
+     * @param listener    receives the snapshot of every step, may be null
+     */
+    public DiveReplay(RecordedDive dive, double stepSeconds, Consumer<UiSnapshot> listener) {
+        this.dive = dive;
+        this.stepSeconds = stepSeconds;
+        this.listener = listener;
+        clock = new SimulationClock(1.0 / stepSeconds, stepSeconds, SimulationClock.LateTickPolicy.DROP, this::step);
+        restart();
+    }
+
+    private void restart() {
+        session = new DiverSession("replay", time -> dive.getDepth(dive.getStartTime() + time), this::onSnapshot);
+        simulatedTime = 0.0;
+        alarms.clear();
+        lastAlertMask = 0L;
+    }
+
+    /**
+     * Clock listener; the simulated time is kept here, so that the unpaced
+     * clock and the clocks of play() continue from each other
+     */
+    private void step(double time, double step) {
+        simulatedTime += step;
+        session.tick(simulatedTime);
+    }
+
+    private void onSnapshot(UiSnapshot snapshot) {
+        if (snapshot.getAlertMask() != lastAlertMask) {
+            alarms.add(new Alarm(snapshot.getDivingTime(), snapshot.getDepth(), snapshot.getWarnsText()));
+            lastAlertMask = snapshot.getAlertMask();
+        }
+        if (listener != null) {
+            listener.accept(snapshot);
+        }
+    }
+
+    /**
+     * Returns the time in s of the recording reached by the replay, -1 before
+     * the first step
+     */
+    public double getTime() {
+        final UiSnapshot snapshot = session.getSnapshot();
+        return snapshot == null ? -1.0 : snapshot.getDivingTime();
+    }
+
+    public boolean isAtEnd() {
+        return getTime() >= dive.getEndTime() - dive.getStartTime();
+    }
+
+    /**
+     * Replays up to the given time of the recording as fast as possible
+     *
+     * @param time time in s since the start of the recording
+     */
+    public void seek(double time) {
+        if (time < getTime()) {
+            restart();
+        }
+        final long start = System.nanoTime();
+        // The first step is at time 0
+        final int steps = getTime() < 0.0 ? 1 + (int) Math.ceil(time / stepSeconds)
+                : (int) Math.ceil((time - getTime()) / stepSeconds);
+        if (steps > 0) {
+            clock.runSteps(steps);
+        }
+        wallNanos += System.nanoTime() - start;
+        checkErrors();
+    }
+
+    private void checkErrors() {
+        if (session.getErrors() > 0) {
+            throw new IllegalStateException("Replay failed, see the stack trace printed");
+        }
+    }
+
+    /**
+     * Replays the rest of the recording as fast as possible
+     */
+    public void runToEnd() {
+        seek(dive.getEndTime() - dive.getStartTime());
+    }
+
+    /**
+     * Replays the rest of the recording at a multiple of real time, returns
+     * at the end of the recording
+     *
+     * @param speed simulated seconds per second, e.g. 10.0 for ten times real time
+     */
+    public void play(double speed) throws InterruptedException {
+        final SimulationClock pacedClock = new SimulationClock(speed / stepSeconds, stepSeconds,
+                SimulationClock.LateTickPolicy.DROP, this::step);
+        final long start = System.nanoTime();
+        pacedClock.start();
+        try {
+            while (!isAtEnd() && session.getErrors() == 0) {
+                Thread.sleep(10);
+            }
+        } finally {
+            pacedClock.stop();
+            wallNanos += System.nanoTime() - start;
+        }
+        checkErrors();
+    }
+
+    public List<Alarm> getAlarms() {
+        return Collections.unmodifiableList(alarms);
+    }
+
+    public boolean wasUnsafe() {
+        return session.wasUnsafe();
+    }
+
+    public DivingProfile getDivingProfile() {
+        return session.getDivingProfile();
+    }
+
+    public long getSteps() {
+        return session.getTicks();
+    }
+
+    /**
+     * Returns the simulated seconds replayed per second of wall clock time
+     */
+    public double getSpeedup() {
+        return wallNanos == 0 ? 0.0 : Math.max(getTime(), 0.0) * 1.0e9 / wallNanos;
+    }
+
+    public String getThroughputText() {
+        return String.format("%d steps, %.0f s simulated in %.1f ms: %.0f steps/s, %.0fx real time",
+                getSteps(), Math.max(getTime(), 0.0), wallNanos / 1.0e6,
+                wallNanos == 0 ? 0.0 : getSteps() * 1.0e9 / wallNanos, getSpeedup());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DiveReplay file...");
+            return;
+        }
+        for (String name : args) {
+            final DiveReplay replay = new DiveReplay(RecordedDive.load(new File(name)));
+            replay.runToEnd();
+            System.out.println(name + ": " + replay.getAlarms().size() + " alarms" +
+                    (replay.wasUnsafe() ? ", unsafe" : "") + "; " + replay.getThroughputText());
+            for (Alarm alarm : replay.getAlarms()) {
+                System.out.println("  " + alarm);
+            }
+        }
+    }
+}
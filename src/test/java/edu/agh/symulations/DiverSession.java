@@ -0,0 +1,237 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One diver of a {@link SimulationEngine}: depth source, diving profile, tissue
+ * tensions, safety state and metrics.
+ * <p>
+ * The tissues are not recalculated from the whole profile every tick as
+ * {@link DivingProfile#count()} does; the tensions are kept in a TissueState
+ * and exposed to the depth of each tick for the time since the previous one.
+ * This gives the same tensions (the profile time is used as exposure period
+ * in the same way), at a cost that does not grow with the length of the dive.
+ * <p>
+ * Ticks of one session never run concurrently: a tick arriving while the
+ * previous one is still running is skipped and counted. The tensions of every
+ * tick are published to readers on other threads through a
+ * {@link TissueSnapshotPublisher}.
+ * <p>
+ * The exposure, the safety alerts ({@link SafetyAlertEngine}) and the deco
+ * readouts of a tick allocate nothing. A tick does allocate the
+ * {@link UiSnapshot} it hands to the UI, which is immutable because other
+ * threads read it, the next chunk of the diving profile when it is full and,
+ * if a planner is set, the copy of the tensions submitted to it.
+ */
+public class DiverSession {
+    private static TissueState surfaceState;
+
+    private final String id;
+    private final DepthSource depthSource;
+    private final Consumer<UiSnapshot> listener;
+    private double startTime = Double.NaN;
+    private final DivingProfile divingProfile = new DivingProfile();
+    private final SafytyChecker safytyChecker = new SafytyChecker();
+    private final TissueState tissueState = new TissueState();
+    private final Length depthLength = new Length(0.0, Length.UNITS_METER);
+    private final DepthPressure depthPressure = new DepthPressure(depthLength, DivingProfile.DIVE_HEIGHT);
+    private final SafetyAlertEngine alertEngine;
+    private final DecoReadouts readouts;
+    private final TissueSnapshotPublisher tissueSnapshots;
+    private volatile SpeculativeDecoPlanner planner;
+    private volatile TimeToSurfaceEstimator timeToSurfaceEstimator;
+    private final double[] he2Tensions;
+    private final double[] n2Tensions;
+    private final AtomicBoolean ticking = new AtomicBoolean();
+    private double lastTime;
+    int slot;
+
+    private volatile UiSnapshot snapshot;
+    private volatile long ticks;
+    private final AtomicLong skippedTicks = new AtomicLong();
+    private volatile long errors;
+    private volatile long computeNanos;
+    private volatile long maxComputeNanos;
+
+    /**
+     * @param id          name of the diver
+     * @param depthSource depth of the diver
+     * @param listener    receives the snapshot of every tick on the engine thread, may be null
+     */
+    DiverSession(String id, DepthSource depthSource, Consumer<UiSnapshot> listener) {
+        this.id = id;
+        this.depthSource = depthSource;
+        this.listener = listener;
+        tissueState.copyFrom(getSurfaceState());
+        alertEngine = new SafetyAlertEngine(tissueState.size());
+        readouts = new DecoReadouts(safytyChecker, tissueState.size());
+        tissueSnapshots = new TissueSnapshotPublisher(tissueState.size());
+        he2Tensions = new double[tissueState.size()];
+        n2Tensions = new double[tissueState.size()];
+    }
+
+    /**
+     * Tensions of a diver saturated at the surface on air, as the Saturation
+     * exposure DivingProfile.count() starts with
+     */
+    static synchronized TissueState getSurfaceState() {
+        if (surfaceState == null) {
+            try {
+                final Diver diver = new Diver();
+                new Saturation(DivingProfile.DIVE_HEIGHT, GasMixtures.AIR).exposeDiver(diver, 0.0);
+                surfaceState = new TissueState(diver);
+            } catch (CalculationException | IllegalActionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return surfaceState;
+    }
+
+    /**
+     * Advances the diver to the engine time. The time of the diver starts at
+     * its first tick.
+     *
+     * @param engineTime engine time in s
+     */
+    void tick(double engineTime) {
+        if (!ticking.compareAndSet(false, true)) {
+            skippedTicks.incrementAndGet();
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            if (Double.isNaN(startTime)) {
+                startTime = engineTime;
+            }
+            final double time = Math.max(engineTime - startTime, lastTime);
+            final double depth = depthSource.getDepth(time);
+            depthLength.setValue(depth, Length.UNITS_METER);
+            depthPressure.setDepth(depthLength);
+            final double ambientPressure = depthPressure.getValue(Pressure.UNITS_BAR);
+            divingProfile.addPoint(depth, time, GasMixtures.AIR);
+            if (time > lastTime) {
+                tissueState.exposeToConstantPressure(ambientPressure,
+                        GasMixtures.AIR.getN2Fraction(), GasMixtures.AIR.getHe2Fraction(),
+                        time - lastTime);
+                lastTime = time;
+            }
+            tissueSnapshots.publish(time, depth, tissueState);
+            for (int i = 0; i < he2Tensions.length; i++) {
+                he2Tensions[i] = Pressure.convertPressure(tissueState.getHe2Tensions()[i], Pressure.UNITS_BAR, Pressure.UNITS_ATM);
+                n2Tensions[i] = Pressure.convertPressure(tissueState.getN2Tensions()[i], Pressure.UNITS_BAR, Pressure.UNITS_ATM);
+            }
+            alertEngine.evaluate(time, tissueState.getN2Tensions(), tissueState.getHe2Tensions(),
+                    safytyChecker.calculateTensionLimits(tissueState, ambientPressure));
+            readouts.calculate(tissueState, ambientPressure);
+            final SpeculativeDecoPlanner currentPlanner = planner;
+            if (currentPlanner != null) {
+                currentPlanner.submit(tissueState, depth, time);
+            }
+            final TimeToSurfaceEstimator estimator = timeToSurfaceEstimator;
+            final double timeToSurface = estimator != null ? estimator.estimate(tissueState, depth) : Double.NaN;
+            final UiSnapshot newSnapshot = new UiSnapshot(time, depth, he2Tensions, n2Tensions, alertEngine, readouts,
+                    timeToSurface);
+            snapshot = newSnapshot;
+            if (listener != null) {
+                listener.accept(newSnapshot);
+            }
+        } catch (Exception ex) {
+            if (errors++ == 0) {
+                ex.printStackTrace();
+            }
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            computeNanos += nanos;
+            maxComputeNanos = Math.max(maxComputeNanos, nanos);
+            ticks++;
+            ticking.set(false);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public DivingProfile getDivingProfile() {
+        return divingProfile;
+    }
+
+    /**
+     * Returns the result of the last tick, or null before the first tick
+     */
+    public UiSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the safety alerts of the diver; a listener set on it is called
+     * on the engine thread
+     */
+    public SafetyAlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    /**
+     * Returns the tensions in bar published every tick; they may be read from
+     * any thread without blocking the engine
+     */
+    public TissueSnapshotPublisher getTissueSnapshots() {
+        return tissueSnapshots;
+    }
+
+    public boolean wasUnsafe() {
+        return alertEngine.wasUnsafe();
+    }
+
+    /**
+     * Submits the tensions of every tick to the planner, which plans the
+     * ascent in the background
+     *
+     * @param planner the planner, null to stop planning
+     */
+    public void setPlanner(SpeculativeDecoPlanner planner) {
+        this.planner = planner;
+    }
+
+    public SpeculativeDecoPlanner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * Estimates the time to surface every tick, on the engine thread
+     *
+     * @param estimator estimator used by this diver only, null to stop estimating
+     */
+    public void setTimeToSurfaceEstimator(TimeToSurfaceEstimator estimator) {
+        this.timeToSurfaceEstimator = estimator;
+    }
+
+    public TimeToSurfaceEstimator getTimeToSurfaceEstimator() {
+        return timeToSurfaceEstimator;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMeanComputeMicros() {
+        final long n = ticks;
+        return n == 0 ? 0.0 : computeNanos / 1.0e3 / n;
+    }
+
+    public double getMaxComputeMicros() {
+        return maxComputeNanos / 1.0e3;
+    }
+}
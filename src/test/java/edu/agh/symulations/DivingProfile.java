@@ -3,47 +3,244 @@ package edu.agh.symulations;
 import net.deepocean.dodeco.calculator.*;
 import net.deepocean.dodeco.tools.MyXML;
 
-import java.util.LinkedList;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Created by Mateusz Pszczolka (SG0220005) on 5/10/2015.
+ * <p>
+ * Append-only log of the depth of one diver. A point is a depth kept until
+ * its time; a sample at the depth and gas of the last point only moves the
+ * time of that point.
+ * <p>
+ * The points are stored in chunks of primitive arrays that are never moved:
+ * two chunks of {@link #FIRST_CHUNK_SIZE} points, then each chunk twice the
+ * size of the previous one, so a short profile stays small and appending
+ * allocates only a new chunk whenever the points double. There is a single
+ * writer (addPoint and addPoints must not be called concurrently) and any
+ * number of readers, which take a consistent {@link Snapshot} without
+ * locking: the number of points and the time of the last point, the only one
+ * that still changes, are published together under the write lock of a
+ * StampedLock, and read with an optimistic read that is retried if a write
+ * intervened.
  */
 public class DivingProfile {
 
     public static final Length DIVE_HEIGHT = new Length(0.0, Length.UNITS_METER);
 
-    private class Point {
-        double time;
-        final double deep;
-        final GasMixture gasMixture;
+    /**
+     * Number of points in the first chunk
+     */
+    public static final int FIRST_CHUNK_SIZE = 64;
+    private static final int FIRST_CHUNK_SHIFT = 6;
+    private static final int CHUNKS = 32 - FIRST_CHUNK_SHIFT + 1;
 
-        public Point(double deep, double time, GasMixture gasMixture) {
-            this.deep = deep;
-            this.time = time;
-            this.gasMixture = gasMixture;
+    private static int chunkOf(int point) {
+        return Math.max(0, 31 - FIRST_CHUNK_SHIFT - Integer.numberOfLeadingZeros(point) + 1);
+    }
+
+    private static int chunkStart(int chunk) {
+        return chunk == 0 ? 0 : 1 << (chunk + FIRST_CHUNK_SHIFT - 1);
+    }
+
+    /**
+     * Consistent view of the profile at the time it was taken; later points
+     * are not seen
+     */
+    public static final class Snapshot {
+        private final DivingProfile profile;
+        private final int size;
+        private final double endTime;
+
+        private Snapshot(DivingProfile profile, int size, double endTime) {
+            this.profile = profile;
+            this.size = size;
+            this.endTime = endTime;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the depth in m of the point
+         */
+        public double getDepth(int point) {
+            final int chunk = chunkOf(point);
+            return profile.depths[chunk][point - chunkStart(chunk)];
+        }
+
+        /**
+         * Returns the time until which the depth of the point was kept
+         */
+        public double getTime(int point) {
+            if (point == size - 1) {
+                return endTime;
+            }
+            final int chunk = chunkOf(point);
+            return profile.times[chunk][point - chunkStart(chunk)];
+        }
+
+        public GasMixture getGasMixture(int point) {
+            final int chunk = chunkOf(point);
+            return profile.gasMixtures[chunk][point - chunkStart(chunk)];
         }
 
-        public Length getDeep() {
-            return new Length(deep, Length.UNITS_METER);
+        /**
+         * Returns the time of the last point, 0 if there are no points
+         */
+        public double getEndTime() {
+            return size == 0 ? 0.0 : endTime;
         }
     }
 
-    private final LinkedList<Point> points = new LinkedList<>();
+    private final double[][] depths = new double[CHUNKS][];
+    private final double[][] times = new double[CHUNKS][];
+    private final GasMixture[][] gasMixtures = new GasMixture[CHUNKS][];
+
+    // Writer state
+    private double[] depthChunk;
+    private double[] timeChunk;
+    private GasMixture[] gasMixtureChunk;
+    private int chunkStart;
+    private int count;
+    private double lastDepth;
+    private double lastTime;
+    private GasMixture lastGasMixture;
+
+    // Published state, written under the write lock
+    private final StampedLock lock = new StampedLock();
+    private int publishedSize;
+    private double publishedEndTime;
 
-    public Point getDeep() {
-        return points.getLast();
+    /**
+     * Returns the depth of the last point, or null if there are no points
+     */
+    public Length getDeep() {
+        final Snapshot snapshot = snapshot();
+        return snapshot.size() == 0 ? null
+                : new Length(snapshot.getDepth(snapshot.size() - 1), Length.UNITS_METER);
     }
-    public synchronized void addPoint(double deep, double time, GasMixture gasMixture) throws IllegalArgumentException {
-        if (points.size() > 0 && points.getLast().time > time) {
+
+    public void addPoint(double deep, double time, GasMixture gasMixture) throws IllegalArgumentException {
+        if (count > 0 && lastTime > time) {
             throw new IllegalArgumentException("You cannot go back in time!");
-        } else if (points.size() > 0 && points.getLast().deep == deep && points.getLast().gasMixture.equals(gasMixture)) {
-            points.getLast().time = time;
-        } else {
-            points.add(new Point(deep, time, gasMixture));
+        }
+        append(deep, time, gasMixture);
+        publish();
+    }
+
+    /**
+     * Adds a batch of samples, e.g. read from a sensor, published to the
+     * readers at once. Nothing is added if a time goes back.
+     *
+     * @param deeps      depths in m
+     * @param times      times of the samples, not decreasing
+     * @param length     number of samples
+     * @param gasMixture gas of all samples
+     */
+    public void addPoints(double[] deeps, double[] times, int length, GasMixture gasMixture)
+            throws IllegalArgumentException {
+        double previousTime = count > 0 ? lastTime : Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            if (previousTime > times[i]) {
+                throw new IllegalArgumentException("You cannot go back in time!");
+            }
+            previousTime = times[i];
+        }
+        for (int i = 0; i < length; i++) {
+            append(deeps[i], times[i], gasMixture);
+        }
+        publish();
+    }
+
+    private void append(double deep, double time, GasMixture gasMixture) {
+        if (count > 0 && lastDepth == deep && lastGasMixture.equals(gasMixture)) {
+            lastTime = time;
+            return;
+        }
+        if (count > 0) {
+            // The time of the previous last point does not change any more
+            timeChunk[count - 1 - chunkStart] = lastTime;
+        }
+        if (depthChunk == null || count - chunkStart == depthChunk.length) {
+            final int chunk = chunkOf(count);
+            final int size = chunk == 0 ? FIRST_CHUNK_SIZE : chunkStart(chunk);
+            depthChunk = depths[chunk] = new double[size];
+            timeChunk = times[chunk] = new double[size];
+            gasMixtureChunk = gasMixtures[chunk] = new GasMixture[size];
+            chunkStart = count;
+        }
+        depthChunk[count - chunkStart] = deep;
+        gasMixtureChunk[count - chunkStart] = gasMixture;
+        count++;
+        lastDepth = deep;
+        lastTime = time;
+        lastGasMixture = gasMixture;
+    }
+
+    private void publish() {
+        final long stamp = lock.writeLock();
+        publishedSize = count;
+        publishedEndTime = lastTime;
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Returns a consistent view of the points added so far; may be called
+     * from any thread
+     */
+    public Snapshot snapshot() {
+        while (true) {
+            final long stamp = lock.tryOptimisticRead();
+            final int size = publishedSize;
+            final double endTime = publishedEndTime;
+            if (stamp != 0 && lock.validate(stamp)) {
+                return new Snapshot(this, size, endTime);
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the number of points, without taking a snapshot
+     */
+    public int size() {
+        while (true) {
+            final long stamp = lock.tryOptimisticRead();
+            final int size = publishedSize;
+            if (stamp != 0 && lock.validate(stamp)) {
+                return size;
+            }
+            Thread.yield();
         }
     }
 
     public Diver count() throws MyXML.MyXMLException, IllegalActionException, CalculationException {
+        final Dive dive = new Dive("One true dive", DIVE_HEIGHT);
+
+
+        final Snapshot snapshot = snapshot();
+        double prevTime = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            dive.addConstantDepthSegment(new Length(snapshot.getDepth(i), Length.UNITS_METER),
+                    snapshot.getTime(i) - prevTime, snapshot.getGasMixture(i));
+            prevTime = snapshot.getTime(i);
+        }
+        return process(dive);
+    }
+
+    /**
+     * Calculates the diver as count() does, from the profile simplified by a
+     * {@link ProfileSimplifier}: fewer, linear segments, with the tensions
+     * within the given error of those of count()
+     *
+     * @param maxTensionError maximum error of the tensions in bar
+     */
+    public Diver count(double maxTensionError) throws MyXML.MyXMLException, IllegalActionException, CalculationException {
+        return process(ProfileSimplifier.of(snapshot(), maxTensionError).createDive("One true dive"));
+    }
+
+    private Diver process(Dive dive) throws MyXML.MyXMLException, IllegalActionException, CalculationException {
         Processor processor = new Processor();
 
         processor.setDecoAlgorithm(Processor.ALGORITHM_BUHLMANNBWITHGRADIENT);
@@ -54,14 +251,6 @@ public class DivingProfile {
             System.err.println(e.getMessage());
         }
 
-        final Dive dive = new Dive("One true dive", DIVE_HEIGHT);
-
-
-        double prevTime = 0;
-        for (Point point : points) {
-            dive.addConstantDepthSegment(new Length(point.deep, Length.UNITS_METER), point.time - prevTime, point.gasMixture);
-            prevTime = point.time;
-        }
         processor.addExposure(dive);
 
         processor.process();
@@ -0,0 +1,248 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the ingestion of depth sensor samples into the
+ * {@link DivingProfile} of many divers at 10 and 100 Hz.
+ * <p>
+ * Each diver reads its sensor in batches (depth resolution 1 cm, so close
+ * samples merge into one point). The samples of the simulated seconds are
+ * ingested as fast as possible, with the profile as it was (a synchronized
+ * linked list, one sample at a time) and with the append-only profile in
+ * batches; cost and allocation are reported per sample. Meanwhile a reader
+ * thread takes snapshots of random divers and checks that they are
+ * consistent (times not decreasing, no point lost); the benchmark exits with
+ * status 1 otherwise.
+ * Usage: DivingProfileBenchmark [divers [seconds [samples per batch]]]
+ */
+public class DivingProfileBenchmark {
+    private static final double[] RATES = {10.0, 100.0};
+
+    /**
+     * The profile as it was, for comparison
+     */
+    private static class LinkedListProfile {
+        private static class Point {
+            double time;
+            final double deep;
+            final GasMixture gasMixture;
+
+            Point(double deep, double time, GasMixture gasMixture) {
+                this.deep = deep;
+                this.time = time;
+                this.gasMixture = gasMixture;
+            }
+        }
+
+        private final LinkedList<Point> points = new LinkedList<>();
+
+        synchronized void addPoint(double deep, double time, GasMixture gasMixture) {
+            if (points.size() > 0 && points.getLast().time > time) {
+                throw new IllegalArgumentException("You cannot go back in time!");
+            } else if (points.size() > 0 && points.getLast().deep == deep && points.getLast().gasMixture.equals(gasMixture)) {
+                points.getLast().time = time;
+            } else {
+                points.add(new Point(deep, time, gasMixture));
+            }
+        }
+    }
+
+    /**
+     * Depth sensor of one diver: a slow random descent and ascent with
+     * noise, in cm
+     */
+    private static final class Sensor {
+        private final Random random;
+        private double depth;
+        private double speed;
+
+        Sensor(long seed) {
+            random = new Random(seed);
+        }
+
+        double read(double seconds) {
+            speed = Math.max(-0.3, Math.min(0.3, speed + random.nextGaussian() * 0.01));
+            depth = Math.max(0.0, Math.min(40.0, depth + speed * seconds));
+            return Math.round((depth + random.nextGaussian() * 0.005) * 100.0) / 100.0;
+        }
+    }
+
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Checks a snapshot: times not decreasing, at least as many points and as
+     * late an end as the previous snapshot of the diver
+     */
+    private static boolean isConsistent(DivingProfile.Snapshot snapshot, int previousSize, double previousEnd) {
+        if (snapshot.size() < previousSize || snapshot.getEndTime() < previousEnd) {
+            return false;
+        }
+        for (int i = 1; i < snapshot.size(); i++) {
+            if (snapshot.getTime(i) < snapshot.getTime(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DivingProfile[] newProfiles(int divers) {
+        final DivingProfile[] profiles = new DivingProfile[divers];
+        for (int diver = 0; diver < divers; diver++) {
+            profiles[diver] = new DivingProfile();
+        }
+        return profiles;
+    }
+
+    /**
+     * Adds the samples to the profiles batch by batch, all divers in turn
+     */
+    private static void ingestBatches(DivingProfile[] profiles, double[][] depths, double[][] times, int samples,
+                                      int batch) {
+        final double[] batchDepths = new double[batch];
+        final double[] batchTimes = new double[batch];
+        for (int offset = 0; offset < samples; offset += batch) {
+            final int length = Math.min(samples - offset, batch);
+            for (int diver = 0; diver < profiles.length; diver++) {
+                System.arraycopy(depths[diver], offset, batchDepths, 0, length);
+                System.arraycopy(times[diver], offset, batchTimes, 0, length);
+                profiles[diver].addPoints(batchDepths, batchTimes, length, GasMixtures.AIR);
+            }
+        }
+    }
+
+    /**
+     * Ingests the samples of all divers at the rate
+     *
+     * @param report whether to print the results, false for a warm-up
+     * @return whether all profiles were consistent
+     */
+    private static boolean ingest(int divers, int seconds, int batch, double rate, boolean report)
+            throws InterruptedException {
+        final GasMixture air = GasMixtures.AIR;
+        boolean consistent = true;
+        final int samples = (int) (seconds * rate);
+        final double period = 1.0 / rate;
+
+        // Sensor samples, read before so that only the ingestion is measured
+        final double[][] depths = new double[divers][samples];
+        final double[][] times = new double[divers][samples];
+        for (int diver = 0; diver < divers; diver++) {
+            final Sensor sensor = new Sensor(diver);
+            for (int sample = 0; sample < samples; sample++) {
+                depths[diver][sample] = sensor.read(period);
+                times[diver][sample] = (sample + 1) * period;
+            }
+        }
+
+        // As it was
+        final LinkedListProfile[] oldProfiles = new LinkedListProfile[divers];
+        for (int diver = 0; diver < divers; diver++) {
+            oldProfiles[diver] = new LinkedListProfile();
+        }
+        System.gc();
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        for (int offset = 0; offset < samples; offset += batch) {
+            final int end = Math.min(samples, offset + batch);
+            for (int diver = 0; diver < divers; diver++) {
+                for (int sample = offset; sample < end; sample++) {
+                    oldProfiles[diver].addPoint(depths[diver][sample], times[diver][sample], air);
+                }
+            }
+        }
+        final double oldNanos = (System.nanoTime() - start) / (double) samples / divers;
+        final double oldBytes = (allocatedBytes() - allocated) / (double) samples / divers;
+        long points = 0;
+        for (int diver = 0; diver < divers; diver++) {
+            points += oldProfiles[diver].points.size();
+            oldProfiles[diver] = null;
+        }
+
+        // Append-only, batched
+        DivingProfile[] profiles = newProfiles(divers);
+        System.gc();
+        start = System.nanoTime();
+        allocated = allocatedBytes();
+        ingestBatches(profiles, depths, times, samples, batch);
+        final double newNanos = (System.nanoTime() - start) / (double) samples / divers;
+        final double newBytes = (allocatedBytes() - allocated) / (double) samples / divers;
+
+        // Again, with a concurrent reader
+        final DivingProfile[] readProfiles = newProfiles(divers);
+        profiles = readProfiles;
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean readerConsistent = new AtomicBoolean(true);
+        final long[] snapshots = new long[1];
+        final Thread reader = new Thread(() -> {
+            final Random random = new Random(3);
+            final int[] sizes = new int[divers];
+            final double[] ends = new double[divers];
+            while (running.get()) {
+                final int diver = random.nextInt(divers);
+                final DivingProfile.Snapshot snapshot = readProfiles[diver].snapshot();
+                if (!isConsistent(snapshot, sizes[diver], ends[diver])) {
+                    readerConsistent.set(false);
+                }
+                sizes[diver] = snapshot.size();
+                ends[diver] = snapshot.getEndTime();
+                snapshots[0]++;
+            }
+        }, "profile-reader");
+        reader.setDaemon(true);
+        reader.start();
+        ingestBatches(profiles, depths, times, samples, batch);
+        running.set(false);
+        reader.join();
+
+        long newPoints = 0;
+        for (int diver = 0; diver < divers; diver++) {
+            final DivingProfile.Snapshot snapshot = profiles[diver].snapshot();
+            newPoints += snapshot.size();
+            if (!isConsistent(snapshot, 0, 0.0) || snapshot.getEndTime() != times[diver][samples - 1]) {
+                consistent = false;
+            }
+        }
+        if (newPoints != points || !readerConsistent.get()) {
+            consistent = false;
+        }
+
+        if (report) {
+            System.out.println(String.format("%d divers at %.0f Hz, %d s, batches of %d: %d samples, %d points, %d snapshots read",
+                    divers, rate, seconds, batch, (long) samples * divers, newPoints, snapshots[0]));
+            System.out.println(String.format("  Linked list: %6.1f ns, %5.1f bytes per sample, %8.0f divers per core",
+                    oldNanos, oldBytes, 1.0e9 / oldNanos / rate));
+            System.out.println(String.format("  Append-only: %6.1f ns, %5.1f bytes per sample, %8.0f divers per core",
+                    newNanos, newBytes, 1.0e9 / newNanos / rate));
+        }
+        return consistent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int divers = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        final int batch = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        boolean consistent = true;
+        for (double rate : RATES) {
+            consistent &= ingest(divers, seconds, batch, rate, false);
+        }
+        for (double rate : RATES) {
+            consistent &= ingest(divers, seconds, batch, rate, true);
+        }
+        if (!consistent) {
+            System.out.println("Inconsistent profile");
+            System.exit(1);
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package edu.agh.symulations;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Created by Mateusz Pszczolka (SG0220005) on 5/10/2015.
  */
 public class Main {
-    public static void main(String[] args) {
-        new BubblesForm();
+    /**
+     * Usage: Main [recording [speed]] - without arguments the depth is set in
+     * the form, otherwise the recording is replayed (see RecordedDive)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            new BubblesForm(RecordedDive.load(new File(args[0])), args.length > 1 ? Double.parseDouble(args[1]) : 1.0);
+        } else {
+            new BubblesForm();
+        }
     }
 }
@@ -0,0 +1,405 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies a depth profile into linear segments, for a faster exposure of
+ * the diver than a segment per point as {@link DivingProfile#count()} makes.
+ * <p>
+ * Points are dropped in the way of Douglas-Peucker, but the criterion is the
+ * tissue tension instead of the depth: a linear segment between two points
+ * (a {@code VaryingDepthSegment}, or a {@code ConstantDepthSegment} if the
+ * depths are equal) is kept if the tensions it gives at every point in
+ * between differ from those of the original profile by at most the maximum
+ * error; otherwise it is split at the point with the largest error. The
+ * segments are checked in order, each starting from the tensions the
+ * previous simplified segments give, so the error bound holds for the whole
+ * profile and does not add up. Two neighbouring points are always joined as
+ * in the original profile.
+ * <p>
+ * The original profile between two points is either a step, as
+ * DivingProfile.count() makes (the depth of a point from the time of the
+ * previous point), or linear, as a {@link RecordedDive} interpolates. The
+ * diver starts saturated at the surface on air, and the times are used as
+ * minutes, as in count().
+ * <p>
+ * For a profile that is still recorded, {@link #update(DivingProfile.Snapshot)}
+ * adds the new points and simplifies them; the segments up to the start of
+ * the last one are final, so the cost of an update does not grow with the
+ * length of the dive. A simplifier must not be used concurrently.
+ */
+public class ProfileSimplifier {
+    /**
+     * Default maximum tension error in bar
+     */
+    public static final double DEFAULT_MAX_TENSION_ERROR = 0.005;
+    /**
+     * Default maximum number of points in a segment, which bounds the cost of
+     * checking one
+     */
+    public static final int DEFAULT_MAX_SPAN = 512;
+
+    private final double maxTensionError;
+    private final int maxSpan;
+    private final boolean steps;
+    private final int compartments;
+    private final double[] n2K;
+    private final double[] he2K;
+    private final double surfacePressure;
+    private final double barsPerMeter;
+
+    // Points not final yet, from the anchor: the start of the last segment
+    private double[] times = new double[64];
+    private double[] depths = new double[64];
+    private GasMixture[] gasMixtures = new GasMixture[64];
+    private double[] referenceN2;
+    private double[] referenceHe2;
+    private int tailSize;
+    private final double[] anchorN2;
+    private final double[] anchorHe2;
+    private final double[] stateN2;
+    private final double[] stateHe2;
+    private final double[] lastStartN2;
+    private final double[] lastStartHe2;
+    private int[] stack = new int[16];
+    private int splitPoint;
+
+    // Final segments
+    private double[] segmentStartDepths = new double[16];
+    private double[] segmentEndDepths = new double[16];
+    private double[] segmentPeriods = new double[16];
+    private GasMixture[] segmentGasMixtures = new GasMixture[16];
+    private int segmentCount;
+
+    private int profilePoints;
+    private long points;
+    private long checkedPoints;
+    private double maxError;
+
+    /**
+     * @param maxTensionError maximum error of the tensions in bar
+     * @param maxSpan         maximum number of points in a segment
+     * @param steps           whether the original profile is a step at each
+     *                        point (as DivingProfile.count()), or linear
+     */
+    public ProfileSimplifier(double maxTensionError, int maxSpan, boolean steps) {
+        this.maxTensionError = maxTensionError;
+        this.maxSpan = Math.max(2, maxSpan);
+        this.steps = steps;
+        final TissueState surfaceState = DiverSession.getSurfaceState();
+        compartments = surfaceState.size();
+        n2K = surfaceState.getN2K().clone();
+        he2K = surfaceState.getHe2K().clone();
+        surfacePressure = new DepthPressure(Length.ZERO, DivingProfile.DIVE_HEIGHT).getValue(Pressure.UNITS_BAR);
+        barsPerMeter = new DepthPressure(new Length(1.0, Length.UNITS_METER), DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR) - surfacePressure;
+        referenceN2 = new double[times.length * compartments];
+        referenceHe2 = new double[times.length * compartments];
+        anchorN2 = surfaceState.getN2Tensions().clone();
+        anchorHe2 = surfaceState.getHe2Tensions().clone();
+        stateN2 = new double[compartments];
+        stateHe2 = new double[compartments];
+        lastStartN2 = new double[compartments];
+        lastStartHe2 = new double[compartments];
+    }
+
+    /**
+     * Simplifies a recorded profile as DivingProfile.count() would expose it
+     */
+    public static ProfileSimplifier of(DivingProfile.Snapshot profile, double maxTensionError) {
+        final ProfileSimplifier simplifier = new ProfileSimplifier(maxTensionError, DEFAULT_MAX_SPAN, true);
+        simplifier.addPoints(profile, profile.size());
+        simplifier.simplify(true);
+        return simplifier;
+    }
+
+    /**
+     * Simplifies an imported recording, linear between the samples
+     */
+    public static ProfileSimplifier of(RecordedDive recording, double maxTensionError) {
+        final ProfileSimplifier simplifier = new ProfileSimplifier(maxTensionError, DEFAULT_MAX_SPAN, false);
+        for (int i = 0; i < recording.getSampleCount(); i++) {
+            simplifier.addPoint(recording.getSampleTime(i), recording.getSampleDepth(i), GasMixtures.AIR);
+        }
+        simplifier.simplify(true);
+        return simplifier;
+    }
+
+    /**
+     * Adds the points of a profile that is still recorded and simplifies
+     * them. The last point, of which the time may still change, is left for
+     * a later update. Call it e.g. every few seconds, with snapshots of the
+     * same profile.
+     */
+    public void update(DivingProfile.Snapshot profile) {
+        addPoints(profile, profile.size() - 1);
+        simplify(false);
+    }
+
+    /**
+     * Adds the remaining points of a profile that was updated while it was
+     * recorded, the last one included, and closes the last segment
+     */
+    public void finish(DivingProfile.Snapshot profile) {
+        addPoints(profile, profile.size());
+        simplify(true);
+    }
+
+    /**
+     * Adds the profile points from the first not added yet up to the end
+     * (exclusive). A step profile starts at time 0 at the depth of its
+     * first point, as in count().
+     */
+    private void addPoints(DivingProfile.Snapshot profile, int end) {
+        for (int point = profilePoints; point < end; point++) {
+            if (point == 0) {
+                addPoint(0.0, profile.getDepth(0), profile.getGasMixture(0));
+            }
+            addPoint(profile.getTime(point), profile.getDepth(point), profile.getGasMixture(point));
+        }
+        profilePoints = Math.max(profilePoints, end);
+    }
+
+    /**
+     * Adds a point of the original profile and calculates its tensions
+     */
+    private void addPoint(double time, double depth, GasMixture gasMixture) {
+        if (tailSize == times.length) {
+            times = Arrays.copyOf(times, tailSize * 2);
+            depths = Arrays.copyOf(depths, tailSize * 2);
+            gasMixtures = Arrays.copyOf(gasMixtures, tailSize * 2);
+            referenceN2 = Arrays.copyOf(referenceN2, tailSize * 2 * compartments);
+            referenceHe2 = Arrays.copyOf(referenceHe2, tailSize * 2 * compartments);
+        }
+        final int point = tailSize++;
+        times[point] = time;
+        depths[point] = depth;
+        gasMixtures[point] = gasMixture;
+        final int offset = point * compartments;
+        if (point == 0) {
+            System.arraycopy(anchorN2, 0, referenceN2, 0, compartments);
+            System.arraycopy(anchorHe2, 0, referenceHe2, 0, compartments);
+        } else {
+            final int previous = offset - compartments;
+            final double period = time - times[point - 1];
+            final double startDepth = steps ? depth : depths[point - 1];
+            final double rate = period > 0.0 ? (depth - startDepth) / period * barsPerMeter : 0.0;
+            final double n2Alveolar = Tools.alveolarPressure(ambientPressure(startDepth), gasMixture.getN2Fraction());
+            final double he2Alveolar = Tools.alveolarPressure(ambientPressure(startDepth), gasMixture.getHe2Fraction());
+            for (int i = 0; i < compartments; i++) {
+                referenceN2[offset + i] = Tools.schreinerEquation(n2Alveolar, rate * gasMixture.getN2Fraction(),
+                        period, n2K[i], referenceN2[previous + i]);
+                referenceHe2[offset + i] = Tools.schreinerEquation(he2Alveolar, rate * gasMixture.getHe2Fraction(),
+                        period, he2K[i], referenceHe2[previous + i]);
+            }
+        }
+        points++;
+    }
+
+    private double ambientPressure(double depth) {
+        return surfacePressure + depth * barsPerMeter;
+    }
+
+    /**
+     * Simplifies the points from the anchor on
+     *
+     * @param finish whether all points are added; if not, the last segment
+     *               stays open and its start becomes the new anchor
+     */
+    private void simplify(boolean finish) {
+        if (tailSize < 2) {
+            return;
+        }
+        System.arraycopy(anchorN2, 0, stateN2, 0, compartments);
+        System.arraycopy(anchorHe2, 0, stateHe2, 0, compartments);
+        int start = 0;
+        int lastStart = 0;
+        int lastSegments = segmentCount;
+        int stackSize = 0;
+        stack[stackSize++] = tailSize - 1;
+        while (stackSize > 0) {
+            final int end = stack[stackSize - 1];
+            final int split;
+            if (end - start > maxSpan) {
+                split = start + maxSpan;
+            } else if (end == start + 1 || times[end] == times[start] || isWithinError(start, end)) {
+                lastStart = start;
+                lastSegments = segmentCount;
+                System.arraycopy(stateN2, 0, lastStartN2, 0, compartments);
+                System.arraycopy(stateHe2, 0, lastStartHe2, 0, compartments);
+                addSegment(start, end, end == start + 1);
+                start = end;
+                stackSize--;
+                continue;
+            } else {
+                split = splitPoint;
+            }
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = split;
+        }
+
+        if (finish) {
+            lastStart = tailSize - 1;
+            System.arraycopy(stateN2, 0, anchorN2, 0, compartments);
+            System.arraycopy(stateHe2, 0, anchorHe2, 0, compartments);
+        } else {
+            // The last segment may still grow
+            segmentCount = lastSegments;
+            System.arraycopy(lastStartN2, 0, anchorN2, 0, compartments);
+            System.arraycopy(lastStartHe2, 0, anchorHe2, 0, compartments);
+        }
+        tailSize -= lastStart;
+        System.arraycopy(times, lastStart, times, 0, tailSize);
+        System.arraycopy(depths, lastStart, depths, 0, tailSize);
+        System.arraycopy(gasMixtures, lastStart, gasMixtures, 0, tailSize);
+        System.arraycopy(referenceN2, lastStart * compartments, referenceN2, 0, tailSize * compartments);
+        System.arraycopy(referenceHe2, lastStart * compartments, referenceHe2, 0, tailSize * compartments);
+    }
+
+    /**
+     * Checks the linear segment from the point start to end, starting with
+     * the simplified tensions, against the tensions of the original profile
+     * at the points in between and at the end. Sets splitPoint to the inner
+     * point with the largest error, or before a change of gas.
+     */
+    private boolean isWithinError(int start, int end) {
+        final GasMixture gasMixture = gasMixtures[start + 1];
+        final double n2Fraction = gasMixture.getN2Fraction();
+        final double he2Fraction = gasMixture.getHe2Fraction();
+        final double rate = (depths[end] - depths[start]) / (times[end] - times[start]) * barsPerMeter;
+        final double n2Alveolar = Tools.alveolarPressure(ambientPressure(depths[start]), n2Fraction);
+        final double he2Alveolar = Tools.alveolarPressure(ambientPressure(depths[start]), he2Fraction);
+        boolean withinError = true;
+        double maxInnerError = -1.0;
+        for (int point = start + 1; point <= end; point++) {
+            if (!gasMixtures[point].equals(gasMixture)) {
+                splitPoint = point - 1;
+                return false;
+            }
+            final double elapsed = times[point] - times[start];
+            final int offset = point * compartments;
+            double error = 0.0;
+            for (int i = 0; i < compartments; i++) {
+                final double n2 = Tools.schreinerEquation(n2Alveolar, rate * n2Fraction, elapsed, n2K[i], stateN2[i]);
+                final double he2 = Tools.schreinerEquation(he2Alveolar, rate * he2Fraction, elapsed, he2K[i], stateHe2[i]);
+                error = Math.max(error, Math.max(Math.abs(n2 - referenceN2[offset + i]),
+                        Math.abs(he2 - referenceHe2[offset + i])));
+            }
+            checkedPoints++;
+            if (error > maxTensionError) {
+                withinError = false;
+            }
+            if (point < end && error > maxInnerError) {
+                maxInnerError = error;
+                splitPoint = point;
+            }
+        }
+        return withinError;
+    }
+
+    /**
+     * Adds the segment from the point start to end and exposes the
+     * simplified tensions to it
+     *
+     * @param original whether the segment joins two neighbouring points as
+     *                 the original profile does
+     */
+    private void addSegment(int start, int end, boolean original) {
+        final double period = times[end] - times[start];
+        if (period <= 0.0) {
+            return;
+        }
+        final GasMixture gasMixture = gasMixtures[start + 1];
+        final double startDepth = original && steps ? depths[end] : depths[start];
+        final double rate = (depths[end] - startDepth) / period * barsPerMeter;
+        final double n2Alveolar = Tools.alveolarPressure(ambientPressure(startDepth), gasMixture.getN2Fraction());
+        final double he2Alveolar = Tools.alveolarPressure(ambientPressure(startDepth), gasMixture.getHe2Fraction());
+        final int offset = end * compartments;
+        for (int i = 0; i < compartments; i++) {
+            stateN2[i] = Tools.schreinerEquation(n2Alveolar, rate * gasMixture.getN2Fraction(), period, n2K[i], stateN2[i]);
+            stateHe2[i] = Tools.schreinerEquation(he2Alveolar, rate * gasMixture.getHe2Fraction(), period, he2K[i], stateHe2[i]);
+            maxError = Math.max(maxError, Math.max(Math.abs(stateN2[i] - referenceN2[offset + i]),
+                    Math.abs(stateHe2[i] - referenceHe2[offset + i])));
+        }
+
+        if (segmentCount == segmentPeriods.length) {
+            segmentStartDepths = Arrays.copyOf(segmentStartDepths, segmentCount * 2);
+            segmentEndDepths = Arrays.copyOf(segmentEndDepths, segmentCount * 2);
+            segmentPeriods = Arrays.copyOf(segmentPeriods, segmentCount * 2);
+            segmentGasMixtures = Arrays.copyOf(segmentGasMixtures, segmentCount * 2);
+        }
+        segmentStartDepths[segmentCount] = startDepth;
+        segmentEndDepths[segmentCount] = depths[end];
+        segmentPeriods[segmentCount] = period;
+        segmentGasMixtures[segmentCount] = gasMixture;
+        segmentCount++;
+    }
+
+    /**
+     * Creates a dive of the simplified segments; for a profile that is still
+     * recorded, up to the start of the last segment
+     */
+    public Dive createDive(String description) throws IllegalActionException {
+        final Dive dive = new Dive(description, DivingProfile.DIVE_HEIGHT);
+        for (int segment = 0; segment < segmentCount; segment++) {
+            final Length startDepth = new Length(segmentStartDepths[segment], Length.UNITS_METER);
+            if (segmentStartDepths[segment] == segmentEndDepths[segment]) {
+                dive.addConstantDepthSegment(startDepth, segmentPeriods[segment], segmentGasMixtures[segment]);
+            } else {
+                dive.addVaryingDepthSegment(startDepth, new Length(segmentEndDepths[segment], Length.UNITS_METER),
+                        new Length((segmentEndDepths[segment] - segmentStartDepths[segment]) / segmentPeriods[segment],
+                                Length.UNITS_METER),
+                        segmentGasMixtures[segment]);
+            }
+        }
+        return dive;
+    }
+
+    /**
+     * Exposes a tissue state to the simplified segments
+     */
+    public void expose(TissueState state) {
+        for (int segment = 0; segment < segmentCount; segment++) {
+            final double period = segmentPeriods[segment];
+            final GasMixture gasMixture = segmentGasMixtures[segment];
+            state.exposeToVaryingPressure(ambientPressure(segmentStartDepths[segment]),
+                    (segmentEndDepths[segment] - segmentStartDepths[segment]) / period * barsPerMeter,
+                    gasMixture.getN2Fraction(), gasMixture.getHe2Fraction(), period);
+        }
+    }
+
+    public double getMaxTensionError() {
+        return maxTensionError;
+    }
+
+    /**
+     * Returns the number of points of the original profile added so far
+     */
+    public long getPointCount() {
+        return points;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the largest difference in bar between the simplified and the
+     * original tensions at the ends of the segments so far
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the number of points at which the tensions of a candidate
+     * segment were checked, a measure of the cost
+     */
+    public long getCheckedPoints() {
+        return checkedPoints;
+    }
+}
@@ -0,0 +1,171 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.Random;
+
+/**
+ * Reports the segment reduction and exposure speedup of the
+ * {@link ProfileSimplifier} for several maximum tension errors.
+ * <p>
+ * A live profile is recorded from a noisy 10 Hz depth sensor (1 cm
+ * resolution) and simplified by updates every second while it is recorded;
+ * the diver is then calculated with DivingProfile.count() and with the
+ * simplified profile. An imported recording (a sample every 2 s, 10 cm
+ * resolution) is exposed as linear segments between all samples and as the
+ * simplified segments. The tensions are compared at the end; the benchmark
+ * exits with status 1 if an error exceeds its bound.
+ * Usage: ProfileSimplifierBenchmark [seconds]
+ */
+public class ProfileSimplifierBenchmark {
+    private static final double[] MAX_TENSION_ERRORS = {0.001, 0.005, 0.02};
+    private static final double SENSOR_PERIOD = 0.1;
+    private static final double UPDATE_PERIOD = 1.0;
+    private static final double RECORDING_PERIOD = 2.0;
+
+    /**
+     * Multi-level dive: 30 m, 18 m, 9 m and a 5 m stop
+     */
+    private static double diveDepth(double time, double seconds) {
+        final double[] levels = {30.0, 18.0, 9.0, 5.0};
+        final double level = levels[Math.min(levels.length - 1, (int) (time / seconds * levels.length))];
+        return Math.max(0.0, Math.min(Math.min(time * 0.3, level), (seconds - time) * 0.3));
+    }
+
+    private static DivingProfile recordProfile(double seconds, Random random, ProfileSimplifier live,
+                                               double[] updateMicros) {
+        final DivingProfile profile = new DivingProfile();
+        double nextUpdate = UPDATE_PERIOD;
+        for (double time = SENSOR_PERIOD; time <= seconds; time += SENSOR_PERIOD) {
+            final double depth = Math.max(0.0,
+                    Math.round((diveDepth(time, seconds) + random.nextGaussian() * 0.02) * 100.0) / 100.0);
+            profile.addPoint(depth, time, GasMixtures.AIR);
+            if (time >= nextUpdate) {
+                final long start = System.nanoTime();
+                live.update(profile.snapshot());
+                final double micros = (System.nanoTime() - start) / 1.0e3;
+                updateMicros[0] += micros;
+                updateMicros[1] = Math.max(updateMicros[1], micros);
+                updateMicros[2]++;
+                nextUpdate += UPDATE_PERIOD;
+            }
+        }
+        return profile;
+    }
+
+    private static RecordedDive createRecording(double seconds, Random random) {
+        final int samples = (int) (seconds / RECORDING_PERIOD) + 1;
+        final double[] times = new double[samples];
+        final double[] depths = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            times[i] = i * RECORDING_PERIOD;
+            depths[i] = Math.max(0.0, Math.round((diveDepth(times[i], seconds) + random.nextGaussian() * 0.05) * 10.0) / 10.0);
+        }
+        return new RecordedDive(times, depths);
+    }
+
+    /**
+     * Linear segments between all samples of the recording
+     */
+    private static Dive createFullDive(RecordedDive recording) throws IllegalActionException {
+        final Dive dive = new Dive("Recording", DivingProfile.DIVE_HEIGHT);
+        for (int i = 1; i < recording.getSampleCount(); i++) {
+            final double period = recording.getSampleTime(i) - recording.getSampleTime(i - 1);
+            final double startDepth = recording.getSampleDepth(i - 1);
+            final double endDepth = recording.getSampleDepth(i);
+            if (startDepth == endDepth) {
+                dive.addConstantDepthSegment(new Length(startDepth, Length.UNITS_METER), period, GasMixtures.AIR);
+            } else {
+                dive.addVaryingDepthSegment(new Length(startDepth, Length.UNITS_METER),
+                        new Length(endDepth, Length.UNITS_METER),
+                        new Length((endDepth - startDepth) / period, Length.UNITS_METER), GasMixtures.AIR);
+            }
+        }
+        return dive;
+    }
+
+    private static Diver expose(Dive dive) throws CalculationException, IllegalActionException {
+        final Diver diver = new Diver();
+        new Saturation(DivingProfile.DIVE_HEIGHT, GasMixtures.AIR).exposeDiver(diver, 0.0);
+        dive.exposeDiver(diver, 0.0);
+        return diver;
+    }
+
+    private static double maxDifference(Diver first, Diver second) {
+        final TissueState firstState = new TissueState(first);
+        final TissueState secondState = new TissueState(second);
+        double difference = 0.0;
+        for (int i = 0; i < firstState.size(); i++) {
+            difference = Math.max(difference, Math.abs(firstState.getN2Tensions()[i] - secondState.getN2Tensions()[i]));
+            difference = Math.max(difference, Math.abs(firstState.getHe2Tensions()[i] - secondState.getHe2Tensions()[i]));
+        }
+        return difference;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1800.0;
+        boolean withinBounds = true;
+
+        for (double maxTensionError : MAX_TENSION_ERRORS) {
+            // Live profile
+            final ProfileSimplifier live = new ProfileSimplifier(maxTensionError, ProfileSimplifier.DEFAULT_MAX_SPAN, true);
+            final double[] updateMicros = new double[3];
+            final DivingProfile profile = recordProfile(seconds, new Random(1), live, updateMicros);
+            live.finish(profile.snapshot());
+
+            long start = System.nanoTime();
+            final ProfileSimplifier simplified = ProfileSimplifier.of(profile.snapshot(), maxTensionError);
+            final double simplifyMillis = (System.nanoTime() - start) / 1.0e6;
+            profile.count();
+            start = System.nanoTime();
+            final Diver full = profile.count();
+            final double fullMillis = (System.nanoTime() - start) / 1.0e6;
+            profile.count(maxTensionError);
+            start = System.nanoTime();
+            final Diver fast = profile.count(maxTensionError);
+            final double fastMillis = (System.nanoTime() - start) / 1.0e6;
+            final double profileError = maxDifference(full, fast);
+            withinBounds &= profileError <= maxTensionError * 1.001 && simplified.getMaxError() <= maxTensionError;
+
+            System.out.println(String.format("Max tension error %.3f bar", maxTensionError));
+            System.out.println(String.format("  Live profile, %.0f s at %.0f Hz: %d points -> %d segments (%.0fx, %d when simplified live),"
+                            + " error %.4f bar, simplified in %.0f ms, updates mean %.0f us, max %.0f us",
+                    seconds, 1.0 / SENSOR_PERIOD, simplified.getPointCount() - 1, simplified.getSegmentCount(),
+                    (simplified.getPointCount() - 1) / (double) simplified.getSegmentCount(), live.getSegmentCount(),
+                    profileError, simplifyMillis, updateMicros[0] / updateMicros[2], updateMicros[1]));
+            System.out.println(String.format("    count() %.1f ms, simplified, simplification included, %.1f ms (%.1fx)",
+                    fullMillis, fastMillis, fullMillis / fastMillis));
+
+            // Imported recording
+            final RecordedDive recording = createRecording(seconds, new Random(2));
+            start = System.nanoTime();
+            final ProfileSimplifier recordingSimplified = ProfileSimplifier.of(recording, maxTensionError);
+            final double recordingSimplifyMillis = (System.nanoTime() - start) / 1.0e6;
+            final Dive fullDive = createFullDive(recording);
+            final Dive simplifiedDive = recordingSimplified.createDive("Recording");
+            expose(fullDive);
+            expose(simplifiedDive);
+            start = System.nanoTime();
+            final Diver fullDiver = expose(fullDive);
+            final double fullExposeMillis = (System.nanoTime() - start) / 1.0e6;
+            start = System.nanoTime();
+            final Diver simplifiedDiver = expose(simplifiedDive);
+            final double simplifiedExposeMillis = (System.nanoTime() - start) / 1.0e6;
+            final double recordingError = maxDifference(fullDiver, simplifiedDiver);
+            withinBounds &= recordingError <= maxTensionError * 1.001
+                    && recordingSimplified.getMaxError() <= maxTensionError;
+
+            System.out.println(String.format("  Recording, sample every %.0f s: %d samples -> %d segments (%.0fx),"
+                            + " error %.4f bar, simplified in %.0f ms",
+                    RECORDING_PERIOD, recording.getSampleCount(), recordingSimplified.getSegmentCount(),
+                    (recording.getSampleCount() - 1) / (double) recordingSimplified.getSegmentCount(),
+                    recordingError, recordingSimplifyMillis));
+            System.out.println(String.format("    exposure %.1f ms, simplified %.1f ms (%.1fx)",
+                    fullExposeMillis, simplifiedExposeMillis, fullExposeMillis / simplifiedExposeMillis));
+        }
+        if (!withinBounds) {
+            System.out.println("Tension error above the bound");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package edu.agh.symulations;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Recorded depth/time series of a dive, e.g. from a dive computer log. The
+ * depth between two samples is interpolated linearly; before the first and
+ * after the last sample the depth of that sample is used.
+ */
+public class RecordedDive implements DepthSource {
+    private final double[] times;
+    private final double[] depths;
+    private int cursor;
+
+    /**
+     * @param times  sample times in s, increasing
+     * @param depths depths in m
+     */
+    public RecordedDive(double[] times, double[] depths) {
+        if (times.length == 0 || times.length != depths.length) {
+            throw new IllegalArgumentException("Empty recording or lengths differ");
+        }
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] <= times[i - 1]) {
+                throw new IllegalArgumentException("Sample times must increase (sample " + i + ")");
+            }
+        }
+        this.times = times.clone();
+        this.depths = depths.clone();
+    }
+
+    /**
+     * Reads a recording with one sample per line: time in s and depth in m,
+     * separated by a comma, semicolon or white space. Empty lines, lines
+     * starting with # and a header line are skipped.
+     */
+    public static RecordedDive load(File file) throws IOException {
+        double[] times = new double[1024];
+        double[] depths = new double[1024];
+        int count = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("[,;\\s]+");
+                try {
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                        depths = Arrays.copyOf(depths, count * 2);
+                    }
+                    times[count] = Double.parseDouble(fields[0]);
+                    depths[count] = Double.parseDouble(fields[1]);
+                    count++;
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    if (count > 0 || lineNumber > 1) {
+                        throw new IOException(file + ": invalid sample on line " + lineNumber);
+                    }
+                }
+            }
+        }
+        return new RecordedDive(Arrays.copyOf(times, count), Arrays.copyOf(depths, count));
+    }
+
+    /**
+     * Returns the interpolated depth. Queries with increasing times, as a
+     * replay makes, continue from the previous sample instead of searching.
+     */
+    @Override
+    public synchronized double getDepth(double time) {
+        if (time <= times[0]) {
+            return depths[0];
+        }
+        if (time >= times[times.length - 1]) {
+            return depths[depths.length - 1];
+        }
+        if (times[cursor] > time) {
+            cursor = Arrays.binarySearch(times, time);
+            cursor = cursor >= 0 ? cursor : -cursor - 2;
+        }
+        while (times[cursor + 1] <= time) {
+            cursor++;
+        }
+        final double fraction = (time - times[cursor]) / (times[cursor + 1] - times[cursor]);
+        return depths[cursor] + fraction * (depths[cursor + 1] - depths[cursor]);
+    }
+
+    public double getStartTime() {
+        return times[0];
+    }
+
+    public double getEndTime() {
+        return times[times.length - 1];
+    }
+
+    public int getSampleCount() {
+        return times.length;
+    }
+
+    /**
+     * Returns the time in s of a sample
+     */
+    public double getSampleTime(int sample) {
+        return times[sample];
+    }
+
+    /**
+     * Returns the depth in m of a sample
+     */
+    public double getSampleDepth(int sample) {
+        return depths[sample];
+    }
+}
@@ -0,0 +1,116 @@
+package edu.agh.symulations;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands snapshots from the simulation thread to the EDT. Snapshots are queued
+ * by {@link #publish(UiSnapshot)}; a Swing timer drains the queue at most
+ * once per frame and passes all snapshots published since the previous frame
+ * to the sink in one batch, oldest first. Nothing is done on frames without
+ * new snapshots.
+ * <p>
+ * The queue is bounded: if the EDT falls behind (a stalled repaint, a modal
+ * dialog), the oldest snapshots are dropped and counted, so the memory held
+ * does not grow with the length of the stall. The last snapshot is never
+ * dropped.
+ * <p>
+ * The latency between creating a snapshot and applying it on the EDT is
+ * measured; the statistics are only updated on the EDT.
+ */
+public class RenderPipeline {
+    public static final int DEFAULT_FRAMES_PER_SECOND = 25;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final ArrayBlockingQueue<UiSnapshot> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Consumer<List<UiSnapshot>> sink;
+    private final Timer timer;
+    private final List<UiSnapshot> batch = new ArrayList<>();
+
+    private long frames;
+    private long applied;
+    private long latencySumNanos;
+    private long latencyMaxNanos;
+
+    /**
+     * @param sink            applies a batch of snapshots, called on the EDT
+     * @param framesPerSecond maximum number of batches per second
+     */
+    public RenderPipeline(Consumer<List<UiSnapshot>> sink, int framesPerSecond) {
+        this(sink, framesPerSecond, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param sink            applies a batch of snapshots, called on the EDT
+     * @param framesPerSecond maximum number of batches per second
+     * @param capacity        maximum number of snapshots waiting for the EDT
+     */
+    public RenderPipeline(Consumer<List<UiSnapshot>> sink, int framesPerSecond, int capacity) {
+        this.sink = sink;
+        queue = new ArrayBlockingQueue<>(capacity);
+        timer = new Timer(1000 / framesPerSecond, e -> frame());
+        timer.setCoalesce(true);
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Queues a snapshot, dropping the oldest ones if the queue is full; may be
+     * called from any thread
+     */
+    public void publish(UiSnapshot snapshot) {
+        while (!queue.offer(snapshot)) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of snapshots dropped because the EDT fell behind
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void frame() {
+        UiSnapshot snapshot;
+        while ((snapshot = queue.poll()) != null) {
+            batch.add(snapshot);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        sink.accept(batch);
+
+        final long now = System.nanoTime();
+        for (UiSnapshot s : batch) {
+            final long latency = now - s.getCreatedNanos();
+            latencySumNanos += latency;
+            latencyMaxNanos = Math.max(latencyMaxNanos, latency);
+        }
+        applied += batch.size();
+        frames++;
+        batch.clear();
+    }
+
+    /**
+     * Returns the latency statistics, to be called on the EDT
+     */
+    public String getLatencyText() {
+        return String.format("update latency: mean %.1f ms, max %.1f ms; %d snapshots in %d frames, %d dropped",
+                applied == 0 ? 0.0 : latencySumNanos / 1.0e6 / applied, latencyMaxNanos / 1.0e6,
+                applied, frames, dropped.get());
+    }
+}
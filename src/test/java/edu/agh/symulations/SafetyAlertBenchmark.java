@@ -0,0 +1,157 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the cost of the safety check of one diver tick and verifies it
+ * against a budget.
+ * <p>
+ * The tissue states of a dive with a fast ascent, partly unsafe, are recorded
+ * once. They are then checked as the simulation did before the
+ * {@link SafetyAlertEngine} (a warning string per unsafe compartment every
+ * tick) and with the alert engine. The check with the alert engine must stay
+ * within {@link #BUDGET_NANOS} per tick and must not allocate; the benchmark
+ * exits with status 1 otherwise.
+ * Usage: SafetyAlertBenchmark [repetitions]
+ */
+public class SafetyAlertBenchmark {
+    /**
+     * Budget of the safety check of one tick, 16 compartments
+     */
+    public static final long BUDGET_NANOS = 1000;
+
+    private static final double BOTTOM_DEPTH = 40.0;
+    private static final double BOTTOM_SECONDS = 1800.0;
+    private static final double ASCENT_RATE = 0.3;
+    private static final double SURFACE_SECONDS = 1800.0;
+
+    private final List<double[]> n2States = new ArrayList<>();
+    private final List<double[]> he2States = new ArrayList<>();
+    private final List<Double> depths = new ArrayList<>();
+    private final TissueState state = new TissueState();
+    private final SafytyChecker checker = new SafytyChecker();
+
+    /**
+     * Records the tensions of every second of the dive. The time constants are
+     * those of the tissue state, the time is used as minutes as in the
+     * simulation, which makes the dive unsafe on the ascent.
+     */
+    private void recordDive() {
+        final DepthSource dive = DepthSource.squareDive(BOTTOM_DEPTH, ASCENT_RATE, BOTTOM_SECONDS);
+        final double surfacePressure = new DepthPressure(Length.ZERO, DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR);
+        for (int i = 0; i < state.size(); i++) {
+            state.getN2Tensions()[i] = surfacePressure * GasMixtures.AIR.getN2Fraction();
+        }
+        final double end = BOTTOM_SECONDS + 2 * BOTTOM_DEPTH / ASCENT_RATE + SURFACE_SECONDS;
+        for (int time = 0; time < end; time++) {
+            final double depth = dive.getDepth(time);
+            state.exposeToConstantPressure(ambientPressure(depth),
+                    GasMixtures.AIR.getN2Fraction(), GasMixtures.AIR.getHe2Fraction(), 1.0);
+            n2States.add(state.getN2Tensions().clone());
+            he2States.add(state.getHe2Tensions().clone());
+            depths.add(depth);
+        }
+    }
+
+    private static double ambientPressure(double depth) {
+        return new DepthPressure(new Length(depth, Length.UNITS_METER), DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR);
+    }
+
+    private void loadState(int step) {
+        System.arraycopy(n2States.get(step), 0, state.getN2Tensions(), 0, state.size());
+        System.arraycopy(he2States.get(step), 0, state.getHe2Tensions(), 0, state.size());
+    }
+
+    /**
+     * The check as it was: pressure objects, a stream and a formatted warning
+     * per unsafe compartment, joined to the text of the snapshot
+     */
+    private String checkWithStrings(double depth) {
+        final double ambientPressure = new DepthPressure(new Length(depth, Length.UNITS_METER),
+                DivingProfile.DIVE_HEIGHT).getValue(Pressure.UNITS_BAR);
+        final double[] limits = checker.calculateTensionLimits(state, ambientPressure);
+        final double[] nitrogenTensions = state.getN2Tensions();
+        final double[] heliumTensions = state.getHe2Tensions();
+        final List<String> warnings = IntStream.range(0, state.size())
+                .filter(i -> nitrogenTensions[i] + heliumTensions[i] > limits[i])
+                .mapToObj(i -> SafetyAlertEngine.formatWarning(i, nitrogenTensions[i] + heliumTensions[i], limits[i]))
+                .collect(Collectors.toList());
+        return warnings.isEmpty() ? "" : String.join("\n", warnings);
+    }
+
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        final int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        final SafetyAlertBenchmark benchmark = new SafetyAlertBenchmark();
+        benchmark.recordDive();
+        final int steps = benchmark.depths.size();
+        final double[] pressures = new double[steps];
+        for (int step = 0; step < steps; step++) {
+            pressures[step] = ambientPressure(benchmark.depths.get(step));
+        }
+
+        // Warm up, count the unsafe ticks
+        final SafetyAlertEngine alerts = new SafetyAlertEngine(benchmark.state.size());
+        long unsafeTicks = 0;
+        long textLength = 0;
+        for (int step = 0; step < steps; step++) {
+            benchmark.loadState(step);
+            textLength += benchmark.checkWithStrings(benchmark.depths.get(step)).length();
+            if (alerts.evaluate(step, benchmark.state.getN2Tensions(), benchmark.state.getHe2Tensions(),
+                    benchmark.checker.calculateTensionLimits(benchmark.state, pressures[step])) != 0) {
+                unsafeTicks++;
+            }
+        }
+
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        for (int repetition = 0; repetition < repetitions; repetition++) {
+            for (int step = 0; step < steps; step++) {
+                benchmark.loadState(step);
+                textLength += benchmark.checkWithStrings(benchmark.depths.get(step)).length();
+            }
+        }
+        final double stringNanos = (System.nanoTime() - start) / (double) repetitions / steps;
+        final double stringBytes = (allocatedBytes() - allocated) / (double) repetitions / steps;
+
+        long mask = 0;
+        start = System.nanoTime();
+        allocated = allocatedBytes();
+        for (int repetition = 0; repetition < repetitions; repetition++) {
+            alerts.reset();
+            for (int step = 0; step < steps; step++) {
+                benchmark.loadState(step);
+                mask ^= alerts.evaluate(step, benchmark.state.getN2Tensions(), benchmark.state.getHe2Tensions(),
+                        benchmark.checker.calculateTensionLimits(benchmark.state, pressures[step]));
+            }
+        }
+        final double alertNanos = (System.nanoTime() - start) / (double) repetitions / steps;
+        final double alertBytes = (allocatedBytes() - allocated) / (double) repetitions / steps;
+
+        System.out.println(String.format("%d ticks, %d with alerts (%d chars, mask %x)",
+                steps, unsafeTicks, textLength, mask));
+        System.out.println(String.format("Warning strings:     %7.0f ns per tick, %7.1f bytes allocated per tick",
+                stringNanos, stringBytes));
+        System.out.println(String.format("Safety alert engine: %7.0f ns per tick, %7.1f bytes allocated per tick (budget %d ns, 0 bytes)",
+                alertNanos, alertBytes, BUDGET_NANOS));
+        if (alertNanos > BUDGET_NANOS || alertBytes >= 1.0) {
+            System.out.println("Over budget");
+            System.exit(1);
+        }
+    }
+}
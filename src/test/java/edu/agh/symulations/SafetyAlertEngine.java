@@ -0,0 +1,257 @@
+package edu.agh.symulations;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates the tissue tensions of a diver against their limits every tick
+ * and keeps one alert per compartment.
+ * <p>
+ * The margins (limit - tension) are calculated into primitive arrays and the
+ * active alerts are kept in a bit mask; an evaluation allocates nothing and
+ * formats nothing. Changes are reported as typed events to an
+ * {@link AlertListener}, the text of a warning is only made by the
+ * presentation layer, see {@link #formatWarning(int, double, double)}.
+ * <p>
+ * Alerts do not flap when a tension stays close to its limit:
+ * <ul>
+ * <li>an alert is raised when the tension exceeds the limit in
+ * {@code raiseTicks} evaluations in a row (debouncing),</li>
+ * <li>it is cleared only when the tension stays at least
+ * {@code clearMargin} below the limit in {@code clearTicks} evaluations in a
+ * row (hysteresis).</li>
+ * </ul>
+ * An engine belongs to one diver and must not be evaluated concurrently.
+ */
+public class SafetyAlertEngine {
+
+    public enum AlertType {
+        /**
+         * The tension of the compartment exceeds its limit
+         */
+        RAISED,
+        /**
+         * The tension of the compartment is back below its limit
+         */
+        CLEARED
+    }
+
+    @FunctionalInterface
+    public interface AlertListener {
+        /**
+         * Called on the evaluating thread for every change of an alert
+         *
+         * @param type        raised or cleared
+         * @param compartment index of the compartment
+         * @param time        time in s of the evaluation
+         * @param tension     total inert gas tension in bar
+         * @param limit       tension limit in bar
+         */
+        void onAlert(AlertType type, int compartment, double time, double tension, double limit);
+    }
+
+    /**
+     * Margin in bar below the limit needed to clear an alert
+     */
+    public static final double DEFAULT_CLEAR_MARGIN = 0.01;
+    /**
+     * Alerts are raised at the first unsafe evaluation
+     */
+    public static final int DEFAULT_RAISE_TICKS = 1;
+    public static final int DEFAULT_CLEAR_TICKS = 3;
+    public static final int MAX_COMPARTMENTS = Long.SIZE;
+
+    private final int compartments;
+    private final double clearMargin;
+    private final int raiseTicks;
+    private final int clearTicks;
+    private final double[] tensions;
+    private final double[] limits;
+    private final double[] margins;
+    private final int[] counters;
+    private AlertListener listener;
+    private long activeMask;
+    private volatile boolean wasUnsafe;
+    private long raisedAlerts;
+    private long clearedAlerts;
+
+    public SafetyAlertEngine(int compartments) {
+        this(compartments, DEFAULT_CLEAR_MARGIN, DEFAULT_RAISE_TICKS, DEFAULT_CLEAR_TICKS);
+    }
+
+    /**
+     * @param compartments number of compartments, at most {@link #MAX_COMPARTMENTS}
+     * @param clearMargin  margin in bar below the limit needed to clear an alert
+     * @param raiseTicks   unsafe evaluations in a row that raise an alert
+     * @param clearTicks   evaluations in a row within the clear margin that clear an alert
+     */
+    public SafetyAlertEngine(int compartments, double clearMargin, int raiseTicks, int clearTicks) {
+        if (compartments < 0 || compartments > MAX_COMPARTMENTS) {
+            throw new IllegalArgumentException("At most " + MAX_COMPARTMENTS + " compartments");
+        }
+        if (clearMargin < 0.0 || raiseTicks < 1 || clearTicks < 1) {
+            throw new IllegalArgumentException("Invalid hysteresis or debouncing");
+        }
+        this.compartments = compartments;
+        this.clearMargin = clearMargin;
+        this.raiseTicks = raiseTicks;
+        this.clearTicks = clearTicks;
+        tensions = new double[compartments];
+        limits = new double[compartments];
+        margins = new double[compartments];
+        counters = new int[compartments];
+    }
+
+    /**
+     * @param listener receives the alert changes on the evaluating thread, may be null
+     */
+    public void setListener(AlertListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Evaluates all compartments and updates the alerts
+     *
+     * @param time          time in s, passed to the listener
+     * @param n2Tensions    nitrogen tensions in bar
+     * @param he2Tensions   helium tensions in bar
+     * @param tensionLimits limits of the total tension in bar
+     * @return the mask of the active alerts, bit i for compartment i
+     */
+    public long evaluate(double time, double[] n2Tensions, double[] he2Tensions, double[] tensionLimits) {
+        for (int i = 0; i < compartments; i++) {
+            tensions[i] = n2Tensions[i] + he2Tensions[i];
+            limits[i] = tensionLimits[i];
+            margins[i] = tensionLimits[i] - tensions[i];
+        }
+        for (int i = 0; i < compartments; i++) {
+            final long bit = 1L << i;
+            if ((activeMask & bit) == 0) {
+                if (margins[i] >= 0.0) {
+                    counters[i] = 0;
+                } else if (++counters[i] >= raiseTicks) {
+                    activeMask |= bit;
+                    counters[i] = 0;
+                    raisedAlerts++;
+                    wasUnsafe = true;
+                    fire(AlertType.RAISED, i, time);
+                }
+            } else {
+                if (margins[i] < clearMargin) {
+                    counters[i] = 0;
+                } else if (++counters[i] >= clearTicks) {
+                    activeMask &= ~bit;
+                    counters[i] = 0;
+                    clearedAlerts++;
+                    fire(AlertType.CLEARED, i, time);
+                }
+            }
+        }
+        return activeMask;
+    }
+
+    private void fire(AlertType type, int compartment, double time) {
+        if (listener != null) {
+            listener.onAlert(type, compartment, time, tensions[compartment], limits[compartment]);
+        }
+    }
+
+    /**
+     * Clears all alerts without events, as for a new dive
+     */
+    public void reset() {
+        activeMask = 0L;
+        wasUnsafe = false;
+        Arrays.fill(counters, 0);
+    }
+
+    public int getCompartments() {
+        return compartments;
+    }
+
+    /**
+     * Returns the mask of the active alerts, bit i for compartment i
+     */
+    public long getActiveMask() {
+        return activeMask;
+    }
+
+    public boolean isActive(int compartment) {
+        return (activeMask & 1L << compartment) != 0;
+    }
+
+    /**
+     * Returns the total inert gas tension in bar of the last evaluation
+     */
+    public double getTension(int compartment) {
+        return tensions[compartment];
+    }
+
+    /**
+     * Returns the tension limit in bar of the last evaluation
+     */
+    public double getLimit(int compartment) {
+        return limits[compartment];
+    }
+
+    /**
+     * Returns limit - tension in bar of the last evaluation, negative when unsafe
+     */
+    public double getMargin(int compartment) {
+        return margins[compartment];
+    }
+
+    /**
+     * Returns the smallest margin in bar of the last evaluation
+     */
+    public double getMinMargin() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < compartments; i++) {
+            min = Math.min(min, margins[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns whether an alert has been raised since the start or the last reset
+     */
+    public boolean wasUnsafe() {
+        return wasUnsafe;
+    }
+
+    public long getRaisedAlerts() {
+        return raisedAlerts;
+    }
+
+    public long getClearedAlerts() {
+        return clearedAlerts;
+    }
+
+    /**
+     * Text of the warning of one compartment, for the presentation layer
+     *
+     * @param tension total inert gas tension in bar
+     * @param limit   tension limit in bar
+     */
+    public static String formatWarning(int compartment, double tension, double limit) {
+        return String.format("Tissue %d is unsafe! (tension %.3f / %.3f)", compartment, tension, limit);
+    }
+
+    /**
+     * Text of the warnings of the active alerts, one per line
+     *
+     * @param activeMask mask of the active alerts
+     * @param tensions   total inert gas tensions in bar
+     * @param limits     tension limits in bar
+     */
+    public static String formatWarnings(long activeMask, double[] tensions, double[] limits) {
+        final StringBuilder text = new StringBuilder();
+        for (long mask = activeMask; mask != 0; mask &= mask - 1) {
+            final int compartment = Long.numberOfTrailingZeros(mask);
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(formatWarning(compartment, tensions[compartment], limits[compartment]));
+        }
+        return text.toString();
+    }
+}
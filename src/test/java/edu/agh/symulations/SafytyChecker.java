@@ -2,14 +2,16 @@ package edu.agh.symulations;
 
 import net.deepocean.dodeco.calculator.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.Vector;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Created by Mateusz Pszczolka (SG0220005) on 6/8/2015.
+ * <p>
+ * The checks reuse the working state and limit arrays of the checker, so a
+ * checker is single-threaded: each {@link DiverSession} owns one, used only
+ * by its ticks, which never run concurrently.
  */
 public class SafytyChecker extends net.deepocean.dodeco.calculator.ZHL16Decompression {
     {
@@ -19,29 +21,43 @@ public class SafytyChecker extends net.deepocean.dodeco.calculator.ZHL16Decompre
     private volatile boolean wasUnsafe = false;
 
     public List<String> checkDiverSafety(Diver diver, Length depth) {
-        final Vector<TissueCompartment> compartments = diver.getCompartments();
-        return IntStream.range(0, compartments.size())
-                .mapToObj(compartmentIndex -> {
-                    final TissueCompartment compartment = compartments.get(compartmentIndex);
-                    double fHeliumTension = compartment.getHe2TissueTension().getValue(Pressure.UNITS_BAR);
-                    double fNitrogenTension = compartment.getN2TissueTension().getValue(Pressure.UNITS_BAR);
-
-                    double fLimit = this.calculateTissueTensionLimit(compartmentIndex, new DepthPressure(depth, diveHeight), fNitrogenTension, fHeliumTension);
-
-                    return Optional.of(fNitrogenTension + fHeliumTension)
-                            .filter(tensionSum -> tensionSum > fLimit)
-                            .map(tensionSum ->
-                                            String.format("Tissue %d is unsafe! (tension %.3f / %.3f)",
-                                                    compartmentIndex,
-                                                    tensionSum,
-                                                    fLimit
-                                            )
-                            );
-                })
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .peek(ignore -> wasUnsafe = true)
-                .collect(Collectors.toList());
+        final double ambientPressure = new DepthPressure(depth, diveHeight).getValue(Pressure.UNITS_BAR);
+        return unsafeTissues(calculateTissueTensionLimits(diver, ambientPressure));
+    }
+
+    /**
+     * Calculates the tension limits for tensions kept in a TissueState, as the
+     * simulation engine does. Nothing is allocated after the first call; the
+     * limits are evaluated by a {@link SafetyAlertEngine}.
+     *
+     * @param ambientPressure ambient pressure in bar
+     * @return the limits in bar, per compartment; overwritten by the next call
+     */
+    public double[] calculateTensionLimits(TissueState state, double ambientPressure) {
+        if (fTensionLimits == null || fTensionLimits.length != state.size()) {
+            fTensionLimits = new double[state.size()];
+        }
+        calculateTissueTensionLimits(state, ambientPressure, fTensionLimits);
+        return fTensionLimits;
+    }
+
+    private List<String> unsafeTissues(TissueState state) {
+        final double[] nitrogenTensions = state.getN2Tensions();
+        final double[] heliumTensions = state.getHe2Tensions();
+        final double[] limits = fTensionLimits;
+
+        if (TissueKernels.firstUnsafe(nitrogenTensions, heliumTensions, limits, state.size()) < 0) {
+            return Collections.emptyList();
+        }
+        wasUnsafe = true;
+        final List<String> warnings = new ArrayList<>();
+        for (int compartmentIndex = 0; compartmentIndex < state.size(); compartmentIndex++) {
+            final double tension = nitrogenTensions[compartmentIndex] + heliumTensions[compartmentIndex];
+            if (tension > limits[compartmentIndex]) {
+                warnings.add(SafetyAlertEngine.formatWarning(compartmentIndex, tension, limits[compartmentIndex]));
+            }
+        }
+        return warnings;
     }
 
     public boolean wasUnsafe() {
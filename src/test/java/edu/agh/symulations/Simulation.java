@@ -2,109 +2,180 @@ package edu.agh.symulations;
 
 import net.deepocean.dodeco.calculator.*;
 import net.deepocean.dodeco.tools.MyXML;
-import org.jfree.data.xy.XYSeries;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
 import java.util.*;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * Created by Mateusz Pszczolka (SG0220005) on 5/11/2015.
  */
 public class Simulation {
-    private final DivingProfile divingProfile = new DivingProfile();
     private DefaultMutableTreeNode root = new DefaultMutableTreeNode("Diver", true);
-    private Diver diver;
     private DefaultTreeModel model = new DefaultTreeModel(root);
-    private double oneStepTime = 1.0;
+    private final double oneStepTime;
     private Map<Integer, DefaultMutableTreeNode[]> tissuesNodes = new HashMap<>();
-    private Map<String, Map<String, XYSeries>> tensionsHistory = new HashMap<>();
-    private double deep;
-    private SafytyChecker safytyChecker = new SafytyChecker();
+    private final TensionHistory tensionsHistory = new TensionHistory(Parameters.nCompartments);
+    private final double[] he2Tensions = new double[Parameters.nCompartments];
+    private final double[] n2Tensions = new double[Parameters.nCompartments];
+    private final BubblesForm bubblesForm;
+    private final RenderPipeline renderPipeline;
+    private final SimulationEngine engine = new SimulationEngine(1, SimulationEngine.DEFAULT_TICK_SECONDS, 1);
+    private final SimulationClock clock;
+    private final SpeculativeDecoPlanner planner = new SpeculativeDecoPlanner(SpeculativeDecoPlanner.createPool(1));
+    private DefaultMutableTreeNode plansNode;
+    private long shownPlan;
 
     public Simulation(BubblesForm bubblesForm) throws MyXML.MyXMLException, IllegalActionException, CalculationException {
-        final double startTime = System.currentTimeMillis();
-        new ScheduledThreadPoolExecutor(1).scheduleAtFixedRate(() -> {
-                    try {
-                        final double divingTime = (System.currentTimeMillis() - startTime) / 1000; // s
-                        deep = bubblesForm.getDepth();
-                        divingProfile.addPoint(deep, divingTime, GasMixtures.AIR);
-                        diver = divingProfile.count();
-                        updateModel(divingTime);
-                        bubblesForm.setTime(divingTime);
-                        bubblesForm.addDeepPointToChart(divingTime, deep);
-                        bubblesForm.setWarnsText(verifySafety());
-                        bubblesForm.setSummaryText(safytyChecker.wasUnsafe() ? "diving is dangerous!" : "");
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                },
-                0, (long) 1, TimeUnit.SECONDS);
+        this(bubblesForm, 1.0);
+    }
+
+    /**
+     * @param ticksPerSecond rate at which the depth is sampled and the diver updated, in real time
+     */
+    public Simulation(BubblesForm bubblesForm, double ticksPerSecond) throws MyXML.MyXMLException, IllegalActionException, CalculationException {
+        this(bubblesForm, time -> bubblesForm.getDepth(), ticksPerSecond, 1.0 / ticksPerSecond,
+                SimulationClock.LateTickPolicy.MERGE);
+    }
+
+    /**
+     * Replays a recorded dive instead of following the depth field. The
+     * recording is sampled once per simulated second, as a live dive.
+     *
+     * @param speed simulated seconds per second
+     */
+    public Simulation(BubblesForm bubblesForm, RecordedDive recording, double speed) {
+        this(bubblesForm, time -> recording.getDepth(recording.getStartTime() + time), speed, 1.0,
+                SimulationClock.LateTickPolicy.DROP);
+    }
+
+    private Simulation(BubblesForm bubblesForm, DepthSource depthSource, double ticksPerSecond, double stepSeconds,
+                       SimulationClock.LateTickPolicy policy) {
+        this.bubblesForm = bubblesForm;
+        this.oneStepTime = stepSeconds;
+        renderPipeline = new RenderPipeline(this::applySnapshots, RenderPipeline.DEFAULT_FRAMES_PER_SECOND);
+        renderPipeline.start();
+        final DiverSession diver = engine.addDiver("Diver", depthSource, renderPipeline::publish);
+        diver.setPlanner(planner);
+        diver.setTimeToSurfaceEstimator(new TimeToSurfaceEstimator());
+        clock = engine.createClock(ticksPerSecond, oneStepTime, policy);
+        clock.start();
     }
 
 
     public TreeModel getTreeModel() {
-        updateModel(0);
         return model;
     }
 
-    public Collection<XYSeries> getSeries(String label) {
-        return tensionsHistory
-                .getOrDefault(label, Collections.emptyMap())
-                .values();
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    public RenderPipeline getRenderPipeline() {
+        return renderPipeline;
     }
 
-    public String verifySafety() {
-        return safytyChecker
-                .checkDiverSafety(diver, new Length(deep, Length.UNITS_METER))
-                .stream()
-                .collect(Collectors.joining("\n"));
+    public SpeculativeDecoPlanner getPlanner() {
+        return planner;
     }
 
-    private void updateModel(double divingTime) {
-        if (diver != null) {
-            final Vector<TissueCompartment> compartments = diver.getCompartments();
-            for (int i = 0; i < compartments.size(); i++) {
-                final TissueCompartment compartment = compartments.get(i);
-                final double he2TissueTension = compartment.getHe2TissueTension().getValue(Pressure.UNITS_ATM);
-                final double n2TissueTension = compartment.getN2TissueTension().getValue(Pressure.UNITS_ATM);
-                final String he2Desc = String.format("He2 tissue tension: %.5f atm", he2TissueTension);
-                final String n2desc = String.format("N2  tissue tension: %.5f atm", n2TissueTension);
-
-                tensionsHistory
-                        .computeIfAbsent("Compartment " + i, s -> new HashMap<>())
-                        .computeIfAbsent("He2 tissue tension", XYSeries::new)
-                        .add(divingTime, he2TissueTension);
-
-                tensionsHistory
-                        .get("Compartment " + i)
-                        .computeIfAbsent("N2  tissue tension", XYSeries::new)
-                        .add(divingTime, n2TissueTension);
-
-                if (tissuesNodes.containsKey(i)) {
-                    tissuesNodes.get(i)[0].setUserObject(he2Desc);
-                    tissuesNodes.get(i)[1].setUserObject(n2desc);
-                    for (DefaultMutableTreeNode defaultMutableTreeNode : tissuesNodes.get(i)) {
-                        model.reload(defaultMutableTreeNode);
-                    }
-                } else {
-                    final DefaultMutableTreeNode compartmentNode = new DefaultMutableTreeNode("Compartment " + i);
-                    final DefaultMutableTreeNode[] nodes = {
-                            new DefaultMutableTreeNode(he2Desc, false),
-                            new DefaultMutableTreeNode(n2desc, false),
-                    };
-                    tissuesNodes.put(i, nodes);
-                    for (DefaultMutableTreeNode line : nodes) {
-                        compartmentNode.add(line);
-                    }
-                    model.insertNodeInto(compartmentNode, root, 0);
-                    model.reload();
+    /**
+     * Returns the tension chart data of the compartment on the given tree path,
+     * or null if the path does not contain a compartment.
+     */
+    public TensionHistory.Dataset getTensionDataset(TreePath path) {
+        if (path != null) {
+            for (Map.Entry<Integer, DefaultMutableTreeNode[]> entry : tissuesNodes.entrySet()) {
+                if (path.getPathCount() > 1 && path.getPathComponent(1) == entry.getValue()[0].getParent()) {
+                    return tensionsHistory.getDataset(entry.getKey());
                 }
             }
         }
+        return null;
+    }
+
+    /**
+     * Shows the snapshots published since the previous frame, called on the EDT.
+     * Every snapshot delivered is added to the tension history (the pipeline
+     * drops the oldest ones only if the EDT falls far behind); the tree shows
+     * the last snapshot only.
+     */
+    private void applySnapshots(List<UiSnapshot> snapshots) {
+        final UiSnapshot last = snapshots.get(snapshots.size() - 1);
+        for (UiSnapshot snapshot : snapshots) {
+            recordTensions(snapshot);
+        }
+        updateModel(last);
+        updatePlans();
+        tensionsHistory.fireChanged();
+        bubblesForm.applySnapshots(snapshots, "<html>" + renderPipeline.getLatencyText() + "<br>"
+                + clock.getMetricsText() + "<br>" + planner.getMetricsText() + "</html>");
+    }
+
+    private void updateModel(UiSnapshot snapshot) {
+        for (int i = 0; i < snapshot.getCompartments(); i++) {
+            final String he2Desc = String.format("He2 tissue tension: %.5f atm", snapshot.getHe2Tension(i));
+            final String n2desc = String.format("N2  tissue tension: %.5f atm", snapshot.getN2Tension(i));
+
+            if (tissuesNodes.containsKey(i)) {
+                final DefaultMutableTreeNode[] nodes = tissuesNodes.get(i);
+                if (!he2Desc.equals(nodes[0].getUserObject())) {
+                    nodes[0].setUserObject(he2Desc);
+                    model.nodeChanged(nodes[0]);
+                }
+                if (!n2desc.equals(nodes[1].getUserObject())) {
+                    nodes[1].setUserObject(n2desc);
+                    model.nodeChanged(nodes[1]);
+                }
+            } else {
+                final DefaultMutableTreeNode compartmentNode = new DefaultMutableTreeNode("Compartment " + i);
+                final DefaultMutableTreeNode[] nodes = {
+                        new DefaultMutableTreeNode(he2Desc, false),
+                        new DefaultMutableTreeNode(n2desc, false),
+                };
+                tissuesNodes.put(i, nodes);
+                for (DefaultMutableTreeNode line : nodes) {
+                    compartmentNode.add(line);
+                }
+                model.insertNodeInto(compartmentNode, root, 0);
+            }
+        }
+    }
+
+    /**
+     * Shows the latest ascent plan below the compartments, if it changed
+     */
+    private void updatePlans() {
+        final SpeculativeDecoPlanner.Plan plan = planner.getLatestPlan();
+        if (plan == null || plan.getGeneration() == shownPlan) {
+            return;
+        }
+        shownPlan = plan.getGeneration();
+        if (plansNode == null) {
+            plansNode = new DefaultMutableTreeNode("Ascent plans", true);
+            model.insertNodeInto(plansNode, root, root.getChildCount());
+        }
+        for (int i = 0; i < plan.getSchedules().size(); i++) {
+            final String text = plan.getSchedules().get(i).toString();
+            if (i < plansNode.getChildCount()) {
+                final DefaultMutableTreeNode node = (DefaultMutableTreeNode) plansNode.getChildAt(i);
+                if (!text.equals(node.getUserObject())) {
+                    node.setUserObject(text);
+                    model.nodeChanged(node);
+                }
+            } else {
+                model.insertNodeInto(new DefaultMutableTreeNode(text, false), plansNode, i);
+            }
+        }
+    }
+
+    private void recordTensions(UiSnapshot snapshot) {
+        for (int i = 0; i < snapshot.getCompartments(); i++) {
+            he2Tensions[i] = snapshot.getHe2Tension(i);
+            n2Tensions[i] = snapshot.getN2Tension(i);
+        }
+        tensionsHistory.add(snapshot.getDivingTime(), he2Tensions, n2Tensions);
     }
 }
@@ -0,0 +1,253 @@
+package edu.agh.symulations;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Drives a simulation with ticks at a configurable rate.
+ * <p>
+ * Every tick advances the simulation time by a fixed step, which need not
+ * equal the tick period: a step of 1 s at 10 ticks per second runs the
+ * simulation ten times faster than real time. Ticks are scheduled one at a
+ * time on a grid of due times, so a slow tick never causes a burst of ticks
+ * afterwards. Ticks that are missed because the previous one overran are
+ * handled according to the {@link LateTickPolicy}.
+ * <p>
+ * {@link #runSteps(int)} runs ticks on the calling thread without the wall
+ * clock; with the same listener the simulation times are then always the
+ * same, which makes runs deterministic.
+ * <p>
+ * An exception thrown by the listener is counted and passed to the error
+ * handler; after {@link #DEFAULT_MAX_CONSECUTIVE_ERRORS} failing ticks in a
+ * row the clock stops. A tick interrupted by {@link #stop()} is not an error.
+ */
+public class SimulationClock {
+
+    public enum LateTickPolicy {
+        /**
+         * Missed ticks are not run, every tick advances the simulation by one
+         * step. The simulation falls behind the wall clock when overloaded,
+         * the sequence of simulation times does not change.
+         */
+        DROP,
+        /**
+         * Missed ticks are merged into the next tick, which advances the
+         * simulation by all missed steps. The simulation keeps pace with the
+         * wall clock.
+         */
+        MERGE
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param time simulation time in s after this tick
+         * @param step simulation time in s advanced by this tick
+         */
+        void tick(double time, double step) throws Exception;
+    }
+
+    public static final int DEFAULT_MAX_CONSECUTIVE_ERRORS = 5;
+
+    private final long periodNanos;
+    private final double stepSeconds;
+    private final LateTickPolicy policy;
+    private final Listener listener;
+    private ScheduledExecutorService scheduler;
+    private Consumer<Exception> errorHandler = Exception::printStackTrace;
+    private int maxConsecutiveErrors = DEFAULT_MAX_CONSECUTIVE_ERRORS;
+
+    private volatile long steps;
+    private long dueNanos;
+    private volatile long ticks;
+    private volatile long droppedTicks;
+    private volatile long mergedTicks;
+    private volatile long overruns;
+    private volatile long maxOverrunNanos;
+    private volatile long tickNanos;
+    private volatile long errors;
+    private int consecutiveErrors;
+    private volatile Exception lastError;
+
+    /**
+     * Creates a clock running in real time: every tick advances the
+     * simulation by the tick period and missed ticks are merged.
+     */
+    public SimulationClock(double ticksPerSecond, Listener listener) {
+        this(ticksPerSecond, 1.0 / ticksPerSecond, LateTickPolicy.MERGE, listener);
+    }
+
+    /**
+     * @param ticksPerSecond wall clock tick rate
+     * @param stepSeconds    simulation time in s advanced per tick
+     * @param policy         handling of ticks missed because of overruns
+     * @param listener       called for every tick on the clock thread
+     */
+    public SimulationClock(double ticksPerSecond, double stepSeconds, LateTickPolicy policy, Listener listener) {
+        if (ticksPerSecond <= 0.0 || stepSeconds <= 0.0) {
+            throw new IllegalArgumentException("Tick rate and step must be positive");
+        }
+        this.periodNanos = (long) (1.0e9 / ticksPerSecond);
+        this.stepSeconds = stepSeconds;
+        this.policy = policy;
+        this.listener = listener;
+    }
+
+    public void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * @param maxConsecutiveErrors number of failing ticks in a row after which the clock stops
+     */
+    public void setMaxConsecutiveErrors(int maxConsecutiveErrors) {
+        this.maxConsecutiveErrors = maxConsecutiveErrors;
+    }
+
+    /**
+     * Starts ticking on a clock thread, the first tick is due one period from now
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Clock already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "simulation-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dueNanos = System.nanoTime() + periodNanos;
+        scheduler.schedule(this::scheduledTick, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null && !scheduler.isShutdown();
+    }
+
+    /**
+     * Runs ticks on the calling thread without waiting for the wall clock.
+     * Not to be used while the clock is started.
+     *
+     * @param count number of ticks
+     */
+    public void runSteps(int count) {
+        for (int i = 0; i < count; i++) {
+            tick(1);
+        }
+    }
+
+    private void scheduledTick() {
+        final long late = System.nanoTime() - dueNanos;
+        final long missed = Math.max(0, late / periodNanos);
+        if (missed > 0) {
+            if (policy == LateTickPolicy.DROP) {
+                droppedTicks += missed;
+            } else {
+                mergedTicks += missed;
+            }
+        }
+        final long start = System.nanoTime();
+        final boolean ok = tick(policy == LateTickPolicy.MERGE ? 1 + missed : 1);
+        final long duration = System.nanoTime() - start;
+        if (duration > periodNanos) {
+            overruns++;
+            maxOverrunNanos = Math.max(maxOverrunNanos, duration - periodNanos);
+        }
+
+        dueNanos += (missed + 1) * periodNanos;
+        synchronized (this) {
+            if (ok && !scheduler.isShutdown()) {
+                scheduler.schedule(this::scheduledTick, dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } else if (!ok) {
+                scheduler.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Advances the simulation by the given number of steps in one tick
+     *
+     * @return false if the clock has to stop because of errors or an interrupt
+     */
+    private boolean tick(long stepCount) {
+        final long start = System.nanoTime();
+        steps += stepCount;
+        try {
+            listener.tick(steps * stepSeconds, stepCount * stepSeconds);
+            consecutiveErrors = 0;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception ex) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            errors++;
+            lastError = ex;
+            errorHandler.accept(ex);
+            if (++consecutiveErrors >= maxConsecutiveErrors) {
+                return false;
+            }
+        } finally {
+            tickNanos += System.nanoTime() - start;
+            ticks++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the simulation time in s after the last tick
+     */
+    public double getTime() {
+        return steps * stepSeconds;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    public long getMergedTicks() {
+        return mergedTicks;
+    }
+
+    /**
+     * Returns the number of ticks that took longer than the tick period
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public double getMaxOverrunMillis() {
+        return maxOverrunNanos / 1.0e6;
+    }
+
+    public double getMeanTickMillis() {
+        final long n = ticks;
+        return n == 0 ? 0.0 : tickNanos / 1.0e6 / n;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    public String getMetricsText() {
+        return String.format("ticks: %d, mean %.2f ms, %d overruns (max %.1f ms), %d dropped, %d merged, %d errors",
+                ticks, getMeanTickMillis(), overruns, getMaxOverrunMillis(), droppedTicks, mergedTicks, errors);
+    }
+}
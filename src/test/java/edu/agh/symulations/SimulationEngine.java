@@ -0,0 +1,210 @@
+package edu.agh.symulations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Headless simulation of any number of independent divers.
+ * <p>
+ * The divers are spread over the slots of a timer wheel that turns once per
+ * tick period. A single scheduler thread moves to the next slot every
+ * period / slots and hands the divers of that slot, in batches, to a fixed
+ * pool of worker threads (one per core by default). Every diver is ticked
+ * once per period, and the work of a period is spread evenly over it instead
+ * of running all divers at the same moment. No thread is dedicated to a
+ * diver.
+ * <p>
+ * Alternatively the engine is driven by a {@link SimulationClock} (see
+ * {@link #createClock}): every clock tick then ticks all divers at the
+ * simulation time of the clock, which may differ from the wall clock.
+ */
+public class SimulationEngine {
+    public static final double DEFAULT_TICK_SECONDS = 1.0;
+    public static final int DEFAULT_SLOTS = 64;
+    private static final int BATCH_SIZE = 64;
+
+    private final double tickSeconds;
+    private final List<List<DiverSession>> slots = new ArrayList<>();
+    private final Map<String, DiverSession> divers = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService wheel;
+    private final long startNanos = System.nanoTime();
+    private int cursor;
+    private volatile SimulationClock clock;
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    public SimulationEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TICK_SECONDS, DEFAULT_SLOTS);
+    }
+
+    /**
+     * @param workerThreads number of worker threads
+     * @param tickSeconds   tick period in s
+     * @param slotCount     number of slots of the timer wheel
+     */
+    public SimulationEngine(int workerThreads, double tickSeconds, int slotCount) {
+        this.tickSeconds = tickSeconds;
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new CopyOnWriteArrayList<>());
+        }
+        workers = Executors.newFixedThreadPool(workerThreads, daemonThreads("simulation-worker"));
+        wheel = Executors.newSingleThreadScheduledExecutor(daemonThreads("simulation-wheel"));
+    }
+
+    /**
+     * Returns a factory of daemon threads named name-1, name-2, ...
+     */
+    static ThreadFactory daemonThreads(String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts turning the timer wheel
+     */
+    public void start() {
+        final long slotNanos = (long) (tickSeconds * 1.0e9 / slots.size());
+        wheel.scheduleAtFixedRate(this::advanceSlot, 0, slotNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the wheel and the workers, the engine cannot be restarted
+     */
+    public void stop() {
+        wheel.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Creates a clock that ticks all divers and makes its simulation time the
+     * engine time. The clock is not started; do not start the wheel as well.
+     *
+     * @see SimulationClock#SimulationClock(double, double, SimulationClock.LateTickPolicy, SimulationClock.Listener)
+     */
+    public SimulationClock createClock(double ticksPerSecond, double stepSeconds,
+                                       SimulationClock.LateTickPolicy policy) {
+        final SimulationClock newClock = new SimulationClock(ticksPerSecond, stepSeconds, policy,
+                (time, step) -> tickAll(time));
+        clock = newClock;
+        return newClock;
+    }
+
+    /**
+     * Returns the engine time in s: the simulation time of the clock if the
+     * engine is driven by one, otherwise the time since the engine was created
+     */
+    public double getTime() {
+        final SimulationClock currentClock = clock;
+        if (currentClock != null) {
+            return currentClock.getTime();
+        }
+        return (System.nanoTime() - startNanos) / 1.0e9;
+    }
+
+    public DiverSession addDiver(String id, DepthSource depthSource) {
+        return addDiver(id, depthSource, null);
+    }
+
+    /**
+     * Adds a diver, ticked from the next turn of the wheel
+     *
+     * @param listener receives the snapshot of every tick on a worker thread, may be null
+     * @throws IllegalArgumentException if a diver with the id exists
+     */
+    public DiverSession addDiver(String id, DepthSource depthSource, Consumer<UiSnapshot> listener) {
+        final DiverSession session = new DiverSession(id, depthSource, listener);
+        if (divers.putIfAbsent(id, session) != null) {
+            throw new IllegalArgumentException("Diver " + id + " already exists");
+        }
+        session.slot = Math.floorMod(nextSlot.getAndIncrement(), slots.size());
+        slots.get(session.slot).add(session);
+        return session;
+    }
+
+    public void removeDiver(String id) {
+        final DiverSession session = divers.remove(id);
+        if (session != null) {
+            slots.get(session.slot).remove(session);
+        }
+    }
+
+    public DiverSession getDiver(String id) {
+        return divers.get(id);
+    }
+
+    public Collection<DiverSession> getDivers() {
+        return Collections.unmodifiableCollection(divers.values());
+    }
+
+    /**
+     * Returns the largest delay in ms between the wheel reaching a slot and a
+     * batch of that slot finishing
+     */
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1.0e6;
+    }
+
+    private void advanceSlot() {
+        final long due = System.nanoTime();
+        final List<DiverSession> sessions = slots.get(cursor);
+        cursor = (cursor + 1) % slots.size();
+        if (sessions.isEmpty()) {
+            return;
+        }
+        final double time = getTime();
+        final DiverSession[] batch = sessions.toArray(new DiverSession[0]);
+        for (int from = 0; from < batch.length; from += BATCH_SIZE) {
+            final int start = from;
+            final int end = Math.min(from + BATCH_SIZE, batch.length);
+            workers.execute(() -> {
+                for (int i = start; i < end; i++) {
+                    batch[i].tick(time);
+                }
+                maxLagNanos.accumulateAndGet(System.nanoTime() - due, Math::max);
+            });
+        }
+    }
+
+    /**
+     * Ticks all divers at the given engine time on the workers and waits for
+     * them, without the wheel. Used to run simulations faster than real time.
+     *
+     * @param time engine time in s
+     */
+    public void tickAll(double time) throws InterruptedException {
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (List<DiverSession> slot : slots) {
+            final DiverSession[] batch = slot.toArray(new DiverSession[0]);
+            for (int from = 0; from < batch.length; from += BATCH_SIZE) {
+                final int start = from;
+                final int end = Math.min(from + BATCH_SIZE, batch.length);
+                tasks.add(() -> {
+                    for (int i = start; i < end; i++) {
+                        batch[i].tick(time);
+                    }
+                    return null;
+                });
+            }
+        }
+        workers.invokeAll(tasks);
+    }
+}
@@ -0,0 +1,92 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.Diver;
+import net.deepocean.dodeco.calculator.Pressure;
+
+import java.util.Random;
+
+/**
+ * Measures how many divers the {@link SimulationEngine} can simulate per core
+ * at 1 Hz.
+ * <p>
+ * First the tensions of an engine diver are compared with recalculating its
+ * profile with {@link DivingProfile#count()}. Then all divers are ticked as
+ * fast as possible to measure the cost of a tick, and finally the engine runs
+ * in real time on the timer wheel.
+ * Usage: SimulationEngineBenchmark [divers [seconds]]
+ */
+public class SimulationEngineBenchmark {
+
+    private static DepthSource randomDive(Random random) {
+        return DepthSource.squareDive(10.0 + random.nextInt(30), 0.2 + random.nextDouble() * 0.3,
+                100.0 + random.nextInt(200));
+    }
+
+    private static void compareWithProfile() throws Exception {
+        final SimulationEngine engine = new SimulationEngine(1, SimulationEngine.DEFAULT_TICK_SECONDS, 1);
+        final DiverSession session = engine.addDiver("check", DepthSource.squareDive(30.0, 0.3, 150.0));
+        double maxDifference = 0.0;
+        for (int time = 1; time <= 300; time++) {
+            engine.tickAll(time);
+            if (time % 30 == 0) {
+                final Diver diver = session.getDivingProfile().count();
+                final UiSnapshot snapshot = session.getSnapshot();
+                for (int i = 0; i < snapshot.getCompartments(); i++) {
+                    maxDifference = Math.max(maxDifference, Math.abs(snapshot.getN2Tension(i) -
+                            diver.getCompartments().get(i).getN2TissueTension().getValue(Pressure.UNITS_ATM)));
+                }
+            }
+        }
+        engine.stop();
+        System.out.println(String.format("Engine vs DivingProfile.count(): max difference %.3g atm", maxDifference));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int divers = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final int ticks = 60;
+
+        compareWithProfile();
+
+        // Faster than real time: cost of a tick
+        SimulationEngine engine = new SimulationEngine();
+        Random random = new Random(1);
+        for (int i = 0; i < divers; i++) {
+            engine.addDiver("diver" + i, randomDive(random));
+        }
+        for (int time = 0; time < 10; time++) {
+            engine.tickAll(time);
+        }
+        final long start = System.nanoTime();
+        for (int time = 10; time < 10 + ticks; time++) {
+            engine.tickAll(time);
+        }
+        final double micros = (System.nanoTime() - start) / 1.0e3 * cores / divers / ticks;
+        engine.stop();
+        System.out.println(String.format("%d divers on %d cores: %.1f us per diver tick per core, %.0f divers per core at 1 Hz",
+                divers, cores, micros, 1.0e6 / micros));
+
+        // Real time on the timer wheel
+        engine = new SimulationEngine();
+        random = new Random(1);
+        for (int i = 0; i < divers; i++) {
+            engine.addDiver("diver" + i, randomDive(random));
+        }
+        engine.start();
+        Thread.sleep(seconds * 1000L);
+        engine.stop();
+        long done = 0;
+        long skipped = 0;
+        long errors = 0;
+        double maxCompute = 0.0;
+        for (DiverSession session : engine.getDivers()) {
+            done += session.getTicks();
+            skipped += session.getSkippedTicks();
+            errors += session.getErrors();
+            maxCompute = Math.max(maxCompute, session.getMaxComputeMicros());
+        }
+        System.out.println(String.format("Real time %d s: %d of about %d ticks, %d skipped, %d errors, max lag %.1f ms, max tick %.0f us",
+                seconds, done, (long) divers * seconds, skipped, errors, engine.getMaxLagMillis(), maxCompute));
+    }
+}
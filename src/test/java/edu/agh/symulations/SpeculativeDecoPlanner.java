@@ -0,0 +1,464 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Plans the ascent of a live diver in the background: the full decompression
+ * schedule for "ascend now", "ascend in 5 min" and "ascend in 10 min".
+ * <p>
+ * The simulation thread only submits a copy of the tissue tensions (or of a
+ * Diver); the schedules are calculated with DoDeco on an executor, never on
+ * the tick thread. Every submission supersedes the previous one:
+ * <ul>
+ * <li>a snapshot that has not been started yet is dropped,</li>
+ * <li>a running calculation is abandoned between two schedules when a newer
+ * snapshot is waiting and its own snapshot is older than the maximum
+ * staleness. Below that age it completes, so that a plan is always made even
+ * when a calculation takes longer than a tick.</li>
+ * </ul>
+ * {@link #getLatestPlan()} always returns the freshest completed plan without
+ * waiting. Plans of one planner are calculated one at a time; planners of
+ * several divers may share an executor.
+ * <p>
+ * The default algorithm is ZH-L16B with gradient factors, as
+ * {@link DivingProfile#count()} uses. The simulation keeps the tensions only,
+ * so the VPM algorithms, which also need the history of the critical nuclei,
+ * should only be used with {@link #submit(Diver, double, double)} and a Diver
+ * that went through the whole dive.
+ */
+public class SpeculativeDecoPlanner {
+    /**
+     * Ascend now, in 5 and in 10 minutes
+     */
+    public static final double[] DEFAULT_DELAYS = {0.0, 5.0, 10.0};
+    public static final double DEFAULT_ASCENT_RATE = 10.0;
+    public static final double DEFAULT_STOP_STEP = 3.0;
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = 1000;
+
+    /**
+     * Decompression stop of a schedule
+     */
+    public static final class Stop {
+        private final double depth;
+        private final double minutes;
+
+        Stop(double depth, double minutes) {
+            this.depth = depth;
+            this.minutes = minutes;
+        }
+
+        /**
+         * Returns the depth in m
+         */
+        public double getDepth() {
+            return depth;
+        }
+
+        public double getMinutes() {
+            return minutes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f m %.1f min", depth, minutes);
+        }
+    }
+
+    /**
+     * Ascent schedule of one scenario
+     */
+    public static final class Schedule {
+        private final double delay;
+        private final List<Stop> stops;
+        private final double timeToSurface;
+        private final String error;
+
+        Schedule(double delay, List<Stop> stops, double timeToSurface, String error) {
+            this.delay = delay;
+            this.stops = Collections.unmodifiableList(stops);
+            this.timeToSurface = timeToSurface;
+            this.error = error;
+        }
+
+        /**
+         * Returns the minutes spent at the current depth before the ascent
+         */
+        public double getDelay() {
+            return delay;
+        }
+
+        public List<Stop> getStops() {
+            return stops;
+        }
+
+        /**
+         * Returns the minutes from the start of the ascent to the surface
+         */
+        public double getTimeToSurface() {
+            return timeToSurface;
+        }
+
+        /**
+         * Returns why no schedule could be calculated, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            final String scenario = delay == 0.0 ? "Ascend now" : String.format("Ascend in %.0f min", delay);
+            if (error != null) {
+                return scenario + ": " + error;
+            }
+            final StringBuilder text = new StringBuilder(scenario)
+                    .append(String.format(": %.1f min to surface", timeToSurface));
+            for (Stop stop : stops) {
+                text.append(", ").append(stop);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Schedules of all scenarios for one snapshot of the diver
+     */
+    public static final class Plan {
+        private final long generation;
+        private final double divingTime;
+        private final double depth;
+        private final long snapshotNanos;
+        private final List<Schedule> schedules;
+
+        Plan(long generation, double divingTime, double depth, long snapshotNanos, List<Schedule> schedules) {
+            this.generation = generation;
+            this.divingTime = divingTime;
+            this.depth = depth;
+            this.snapshotNanos = snapshotNanos;
+            this.schedules = Collections.unmodifiableList(schedules);
+        }
+
+        /**
+         * Returns the number of the snapshot, increasing with every submission
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Returns the diving time in s of the snapshot
+         */
+        public double getDivingTime() {
+            return divingTime;
+        }
+
+        /**
+         * Returns the depth in m of the snapshot
+         */
+        public double getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the wall clock age of the snapshot in ms
+         */
+        public double getAgeMillis() {
+            return (System.nanoTime() - snapshotNanos) / 1.0e6;
+        }
+
+        /**
+         * Returns the schedules in the order of the delays of the planner
+         */
+        public List<Schedule> getSchedules() {
+            return schedules;
+        }
+    }
+
+    /**
+     * Submitted snapshot; exactly one of diver and state is set
+     */
+    private static final class Request {
+        final long generation;
+        final Diver diver;
+        final TissueState state;
+        final double depth;
+        final double divingTime;
+        final long createdNanos = System.nanoTime();
+
+        Request(long generation, Diver diver, TissueState state, double depth, double divingTime) {
+            this.generation = generation;
+            this.diver = diver;
+            this.state = state;
+            this.depth = depth;
+            this.divingTime = divingTime;
+        }
+    }
+
+    private final Executor executor;
+    private final Supplier<Decompression> decompressions;
+    private final double[] delays;
+    private final long maxStalenessNanos;
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Plan latestPlan;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private volatile long abandoned;
+    private volatile long completed;
+    private volatile long computeNanos;
+    private volatile long maxComputeNanos;
+    private volatile long latencyNanos;
+    private volatile long maxLatencyNanos;
+
+    /**
+     * Planner with the default algorithm, delays and maximum staleness
+     */
+    public SpeculativeDecoPlanner(Executor executor) {
+        this(executor, SpeculativeDecoPlanner::createDefaultDecompression, DEFAULT_DELAYS,
+                DEFAULT_MAX_STALENESS_MILLIS);
+    }
+
+    /**
+     * @param executor           runs the calculations
+     * @param decompressions     creates the decompression algorithm of a schedule
+     * @param delays             minutes at the current depth before the ascent, one schedule each
+     * @param maxStalenessMillis age of a snapshot after which its calculation is
+     *                           abandoned in favour of a newer one
+     */
+    public SpeculativeDecoPlanner(Executor executor, Supplier<Decompression> decompressions, double[] delays,
+                                  long maxStalenessMillis) {
+        this.executor = executor;
+        this.decompressions = decompressions;
+        this.delays = delays.clone();
+        this.maxStalenessNanos = maxStalenessMillis * 1000000L;
+    }
+
+    /**
+     * Returns ZH-L16B with gradient factors, as DivingProfile.count() uses
+     */
+    static Decompression createDefaultDecompression() {
+        final ZHL16WithGradientDecompression decompression = new ZHL16WithGradientDecompression();
+        decompression.setModel(ZHL16Decompression.ZH_L16B);
+        return decompression;
+    }
+
+    /**
+     * Creates an executor of daemon threads for planners
+     */
+    public static ExecutorService createPool(int threads) {
+        return Executors.newFixedThreadPool(threads, SimulationEngine.daemonThreads("deco-planner"));
+    }
+
+    /**
+     * Submits the tensions of the diver; they are copied, the state may be
+     * changed as soon as this returns
+     *
+     * @param state      tissue tensions
+     * @param depth      current depth in m
+     * @param divingTime current diving time in s
+     */
+    public void submit(TissueState state, double depth, double divingTime) {
+        final TissueState copy = new TissueState();
+        copy.copyFrom(state);
+        submit(new Request(generation.incrementAndGet(), null, copy, depth, divingTime));
+    }
+
+    /**
+     * Submits a diver; it is cloned, the diver may be changed as soon as this
+     * returns
+     *
+     * @param diver      the diver
+     * @param depth      current depth in m
+     * @param divingTime current diving time in s
+     */
+    public void submit(Diver diver, double depth, double divingTime) {
+        submit(new Request(generation.incrementAndGet(), (Diver) diver.clone(), null, depth, divingTime));
+    }
+
+    private void submit(Request request) {
+        submitted.incrementAndGet();
+        if (pending.getAndSet(request) != null) {
+            superseded.incrementAndGet();
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (pending.get() != null && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Calculates the pending snapshots one at a time, on the executor
+     */
+    private void drain() {
+        try {
+            Request request;
+            while ((request = pending.getAndSet(null)) != null) {
+                calculate(request);
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // A snapshot submitted after the loop ended and before scheduled was reset
+        schedule();
+    }
+
+    private boolean isStale(Request request) {
+        return pending.get() != null && System.nanoTime() - request.createdNanos > maxStalenessNanos;
+    }
+
+    private void calculate(Request request) {
+        final long start = System.nanoTime();
+        final Diver diver;
+        if (request.diver != null) {
+            diver = request.diver;
+        } else {
+            diver = new Diver();
+            request.state.store(diver);
+        }
+        final List<Schedule> schedules = new ArrayList<>();
+        for (double delay : delays) {
+            if (isStale(request)) {
+                abandoned++;
+                return;
+            }
+            schedules.add(planAscent((Diver) diver.clone(), request.depth, delay, decompressions.get()));
+        }
+        final Plan plan = new Plan(request.generation, request.divingTime, request.depth, request.createdNanos,
+                schedules);
+        final Plan previous = latestPlan;
+        if (previous == null || previous.getGeneration() < plan.getGeneration()) {
+            latestPlan = plan;
+        }
+
+        final long end = System.nanoTime();
+        completed++;
+        computeNanos += end - start;
+        maxComputeNanos = Math.max(maxComputeNanos, end - start);
+        latencyNanos += end - request.createdNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, end - request.createdNanos);
+    }
+
+    /**
+     * Calculates the schedule of staying at the depth for the delay and
+     * ascending to the surface afterwards; the diver is changed
+     */
+    static Schedule planAscent(Diver diver, double depth, double delay, Decompression decompression) {
+        if (depth <= 0.0) {
+            return new Schedule(delay, Collections.emptyList(), 0.0, null);
+        }
+        try {
+            final Length depthLength = new Length(depth, Length.UNITS_METER);
+            final Dive dive = new Dive("Ascent", DivingProfile.DIVE_HEIGHT);
+            dive.setDecompression(decompression);
+            dive.addConstantDepthSegment(depthLength, delay, GasMixtures.AIR);
+            dive.addDecoStage(depthLength, Length.ZERO, new Length(-DEFAULT_ASCENT_RATE, Length.UNITS_METER),
+                    GasMixtures.AIR, new Length(DEFAULT_STOP_STEP, Length.UNITS_METER));
+            dive.exposeDiver(diver, 0.0);
+
+            final List<Stop> stops = new ArrayList<>();
+            for (DepthSegment segment : dive.getDecompression().getDecoSegments()) {
+                if (segment instanceof ConstantDepthSegment && segment.getExposurePeriod() > 0.0) {
+                    stops.add(new Stop(segment.getDepthAtStart().getValue(Length.UNITS_METER),
+                            segment.getExposurePeriod()));
+                }
+            }
+            return new Schedule(delay, stops, dive.getDecompression().getRunTime() - delay, null);
+        } catch (CalculationException | IllegalActionException e) {
+            return new Schedule(delay, Collections.emptyList(), Double.NaN, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the freshest completed plan, or null if none is completed yet
+     */
+    public Plan getLatestPlan() {
+        return latestPlan;
+    }
+
+    /**
+     * Returns the wall clock age in ms of the snapshot of the latest plan,
+     * -1 if there is none
+     */
+    public double getStalenessMillis() {
+        final Plan plan = latestPlan;
+        return plan == null ? -1.0 : plan.getAgeMillis();
+    }
+
+    /**
+     * Returns the number of snapshots that were submitted and not planned
+     * yet, or whose plan is older than the latest plan
+     */
+    public long getPlansBehind() {
+        final Plan plan = latestPlan;
+        return generation.get() - (plan == null ? 0 : plan.getGeneration());
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the number of snapshots dropped before their calculation started
+     */
+    public long getSuperseded() {
+        return superseded.get();
+    }
+
+    /**
+     * Returns the number of calculations abandoned because they were stale
+     */
+    public long getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Returns the mean calculation time in ms of a plan
+     */
+    public double getMeanComputeMillis() {
+        final long n = completed;
+        return n == 0 ? 0.0 : computeNanos / 1.0e6 / n;
+    }
+
+    public double getMaxComputeMillis() {
+        return maxComputeNanos / 1.0e6;
+    }
+
+    /**
+     * Returns the mean time in ms from the submission of a snapshot to its plan
+     */
+    public double getMeanLatencyMillis() {
+        final long n = completed;
+        return n == 0 ? 0.0 : latencyNanos / 1.0e6 / n;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1.0e6;
+    }
+
+    public String getMetricsText() {
+        return String.format("plans: %d of %d snapshots (%d superseded, %d abandoned), "
+                        + "compute mean %.1f ms max %.1f ms, latency mean %.1f ms max %.1f ms, staleness %.0f ms",
+                completed, submitted.get(), superseded.get(), abandoned, getMeanComputeMillis(),
+                getMaxComputeMillis(), getMeanLatencyMillis(), getMaxLatencyMillis(), getStalenessMillis());
+    }
+}
@@ -0,0 +1,371 @@
+package edu.agh.symulations;
+
+import org.jfree.data.xy.AbstractXYDataset;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory history of the tissue tensions shown in the tension chart.
+ * <p>
+ * Every compartment and gas has its own series. A series consists of tiers of
+ * primitive ring buffers: tier 0 holds the newest samples at full resolution.
+ * Samples leaving a tier are collected in blocks and reduced with
+ * Largest-Triangle-Three-Buckets (one point out of every {@code factor}) into
+ * the next tier, so older data is kept at coarser resolution. Samples leaving
+ * the last tier are dropped. The memory used does not depend on the length of
+ * the session.
+ * <p>
+ * The history is confined to the EDT: it is written from the snapshots the
+ * render pipeline hands over and read by the charts, so it needs no locking
+ * and the simulation thread never waits for a repaint.
+ * {@link #getDataset(int)} gives a chart view of one compartment that reads
+ * the buffers directly.
+ */
+public class TensionHistory {
+
+    public enum Gas {
+        HE2("He2 tissue tension"),
+        N2("N2  tissue tension");
+
+        private final String label;
+
+        Gas(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 600;
+    public static final int DEFAULT_TIERS = 3;
+    public static final int DEFAULT_FACTOR = 8;
+
+    /**
+     * Number of points LTTB produces per block moved to the next tier
+     */
+    private static final int BLOCK_OUTPUT = 16;
+
+    private final int compartments;
+    private final Series[] series;
+    private final Dataset[] datasets;
+
+    public TensionHistory(int compartments) {
+        this(compartments, DEFAULT_CAPACITY, DEFAULT_TIERS, DEFAULT_FACTOR);
+    }
+
+    /**
+     * @param compartments number of tissue compartments
+     * @param capacity     points per tier and series
+     * @param tiers        number of tiers, the first one at full resolution
+     * @param factor       reduction of resolution from one tier to the next
+     */
+    public TensionHistory(int compartments, int capacity, int tiers, int factor) {
+        if (capacity < 1 || tiers < 1 || factor < 2) {
+            throw new IllegalArgumentException("Invalid history layout");
+        }
+        this.compartments = compartments;
+        series = new Series[compartments * Gas.values().length];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = new Series(capacity, tiers, factor);
+        }
+        datasets = new Dataset[compartments];
+    }
+
+    /**
+     * Adds the tensions of all compartments at the given time. Times must not
+     * decrease.
+     *
+     * @param time    time in s
+     * @param he2     helium tension per compartment
+     * @param n2      nitrogen tension per compartment
+     */
+    public void add(double time, double[] he2, double[] n2) {
+        for (int i = 0; i < compartments; i++) {
+            series(i, Gas.HE2).add(time, he2[i]);
+            series(i, Gas.N2).add(time, n2[i]);
+        }
+    }
+
+    public void clear() {
+        for (Series s : series) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Returns the number of points held for a compartment and gas, over all
+     * tiers.
+     */
+    public int size(int compartment, Gas gas) {
+        return series(compartment, gas).size();
+    }
+
+    public int getCompartments() {
+        return compartments;
+    }
+
+    /**
+     * Returns the chart view of a compartment, one series per gas. The view is
+     * created once and reused.
+     */
+    public Dataset getDataset(int compartment) {
+        if (datasets[compartment] == null) {
+            datasets[compartment] = new Dataset(compartment);
+        }
+        return datasets[compartment];
+    }
+
+    /**
+     * Notifies the listeners of the created views. To be called on the EDT
+     * after points have been added.
+     */
+    public void fireChanged() {
+        for (Dataset dataset : datasets) {
+            if (dataset != null) {
+                dataset.changed();
+            }
+        }
+    }
+
+    private Series series(int compartment, Gas gas) {
+        return series[compartment * Gas.values().length + gas.ordinal()];
+    }
+
+    /**
+     * Chart view of one compartment. Item 0 is the oldest point; the items of
+     * the coarser tiers come first.
+     */
+    public class Dataset extends AbstractXYDataset {
+        private static final long serialVersionUID = 1L;
+
+        private final int compartment;
+
+        private Dataset(int compartment) {
+            this.compartment = compartment;
+        }
+
+        private void changed() {
+            fireDatasetChanged();
+        }
+
+        @Override
+        public int getSeriesCount() {
+            return Gas.values().length;
+        }
+
+        @Override
+        public String getSeriesKey(int index) {
+            return Gas.values()[index].getLabel();
+        }
+
+        @Override
+        public int getItemCount(int index) {
+            return series(compartment, Gas.values()[index]).size();
+        }
+
+        @Override
+        public double getXValue(int index, int item) {
+            return series(compartment, Gas.values()[index]).get(item, true);
+        }
+
+        @Override
+        public double getYValue(int index, int item) {
+            return series(compartment, Gas.values()[index]).get(item, false);
+        }
+
+        @Override
+        public Number getX(int index, int item) {
+            return getXValue(index, item);
+        }
+
+        @Override
+        public Number getY(int index, int item) {
+            return getYValue(index, item);
+        }
+    }
+
+    /**
+     * Ring buffer of (time, value) points
+     */
+    private static class Ring {
+        final double[] times;
+        final double[] values;
+        int head;
+        int count;
+
+        Ring(int capacity) {
+            times = new double[capacity];
+            values = new double[capacity];
+        }
+
+        boolean isFull() {
+            return count == times.length;
+        }
+
+        void add(double time, double value) {
+            final int slot = (head + count) % times.length;
+            times[slot] = time;
+            values[slot] = value;
+            count++;
+        }
+
+        double get(int item, boolean x) {
+            final int slot = (head + item) % times.length;
+            return x ? times[slot] : values[slot];
+        }
+
+        void removeOldest() {
+            head = (head + 1) % times.length;
+            count--;
+        }
+    }
+
+    /**
+     * The tiers of one compartment and gas. Tier k consists of a ring and a
+     * block of points evicted from the ring waiting to be reduced into tier
+     * k + 1 (the last tier has no block).
+     */
+    private static class Series {
+        private final Ring[] rings;
+        private final double[][] blockTimes;
+        private final double[][] blockValues;
+        private final int[] blockCounts;
+        /**
+         * Last point LTTB selected per tier, the left anchor of the next block
+         */
+        private final double[] anchorTimes;
+        private final double[] anchorValues;
+        private final boolean[] anchored;
+        private final int factor;
+
+        Series(int capacity, int tiers, int factor) {
+            this.factor = factor;
+            rings = new Ring[tiers];
+            for (int i = 0; i < tiers; i++) {
+                rings[i] = new Ring(capacity);
+            }
+            blockTimes = new double[tiers - 1][BLOCK_OUTPUT * factor];
+            blockValues = new double[tiers - 1][BLOCK_OUTPUT * factor];
+            blockCounts = new int[tiers - 1];
+            anchorTimes = new double[tiers - 1];
+            anchorValues = new double[tiers - 1];
+            anchored = new boolean[tiers - 1];
+        }
+
+        void clear() {
+            for (Ring ring : rings) {
+                ring.head = 0;
+                ring.count = 0;
+            }
+            Arrays.fill(blockCounts, 0);
+            Arrays.fill(anchored, false);
+        }
+
+        void add(double time, double value) {
+            addToTier(0, time, value);
+        }
+
+        private void addToTier(int tier, double time, double value) {
+            final Ring ring = rings[tier];
+            if (ring.isFull()) {
+                if (tier + 1 < rings.length) {
+                    addToBlock(tier, ring.get(0, true), ring.get(0, false));
+                }
+                ring.removeOldest();
+            }
+            ring.add(time, value);
+        }
+
+        private void addToBlock(int tier, double time, double value) {
+            blockTimes[tier][blockCounts[tier]] = time;
+            blockValues[tier][blockCounts[tier]] = value;
+            blockCounts[tier]++;
+            if (blockCounts[tier] == blockTimes[tier].length) {
+                reduceBlock(tier);
+                blockCounts[tier] = 0;
+            }
+        }
+
+        /**
+         * Largest-Triangle-Three-Buckets over a full block: the block is split
+         * in buckets of factor points and from every bucket the point forming
+         * the largest triangle with the previously selected point and the
+         * average of the next bucket is moved to the next tier. For the last
+         * bucket the last point of the block takes the place of that average.
+         */
+        private void reduceBlock(int tier) {
+            final double[] times = blockTimes[tier];
+            final double[] values = blockValues[tier];
+            double aTime = anchored[tier] ? anchorTimes[tier] : times[0];
+            double aValue = anchored[tier] ? anchorValues[tier] : values[0];
+
+            for (int bucket = 0; bucket < BLOCK_OUTPUT; bucket++) {
+                final int start = bucket * factor;
+                double cTime = 0.0;
+                double cValue = 0.0;
+                if (bucket + 1 < BLOCK_OUTPUT) {
+                    for (int i = start + factor; i < start + 2 * factor; i++) {
+                        cTime += times[i];
+                        cValue += values[i];
+                    }
+                    cTime /= factor;
+                    cValue /= factor;
+                } else {
+                    cTime = times[times.length - 1];
+                    cValue = values[values.length - 1];
+                }
+
+                int selected = start;
+                double largestArea = -1.0;
+                for (int i = start; i < start + factor; i++) {
+                    final double area = Math.abs((aTime - cTime) * (values[i] - aValue) -
+                            (aTime - times[i]) * (cValue - aValue));
+                    if (area > largestArea) {
+                        largestArea = area;
+                        selected = i;
+                    }
+                }
+                aTime = times[selected];
+                aValue = values[selected];
+                addToTier(tier + 1, aTime, aValue);
+            }
+            anchorTimes[tier] = aTime;
+            anchorValues[tier] = aValue;
+            anchored[tier] = true;
+        }
+
+        int size() {
+            int size = 0;
+            for (int tier = 0; tier < rings.length; tier++) {
+                size += rings[tier].count;
+                if (tier < blockCounts.length) {
+                    size += blockCounts[tier];
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Returns the time (x) or value of an item, oldest first: the ring of
+         * the last tier, then going down the tiers the block waiting to leave
+         * a tier followed by the ring of the tier below.
+         */
+        double get(int item, boolean x) {
+            for (int tier = rings.length - 1; tier >= 0; tier--) {
+                if (item < rings[tier].count) {
+                    return rings[tier].get(item, x);
+                }
+                item -= rings[tier].count;
+                if (tier > 0) {
+                    if (item < blockCounts[tier - 1]) {
+                        return x ? blockTimes[tier - 1][item] : blockValues[tier - 1][item];
+                    }
+                    item -= blockCounts[tier - 1];
+                }
+            }
+            throw new IndexOutOfBoundsException("Item " + item);
+        }
+    }
+}
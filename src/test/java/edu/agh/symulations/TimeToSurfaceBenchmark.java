@@ -0,0 +1,97 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.Random;
+
+/**
+ * Verifies the {@link TimeToSurfaceEstimator} against full plans and compares
+ * their cost.
+ * <p>
+ * Random square dives are ticked at 10 Hz. Every tick the estimate is compared
+ * with the time to surface of the full schedule that decompressDiver
+ * calculates for the same tensions; ticks at which DoDeco finds no schedule
+ * are counted separately. The cost of the estimate (fallbacks to the full
+ * schedule included) and of the full schedule is reported per tick.
+ * Usage: TimeToSurfaceBenchmark [dives]
+ */
+public class TimeToSurfaceBenchmark {
+    private static final double TICK_SECONDS = 0.1;
+    private static final double TOLERANCE = 1.0e-6;
+
+    private static double ambientPressure(double depth) {
+        return new DepthPressure(new Length(depth, Length.UNITS_METER), DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR);
+    }
+
+    public static void main(String[] args) {
+        final int dives = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final Random random = new Random(1);
+        final Diver diver = new Diver();
+        long ticks = 0;
+        long compared = 0;
+        long exact = 0;
+        long withoutSchedule = 0;
+        long estimatedWithoutSchedule = 0;
+        double maxDifference = 0.0;
+        long fullNanos = 0;
+        long estimates = 0;
+        long fullSchedules = 0;
+        long repairs = 0;
+        double estimateMicros = 0.0;
+        double maxEstimateMicros = 0.0;
+
+        for (int dive = 0; dive < dives; dive++) {
+            final double maxDepth = 15.0 + random.nextInt(30);
+            final double rate = 0.2 + random.nextDouble() * 0.3;
+            final double bottomEnd = maxDepth / rate + 10.0 + random.nextInt(30);
+            final DepthSource depthSource = DepthSource.squareDive(maxDepth, rate, bottomEnd);
+            final TissueState state = new TissueState();
+            for (int i = 0; i < state.size(); i++) {
+                state.getN2Tensions()[i] = ambientPressure(0.0) * GasMixtures.AIR.getN2Fraction();
+            }
+            final TimeToSurfaceEstimator estimator = new TimeToSurfaceEstimator();
+            final int diveTicks = (int) ((bottomEnd + maxDepth / rate) / TICK_SECONDS) + 1;
+            for (int tick = 1; tick <= diveTicks; tick++) {
+                final double depth = depthSource.getDepth(tick * TICK_SECONDS);
+                state.exposeToConstantPressure(ambientPressure(depth),
+                        GasMixtures.AIR.getN2Fraction(), GasMixtures.AIR.getHe2Fraction(), TICK_SECONDS);
+                final double estimated = estimator.estimate(state, depth);
+
+                state.store(diver);
+                final long start = System.nanoTime();
+                final double full = SpeculativeDecoPlanner.planAscent(diver, depth, 0.0,
+                        SpeculativeDecoPlanner.createDefaultDecompression()).getTimeToSurface();
+                fullNanos += System.nanoTime() - start;
+                ticks++;
+                if (Double.isNaN(full)) {
+                    withoutSchedule++;
+                    if (!Double.isNaN(estimated)) {
+                        estimatedWithoutSchedule++;
+                    }
+                    continue;
+                }
+                compared++;
+                final double difference = Math.abs(estimated - full);
+                if (difference < TOLERANCE) {
+                    exact++;
+                }
+                maxDifference = Math.max(maxDifference, Double.isNaN(difference) ? Double.POSITIVE_INFINITY : difference);
+            }
+            estimates += estimator.getEstimates();
+            fullSchedules += estimator.getFullSchedules();
+            repairs += estimator.getRepairs();
+            estimateMicros += estimator.getMeanMicros() * estimator.getEstimates();
+            maxEstimateMicros = Math.max(maxEstimateMicros, estimator.getMaxMicros());
+        }
+
+        System.out.println(String.format("%d dives, %d ticks: %d of %d estimates equal to the full plan, max difference %.2e min",
+                dives, ticks, exact, compared, maxDifference));
+        System.out.println(String.format("No schedule from DoDeco at %d ticks, %d of them estimated",
+                withoutSchedule, estimatedWithoutSchedule));
+        System.out.println(String.format("Estimate:  %8.1f us per tick (max %.0f us), %.1f %% full schedules, %.2f repairs per tick",
+                estimateMicros / estimates, maxEstimateMicros, 100.0 * fullSchedules / estimates,
+                (double) repairs / estimates));
+        System.out.println(String.format("Full plan: %8.1f us per tick", fullNanos / 1.0e3 / ticks));
+    }
+}
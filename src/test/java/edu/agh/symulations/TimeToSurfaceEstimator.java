@@ -0,0 +1,435 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates the time to surface (TTS) of a diver every tick without
+ * recalculating the whole decompression schedule.
+ * <p>
+ * The schedule is the one {@link ZHL16WithGradientDecompression} calculates
+ * for an ascent at {@link SpeculativeDecoPlanner#DEFAULT_ASCENT_RATE} on air:
+ * the first stop is the shallowest stop depth that is safe at the low gradient
+ * factor after the ascent to it, every stop lasts the shortest whole number of
+ * minutes (at least the minimum stop time) after which the ascent to the next
+ * stop is safe, and the gradient factor goes linearly from low at the first
+ * stop to high at the surface.
+ * <p>
+ * The schedule of one tick is almost the one of the previous tick, so the
+ * estimate is warm-started from the previous first stop and stop times. Each
+ * of them is verified with at most two checks of the tissues (still safe, one
+ * less not safe) and only where that fails it is repaired by stepping one
+ * stop or one minute at a time. A check is one loop over the compartments,
+ * so an unchanged schedule costs a constant number of loops per stop. When
+ * the repairs of one tick exceed the bound, e.g. after a large change of depth,
+ * and on the first tick, the schedule is calculated in full with
+ * {@code decompressDiver}, which also seeds the next warm start.
+ * <p>
+ * An estimator belongs to one diver and must not be used concurrently.
+ */
+public class TimeToSurfaceEstimator {
+    /**
+     * Maximum number of stop or minute repairs per tick before the full
+     * schedule is calculated
+     */
+    public static final int DEFAULT_MAX_REPAIRS = 8;
+    private static final double MAX_STOP_MINUTES = 24.0 * 60.0;
+
+    private final int maxRepairs;
+    private final int compartments;
+    private final double[] n2A;
+    private final double[] n2B;
+    private final double[] he2A;
+    private final double[] he2B;
+    private final double[] n2K;
+    private final double[] he2K;
+    private final double n2Fraction = GasMixtures.AIR.getN2Fraction();
+    private final double he2Fraction = GasMixtures.AIR.getHe2Fraction();
+    private final double stopStep;
+    private final double stepPeriod;
+    private final double ascentRate = SpeculativeDecoPlanner.DEFAULT_ASCENT_RATE;
+    private final double minimumStopMinutes;
+    private final double lowGradientFactor;
+    private final double highGradientFactor;
+    private final double surfacePressure;
+    private final double barsPerMeter;
+
+    private final double[] n2StepFactors;
+    private final double[] he2StepFactors;
+    private final double[] n2Tensions;
+    private final double[] he2Tensions;
+    private final double[] n2Factors;
+    private final double[] he2Factors;
+    private final Diver diver = new Diver();
+
+    /**
+     * Minutes of the stop at index i (depth i * stop step) of the last
+     * schedule, 0 if there was no stop
+     */
+    private double[] minutesByStop = new double[16];
+    private int firstStop = -1;
+
+    private boolean valid;
+    private double timeToSurface;
+    private int stopCount;
+    private double[] stopDepths = new double[16];
+    private double[] stopMinutes = new double[16];
+
+    private long estimates;
+    private long fullSchedules;
+    private long repairs;
+    private long totalNanos;
+    private long maxNanos;
+
+    public TimeToSurfaceEstimator() {
+        this(DEFAULT_MAX_REPAIRS);
+    }
+
+    /**
+     * @param maxRepairs repairs of the warm-started schedule per tick after
+     *                   which the schedule is calculated in full
+     */
+    public TimeToSurfaceEstimator(int maxRepairs) {
+        this.maxRepairs = maxRepairs;
+        final ZHL16Decompression model = (ZHL16Decompression) SpeculativeDecoPlanner.createDefaultDecompression();
+        n2A = model.N2A;
+        n2B = model.N2B;
+        he2A = model.He2A;
+        he2B = model.He2B;
+        final TissueState state = new TissueState();
+        compartments = state.size();
+        n2K = state.getN2K().clone();
+        he2K = state.getHe2K().clone();
+        stopStep = Parameters.decoStepSize.getValue(Length.UNITS_METER);
+        stepPeriod = stopStep / ascentRate;
+        minimumStopMinutes = Parameters.fMinimumDecoStopTime;
+        lowGradientFactor = Parameters.fLowGradientFactor;
+        highGradientFactor = Parameters.fHighGradientFactor;
+        surfacePressure = new DepthPressure(Length.ZERO, DivingProfile.DIVE_HEIGHT).getValue(Pressure.UNITS_BAR);
+        barsPerMeter = new DepthPressure(new Length(1.0, Length.UNITS_METER), DivingProfile.DIVE_HEIGHT)
+                .getValue(Pressure.UNITS_BAR) - surfacePressure;
+
+        n2StepFactors = new double[compartments];
+        he2StepFactors = new double[compartments];
+        TissueKernels.decayFactors(n2K, stepPeriod, n2StepFactors, compartments);
+        TissueKernels.decayFactors(he2K, stepPeriod, he2StepFactors, compartments);
+        n2Tensions = new double[compartments];
+        he2Tensions = new double[compartments];
+        n2Factors = new double[compartments];
+        he2Factors = new double[compartments];
+    }
+
+    private double ambientPressure(double depth) {
+        return surfacePressure + depth * barsPerMeter;
+    }
+
+    /**
+     * Estimates the time to surface of a diver starting the ascent now
+     *
+     * @param state tissue tensions in bar, not changed
+     * @param depth current depth in m
+     * @return the time to surface in min, NaN if the diver cannot ascend
+     * safely (see {@link #isValid()})
+     */
+    public double estimate(TissueState state, double depth) {
+        final long start = System.nanoTime();
+        estimates++;
+        if (depth <= 0.0) {
+            valid = true;
+            timeToSurface = 0.0;
+            stopCount = 0;
+        } else if (firstStop < 0 || !estimateWarm(state, depth, maxRepairs)) {
+            estimateFull(state, depth);
+        }
+        final long nanos = System.nanoTime() - start;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        return timeToSurface;
+    }
+
+    /**
+     * Repairs the schedule of the previous tick
+     *
+     * @param maxRepairs bound of the repairs
+     * @return false if the repairs exceeded the bound or no safe stop was found
+     */
+    private boolean estimateWarm(TissueState state, double depth, int maxRepairs) {
+        int repairsLeft = maxRepairs;
+
+        // First stop: shallowest stop depth that is safe after the ascent
+        int stop = firstStop;
+        while (stop > 0 && stop * stopStep >= depth) {
+            stop--;
+        }
+        if (isSafeAfterAscent(state, depth, stop)) {
+            while (stop > 0 && isSafeAfterAscent(state, depth, stop - 1)) {
+                stop--;
+                if (--repairsLeft < 0) {
+                    return false;
+                }
+            }
+        } else {
+            do {
+                stop++;
+                if (--repairsLeft < 0 || stop * stopStep >= depth) {
+                    return false;
+                }
+            } while (!isSafeAfterAscent(state, depth, stop));
+        }
+
+        // Ascent to the first stop
+        final double firstStopDepth = stop * stopStep;
+        final double ascentPeriod = (depth - firstStopDepth) / ascentRate;
+        System.arraycopy(state.getN2Tensions(), 0, n2Tensions, 0, compartments);
+        System.arraycopy(state.getHe2Tensions(), 0, he2Tensions, 0, compartments);
+        ascend(depth, firstStopDepth, ascentPeriod, null, null);
+        double time = ascentPeriod;
+
+        // Stops
+        final double gradientSlope = firstStopDepth > 0.0
+                ? (highGradientFactor - lowGradientFactor) / (0.0 - firstStopDepth) : 0.0;
+        ensureStops(stop + 1);
+        int count = 0;
+        for (int index = stop; index >= 1; index--) {
+            final double stopDepth = index * stopStep;
+            final double gradientFactor = stopDepth * gradientSlope + highGradientFactor;
+            double minutes = minutesByStop[index] >= minimumStopMinutes ? minutesByStop[index] : minimumStopMinutes;
+            if (isSafeAfterStop(index, minutes, gradientFactor)) {
+                while (minutes > minimumStopMinutes && isSafeAfterStop(index, minutes - 1.0, gradientFactor)) {
+                    minutes -= 1.0;
+                    if (--repairsLeft < 0) {
+                        return false;
+                    }
+                }
+            } else {
+                do {
+                    minutes += 1.0;
+                    if (--repairsLeft < 0 || minutes >= MAX_STOP_MINUTES) {
+                        return false;
+                    }
+                } while (!isSafeAfterStop(index, minutes, gradientFactor));
+            }
+            stay(stopDepth, minutes);
+            ascend(stopDepth, (index - 1) * stopStep, stepPeriod, n2StepFactors, he2StepFactors);
+            stopDepths[count] = stopDepth;
+            stopMinutes[count] = minutes;
+            count++;
+            time += minutes + stepPeriod;
+        }
+
+        repairs += maxRepairs - repairsLeft;
+        for (int index = 0; index < minutesByStop.length; index++) {
+            minutesByStop[index] = index >= 1 && index <= stop ? stopMinutes[stop - index] : 0.0;
+        }
+        firstStop = stop;
+        valid = true;
+        timeToSurface = time;
+        stopCount = count;
+        return true;
+    }
+
+    /**
+     * Whether all compartments are within the limits at the low gradient
+     * factor after an ascent from the depth to the stop
+     */
+    private boolean isSafeAfterAscent(TissueState state, double depth, int stop) {
+        final double stopDepth = stop * stopStep;
+        final double period = (depth - stopDepth) / ascentRate;
+        final double ambientPressure = ambientPressure(depth);
+        final double stopPressure = ambientPressure(stopDepth);
+        final double n2Alveolar = Tools.alveolarPressure(ambientPressure, n2Fraction);
+        final double he2Alveolar = Tools.alveolarPressure(ambientPressure, he2Fraction);
+        final double n2Rate = (Tools.alveolarPressure(stopPressure, n2Fraction) - n2Alveolar) / period;
+        final double he2Rate = (Tools.alveolarPressure(stopPressure, he2Fraction) - he2Alveolar) / period;
+        final double[] n2 = state.getN2Tensions();
+        final double[] he2 = state.getHe2Tensions();
+        for (int i = 0; i < compartments; i++) {
+            final double n2Final = Tools.schreinerEquation(n2Alveolar, n2Rate, period, n2K[i], n2[i]);
+            final double he2Final = Tools.schreinerEquation(he2Alveolar, he2Rate, period, he2K[i], he2[i]);
+            if (!isWithinLimit(i, n2Final, he2Final, stopPressure, lowGradientFactor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether all compartments are within the limits after the given minutes
+     * at the stop and the ascent to the next stop. The tensions at the arrival
+     * at the stop are in n2Tensions and he2Tensions.
+     */
+    private boolean isSafeAfterStop(int stop, double minutes, double gradientFactor) {
+        final double stopPressure = ambientPressure(stop * stopStep);
+        final double nextPressure = ambientPressure((stop - 1) * stopStep);
+        final double n2Alveolar = Tools.alveolarPressure(stopPressure, n2Fraction);
+        final double he2Alveolar = Tools.alveolarPressure(stopPressure, he2Fraction);
+        final double n2Rate = (Tools.alveolarPressure(nextPressure, n2Fraction) - n2Alveolar) / stepPeriod;
+        final double he2Rate = (Tools.alveolarPressure(nextPressure, he2Fraction) - he2Alveolar) / stepPeriod;
+        for (int i = 0; i < compartments; i++) {
+            final double n2Final = Tools.schreinerEquation(n2Alveolar, n2Rate, stepPeriod, n2K[i],
+                    Tools.haldaneEquation(n2Tensions[i], n2Alveolar, n2K[i], minutes));
+            final double he2Final = Tools.schreinerEquation(he2Alveolar, he2Rate, stepPeriod, he2K[i],
+                    Tools.haldaneEquation(he2Tensions[i], he2Alveolar, he2K[i], minutes));
+            if (!isWithinLimit(i, n2Final, he2Final, nextPressure, gradientFactor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Limit of ZHL16WithGradientDecompression (Baker style gradient factor)
+     */
+    private boolean isWithinLimit(int i, double n2Tension, double he2Tension, double ambientPressure,
+                                  double gradientFactor) {
+        final double tension = n2Tension + he2Tension;
+        final double a = (n2A[i] * n2Tension + he2A[i] * he2Tension) / tension;
+        final double b = (n2B[i] * n2Tension + he2B[i] * he2Tension) / tension;
+        return tension < ambientPressure * (gradientFactor / b - gradientFactor + 1.0) + a * gradientFactor;
+    }
+
+    /**
+     * Exposes n2Tensions and he2Tensions to an ascent
+     *
+     * @param n2Decay  decay factors for the period, null to calculate them
+     * @param he2Decay decay factors for the period, null to calculate them
+     */
+    private void ascend(double fromDepth, double toDepth, double period, double[] n2Decay, double[] he2Decay) {
+        if (n2Decay == null) {
+            TissueKernels.decayFactors(n2K, period, n2Factors, compartments);
+            TissueKernels.decayFactors(he2K, period, he2Factors, compartments);
+            n2Decay = n2Factors;
+            he2Decay = he2Factors;
+        }
+        final double fromPressure = ambientPressure(fromDepth);
+        final double toPressure = ambientPressure(toDepth);
+        final double n2Alveolar = Tools.alveolarPressure(fromPressure, n2Fraction);
+        final double he2Alveolar = Tools.alveolarPressure(fromPressure, he2Fraction);
+        TissueKernels.schreiner(n2Tensions, n2Alveolar,
+                (Tools.alveolarPressure(toPressure, n2Fraction) - n2Alveolar) / period, period, n2K, n2Decay,
+                compartments);
+        TissueKernels.schreiner(he2Tensions, he2Alveolar,
+                (Tools.alveolarPressure(toPressure, he2Fraction) - he2Alveolar) / period, period, he2K, he2Decay,
+                compartments);
+    }
+
+    /**
+     * Exposes n2Tensions and he2Tensions to a stay at the depth
+     */
+    private void stay(double depth, double minutes) {
+        final double pressure = ambientPressure(depth);
+        TissueKernels.decayFactors(n2K, minutes, n2Factors, compartments);
+        TissueKernels.decayFactors(he2K, minutes, he2Factors, compartments);
+        TissueKernels.haldane(n2Tensions, Tools.alveolarPressure(pressure, n2Fraction), n2Factors, compartments);
+        TissueKernels.haldane(he2Tensions, Tools.alveolarPressure(pressure, he2Fraction), he2Factors, compartments);
+    }
+
+    private void ensureStops(int count) {
+        if (count > stopDepths.length) {
+            stopDepths = Arrays.copyOf(stopDepths, count * 2);
+            stopMinutes = Arrays.copyOf(stopMinutes, count * 2);
+        }
+        if (count > minutesByStop.length) {
+            minutesByStop = Arrays.copyOf(minutesByStop, count * 2);
+        }
+    }
+
+    /**
+     * Calculates the schedule with decompressDiver and seeds the warm start.
+     * DoDeco gives up when a compartment is supersaturated at the current
+     * depth already (no start of the deco zone); the schedule is then
+     * searched from the surface without a bound of the repairs.
+     */
+    private void estimateFull(TissueState state, double depth) {
+        fullSchedules++;
+        state.store(diver);
+        final SpeculativeDecoPlanner.Schedule schedule = SpeculativeDecoPlanner.planAscent(diver, depth, 0.0,
+                SpeculativeDecoPlanner.createDefaultDecompression());
+        Arrays.fill(minutesByStop, 0.0);
+        if (schedule.getError() != null) {
+            firstStop = 0;
+            if (!estimateWarm(state, depth, Integer.MAX_VALUE)) {
+                valid = false;
+                timeToSurface = Double.NaN;
+                stopCount = 0;
+                firstStop = -1;
+            }
+            return;
+        }
+        final List<SpeculativeDecoPlanner.Stop> stops = schedule.getStops();
+        firstStop = stops.isEmpty() ? 0 : (int) Math.round(stops.get(0).getDepth() / stopStep);
+        ensureStops(Math.max(stops.size(), firstStop + 1));
+        for (int i = 0; i < stops.size(); i++) {
+            stopDepths[i] = stops.get(i).getDepth();
+            stopMinutes[i] = stops.get(i).getMinutes();
+            minutesByStop[firstStop - i] = stopMinutes[i];
+        }
+        valid = true;
+        timeToSurface = schedule.getTimeToSurface();
+        stopCount = stops.size();
+    }
+
+    /**
+     * Returns whether the last estimate found a safe ascent
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the time to surface in min of the last estimate, NaN if not valid
+     */
+    public double getTimeToSurface() {
+        return timeToSurface;
+    }
+
+    public int getStopCount() {
+        return stopCount;
+    }
+
+    /**
+     * Returns the depth in m of a stop of the last estimate, deepest first
+     */
+    public double getStopDepth(int stop) {
+        return stopDepths[stop];
+    }
+
+    public double getStopMinutes(int stop) {
+        return stopMinutes[stop];
+    }
+
+    /**
+     * Returns the depth in m of the first stop of the last estimate, 0 without stops
+     */
+    public double getFirstStopDepth() {
+        return stopCount == 0 ? 0.0 : stopDepths[0];
+    }
+
+    public long getEstimates() {
+        return estimates;
+    }
+
+    /**
+     * Returns the number of estimates that calculated the full schedule
+     */
+    public long getFullSchedules() {
+        return fullSchedules;
+    }
+
+    /**
+     * Returns the number of stop or minute repairs of the warm-started estimates
+     */
+    public long getRepairs() {
+        return repairs;
+    }
+
+    public double getMeanMicros() {
+        return estimates == 0 ? 0.0 : totalNanos / 1.0e3 / estimates;
+    }
+
+    public double getMaxMicros() {
+        return maxNanos / 1.0e3;
+    }
+}
@@ -0,0 +1,213 @@
+package edu.agh.symulations;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the contention between the thread that publishes the tensions of
+ * a diver and the threads that read them.
+ * <p>
+ * One writer publishes the tensions of 16 compartments as fast as it can
+ * while a number of readers copy them, with a single buffer guarded by a
+ * monitor (as a synchronized getter would do) and with the
+ * {@link TissueSnapshotPublisher}. Reported are the CPU time of the writer
+ * per publication, how often and how long it was blocked by the readers
+ * (thread contention monitoring), its longest publication in real time, which
+ * on a single processor includes the time slices of the readers, the copies
+ * of the readers and their retries. Every value published is derived from its
+ * version, so each copy is checked to be one publication and never older than
+ * the previous copy of the reader; the benchmark exits with status 1
+ * otherwise.
+ * Usage: TissueSnapshotBenchmark [seconds per run]
+ */
+public class TissueSnapshotBenchmark {
+    private static final int[] READERS = {1, 2, 4, 8};
+    private static final int COMPARTMENTS = 16;
+
+    private interface Channel {
+        void publish(double time, double[] n2Tensions, double[] he2Tensions);
+
+        /**
+         * Copies the last publication and returns its time, or NaN if the
+         * copy is not one publication
+         */
+        double read();
+
+        long getRetries();
+    }
+
+    /**
+     * One buffer, written and copied under its monitor
+     */
+    private static final class SynchronizedChannel implements Channel {
+        private final double[] n2Tensions = new double[COMPARTMENTS];
+        private final double[] he2Tensions = new double[COMPARTMENTS];
+        private double time;
+
+        @Override
+        public synchronized void publish(double time, double[] n2Tensions, double[] he2Tensions) {
+            System.arraycopy(n2Tensions, 0, this.n2Tensions, 0, COMPARTMENTS);
+            System.arraycopy(he2Tensions, 0, this.he2Tensions, 0, COMPARTMENTS);
+            this.time = time;
+        }
+
+        @Override
+        public double read() {
+            final double[] n2Copy = new double[COMPARTMENTS];
+            final double[] he2Copy = new double[COMPARTMENTS];
+            final double timeCopy;
+            synchronized (this) {
+                System.arraycopy(n2Tensions, 0, n2Copy, 0, COMPARTMENTS);
+                System.arraycopy(he2Tensions, 0, he2Copy, 0, COMPARTMENTS);
+                timeCopy = time;
+            }
+            return isConsistent(timeCopy, n2Copy, he2Copy) ? timeCopy : Double.NaN;
+        }
+
+        @Override
+        public long getRetries() {
+            return 0;
+        }
+    }
+
+    private static final class DoubleBufferedChannel implements Channel {
+        private final TissueSnapshotPublisher publisher = new TissueSnapshotPublisher(COMPARTMENTS);
+
+        @Override
+        public void publish(double time, double[] n2Tensions, double[] he2Tensions) {
+            publisher.publish(time, 0.0, n2Tensions, he2Tensions);
+        }
+
+        @Override
+        public double read() {
+            final TissueSnapshotPublisher.Snapshot snapshot = publisher.read();
+            if (snapshot == null) {
+                return 0.0;
+            }
+            for (int i = 0; i < snapshot.getCompartments(); i++) {
+                if (snapshot.getN2Tension(i) != snapshot.getTime() || snapshot.getHe2Tension(i) != -snapshot.getTime()) {
+                    return Double.NaN;
+                }
+            }
+            return snapshot.getVersion() == snapshot.getTime() ? snapshot.getTime() : Double.NaN;
+        }
+
+        @Override
+        public long getRetries() {
+            return publisher.getRetries();
+        }
+    }
+
+    private static boolean isConsistent(double time, double[] n2Tensions, double[] he2Tensions) {
+        for (int i = 0; i < COMPARTMENTS; i++) {
+            if (n2Tensions[i] != time || he2Tensions[i] != -time) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs one writer and the readers on the channel for the given time
+     *
+     * @return whether all copies were consistent
+     */
+    private static boolean run(String name, Channel channel, int readers, double seconds, boolean report)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+        final long[] reads = new long[readers];
+        final Thread[] threads = new Thread[readers];
+        for (int reader = 0; reader < readers; reader++) {
+            final int index = reader;
+            threads[reader] = new Thread(() -> {
+                double previousTime = 0.0;
+                long count = 0;
+                while (running.get()) {
+                    final double time = channel.read();
+                    if (!(time >= previousTime)) {
+                        consistent.set(false);
+                    }
+                    previousTime = time;
+                    count++;
+                }
+                reads[index] = count;
+            }, "tissue-reader-" + reader);
+            threads[reader].setDaemon(true);
+        }
+
+        final double[] n2Tensions = new double[COMPARTMENTS];
+        final double[] he2Tensions = new double[COMPARTMENTS];
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        final long writerId = Thread.currentThread().getId();
+        System.gc();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long publications = 0;
+        long maxNanos = 0;
+        final ThreadInfo startInfo = bean.getThreadInfo(writerId);
+        final long startCpu = bean.getCurrentThreadCpuTime();
+        final long start = System.nanoTime();
+        final long end = start + (long) (seconds * 1.0e9);
+        long now = start;
+        while (now < end) {
+            publications++;
+            for (int i = 0; i < COMPARTMENTS; i++) {
+                n2Tensions[i] = publications;
+                he2Tensions[i] = -publications;
+            }
+            channel.publish(publications, n2Tensions, he2Tensions);
+            final long published = System.nanoTime();
+            maxNanos = Math.max(maxNanos, published - now);
+            now = published;
+        }
+        final double elapsed = (now - start) / 1.0e9;
+        final double cpuNanos = (bean.getCurrentThreadCpuTime() - startCpu) / (double) publications;
+        final ThreadInfo endInfo = bean.getThreadInfo(writerId);
+        final long blocked = endInfo.getBlockedCount() + endInfo.getWaitedCount()
+                - startInfo.getBlockedCount() - startInfo.getWaitedCount();
+        final long blockedMillis = endInfo.getBlockedTime() + endInfo.getWaitedTime()
+                - startInfo.getBlockedTime() - startInfo.getWaitedTime();
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long totalReads = 0;
+        for (long count : reads) {
+            totalReads += count;
+        }
+        if (report) {
+            System.out.println(String.format("  %-16s writer %6.1f ns CPU per publication, blocked %6d times for %4d ms,"
+                            + " max %6.0f us; %9.0f reads/s, %.4f retries per read",
+                    name, cpuNanos, blocked, blockedMillis, maxNanos / 1.0e3, totalReads / elapsed,
+                    totalReads == 0 ? 0.0 : channel.getRetries() / (double) totalReads));
+        }
+        return consistent.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean.isThreadContentionMonitoringSupported()) {
+            bean.setThreadContentionMonitoringEnabled(true);
+        }
+        final double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        boolean consistent = true;
+        consistent &= run("Synchronized", new SynchronizedChannel(), 2, seconds, false);
+        consistent &= run("Double-buffered", new DoubleBufferedChannel(), 2, seconds, false);
+        System.out.println(String.format("One writer, %d compartments, %d available processors",
+                COMPARTMENTS, Runtime.getRuntime().availableProcessors()));
+        for (int readers : READERS) {
+            System.out.println(String.format("%d readers", readers));
+            consistent &= run("Synchronized", new SynchronizedChannel(), readers, seconds, true);
+            consistent &= run("Double-buffered", new DoubleBufferedChannel(), readers, seconds, true);
+        }
+        if (!consistent) {
+            System.out.println("Inconsistent tensions");
+            System.exit(1);
+        }
+    }
+}
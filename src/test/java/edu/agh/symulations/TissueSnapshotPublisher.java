@@ -0,0 +1,197 @@
+package edu.agh.symulations;
+
+import net.deepocean.dodeco.calculator.TissueState;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Publishes the tissue tensions of one diver from the thread that computes
+ * them to any number of reader threads.
+ * <p>
+ * The tensions are copied into one of two buffers of primitive arrays: the
+ * writer fills the buffer the readers are not pointed at, under the write
+ * lock of its StampedLock, then points the readers at it. A reader copies the
+ * buffer it is pointed at with an optimistic read and retries if the writer
+ * started to overwrite that buffer meanwhile, which takes two publications
+ * during one copy. Neither side ever waits for the other: there is a single
+ * writer (publish must not be called concurrently) and the readers never
+ * take the lock.
+ */
+public class TissueSnapshotPublisher {
+
+    /**
+     * Immutable copy of the tensions published by one call of publish
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final double time;
+        private final double depth;
+        private final double[] n2Tensions;
+        private final double[] he2Tensions;
+
+        private Snapshot(long version, double time, double depth, double[] n2Tensions, double[] he2Tensions) {
+            this.version = version;
+            this.time = time;
+            this.depth = depth;
+            this.n2Tensions = n2Tensions;
+            this.he2Tensions = he2Tensions;
+        }
+
+        /**
+         * Returns the number of the publication, starting at 1
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the depth in m
+         */
+        public double getDepth() {
+            return depth;
+        }
+
+        public int getCompartments() {
+            return n2Tensions.length;
+        }
+
+        /**
+         * Returns the N2 tension of the compartment in bar
+         */
+        public double getN2Tension(int compartment) {
+            return n2Tensions[compartment];
+        }
+
+        /**
+         * Returns the He tension of the compartment in bar
+         */
+        public double getHe2Tension(int compartment) {
+            return he2Tensions[compartment];
+        }
+    }
+
+    private static final class Buffer {
+        final StampedLock lock = new StampedLock();
+        final double[] n2Tensions;
+        final double[] he2Tensions;
+        long version;
+        double time;
+        double depth;
+
+        Buffer(int compartments) {
+            n2Tensions = new double[compartments];
+            he2Tensions = new double[compartments];
+        }
+    }
+
+    private final Buffer[] buffers = new Buffer[2];
+    private volatile int front;
+    private long published;
+    private final LongAdder retries = new LongAdder();
+
+    public TissueSnapshotPublisher(int compartments) {
+        buffers[0] = new Buffer(compartments);
+        buffers[1] = new Buffer(compartments);
+    }
+
+    public int getCompartments() {
+        return buffers[0].n2Tensions.length;
+    }
+
+    /**
+     * Publishes the tensions; called by the writer only
+     *
+     * @param time        time of the tensions
+     * @param depth       depth in m
+     * @param n2Tensions  N2 tensions in bar, copied
+     * @param he2Tensions He tensions in bar, copied
+     */
+    public void publish(double time, double depth, double[] n2Tensions, double[] he2Tensions) {
+        final int back = 1 - front;
+        final Buffer buffer = buffers[back];
+        final long stamp = buffer.lock.writeLock();
+        System.arraycopy(n2Tensions, 0, buffer.n2Tensions, 0, buffer.n2Tensions.length);
+        System.arraycopy(he2Tensions, 0, buffer.he2Tensions, 0, buffer.he2Tensions.length);
+        buffer.version = ++published;
+        buffer.time = time;
+        buffer.depth = depth;
+        buffer.lock.unlockWrite(stamp);
+        front = back;
+    }
+
+    public void publish(double time, double depth, TissueState state) {
+        publish(time, depth, state.getN2Tensions(), state.getHe2Tensions());
+    }
+
+    /**
+     * Returns the version of the last publication, 0 before the first one;
+     * cheap enough to poll
+     */
+    public long getVersion() {
+        while (true) {
+            final Buffer buffer = buffers[front];
+            final long stamp = buffer.lock.tryOptimisticRead();
+            final long version = buffer.version;
+            if (stamp != 0 && buffer.lock.validate(stamp)) {
+                return version;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns a copy of the last published tensions, or null before the first
+     * publication; may be called from any thread
+     */
+    public Snapshot read() {
+        return read(null);
+    }
+
+    /**
+     * Returns a copy of the last published tensions, or the previous snapshot
+     * itself, without copying, if nothing was published since it was read
+     *
+     * @param previous snapshot read before from this publisher, may be null
+     */
+    public Snapshot read(Snapshot previous) {
+        double[] n2Tensions = null;
+        double[] he2Tensions = null;
+        while (true) {
+            final Buffer buffer = buffers[front];
+            final long stamp = buffer.lock.tryOptimisticRead();
+            final long bufferVersion = buffer.version;
+            if ((previous != null && bufferVersion == previous.version) || bufferVersion == 0) {
+                if (stamp != 0 && buffer.lock.validate(stamp)) {
+                    return bufferVersion == 0 ? null : previous;
+                }
+            } else {
+                if (n2Tensions == null) {
+                    n2Tensions = new double[buffer.n2Tensions.length];
+                    he2Tensions = new double[buffer.he2Tensions.length];
+                }
+                System.arraycopy(buffer.n2Tensions, 0, n2Tensions, 0, n2Tensions.length);
+                System.arraycopy(buffer.he2Tensions, 0, he2Tensions, 0, he2Tensions.length);
+                final double time = buffer.time;
+                final double depth = buffer.depth;
+                if (stamp != 0 && buffer.lock.validate(stamp)) {
+                    return new Snapshot(bufferVersion, time, depth, n2Tensions, he2Tensions);
+                }
+            }
+            retries.increment();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns how many copies were retried because the writer overwrote the
+     * buffer being copied
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+}
@@ -0,0 +1,141 @@
+package edu.agh.symulations;
+
+/**
+ * Immutable result of one simulation tick, published by the simulation thread
+ * and shown on the EDT by the {@link RenderPipeline}. The safety alerts are
+ * kept as values; their text is only made when asked for, on the EDT.
+ */
+public final class UiSnapshot {
+    private final double divingTime;
+    private final double depth;
+    private final double[] he2Tensions;
+    private final double[] n2Tensions;
+    private static final double[] NONE = new double[0];
+
+    private final long alertMask;
+    private final double[] alertTensions;
+    private final double[] alertLimits;
+    private final boolean unsafe;
+    private final double ceilingDepth;
+    private final double gf99;
+    private final double surfaceGf;
+    private final double timeToSurface;
+    private String warnsText;
+    private final long createdNanos;
+
+    /**
+     * @param divingTime  time in s
+     * @param depth       depth in m
+     * @param he2Tensions helium tension per compartment in atm, copied
+     * @param n2Tensions  nitrogen tension per compartment in atm, copied
+     * @param alerts      safety alerts after the tick, the active ones are copied
+     * @param readouts      decompression readouts after the tick
+     * @param timeToSurface time to surface in min, NaN if not estimated
+     */
+    public UiSnapshot(double divingTime, double depth, double[] he2Tensions, double[] n2Tensions,
+                      SafetyAlertEngine alerts, DecoReadouts readouts, double timeToSurface) {
+        this.divingTime = divingTime;
+        this.depth = depth;
+        this.he2Tensions = he2Tensions.clone();
+        this.n2Tensions = n2Tensions.clone();
+        this.alertMask = alerts.getActiveMask();
+        if (alertMask == 0) {
+            alertTensions = NONE;
+            alertLimits = NONE;
+        } else {
+            alertTensions = new double[alerts.getCompartments()];
+            alertLimits = new double[alerts.getCompartments()];
+            for (long mask = alertMask; mask != 0; mask &= mask - 1) {
+                final int compartment = Long.numberOfTrailingZeros(mask);
+                alertTensions[compartment] = alerts.getTension(compartment);
+                alertLimits[compartment] = alerts.getLimit(compartment);
+            }
+        }
+        this.unsafe = alerts.wasUnsafe();
+        this.ceilingDepth = readouts.getCeilingDepth();
+        this.gf99 = readouts.getGf99();
+        this.surfaceGf = readouts.getSurfaceGf();
+        this.timeToSurface = timeToSurface;
+        this.createdNanos = System.nanoTime();
+    }
+
+    public double getDivingTime() {
+        return divingTime;
+    }
+
+    public double getDepth() {
+        return depth;
+    }
+
+    public int getCompartments() {
+        return he2Tensions.length;
+    }
+
+    public double getHe2Tension(int compartment) {
+        return he2Tensions[compartment];
+    }
+
+    public double getN2Tension(int compartment) {
+        return n2Tensions[compartment];
+    }
+
+    /**
+     * Returns the mask of the active safety alerts, bit i for compartment i
+     */
+    public long getAlertMask() {
+        return alertMask;
+    }
+
+    /**
+     * Returns the current safety warnings, one per line
+     */
+    public String getWarnsText() {
+        if (warnsText == null) {
+            warnsText = SafetyAlertEngine.formatWarnings(alertMask, alertTensions, alertLimits);
+        }
+        return warnsText;
+    }
+
+    /**
+     * Returns whether the dive has been unsafe at any time
+     */
+    public boolean isUnsafe() {
+        return unsafe;
+    }
+
+    /**
+     * Returns the ceiling in m, see {@link DecoReadouts}
+     */
+    public double getCeilingDepth() {
+        return ceilingDepth;
+    }
+
+    /**
+     * Returns the gradient factor in % at the current depth
+     */
+    public double getGf99() {
+        return gf99;
+    }
+
+    /**
+     * Returns the gradient factor in % the diver would have at the surface
+     */
+    public double getSurfaceGf() {
+        return surfaceGf;
+    }
+
+    /**
+     * Returns the time to surface in min, see {@link TimeToSurfaceEstimator};
+     * NaN if it is not estimated for the diver or no safe ascent was found
+     */
+    public double getTimeToSurface() {
+        return timeToSurface;
+    }
+
+    /**
+     * Returns the System.nanoTime() at which the snapshot was created
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+}
@@ -0,0 +1,647 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.batch;
+
+import net.deepocean.dodeco.calculator.PlanningSession;
+import net.deepocean.dodeco.calculator.Processor;
+import net.deepocean.dodeco.tools.MyXML;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  This class processes a batch of exposure files (as written by
+ *  Processor.saveExposures()) in three stages, each running on its own
+ *  threads:
+ *  <ol>
+ *  <li>parse: the file is read and parsed into a MyXML tree</li>
+ *  <li>calculate: the exposures are processed and the report is
+ *      generated (printExposures())</li>
+ *  <li>report: the report is written to the output directory as
+ *      &lt;file name&gt;.txt</li>
+ *  </ol>
+ *  The stages are connected by bounded queues, so reading and writing
+ *  overlap with the calculations while the number of files in memory
+ *  stays limited. A stage blocks when the queue to the next stage is full.
+ *  Per stage, the number of items, the time busy and the time blocked are
+ *  recorded, as well as the number of items waiting in its input queue.
+ *  Files that fail, including with an Error such as an OutOfMemoryError,
+ *  are reported in &lt;file name&gt;.err; the pipeline goes on with the
+ *  other files.
+ */
+public class ExposurePipeline
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int STAGE_PARSE     =0;
+    public static final int STAGE_CALCULATE =1;
+    public static final int STAGE_REPORT    =2;
+    private static final int NUMBER_OF_STAGES=3;
+
+    private static final String[] STAGE_NAMES={"parse", "calculate", "report"};
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Job
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  A file passing through the pipeline
+     */
+    private static class Job
+    {
+        File        file;
+        MyXML       exposures;
+        String      sReport;
+        String      sError;
+
+        Job(File file)
+        {
+            this.file=file;
+        }
+    }
+
+    /** Marks the end of the input in a queue */
+    private static final Job END_OF_INPUT=new Job(null);
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Stage statistics
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Statistics of one stage. Times are in nanoseconds.
+     */
+    public static class StageStatistics
+    {
+        private String          sName;
+        private int             nThreads;
+        private AtomicLong      items;
+        private AtomicLong      failures;
+        private AtomicLong      busyTime;
+        private AtomicLong      blockedTime;
+        private BlockingQueue<Job> inputQueue;
+
+        StageStatistics(String sName, int nThreads, BlockingQueue<Job> inputQueue)
+        {
+            this.sName      =sName;
+            this.nThreads   =nThreads;
+            this.inputQueue =inputQueue;
+            items           =new AtomicLong();
+            failures        =new AtomicLong();
+            busyTime        =new AtomicLong();
+            blockedTime     =new AtomicLong();
+        }
+
+        public String getName()
+        {
+            return sName;
+        }
+
+        /** Returns the number of items handled by the stage */
+        public long getItems()
+        {
+            return items.get();
+        }
+
+        /** Returns the number of items that failed in the stage */
+        public long getFailures()
+        {
+            return failures.get();
+        }
+
+        /** Returns the summed time the threads of the stage were working */
+        public long getBusyTime()
+        {
+            return busyTime.get();
+        }
+
+        /** Returns the summed time the threads waited for the next stage */
+        public long getBlockedTime()
+        {
+            return blockedTime.get();
+        }
+
+        /** Returns the number of items waiting for this stage */
+        public int getBacklog()
+        {
+            return (inputQueue==null)?0:inputQueue.size();
+        }
+
+        /**
+         *  Returns the throughput of the stage when all its threads
+         *  are busy
+         *  @return Items per second
+         */
+        public double getThroughput()
+        {
+            long lBusy;
+
+            lBusy=busyTime.get();
+            if (lBusy==0)
+            {
+                return 0.0;
+            }
+            return items.get()*nThreads*1.0e9/lBusy;
+        }
+
+        public String toString()
+        {
+            return String.format("%-10s threads %2d  items %6d  failed %4d  busy %8.1f s  blocked %8.1f s  backlog %4d  %8.1f items/s",
+                                 sName, nThreads, items.get(), failures.get(),
+                                 busyTime.get()/1.0e9, blockedTime.get()/1.0e9,
+                                 getBacklog(), getThroughput());
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int                         iAlgorithm;
+    private File                        outputDirectory;
+    private int[]                       nThreads;
+    private int                         iQueueCapacity;
+
+    private BlockingQueue<Job>          parseQueue;
+    private BlockingQueue<Job>          calculateQueue;
+    private BlockingQueue<Job>          reportQueue;
+    private StageStatistics[]           statistics;
+    private Throwable                   failure;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. By default one parse thread, one calculation thread
+     *  per processor and one report thread are used, with queues of 16.
+     *  @param iAlgorithm The decompression algorithm, one of the
+     *                    Processor.ALGORITHM_ constants
+     *  @param outputDirectory Directory the reports are written to
+     */
+    public ExposurePipeline(int iAlgorithm, File outputDirectory)
+    {
+        this.iAlgorithm         =iAlgorithm;
+        this.outputDirectory    =outputDirectory;
+        nThreads                =new int[NUMBER_OF_STAGES];
+        nThreads[STAGE_PARSE]   =1;
+        nThreads[STAGE_CALCULATE]=Runtime.getRuntime().availableProcessors();
+        nThreads[STAGE_REPORT]  =1;
+        iQueueCapacity          =16;
+    }
+
+    /**
+     *  Sets the number of threads of a stage
+     *  @param iStage The stage, one of the STAGE_ constants
+     *  @param nStageThreads Number of threads, at least 1
+     */
+    public void setParallelism(int iStage, int nStageThreads)
+    {
+        nThreads[iStage]=Math.max(1, nStageThreads);
+    }
+
+    /**
+     *  Sets the capacity of the queues between the stages
+     *  @param iCapacity Capacity, at least 1
+     */
+    public void setQueueCapacity(int iCapacity)
+    {
+        iQueueCapacity=Math.max(1, iCapacity);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Running
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  This method processes the files. It returns when all files have
+     *  passed all stages.
+     *  @param files The exposure files
+     *  @exception InterruptedException
+     */
+    public void run(List<File> files) throws InterruptedException
+    {
+        Vector<Thread>  threads;
+        int             i;
+
+        // The parse queue holds all files; the others are bounded
+        parseQueue      =new ArrayBlockingQueue<Job>(files.size()+nThreads[STAGE_PARSE]);
+        calculateQueue  =new ArrayBlockingQueue<Job>(iQueueCapacity);
+        reportQueue     =new ArrayBlockingQueue<Job>(iQueueCapacity);
+
+        statistics=new StageStatistics[NUMBER_OF_STAGES];
+        failure=null;
+        statistics[STAGE_PARSE]     =new StageStatistics(STAGE_NAMES[STAGE_PARSE]    , nThreads[STAGE_PARSE]    , parseQueue);
+        statistics[STAGE_CALCULATE] =new StageStatistics(STAGE_NAMES[STAGE_CALCULATE], nThreads[STAGE_CALCULATE], calculateQueue);
+        statistics[STAGE_REPORT]    =new StageStatistics(STAGE_NAMES[STAGE_REPORT]   , nThreads[STAGE_REPORT]   , reportQueue);
+
+        for (i=0; i<files.size(); i++)
+        {
+            parseQueue.put(new Job(files.get(i)));
+        }
+        for (i=0; i<nThreads[STAGE_PARSE]; i++)
+        {
+            parseQueue.put(END_OF_INPUT);
+        }
+
+        threads=new Vector<Thread>();
+        startStage(STAGE_PARSE    , parseQueue    , calculateQueue, threads);
+        startStage(STAGE_CALCULATE, calculateQueue, reportQueue   , threads);
+        startStage(STAGE_REPORT   , reportQueue   , null          , threads);
+
+        for (i=0; i<threads.size(); i++)
+        {
+            threads.get(i).join();
+        }
+    }
+
+    /**
+     *  Starts the threads of a stage. The last thread of the stage to
+     *  finish passes the end of input on to each thread of the next stage.
+     *  @param iStage The stage
+     *  @param input The input queue
+     *  @param output The output queue, null for the last stage
+     *  @param threads Vector the threads are added to
+     */
+    private void startStage(final int iStage, final BlockingQueue<Job> input,
+                            final BlockingQueue<Job> output, Vector<Thread> threads)
+    {
+        final AtomicInteger running;
+        Thread              thread;
+        int                 i;
+
+        running=new AtomicInteger(nThreads[iStage]);
+        for (i=0; i<nThreads[iStage]; i++)
+        {
+            thread=new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    runStage(iStage, input, output, running);
+                }
+            }, "pipeline-"+STAGE_NAMES[iStage]+"-"+i);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     *  The loop of a stage thread. Whatever happens, the last thread of the
+     *  stage passes the end of input on, so that run() returns. A thread
+     *  that fails outside handle() records the failure (see getFailure())
+     *  and passes the rest of its input on as failed jobs, so that the
+     *  previous stage cannot block on a full queue.
+     */
+    private void runStage(int iStage, BlockingQueue<Job> input, BlockingQueue<Job> output,
+                          AtomicInteger running)
+    {
+        StageStatistics stageStatistics;
+        Job             job;
+        long            lStart;
+        boolean         bFailed;
+
+        stageStatistics=statistics[iStage];
+        try
+        {
+            job=input.take();
+            while (job!=END_OF_INPUT)
+            {
+                lStart=System.nanoTime();
+                // Failed jobs are passed on to the report stage
+                if (job.sError==null || iStage==STAGE_REPORT)
+                {
+                    bFailed=(job.sError!=null);
+                    handle(iStage, job);
+                    if (job.sError!=null && !bFailed)
+                    {
+                        stageStatistics.failures.incrementAndGet();
+                    }
+                }
+                stageStatistics.items.incrementAndGet();
+                stageStatistics.busyTime.addAndGet(System.nanoTime()-lStart);
+
+                if (output!=null)
+                {
+                    lStart=System.nanoTime();
+                    output.put(job);
+                    stageStatistics.blockedTime.addAndGet(System.nanoTime()-lStart);
+                }
+                job=input.take();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable e)
+        {
+            setFailure(e);
+            drain(iStage, input, output, e);
+        }
+        finally
+        {
+            if (running.decrementAndGet()==0 && output!=null)
+            {
+                endInput(iStage+1, output);
+            }
+        }
+    }
+
+    /**
+     *  Passes the jobs left in the input of a failed stage thread on as
+     *  failed jobs, until the end of input
+     */
+    private void drain(int iStage, BlockingQueue<Job> input, BlockingQueue<Job> output, Throwable failure)
+    {
+        Job job;
+
+        try
+        {
+            job=input.take();
+            while (job!=END_OF_INPUT)
+            {
+                if (job.sError==null)
+                {
+                    job.sError=STAGE_NAMES[iStage]+": "+failure;
+                    job.exposures=null;
+                    statistics[iStage].failures.incrementAndGet();
+                }
+                if (output!=null)
+                {
+                    output.put(job);
+                }
+                job=input.take();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     *  Puts the end of input for each thread of the stage, even if the
+     *  current thread is interrupted
+     */
+    private void endInput(int iStage, BlockingQueue<Job> queue)
+    {
+        boolean bInterrupted;
+        int     i;
+
+        bInterrupted=Thread.interrupted();
+        for (i=0; i<nThreads[iStage]; i++)
+        {
+            while (true)
+            {
+                try
+                {
+                    queue.put(END_OF_INPUT);
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    bInterrupted=true;
+                }
+            }
+        }
+        if (bInterrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     *  Performs the work of a stage for a job. Errors are stored in the job;
+     *  the following stages pass it on to the report stage. This includes
+     *  Errors such as an OutOfMemoryError while parsing a large file: the
+     *  job releases its data and only that file fails.
+     *  @param iStage The stage
+     *  @param job The job
+     */
+    private void handle(int iStage, Job job)
+    {
+        try
+        {
+            switch (iStage)
+            {
+                case STAGE_PARSE:
+                    parse(job);
+                    break;
+                case STAGE_CALCULATE:
+                    calculate(job);
+                    break;
+                case STAGE_REPORT:
+                    report(job);
+                    break;
+            }
+        }
+        catch (Throwable e)
+        {
+            job.sError=STAGE_NAMES[iStage]+": "+e;
+            job.exposures=null;
+            job.sReport=null;
+            if (iStage==STAGE_REPORT)
+            {
+                System.err.println("Error writing report for "+job.file+": "+e.getMessage());
+            }
+        }
+    }
+
+    private void parse(Job job) throws Exception
+    {
+        BufferedReader reader;
+
+        reader=new BufferedReader(new FileReader(job.file));
+        try
+        {
+            job.exposures=new MyXML(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private void calculate(Job job) throws Exception
+    {
+        PlanningSession session;
+        StringWriter    writer;
+
+        session=PlanningSession.forCurrentThread();
+        session.newSequence();
+        session.setDecoAlgorithm(iAlgorithm);
+        session.loadExposures(job.exposures);
+        session.process();
+
+        writer=new StringWriter();
+        session.printExposures(writer);
+
+        job.sReport     =writer.toString();
+        job.exposures   =null;
+    }
+
+    private void report(Job job) throws IOException
+    {
+        String  sName;
+        Writer  writer;
+
+        sName=job.file.getName();
+        if (sName.endsWith(".xml"))
+        {
+            sName=sName.substring(0, sName.length()-4);
+        }
+        if (job.sError==null)
+        {
+            writer=new BufferedWriter(new FileWriter(new File(outputDirectory, sName+".txt")));
+            try
+            {
+                writer.write(job.sReport);
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        else
+        {
+            writer=new BufferedWriter(new FileWriter(new File(outputDirectory, sName+".err")));
+            try
+            {
+                writer.write(job.sError);
+                writer.write('\n');
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        job.sReport=null;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the statistics of a stage. May be called while the
+     *  pipeline is running.
+     *  @param iStage The stage, one of the STAGE_ constants
+     *  @return The statistics or null if the pipeline has not been run
+     */
+    public StageStatistics getStatistics(int iStage)
+    {
+        return (statistics==null)?null:statistics[iStage];
+    }
+
+    /**
+     *  Returns the first failure of a stage thread outside the handling of
+     *  a file, which ended that thread; failures of files are reported in
+     *  their .err file instead
+     *  @return The failure or null
+     */
+    public synchronized Throwable getFailure()
+    {
+        return failure;
+    }
+
+    private synchronized void setFailure(Throwable failure)
+    {
+        if (this.failure==null)
+        {
+            this.failure=failure;
+        }
+    }
+
+    /**
+     *  Prints the statistics of all stages
+     *  @param writer The writer to print to
+     */
+    public void printStatistics(PrintWriter writer)
+    {
+        int i;
+
+        if (statistics!=null)
+        {
+            for (i=0; i<NUMBER_OF_STAGES; i++)
+            {
+                writer.println(statistics[i]);
+            }
+        }
+        writer.flush();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Processes all .xml files in a directory.
+     *  Usage: ExposurePipeline inputDir outputDir [parseThreads calcThreads reportThreads [queueCapacity]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ExposurePipeline    pipeline;
+        File[]              files;
+        long                lStart;
+
+        if (args.length<2)
+        {
+            System.err.println("Usage: ExposurePipeline inputDir outputDir [parseThreads calcThreads reportThreads [queueCapacity]]");
+            return;
+        }
+
+        files=new File(args[0]).listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String sName)
+            {
+                return sName.endsWith(".xml");
+            }
+        });
+        if (files==null)
+        {
+            System.err.println("Not a directory: "+args[0]);
+            return;
+        }
+        Arrays.sort(files);
+
+        pipeline=new ExposurePipeline(Processor.ALGORITHM_VPMB, new File(args[1]));
+        if (args.length>4)
+        {
+            pipeline.setParallelism(STAGE_PARSE    , Integer.parseInt(args[2]));
+            pipeline.setParallelism(STAGE_CALCULATE, Integer.parseInt(args[3]));
+            pipeline.setParallelism(STAGE_REPORT   , Integer.parseInt(args[4]));
+        }
+        if (args.length>5)
+        {
+            pipeline.setQueueCapacity(Integer.parseInt(args[5]));
+        }
+
+        lStart=System.nanoTime();
+        pipeline.run(Arrays.asList(files));
+        System.out.println(files.length+" files in "+(System.nanoTime()-lStart)/1000000+" ms");
+        pipeline.printStatistics(new PrintWriter(System.out));
+        if (pipeline.getFailure()!=null)
+        {
+            System.err.println("Pipeline thread failed: "+pipeline.getFailure());
+        }
+    }
+}
@@ -14,7 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -145,6 +147,26 @@ public class Acclimatisation extends Exposure
     
     
 
+    /**
+     *  This method returns the segment of the ascent (or descent) to the
+     *  acclimatisation height
+     *  @return The ascent segment
+     */
+    public VaryingHeightSegment getAscentSegment()
+    {
+        return ascentSegment;
+    }
+
+    /**
+     *  This method returns the segment of the stay at the acclimatisation
+     *  height
+     *  @return The acclimatisation segment
+     */
+    public ConstantHeightSegment getAcclimatiseSegment()
+    {
+        return acclimatiseSegment;
+    }
+
     /**
      *  This method return the initial height abouve sealevel at which the Acclimatisation
      *  starts.
@@ -257,6 +279,19 @@ public class Acclimatisation extends Exposure
        
         return xmlAcclimatisation;
     }    
+
+    /**
+     *  This method writes the XML representation of the Acclimatisation to
+     *  the writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("Acclimatisation");
+        ascentSegment.writeXmlRepresentation(writer);
+        acclimatiseSegment.writeXmlRepresentation(writer);
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
@@ -14,6 +14,7 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -154,6 +155,25 @@ public class ConstantDepthSegment extends DepthSegment
 
     }
 
+    /** Applies the exposure of this segment to all compartments of the
+     *  TissueState (haldane equation)
+     *  @param          state The tissue state to be updated
+     *  @exception CalculationException
+     */
+    public void exposeTissueState(TissueState state)
+                throws CalculationException
+    {
+        if (fExposurePeriod<0.0)
+        {
+            throw new CalculationException("Negative time value");
+        }
+
+        state.exposeToConstantPressure(ambientPressureAtStart.getValue(Pressure.UNITS_BAR),
+                                       gasMixture.getN2Fraction(),
+                                       gasMixture.getHe2Fraction(),
+                                       fExposurePeriod);
+    }
+
 
 
     
@@ -246,6 +266,26 @@ public class ConstantDepthSegment extends DepthSegment
         
         return xmlSegment;
     }    
+
+    /**
+     *  This method writes the XML representation of the Segment to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("StayAtDepth");
+
+        writer.startElement("Depth");
+        diveDepthAtStart.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.element("PeriodInMinutes", this.fExposurePeriod);
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
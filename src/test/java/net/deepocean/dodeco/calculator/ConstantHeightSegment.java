@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 /**
  *   This class represents an surface segment. During the stay
@@ -150,6 +153,25 @@ public class ConstantHeightSegment extends HeightSegment
         tissuePressure.setValue(fTissuePressure, Pressure.UNITS_BAR);
 
     }
+
+    /** Applies the exposure of this segment to all compartments of the
+     *  TissueState (haldane equation)
+     *  @param          state The tissue state to be updated
+     *  @exception CalculationException
+     */
+    public void exposeTissueState(TissueState state)
+                throws CalculationException
+    {
+        if (fExposurePeriod<0.0)
+        {
+            throw new CalculationException("Negative time value");
+        }
+
+        state.exposeToConstantPressure(ambientPressureAtStart.getValue(Pressure.UNITS_BAR),
+                                       gasMixture.getN2Fraction(),
+                                       gasMixture.getHe2Fraction(),
+                                       fExposurePeriod);
+    }
     
     
     /*------------------------------------------------------------------------------------------------*\
@@ -176,6 +198,26 @@ public class ConstantHeightSegment extends HeightSegment
         
         return xmlSegment;
     }    
+
+    /**
+     *  This method writes the XML representation of the Segment to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("StayAtHeight");
+
+        writer.startElement("Height");
+        heightAtStart.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.element("PeriodInMinutes", this.fExposurePeriod);
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
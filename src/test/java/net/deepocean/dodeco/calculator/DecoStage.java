@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 /**
  *  This class speficies a decompression stage. A decompression
@@ -148,6 +151,36 @@ public class DecoStage
         xmlDecoStage.addElement(gasMixture.getXmlRepresentation());
         return xmlDecoStage;
     }     
+
+    /**
+     *  This method writes the XML representation of the DecoStage to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("DecompressionStage");
+
+        writer.startElement("StartDepth");
+        startDepth.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("EndDepth");
+        endDepth.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("AscentRate");
+        ascentRate.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("DecompressionStepSize");
+        decoStepSize.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the GasMixture.
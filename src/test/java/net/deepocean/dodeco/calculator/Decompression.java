@@ -246,6 +246,37 @@ public abstract class Decompression {
         return this.decoStages;
     }
 
+    /**
+     * This method returns the decompression segments calculated by the
+     * last call to decompressDiver(): the computed deco schedule.
+     *
+     * @return Vector containing the DepthSegment instances.
+     */
+    public Vector<DepthSegment> getDecoSegments() {
+        return this.decoSegments;
+    }
+
+    /**
+     * This method returns the depth at which the leading compartment
+     * enters the decompression zone, as calculated by the last call to
+     * decompressDiver().
+     *
+     * @return The depth or null if no decompression has been calculated
+     */
+    public Length getStartOfDecoZoneDepth() {
+        return this.startOfDecoZoneDepth;
+    }
+
+    /**
+     * This method returns the deepest possible decompression stop, as
+     * calculated by the last call to decompressDiver().
+     *
+     * @return The depth or null if no decompression has been calculated
+     */
+    public Length getDeepestDecoStopDepth() {
+        return this.deepestDecoStopDepth;
+    }
+
     /**
      * This method sets a new Vector of decostages
      *
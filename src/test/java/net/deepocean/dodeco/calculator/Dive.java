@@ -14,6 +14,7 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -89,6 +90,24 @@ public class Dive extends Exposure
         diveSegments.clear();
     }
 
+    /**
+     * This method reinitialises the dive, so that the instance can be
+     * reused for a new dive: segments and decompression stages are removed
+     * and the description and dive height are set. The decompression
+     * algorithm is kept.
+     * @param sDescription A description of the dive.
+     * @param diveHeight   Height at which the dive takes place
+     */
+    public void resetDive(String sDescription, Length diveHeight)
+    {
+        diveSegments.clear();
+        gasMixtures.clear();
+        decompression.getDecoStages().clear();
+        decompression.resetDecompression();
+        this.sDescription=sDescription;
+        this.diveHeight.equalsLength(diveHeight);
+    }
+
     /**
      *  This method resets the state of the Exposure, so that 
      *  it can be (re)used for exposing a Diver to it
@@ -116,6 +135,15 @@ public class Dive extends Exposure
         this.decompression.setDecoStages(decoStages);
     }
     
+    /**
+     *  This method returns the decompression of this dive
+     *  @return The decompression
+     */
+    public Decompression getDecompression()
+    {
+        return decompression;
+    }
+
     /**
      * This method sets the dive height (i.e. height of the surface)
      * @param diveHeight The dive heigth.
@@ -659,6 +687,16 @@ public class Dive extends Exposure
     {
         return diveSegments;
     }
+
+    /**
+     *  Returns the gas mixtures used during the dive and decompression, as
+     *  listed by createGasMixtureList()
+     *  @return The gas mixtures
+     */
+    public Vector<GasMixture> getGasMixtures()
+    {
+        return gasMixtures;
+    }
     
 
 
@@ -717,6 +755,47 @@ public class Dive extends Exposure
         
         return xmlDive;
     }    
+
+    /**
+     *  This method writes the XML representation of the Dive to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        Enumeration         segments;
+        DepthSegment        segment;
+        Enumeration         stages;
+        DecoStage           stage;
+
+        writer.startElement("Dive");
+
+        writer.element("Description", sDescription);
+
+        writer.startElement("DiveHeight");
+        diveHeight.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("DiveSegments");
+        segments=diveSegments.elements();
+        while (segments.hasMoreElements())
+        {
+            segment=(DepthSegment)segments.nextElement();
+            segment.writeXmlRepresentation(writer);
+        }
+        writer.endElement();
+
+        writer.startElement("DecompressionStages");
+        stages=decompression.getDecoStages().elements();
+        while (stages.hasMoreElements())
+        {
+            stage=(DecoStage)stages.nextElement();
+            stage.writeXmlRepresentation(writer);
+        }
+        writer.endElement();
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Dive.
@@ -198,6 +198,24 @@ public class Diver
         } 
     }
 
+    /**
+     * This method resets all tissue compartments of the diver to their
+     * initial state, without creating new objects. After this the diver
+     * is the same as a newly constructed Diver.
+     */
+    public void resetDiver()
+    {
+        TissueCompartment   compartment;
+        Enumeration         elements;
+
+        elements=tissueCompartments.elements();
+        while (elements.hasMoreElements())
+        {
+            compartment=(TissueCompartment)elements.nextElement();
+            compartment.resetCompartment();
+        }
+    }
+
     /**
      * This method resets the phase volume time.
      */
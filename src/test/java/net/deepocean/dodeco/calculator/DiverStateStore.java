@@ -0,0 +1,621 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Vector;
+
+/**
+ *  This class stores the tissue state of a large number of divers outside
+ *  the Java heap, in direct ByteBuffers. Per quantity (N2 tension, He2
+ *  tension, crushing pressures, critical radii) there is one buffer, in
+ *  which the values of one diver are stored consecutively
+ *  (diver 0 compartment 0..15, diver 1 compartment 0..15, ...), so that
+ *  the exposure kernels scan the buffers sequentially.
+ *  Next to the tissue state, each diver has its own ambient pressure,
+ *  ambient pressure change rate and breathing gas. The method advance()
+ *  exposes all divers to their own conditions for one time step.
+ *  Values can be stored as double or, to halve the memory use, as float.
+ *  Pressures are in bar, radii in meter, time in minutes.
+ *  Crushing pressures and radii are only stored; they are not updated by
+ *  the kernels.
+ *  The main() method measures the heap, the direct memory and the
+ *  throughput of advance() for an increasing number of divers in both
+ *  precisions. The default of 10^6 divers needs 1.2 GB of direct memory,
+ *  see -XX:MaxDirectMemorySize.
+ *  Usage: DiverStateStore [maximum number of divers]
+ */
+public class DiverStateStore
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int PRECISION_DOUBLE    =1;
+    public static final int PRECISION_FLOAT     =2;
+
+    public static final int FIELD_N2_TENSION            =0;
+    public static final int FIELD_HE2_TENSION           =1;
+    public static final int FIELD_N2_CRUSHING_PRESSURE  =2;
+    public static final int FIELD_HE2_CRUSHING_PRESSURE =3;
+    public static final int FIELD_N2_CRITICAL_RADIUS    =4;
+    public static final int FIELD_HE2_CRITICAL_RADIUS   =5;
+    private static final int NUMBER_OF_FIELDS           =6;
+
+    private static final int DIVER_AMBIENT_PRESSURE     =0;
+    private static final int DIVER_PRESSURE_CHANGE_RATE =1;
+    private static final int DIVER_N2_FRACTION          =2;
+    private static final int DIVER_HE2_FRACTION         =3;
+    private static final int NUMBER_OF_DIVER_FIELDS     =4;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int             nDivers;
+    private int             nCompartments;
+    private int             iPrecision;
+
+    /** Tissue state buffers, one of the two arrays is used depending on precision */
+    private DoubleBuffer[]  doubleFields;
+    private FloatBuffer[]   floatFields;
+
+    /** Per diver conditions, always double */
+    private DoubleBuffer[]  diverFields;
+
+    private double[]        fN2K;
+    private double[]        fHe2K;
+
+    /** Decay factors exp(-k*t) for the last time step used */
+    private double[]        fN2Factor;
+    private double[]        fHe2Factor;
+    private double          fFactorPeriod;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction and reinitialising
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Allocates the buffers for the given number of divers.
+     *  The compartments are defined by Parameters. Tensions are initialised
+     *  to 0.0, radii to the initial critical radii.
+     *  @param nDivers Number of divers
+     *  @param iPrecision PRECISION_DOUBLE or PRECISION_FLOAT
+     *  @exception IllegalActionException if the number of divers does not
+     *             fit the buffers
+     */
+    public DiverStateStore(int nDivers, int iPrecision) throws IllegalActionException
+    {
+        int     iBytes;
+        int     iField;
+        long    lBytes;
+        int     i;
+
+        if (iPrecision!=PRECISION_DOUBLE && iPrecision!=PRECISION_FLOAT)
+        {
+            throw new IllegalActionException("Illegal precision");
+        }
+
+        this.nDivers        =nDivers;
+        this.nCompartments  =Parameters.nCompartments;
+        this.iPrecision     =iPrecision;
+
+        iBytes=(iPrecision==PRECISION_DOUBLE)?8:4;
+        lBytes=(long)nDivers*nCompartments*iBytes;
+        if (nDivers<0 || lBytes>Integer.MAX_VALUE)
+        {
+            throw new IllegalActionException("Number of divers out of range");
+        }
+
+        if (iPrecision==PRECISION_DOUBLE)
+        {
+            doubleFields=new DoubleBuffer[NUMBER_OF_FIELDS];
+            for (iField=0; iField<NUMBER_OF_FIELDS; iField++)
+            {
+                doubleFields[iField]=allocate((int)lBytes).asDoubleBuffer();
+            }
+        }
+        else
+        {
+            floatFields=new FloatBuffer[NUMBER_OF_FIELDS];
+            for (iField=0; iField<NUMBER_OF_FIELDS; iField++)
+            {
+                floatFields[iField]=allocate((int)lBytes).asFloatBuffer();
+            }
+        }
+
+        diverFields=new DoubleBuffer[NUMBER_OF_DIVER_FIELDS];
+        for (iField=0; iField<NUMBER_OF_DIVER_FIELDS; iField++)
+        {
+            diverFields[iField]=allocate(nDivers*8).asDoubleBuffer();
+        }
+
+        fN2K        =new double[nCompartments];
+        fHe2K       =new double[nCompartments];
+        fN2Factor   =new double[nCompartments];
+        fHe2Factor  =new double[nCompartments];
+        fFactorPeriod=Double.NaN;
+
+        i=0;
+        while (i<nCompartments)
+        {
+            fN2K[i] =Math.log(2.0)/Parameters.fHalfTimeN2[i];
+            fHe2K[i]=Math.log(2.0)/Parameters.fHalfTimeHe2[i];
+            i++;
+        }
+
+        i=0;
+        while (i<nDivers*nCompartments)
+        {
+            put(FIELD_N2_CRITICAL_RADIUS , i, Parameters.initialCriticalRadiusN2.getValue(Length.UNITS_METER));
+            put(FIELD_HE2_CRITICAL_RADIUS, i, Parameters.initialCriticalRadiusHe2.getValue(Length.UNITS_METER));
+            i++;
+        }
+    }
+
+    /**
+     *  Allocates a direct buffer in native byte order
+     *  @param iBytes Size in bytes
+     *  @return The buffer
+     */
+    private static ByteBuffer allocate(int iBytes)
+    {
+        return ByteBuffer.allocateDirect(iBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get and set information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the number of divers in the store
+     *  @return The number of divers
+     */
+    public int getNumberOfDivers()
+    {
+        return nDivers;
+    }
+
+    public int getNumberOfCompartments()
+    {
+        return nCompartments;
+    }
+
+    public int getPrecision()
+    {
+        return iPrecision;
+    }
+
+    /**
+     *  Returns the number of bytes allocated outside the heap
+     *  @return Number of bytes
+     */
+    public long getOffHeapSize()
+    {
+        return (long)nDivers*nCompartments*NUMBER_OF_FIELDS*((iPrecision==PRECISION_DOUBLE)?8:4)+
+               (long)nDivers*NUMBER_OF_DIVER_FIELDS*8;
+    }
+
+    /**
+     *  Returns a value of the tissue state
+     *  @param iField The field, one of the FIELD_ constants
+     *  @param iDiver The diver index
+     *  @param iCompartment The compartment index
+     *  @return The value in bar or meter
+     */
+    public double getValue(int iField, int iDiver, int iCompartment)
+    {
+        return get(iField, iDiver*nCompartments+iCompartment);
+    }
+
+    /**
+     *  Sets a value of the tissue state
+     *  @param iField The field, one of the FIELD_ constants
+     *  @param iDiver The diver index
+     *  @param iCompartment The compartment index
+     *  @param fValue The value in bar or meter
+     */
+    public void setValue(int iField, int iDiver, int iCompartment, double fValue)
+    {
+        put(iField, iDiver*nCompartments+iCompartment, fValue);
+    }
+
+    /**
+     *  This method sets the conditions the diver is exposed to during
+     *  the following time steps.
+     *  @param iDiver The diver index
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fPressureChangeRate Change of ambient pressure in bar/min,
+     *                             0.0 for a constant depth
+     *  @param gasMixture The breathing gas
+     */
+    public void setConditions(int iDiver, double fAmbientPressure, double fPressureChangeRate,
+                              GasMixture gasMixture)
+    {
+        diverFields[DIVER_AMBIENT_PRESSURE    ].put(iDiver, fAmbientPressure);
+        diverFields[DIVER_PRESSURE_CHANGE_RATE].put(iDiver, fPressureChangeRate);
+        diverFields[DIVER_N2_FRACTION         ].put(iDiver, gasMixture.getN2Fraction());
+        diverFields[DIVER_HE2_FRACTION        ].put(iDiver, gasMixture.getHe2Fraction());
+    }
+
+    /**
+     *  Returns the current ambient pressure of the diver
+     *  @param iDiver The diver index
+     *  @return The ambient pressure in bar
+     */
+    public double getAmbientPressure(int iDiver)
+    {
+        return diverFields[DIVER_AMBIENT_PRESSURE].get(iDiver);
+    }
+
+    /**
+     *  This method copies the tissue state of a Diver into the store
+     *  @param iDiver The diver index in the store
+     *  @param diver The diver
+     */
+    public void load(int iDiver, Diver diver)
+    {
+        Vector<TissueCompartment>   compartments;
+        TissueCompartment           compartment;
+        int                         iIndex;
+        int                         i;
+
+        compartments=diver.getCompartments();
+        iIndex=iDiver*nCompartments;
+        i=0;
+        while (i<nCompartments)
+        {
+            compartment=compartments.get(i);
+            put(FIELD_N2_TENSION           , iIndex, compartment.getN2TissueTension().getValue(Pressure.UNITS_BAR));
+            put(FIELD_HE2_TENSION          , iIndex, compartment.getHe2TissueTension().getValue(Pressure.UNITS_BAR));
+            put(FIELD_N2_CRUSHING_PRESSURE , iIndex, compartment.getN2MaxCrushingPressure().getValue(Pressure.UNITS_BAR));
+            put(FIELD_HE2_CRUSHING_PRESSURE, iIndex, compartment.getHe2MaxCrushingPressure().getValue(Pressure.UNITS_BAR));
+            put(FIELD_N2_CRITICAL_RADIUS   , iIndex, compartment.getN2AdjustedCriticalRadius().getValue(Length.UNITS_METER));
+            put(FIELD_HE2_CRITICAL_RADIUS  , iIndex, compartment.getHe2AdjustedCriticalRadius().getValue(Length.UNITS_METER));
+            iIndex++;
+            i++;
+        }
+    }
+
+    /**
+     *  This method copies the tissue state in the store to a Diver
+     *  @param iDiver The diver index in the store
+     *  @param diver The diver
+     */
+    public void store(int iDiver, Diver diver)
+    {
+        Vector<TissueCompartment>   compartments;
+        TissueCompartment           compartment;
+        int                         iIndex;
+        int                         i;
+
+        compartments=diver.getCompartments();
+        iIndex=iDiver*nCompartments;
+        i=0;
+        while (i<nCompartments)
+        {
+            compartment=compartments.get(i);
+            compartment.getN2TissueTension()        .setValue(get(FIELD_N2_TENSION           , iIndex), Pressure.UNITS_BAR);
+            compartment.getHe2TissueTension()       .setValue(get(FIELD_HE2_TENSION          , iIndex), Pressure.UNITS_BAR);
+            compartment.getN2MaxCrushingPressure()  .setValue(get(FIELD_N2_CRUSHING_PRESSURE , iIndex), Pressure.UNITS_BAR);
+            compartment.getHe2MaxCrushingPressure() .setValue(get(FIELD_HE2_CRUSHING_PRESSURE, iIndex), Pressure.UNITS_BAR);
+            compartment.getN2AdjustedCriticalRadius() .setValue(get(FIELD_N2_CRITICAL_RADIUS , iIndex), Length.UNITS_METER);
+            compartment.getHe2AdjustedCriticalRadius().setValue(get(FIELD_HE2_CRITICAL_RADIUS, iIndex), Length.UNITS_METER);
+            iIndex++;
+            i++;
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Calculation
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  This method exposes all divers to their conditions for one time step.
+     *  @param fPeriod The time step in minutes
+     */
+    public void advance(double fPeriod)
+    {
+        advance(0, nDivers, fPeriod);
+    }
+
+    /**
+     *  This method exposes a range of divers to their conditions for one
+     *  time step. Divers at constant ambient pressure are updated using
+     *  the Haldane equation, divers at changing pressure using the
+     *  Schreiner equation. The ambient pressure of the divers is advanced.
+     *  Disjoint ranges may be advanced by different threads, provided the
+     *  time step is the same.
+     *  @param iFirstDiver Index of the first diver
+     *  @param iNumberOfDivers Number of divers
+     *  @param fPeriod The time step in minutes
+     */
+    public void advance(int iFirstDiver, int iNumberOfDivers, double fPeriod)
+    {
+        int     iDiver;
+        int     iLastDiver;
+        double  fAmbientPressure;
+        double  fRate;
+        double  fN2Fraction;
+        double  fHe2Fraction;
+
+        updateFactors(fPeriod);
+
+        iLastDiver=iFirstDiver+iNumberOfDivers;
+        for (iDiver=iFirstDiver; iDiver<iLastDiver; iDiver++)
+        {
+            fAmbientPressure    =diverFields[DIVER_AMBIENT_PRESSURE    ].get(iDiver);
+            fRate               =diverFields[DIVER_PRESSURE_CHANGE_RATE].get(iDiver);
+            fN2Fraction         =diverFields[DIVER_N2_FRACTION         ].get(iDiver);
+            fHe2Fraction        =diverFields[DIVER_HE2_FRACTION        ].get(iDiver);
+
+            if (fRate==0.0)
+            {
+                haldane(FIELD_N2_TENSION , iDiver, Tools.alveolarPressure(fAmbientPressure, fN2Fraction) , fN2Factor);
+                haldane(FIELD_HE2_TENSION, iDiver, Tools.alveolarPressure(fAmbientPressure, fHe2Fraction), fHe2Factor);
+            }
+            else
+            {
+                schreiner(FIELD_N2_TENSION , iDiver, Tools.alveolarPressure(fAmbientPressure, fN2Fraction),
+                          fRate*fN2Fraction , fPeriod, fN2K , fN2Factor);
+                schreiner(FIELD_HE2_TENSION, iDiver, Tools.alveolarPressure(fAmbientPressure, fHe2Fraction),
+                          fRate*fHe2Fraction, fPeriod, fHe2K, fHe2Factor);
+                diverFields[DIVER_AMBIENT_PRESSURE].put(iDiver, fAmbientPressure+fRate*fPeriod);
+            }
+        }
+    }
+
+    /**
+     *  Recalculates the decay factors if the time step changed.
+     *  @param fPeriod The time step in minutes
+     */
+    private synchronized void updateFactors(double fPeriod)
+    {
+        if (fPeriod!=fFactorPeriod)
+        {
+            TissueKernels.decayFactors(fN2K , fPeriod, fN2Factor , nCompartments);
+            TissueKernels.decayFactors(fHe2K, fPeriod, fHe2Factor, nCompartments);
+            fFactorPeriod=fPeriod;
+        }
+    }
+
+    /**
+     *  Haldane equation for the compartments of one diver
+     */
+    private void haldane(int iField, int iDiver, double fAlvPressure, double[] fFactor)
+    {
+        int     iIndex;
+        int     i;
+        double  fTension;
+
+        iIndex=iDiver*nCompartments;
+        if (iPrecision==PRECISION_DOUBLE)
+        {
+            DoubleBuffer buffer=doubleFields[iField];
+            for (i=0; i<nCompartments; i++)
+            {
+                fTension=buffer.get(iIndex+i);
+                buffer.put(iIndex+i, fAlvPressure+(fTension-fAlvPressure)*fFactor[i]);
+            }
+        }
+        else
+        {
+            FloatBuffer buffer=floatFields[iField];
+            for (i=0; i<nCompartments; i++)
+            {
+                fTension=buffer.get(iIndex+i);
+                buffer.put(iIndex+i, (float)(fAlvPressure+(fTension-fAlvPressure)*fFactor[i]));
+            }
+        }
+    }
+
+    /**
+     *  Schreiner equation for the compartments of one diver
+     */
+    private void schreiner(int iField, int iDiver, double fAlvPressure, double fAlvRate,
+                           double fPeriod, double[] fK, double[] fFactor)
+    {
+        int     iIndex;
+        int     i;
+        double  fTension;
+
+        iIndex=iDiver*nCompartments;
+        if (iPrecision==PRECISION_DOUBLE)
+        {
+            DoubleBuffer buffer=doubleFields[iField];
+            for (i=0; i<nCompartments; i++)
+            {
+                fTension=buffer.get(iIndex+i);
+                buffer.put(iIndex+i, fAlvPressure+fAlvRate*(fPeriod-1.0/fK[i])-
+                                     (fAlvPressure-fTension-fAlvRate/fK[i])*fFactor[i]);
+            }
+        }
+        else
+        {
+            FloatBuffer buffer=floatFields[iField];
+            for (i=0; i<nCompartments; i++)
+            {
+                fTension=buffer.get(iIndex+i);
+                buffer.put(iIndex+i, (float)(fAlvPressure+fAlvRate*(fPeriod-1.0/fK[i])-
+                                             (fAlvPressure-fTension-fAlvRate/fK[i])*fFactor[i]));
+            }
+        }
+    }
+
+    private double get(int iField, int iIndex)
+    {
+        if (iPrecision==PRECISION_DOUBLE)
+        {
+            return doubleFields[iField].get(iIndex);
+        }
+        return floatFields[iField].get(iIndex);
+    }
+
+    private void put(int iField, int iIndex, double fValue)
+    {
+        if (iPrecision==PRECISION_DOUBLE)
+        {
+            doubleFields[iField].put(iIndex, fValue);
+        }
+        else
+        {
+            floatFields[iField].put(iIndex, (float)fValue);
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Measurement
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the heap in use after garbage collection; collects until the
+     *  heap in use no longer decreases
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime;
+        long    lUsed;
+        long    lPrevious;
+        int     i;
+
+        runtime =Runtime.getRuntime();
+        lUsed   =Long.MAX_VALUE;
+        i       =0;
+        do
+        {
+            lPrevious=lUsed;
+            System.gc();
+            lUsed=runtime.totalMemory()-runtime.freeMemory();
+            i++;
+        }
+        while (lUsed<lPrevious && i<10);
+        return lUsed;
+    }
+
+    /**
+     *  Returns the memory used by the direct buffers of the JVM, or -1 if
+     *  it cannot be measured. Direct buffers are freed some time after
+     *  they have been collected, so this waits until the memory in use no
+     *  longer decreases.
+     */
+    private static long usedDirectMemory() throws InterruptedException
+    {
+        BufferPoolMXBean    direct;
+        long                lUsed;
+        long                lPrevious;
+        int                 i;
+
+        direct=null;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if (pool.getName().equals("direct"))
+            {
+                direct=pool;
+            }
+        }
+        if (direct==null)
+        {
+            return -1;
+        }
+        lUsed   =Long.MAX_VALUE;
+        i       =0;
+        do
+        {
+            lPrevious=lUsed;
+            System.gc();
+            Thread.sleep(20);
+            lUsed=direct.getMemoryUsed();
+            i++;
+        }
+        while (lUsed<lPrevious && i<10);
+        return lUsed;
+    }
+
+    /**
+     *  Measures one store: heap and direct memory growth by creating it and
+     *  the throughput of advance(), half of the divers at constant depth
+     *  (Haldane) and half descending (Schreiner)
+     */
+    private static void measure(int nDivers, int iPrecision, boolean bReport)
+                        throws IllegalActionException, InterruptedException
+    {
+        DiverStateStore store;
+        GasMixture      gas;
+        long            lBaseHeap;
+        long            lBaseDirect;
+        long            lHeap;
+        long            lDirect;
+        long            lStart;
+        long            lNanos;
+        int             nSteps;
+        int             iDiver;
+        int             i;
+
+        gas         =new GasMixture(0.21, 0.0);
+        lBaseDirect =usedDirectMemory();
+        lBaseHeap   =usedHeap();
+        store       =new DiverStateStore(nDivers, iPrecision);
+        lHeap       =usedHeap()-lBaseHeap;
+        lDirect     =usedDirectMemory()-lBaseDirect;
+
+        for (iDiver=0; iDiver<nDivers; iDiver++)
+        {
+            store.setConditions(iDiver, 1.0+iDiver%50*0.1, (iDiver%2==0)?0.0:1.8, gas);
+        }
+
+        // About 10^7 diver steps per measurement, after a warm-up of a tenth
+        nSteps      =Math.max(5, 10000000/nDivers);
+        for (i=0; i<Math.max(1, nSteps/10); i++)
+        {
+            store.advance(0.1);
+        }
+        lStart      =System.nanoTime();
+        for (i=0; i<nSteps; i++)
+        {
+            store.advance(0.1);
+        }
+        lNanos      =System.nanoTime()-lStart;
+
+        if (bReport)
+        {
+            System.out.println(String.format("%9d %-6s  heap %8d bytes  direct %10d bytes (expected %10d)  %6.1f M diver steps/s",
+                                             nDivers, (iPrecision==PRECISION_DOUBLE)?"double":"float",
+                                             lHeap, lDirect, store.getOffHeapSize(),
+                                             (double)nDivers*nSteps*1.0e3/lNanos));
+        }
+    }
+
+    /**
+     *  Usage: DiverStateStore [maximum number of divers]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int nMaxDivers;
+        int nDivers;
+
+        nMaxDivers  =(args.length>0)?Integer.parseInt(args[0]):1000000;
+
+        System.out.println("Heap "+Runtime.getRuntime().maxMemory()/1048576+" MB, "+
+                           Parameters.nCompartments+" compartments");
+        // Warm-up, so that class loading and compilation are not measured
+        measure(1000, PRECISION_DOUBLE, false);
+        measure(1000, PRECISION_FLOAT , false);
+        nDivers=1000;
+        while (nDivers<=nMaxDivers)
+        {
+            measure(nDivers, PRECISION_DOUBLE, true);
+            measure(nDivers, PRECISION_FLOAT , true);
+            nDivers*=10;
+        }
+    }
+}
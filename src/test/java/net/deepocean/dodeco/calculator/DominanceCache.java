@@ -0,0 +1,791 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *  This class is an in memory cache of calculated schedules that can
+ *  answer a request with the schedule of a dominating dive: a dive that is
+ *  at least as deep at every moment and lasts at least as long, on the
+ *  same gases. Since the decompression obligation grows with depth and
+ *  time, such a schedule is a conservative answer. It is used by the
+ *  Processor in the conservative reuse mode only
+ *  (Processor.setConservativeReuse()), and results obtained this way are
+ *  flagged (Processor.isResultApproximate()).
+ *  <p>
+ *  Only sequences ending with a Dive whose segments all use one gas are
+ *  cached. The rest of the sequence has to be identical: the exposures
+ *  before the dive, the dive height, the gas, the deco stages (except the
+ *  start depth of the first one, which usually is the bottom depth), the
+ *  algorithm and the Parameters together form the context of a dive
+ *  (a SHA-256 digest). Within a context, the dive profile (the dive
+ *  segments, depth as a function of time) is compared. The requested
+ *  profile is held at its final depth until the end of the cached profile;
+ *  the cached profile dominates if it is nowhere shallower. Note that the
+ *  monotonicity is an assumption of this mode: it holds for the tissue
+ *  loading, but e.g. VPM critical radii depend on the maximum depth as well.
+ *  Therefore only the algorithms for which it holds are cached (see
+ *  isMonotone()): the plain ZHL-16 algorithms. With gradient factors,
+ *  which are anchored to the first stop, and with the bubble models a
+ *  dominating dive may get a shorter schedule.
+ *  <p>
+ *  Per context the profiles are indexed in a k-d tree over four features
+ *  that cannot decrease under dominance: maximum depth, dive time,
+ *  depth-time integral and final depth. Each node keeps the maxima of
+ *  its subtree and the minimum run time of the schedules in it. A query
+ *  visits subtrees best first by that run time, skips subtrees that
+ *  cannot contain a dominating profile and verifies candidates exactly,
+ *  so the dominating schedule with the shortest run time is found. Only
+ *  schedules that are at most a maximum excess deeper and longer are
+ *  used (see setMaximumExcess()); subtrees are skipped on their minima
+ *  as well.
+ *  <p>
+ *  The cache is thread safe.
+ */
+public class DominanceCache
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int     DEFAULT_MAX_ENTRIES =10000;
+    /** Default maximum excess of the maximum depth (m) and dive time (min),
+     *  like the steps of a dive table */
+    public static final double  DEFAULT_DEPTH_EXCESS=3.0;
+    public static final double  DEFAULT_TIME_EXCESS =5.0;
+
+    private static final int    FEATURE_MAX_DEPTH   =0;
+    private static final int    FEATURE_DIVE_TIME   =1;
+    private static final int    FEATURE_AREA        =2;
+    private static final int    FEATURE_END_DEPTH   =3;
+    private static final int    NUMBER_OF_FEATURES  =4;
+
+    /** Tolerance for comparing depths (m) and times (min) */
+    private static final double TOLERANCE           =1.0e-9;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Signature
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  The signature of an exposure sequence ending with a dive: the
+     *  context and the profile of the dive
+     */
+    public static class Signature
+    {
+        private ByteBuffer  context;
+        /** Profile break points: time (min) and depth (m) */
+        private double[]    times;
+        private double[]    depths;
+        private double[]    features;
+
+        private Signature(byte[] context, double[] times, double[] depths)
+        {
+            int     i;
+
+            this.context=ByteBuffer.wrap(context);
+            this.times  =times;
+            this.depths =depths;
+
+            features=new double[NUMBER_OF_FEATURES];
+            features[FEATURE_DIVE_TIME]=times[times.length-1];
+            features[FEATURE_END_DEPTH]=depths[depths.length-1];
+            for (i=0; i<depths.length; i++)
+            {
+                features[FEATURE_MAX_DEPTH]=Math.max(features[FEATURE_MAX_DEPTH], depths[i]);
+                if (i>0)
+                {
+                    features[FEATURE_AREA]+=0.5*(depths[i-1]+depths[i])*(times[i]-times[i-1]);
+                }
+            }
+        }
+
+        /**
+         *  Returns the dive time: the duration of the dive segments
+         *  @return The time in minutes
+         */
+        public double getDiveTime()
+        {
+            return features[FEATURE_DIVE_TIME];
+        }
+
+        public double getMaximumDepth()
+        {
+            return features[FEATURE_MAX_DEPTH];
+        }
+
+        /**
+         *  Returns the depth of the profile at time fTime; after the
+         *  profile the final depth
+         */
+        private double depthAt(double fTime)
+        {
+            int iLow;
+            int iHigh;
+            int iMiddle;
+
+            if (fTime>=times[times.length-1])
+            {
+                return depths[depths.length-1];
+            }
+            if (fTime<=times[0])
+            {
+                return depths[0];
+            }
+            iLow    =0;
+            iHigh   =times.length-1;
+            while (iHigh-iLow>1)
+            {
+                iMiddle=(iLow+iHigh)>>>1;
+                if (times[iMiddle]<=fTime)
+                {
+                    iLow=iMiddle;
+                }
+                else
+                {
+                    iHigh=iMiddle;
+                }
+            }
+            return depths[iLow]+(depths[iHigh]-depths[iLow])*(fTime-times[iLow])/(times[iHigh]-times[iLow]);
+        }
+
+        /**
+         *  Returns whether this profile dominates the other one: it lasts
+         *  at least as long and is nowhere shallower than the other profile,
+         *  held at its final depth. Both are piecewise linear, so it
+         *  suffices to compare at the break points of both.
+         *  @param other The other signature, with the same context
+         *  @return True if dominating
+         */
+        public boolean dominates(Signature other)
+        {
+            int i;
+
+            if (times[times.length-1]+TOLERANCE<other.times[other.times.length-1])
+            {
+                return false;
+            }
+            for (i=0; i<times.length; i++)
+            {
+                if (depths[i]+TOLERANCE<other.depthAt(times[i]))
+                {
+                    return false;
+                }
+            }
+            for (i=0; i<other.times.length; i++)
+            {
+                if (depthAt(other.times[i])+TOLERANCE<other.depths[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         *  Returns whether a profile with the feature maxima and minima
+         *  may dominate this one within the excess
+         */
+        private boolean mayDominate(double[] maxima, double[] minima, double fDepthExcess, double fTimeExcess)
+        {
+            int i;
+
+            for (i=0; i<NUMBER_OF_FEATURES; i++)
+            {
+                if (maxima[i]+TOLERANCE<features[i])
+                {
+                    return false;
+                }
+            }
+            return minima[FEATURE_MAX_DEPTH]<=features[FEATURE_MAX_DEPTH]+fDepthExcess+TOLERANCE &&
+                   minima[FEATURE_DIVE_TIME]<=features[FEATURE_DIVE_TIME]+fTimeExcess+TOLERANCE;
+        }
+    }
+
+    /**
+     *  Returns whether the schedule of a dominating dive is never shorter
+     *  under the algorithm, i.e. whether its schedules may be reused. This
+     *  holds for the plain ZHL-16 algorithms: the tensions grow with depth
+     *  and time and the M-value ceilings with the tensions, and main()
+     *  found no shorter schedule. It does not hold for ZHL-16B with
+     *  gradient factors, VPM, VPM-B and RGBM, for which main() found
+     *  shorter schedules.
+     *  @param iAlgorithm The algorithm (Processor.ALGORITHM_ constant)
+     *  @return True if dominating schedules may be reused
+     */
+    public static boolean isMonotone(int iAlgorithm)
+    {
+        return iAlgorithm==Processor.ALGORITHM_BUHLMANNA ||
+               iAlgorithm==Processor.ALGORITHM_BUHLMANNB ||
+               iAlgorithm==Processor.ALGORITHM_BUHLMANNC;
+    }
+
+    /**
+     *  Creates the signature of the exposure sequence
+     *  @param exposures The exposures; the last one must be a Dive
+     *  @param iAlgorithm The algorithm (Processor.ALGORITHM_ constant)
+     *  @return The signature or null if the sequence cannot be cached:
+     *          the algorithm is not monotone, the sequence does not start
+     *          with a Saturation (its schedules would depend on the state
+     *          of the diver before it), it does not end with a dive or the
+     *          dive segments use more than one gas
+     */
+    public static Signature createSignature(Vector<Exposure> exposures, int iAlgorithm)
+    {
+        Dive                    dive;
+        Vector<DepthSegment>    segments;
+        DepthSegment            segment;
+        GasMixture              gas;
+        MessageDigest           digest;
+        DigestOutputStream      digestStream;
+        DataOutputStream        out;
+        MyXMLWriter             xmlWriter;
+        Enumeration<DecoStage>  elements;
+        DecoStage               stage;
+        boolean                 bFirst;
+        double[]                times;
+        double[]                depths;
+        int                     i;
+
+        if (!isMonotone(iAlgorithm) || !Processor.startsWithSaturation(exposures) ||
+            exposures.lastElement().getClass()!=Dive.class)
+        {
+            return null;
+        }
+        dive    =(Dive)exposures.lastElement();
+        segments=dive.getDiveSegments();
+        if (segments.size()==0)
+        {
+            return null;
+        }
+
+        gas     =segments.get(0).getGasMixture();
+        times   =new double[segments.size()+1];
+        depths  =new double[segments.size()+1];
+        depths[0]=segments.get(0).getDepthAtStart().getValue(Length.UNITS_METER);
+        for (i=0; i<segments.size(); i++)
+        {
+            segment=segments.get(i);
+            if (segment.getGasMixture().getO2Fraction()!=gas.getO2Fraction() ||
+                segment.getGasMixture().getHe2Fraction()!=gas.getHe2Fraction())
+            {
+                return null;
+            }
+            times[i+1]  =times[i]+segment.getExposurePeriod();
+            depths[i+1] =segment.getDepthAtEnd().getValue(Length.UNITS_METER);
+        }
+
+        try
+        {
+            digest      =MessageDigest.getInstance("SHA-256");
+            digestStream=new DigestOutputStream(new OutputStream()
+            {
+                public void write(int b)
+                {
+                }
+
+                public void write(byte[] buffer, int iOffset, int iLength)
+                {
+                }
+            }, digest);
+            out         =new DataOutputStream(digestStream);
+            out.writeInt(iAlgorithm);
+            Parameters.writeSnapshot(out);
+            out.writeInt(exposures.size());
+            out.writeDouble(dive.getDiveHeight().getValue(Length.UNITS_METER));
+            out.writeDouble(gas.getO2Fraction());
+            out.writeDouble(gas.getHe2Fraction());
+            out.flush();
+
+            xmlWriter   =new MyXMLWriter(new OutputStreamWriter(digestStream, "UTF-8"));
+            for (i=0; i<exposures.size()-1; i++)
+            {
+                exposures.get(i).writeXmlRepresentation(xmlWriter);
+            }
+            xmlWriter.flush();
+
+            // The first deco stage usually starts at the bottom depth,
+            // which is part of the profile rather than of the context
+            elements    =dive.getDecoStages().elements();
+            bFirst      =true;
+            while (elements.hasMoreElements())
+            {
+                stage=elements.nextElement();
+                if (!bFirst)
+                {
+                    out.writeDouble(stage.getStartDepth().getValue(Length.UNITS_METER));
+                }
+                out.writeDouble(stage.getEndDepth().getValue(Length.UNITS_METER));
+                out.writeDouble(stage.getAscentRate().getValue(Length.UNITS_METER));
+                out.writeDouble(stage.getDecoStepSize().getValue(Length.UNITS_METER));
+                out.writeDouble(stage.getGasMixture().getO2Fraction());
+                out.writeDouble(stage.getGasMixture().getHe2Fraction());
+                bFirst=false;
+            }
+            out.flush();
+            return new Signature(digest.digest(), times, depths);
+        }
+        catch (Exception e)
+        {
+            // Not representable
+            return null;
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * K-d tree
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  A node of the tree: one cached schedule
+     */
+    private static class Node
+    {
+        Signature               signature;
+        Vector<ExposureResult>  results;
+        /** Run time at the end of the schedule */
+        double                  fRunTime;
+        int                     iSplit;
+        Node                    left;
+        Node                    right;
+        /** Feature maxima and minima and minimum run time of the subtree */
+        double[]                maxima;
+        double[]                minima;
+        double                  fMinRunTime;
+
+        Node(Signature signature, Vector<ExposureResult> results, double fRunTime, int iSplit)
+        {
+            this.signature  =signature;
+            this.results    =results;
+            this.fRunTime   =fRunTime;
+            this.iSplit     =iSplit;
+            this.maxima     =signature.features.clone();
+            this.minima     =signature.features.clone();
+            this.fMinRunTime=fRunTime;
+        }
+    }
+
+    /**
+     *  Entry of the search queue: a subtree (bSubtree) keyed by its
+     *  minimum run time or a node keyed by its own run time
+     */
+    private static class Candidate implements Comparable<Candidate>
+    {
+        Node    node;
+        boolean bSubtree;
+        double  fKey;
+
+        Candidate(Node node, boolean bSubtree)
+        {
+            this.node       =node;
+            this.bSubtree   =bSubtree;
+            this.fKey       =bSubtree?node.fMinRunTime:node.fRunTime;
+        }
+
+        public int compareTo(Candidate other)
+        {
+            return Double.compare(fKey, other.fKey);
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private HashMap<ByteBuffer, Node>   trees;
+    private int                         nMaxEntries;
+    private int                         nEntries;
+    private double                      fDepthExcess;
+    private double                      fTimeExcess;
+    private ReentrantReadWriteLock      lock;
+
+    private AtomicLong                  hits;
+    private AtomicLong                  misses;
+    private AtomicLong                  nodesVisited;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param nMaxEntries Maximum number of schedules; when reached, no
+     *                     schedules are added anymore
+     */
+    public DominanceCache(int nMaxEntries)
+    {
+        this.nMaxEntries=nMaxEntries;
+        fDepthExcess    =DEFAULT_DEPTH_EXCESS;
+        fTimeExcess     =DEFAULT_TIME_EXCESS;
+        trees           =new HashMap<ByteBuffer, Node>();
+        lock            =new ReentrantReadWriteLock();
+        hits            =new AtomicLong();
+        misses          =new AtomicLong();
+        nodesVisited    =new AtomicLong();
+    }
+
+    /**
+     *  Constructor. Creates a cache with the default maximum size.
+     */
+    public DominanceCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     *  Sets how much deeper and longer a dominating dive may be
+     *  @param fDepthExcess Maximum excess of the maximum depth in meters
+     *  @param fTimeExcess Maximum excess of the dive time in minutes
+     */
+    public void setMaximumExcess(double fDepthExcess, double fTimeExcess)
+    {
+        this.fDepthExcess=fDepthExcess;
+        this.fTimeExcess =fTimeExcess;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Looking up and storing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Adds the results of a calculated sequence
+     *  @param signature The signature of the sequence
+     *  @param results The results; the cache keeps a copy of the list
+     */
+    public void put(Signature signature, Vector<ExposureResult> results)
+    {
+        Node    node;
+        Node    parent;
+        Node    newNode;
+        int     iDepth;
+        int     i;
+
+        if (results.size()==0)
+        {
+            return;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if (nEntries>=nMaxEntries)
+            {
+                return;
+            }
+            node    =trees.get(signature.context);
+            iDepth  =0;
+            parent  =null;
+            while (node!=null)
+            {
+                // Identical profile already present
+                if (node.signature.dominates(signature) && signature.dominates(node.signature))
+                {
+                    return;
+                }
+                parent=node;
+                node=(signature.features[node.iSplit]<node.signature.features[node.iSplit])?node.left:node.right;
+                iDepth++;
+            }
+
+            newNode=new Node(signature, new Vector<ExposureResult>(results),
+                             getEndOfSchedule(results.lastElement()), iDepth%NUMBER_OF_FEATURES);
+            if (parent==null)
+            {
+                trees.put(signature.context, newNode);
+            }
+            else if (signature.features[parent.iSplit]<parent.signature.features[parent.iSplit])
+            {
+                parent.left=newNode;
+            }
+            else
+            {
+                parent.right=newNode;
+            }
+
+            // Update the subtree maxima and minimum run time along the path
+            node=trees.get(signature.context);
+            while (node!=newNode)
+            {
+                for (i=0; i<NUMBER_OF_FEATURES; i++)
+                {
+                    node.maxima[i]=Math.max(node.maxima[i], signature.features[i]);
+                    node.minima[i]=Math.min(node.minima[i], signature.features[i]);
+                }
+                node.fMinRunTime=Math.min(node.fMinRunTime, newNode.fRunTime);
+                node=(signature.features[node.iSplit]<node.signature.features[node.iSplit])?node.left:node.right;
+            }
+            nEntries++;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Finds the schedule of the dominating profile with the shortest run
+     *  time
+     *  @param signature The signature of the requested sequence
+     *  @return The results of the dominating sequence or null if none
+     */
+    public Vector<ExposureResult> findDominating(Signature signature)
+    {
+        PriorityQueue<Candidate>    queue;
+        Candidate                   candidate;
+        Node                        node;
+        Node                        root;
+        long                        nVisited;
+
+        lock.readLock().lock();
+        try
+        {
+            root=trees.get(signature.context);
+            if (root==null)
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+            queue   =new PriorityQueue<Candidate>();
+            queue.add(new Candidate(root, true));
+            nVisited=0;
+            while ((candidate=queue.poll())!=null)
+            {
+                node=candidate.node;
+                if (!candidate.bSubtree)
+                {
+                    if (node.signature.dominates(signature))
+                    {
+                        nodesVisited.addAndGet(nVisited);
+                        hits.incrementAndGet();
+                        return new Vector<ExposureResult>(node.results);
+                    }
+                    continue;
+                }
+                nVisited++;
+                if (!signature.mayDominate(node.maxima, node.minima, fDepthExcess, fTimeExcess))
+                {
+                    continue;
+                }
+                if (signature.mayDominate(node.signature.features, node.signature.features,
+                                          fDepthExcess, fTimeExcess))
+                {
+                    queue.add(new Candidate(node, false));
+                }
+                if (node.left!=null)
+                {
+                    queue.add(new Candidate(node.left, true));
+                }
+                if (node.right!=null)
+                {
+                    queue.add(new Candidate(node.right, true));
+                }
+            }
+            nodesVisited.addAndGet(nVisited);
+            misses.incrementAndGet();
+            return null;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *  Returns the run time at the end of the decompression of the result,
+     *  or at the end of the exposure if it has no decompression
+     *  @param result The result
+     *  @return The run time in minutes
+     */
+    public static double getEndOfSchedule(ExposureResult result)
+    {
+        ExposureResult.SegmentTable decoTable;
+
+        decoTable=result.getDecoTable();
+        if (decoTable!=null && decoTable.size()>0)
+        {
+            return decoTable.getRunTime(decoTable.size()-1);
+        }
+        return result.getRunTime();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    public int getNumberOfEntries()
+    {
+        return nEntries;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     *  Returns the statistics as JSON
+     *  @return The JSON text
+     */
+    public String toJson()
+    {
+        long nQueries;
+
+        nQueries=hits.get()+misses.get();
+        return "{\"entries\":"+nEntries+
+               ",\"contexts\":"+trees.size()+
+               ",\"hits\":"+hits.get()+
+               ",\"misses\":"+misses.get()+
+               ",\"meanNodesVisited\":"+((nQueries>0)?nodesVisited.get()/nQueries:0)+"}";
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Creates a recreational plan: saturation and a dive on air to the
+     *  depth, descending at 18 m/min, staying until the bottom time
+     */
+    private static void createPlan(Processor processor, double fDepth, double fBottomTime)
+                        throws IllegalActionException
+    {
+        GasMixture  air;
+        Dive        dive;
+        Length      surface;
+        Length      depth;
+
+        surface =new Length(0.0, Length.UNITS_METER);
+        depth   =new Length(fDepth, Length.UNITS_METER);
+        air     =new GasMixture(0.21, 0.0);
+        processor.newSequence();
+        dive    =new Dive("Recreational dive", surface);
+        dive.addVaryingDepthSegment(surface, depth, new Length(18.0, Length.UNITS_METER), air);
+        dive.addConstantDepthSegment(depth, fBottomTime-fDepth/18.0, air);
+        dive.addDecoStage(depth, surface, new Length(-9.0, Length.UNITS_METER), air,
+                          new Length(3.0, Length.UNITS_METER));
+        processor.addExposure(dive);
+    }
+
+    /**
+     *  Measures the share of recreational requests answered by a
+     *  dominating schedule, and the cost of that in run time.
+     *  Requests have a random depth (10-40 m, 0.1 m resolution) and
+     *  bottom time (20-60 min, 1 min resolution); every reused schedule
+     *  is compared with the exact calculation. For comparison all
+     *  requests are calculated as well.
+     *  Usage: DominanceCache [requests [algorithm [depthExcess timeExcess]]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Processor       processor;
+        Processor       reference;
+        DominanceCache  cache;
+        Random          random;
+        double          fDepth;
+        double          fBottomTime;
+        double          fExtra;
+        double          fMaxExtra;
+        long            lStart;
+        long            lNanos;
+        long            lPlainNanos;
+        int             nRequests;
+        int             nCalculated;
+        int             nChecked;
+        int             nShorter;
+        int             i;
+
+        nRequests   =(args.length>0)?Integer.parseInt(args[0]):5000;
+        processor   =new Processor();
+        reference   =new Processor();
+        processor.setDecoAlgorithm((args.length>1)?Integer.parseInt(args[1]):Processor.ALGORITHM_BUHLMANNB);
+        reference.setDecoAlgorithm((args.length>1)?Integer.parseInt(args[1]):Processor.ALGORITHM_BUHLMANNB);
+        cache       =new DominanceCache();
+        if (args.length>3)
+        {
+            cache.setMaximumExcess(Double.parseDouble(args[2]), Double.parseDouble(args[3]));
+        }
+        processor.setDominanceCache(cache);
+        processor.setConservativeReuse(true);
+
+        // The same requests, all calculated
+        random  =new Random(1);
+        lStart  =System.nanoTime();
+        for (i=0; i<nRequests; i++)
+        {
+            fDepth      =10.0+Math.round(random.nextDouble()*300.0)/10.0;
+            fBottomTime =20.0+random.nextInt(41);
+            createPlan(reference, fDepth, fBottomTime);
+            reference.process();
+        }
+        lPlainNanos=System.nanoTime()-lStart;
+
+        random      =new Random(1);
+        nCalculated =0;
+        nChecked    =0;
+        nShorter    =0;
+        fExtra      =0.0;
+        fMaxExtra   =0.0;
+        lNanos      =0;
+        for (i=0; i<nRequests; i++)
+        {
+            fDepth      =10.0+Math.round(random.nextDouble()*300.0)/10.0;
+            fBottomTime =20.0+random.nextInt(41);
+            createPlan(processor, fDepth, fBottomTime);
+            lStart=System.nanoTime();
+            processor.process();
+            lNanos+=System.nanoTime()-lStart;
+            if (!processor.isResultApproximate())
+            {
+                nCalculated++;
+            }
+            else
+            {
+                createPlan(reference, fDepth, fBottomTime);
+                reference.process();
+                fExtra      +=getEndOfSchedule(processor.getResults().lastElement())-
+                              getEndOfSchedule(reference.getResults().lastElement());
+                fMaxExtra   =Math.max(fMaxExtra, getEndOfSchedule(processor.getResults().lastElement())-
+                                                 getEndOfSchedule(reference.getResults().lastElement()));
+                if (getEndOfSchedule(processor.getResults().lastElement())<
+                    getEndOfSchedule(reference.getResults().lastElement()))
+                {
+                    nShorter++;
+                }
+                nChecked++;
+            }
+        }
+        System.out.println(String.format("%d requests: %d calculated, %d (%.1f %%) answered by a dominating schedule",
+                                         nRequests, nCalculated, nRequests-nCalculated,
+                                         100.0*(nRequests-nCalculated)/nRequests));
+        System.out.println(String.format("Time %.1f ms (all calculated: %.1f ms), %s",
+                                         lNanos/1.0e6, lPlainNanos/1.0e6, cache.toJson()));
+        if (nChecked>0)
+        {
+            System.out.println(String.format("Checked %d: run time %.2f min longer on average, %.2f at most, "+
+                                             "%d shorter than the exact schedule",
+                                             nChecked, fExtra/nChecked, fMaxExtra, nShorter));
+        }
+    }
+}
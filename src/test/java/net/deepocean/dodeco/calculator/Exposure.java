@@ -14,6 +14,7 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -79,4 +80,16 @@ public abstract class Exposure
         
         return element;
     }
+
+    /**
+     *  This method writes the XML representation of the Exposure to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("ExposureSegment");
+        writer.element("Empty", "Empty");
+        writer.endElement();
+    }
 }
\ No newline at end of file
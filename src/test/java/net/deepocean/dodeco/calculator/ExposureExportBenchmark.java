@@ -0,0 +1,123 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import net.deepocean.dodeco.tools.MyXML;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ *  This class compares the throughput of exporting an exposure list
+ *  through the MyXML tree (getXmlRepresentation() and serialize()) with
+ *  writing it directly with the MyXMLWriter. The exposures are read from
+ *  a file and processed first, so the decompression stages are exported
+ *  as well. Both exports are written to temporary files, which are
+ *  compared afterwards.
+ *  Usage: ExposureExportBenchmark file [repetitions]
+ */
+public class ExposureExportBenchmark
+{
+    /**
+     *  Returns the number of bytes allocated by the current thread, or -1
+     *  if the JVM does not support measuring it
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean;
+
+        bean=ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void report(String sName, long lNanos, long lAllocated, File file)
+    {
+        System.out.println(String.format("%-10s %8.1f ms  %8.1f MB/s  allocated %8.1f MB",
+                                         sName, lNanos/1.0e6, file.length()/1.048576/(lNanos/1.0e3),
+                                         lAllocated/1048576.0));
+    }
+
+    /**
+     *  Usage: ExposureExportBenchmark file [repetitions]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Processor           processor;
+        File                treeFile;
+        File                streamFile;
+        PrintWriter         printWriter;
+        FileOutputStream    outputStream;
+        MyXMLWriter         writer;
+        MyXML               root;
+        long                lStart;
+        long                lAllocated;
+        int                 nRepetitions;
+        int                 i;
+
+        if (args.length<1)
+        {
+            System.err.println("Usage: ExposureExportBenchmark file [repetitions]");
+            return;
+        }
+        nRepetitions=(args.length>1)?Integer.parseInt(args[1]):3;
+
+        processor=new Processor();
+        processor.setDecoAlgorithm(Processor.ALGORITHM_VPMB);
+        processor.loadExposures(new File(args[0]));
+        processor.process();
+        System.out.println(processor.getExposures().size()+" exposures");
+
+        treeFile    =File.createTempFile("export-tree", ".xml");
+        streamFile  =File.createTempFile("export-stream", ".xml");
+        treeFile.deleteOnExit();
+        streamFile.deleteOnExit();
+
+        for (i=0; i<nRepetitions; i++)
+        {
+            lAllocated  =allocatedBytes();
+            lStart      =System.nanoTime();
+            printWriter =new PrintWriter(new BufferedWriter(new FileWriter(treeFile)));
+            root        =processor.getXmlRepresentation();
+            root.serialize(printWriter);
+            printWriter.close();
+            report("tree", System.nanoTime()-lStart, allocatedBytes()-lAllocated, treeFile);
+            root        =null;
+
+            lAllocated  =allocatedBytes();
+            lStart      =System.nanoTime();
+            outputStream=new FileOutputStream(streamFile);
+            writer      =new MyXMLWriter(outputStream.getChannel());
+            writer.startDocument();
+            processor.writeXmlRepresentation(writer);
+            writer.endDocument();
+            writer.close();
+            report("streaming", System.nanoTime()-lStart, allocatedBytes()-lAllocated, streamFile);
+        }
+
+        System.out.println("Output identical: "+
+                           Arrays.equals(Files.readAllBytes(treeFile.toPath()),
+                                         Files.readAllBytes(streamFile.toPath())));
+    }
+}
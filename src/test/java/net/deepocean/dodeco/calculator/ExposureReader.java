@@ -0,0 +1,297 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import net.deepocean.dodeco.tools.MyXML;
+import net.deepocean.dodeco.tools.MyXML.MyXMLEncodingException;
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLPullParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ *  This class reads the exposures from an exposure list XML document
+ *  (as written by Processor.saveExposures()) one at a time. Only the XML
+ *  tree of the exposure being read is held in memory, so exposure files
+ *  containing thousands of dives can be processed while the file is
+ *  being read (see Processor.processExposures()).
+ */
+public class ExposureReader
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private MyXMLPullParser     parser;
+    private boolean             bStarted;
+    private boolean             bFinished;
+    private int                 nExposuresRead;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param reader The reader supplying the ExposureList document
+     */
+    public ExposureReader(Reader reader)
+    {
+        parser          =new MyXMLPullParser(reader);
+        bStarted        =false;
+        bFinished       =false;
+        nExposuresRead  =0;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Reading
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Reads the next exposure. Elements that do not represent an exposure
+     *  are skipped.
+     *  @return The exposure or null if all exposures have been read
+     *  @exception MyXMLException if the document is not a valid exposure list
+     *  @exception IllegalActionException if an exposure is not valid
+     *  @exception IOException
+     */
+    public Exposure nextExposure() throws MyXMLException, IllegalActionException, IOException
+    {
+        Exposure    exposure;
+        int         iEvent;
+
+        exposure=null;
+        try
+        {
+            if (!bStarted)
+            {
+                // Position on the root element
+                iEvent=parser.next();
+                while (iEvent!=MyXMLPullParser.START_ELEMENT && iEvent!=MyXMLPullParser.END_DOCUMENT)
+                {
+                    iEvent=parser.next();
+                }
+                if (iEvent!=MyXMLPullParser.START_ELEMENT)
+                {
+                    throw new MyXMLException("Empty exposure list document");
+                }
+                bStarted=true;
+            }
+
+            while (exposure==null && !bFinished)
+            {
+                iEvent=parser.next();
+                if (iEvent==MyXMLPullParser.START_ELEMENT)
+                {
+                    exposure=createExposure(parser.readElement());
+                }
+                else if (iEvent==MyXMLPullParser.END_ELEMENT || iEvent==MyXMLPullParser.END_DOCUMENT)
+                {
+                    bFinished=true;
+                }
+            }
+        }
+        catch (MyXMLEncodingException e)
+        {
+            throw new MyXMLException(e.getMessage());
+        }
+
+        if (exposure!=null)
+        {
+            nExposuresRead++;
+        }
+        return exposure;
+    }
+
+    /**
+     *  This method creates the exposure from its XML representation
+     *  @param element The XML representation of the exposure
+     *  @return The exposure or null if the element does not represent an
+     *          exposure
+     *  @exception MyXMLException if the representation is not valid
+     *  @exception IllegalActionException if the exposure is not valid
+     */
+    public static Exposure createExposure(MyXML element) throws MyXMLException, IllegalActionException
+    {
+        String      tag;
+        Exposure    exposure;
+
+        tag=element.getTag();
+        if (tag.equals("Saturation"))
+        {
+            exposure=new Saturation(element);
+        }
+        else if (tag.equals("Dive"))
+        {
+            exposure=new Dive(element);
+        }
+        else if (tag.equals("SurfaceInterval"))
+        {
+            exposure=new SurfaceInterval(element);
+        }
+        else if (tag.equals("Acclimatisation"))
+        {
+            exposure=new Acclimatisation(element);
+        }
+        else
+        {
+            exposure=null;
+        }
+        return exposure;
+    }
+
+    /**
+     *  Returns the number of exposures read so far
+     *  @return The number of exposures
+     */
+    public int getNumberOfExposuresRead()
+    {
+        return nExposuresRead;
+    }
+
+    /**
+     *  Closes the underlying reader
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        parser.close();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Compares loading an exposure file through the MyXML tree with
+     *  streaming it through the ExposureReader. Both load all exposures
+     *  into a Processor; the time and the heap in use at the end of loading
+     *  are reported, with the exposures kept in both cases, so the
+     *  difference is the tree the DOM path holds while it creates the
+     *  exposures. Reported as well are streaming without keeping the
+     *  exposures and processing and printing each exposure while reading.
+     *  Usage: ExposureReader file [repetitions]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File            file;
+        Processor       processor;
+        ExposureReader  reader;
+        MyXML           root;
+        Writer          nullWriter;
+        long            lStart;
+        long            lHeap;
+        long            lBaseHeap;
+        int             nExposures;
+        int             nRepetitions;
+        int             i;
+
+        if (args.length<1)
+        {
+            System.err.println("Usage: ExposureReader file [repetitions]");
+            return;
+        }
+        file        =new File(args[0]);
+        nRepetitions=(args.length>1)?Integer.parseInt(args[1]):3;
+        nullWriter  =new Writer()
+        {
+            public void write(char[] buffer, int iOffset, int iLength)
+            {
+            }
+            public void flush()
+            {
+            }
+            public void close()
+            {
+            }
+        };
+
+        System.out.println("File: "+file+" ("+file.length()/1024/1024+" MB)");
+        for (i=0; i<nRepetitions; i++)
+        {
+            lBaseHeap   =usedHeap();
+
+            // DOM: build the complete tree, then the exposures; the tree is
+            // alive until all exposures have been created
+            processor   =new Processor();
+            lStart      =System.nanoTime();
+            root        =new MyXML(new BufferedReader(new FileReader(file)));
+            processor.loadExposures(root);
+            lHeap       =usedHeap()-lBaseHeap;
+            System.out.println("DOM                 : "+(System.nanoTime()-lStart)/1000000+" ms, "+
+                               processor.getExposures().size()+" exposures kept, heap "+lHeap/1024/1024+" MB");
+            root        =null;
+            processor   =null;
+
+            // Streaming: the exposures are created while reading
+            lBaseHeap   =usedHeap();
+            processor   =new Processor();
+            lStart      =System.nanoTime();
+            processor.loadExposures(file);
+            lHeap       =usedHeap()-lBaseHeap;
+            System.out.println("Streaming           : "+(System.nanoTime()-lStart)/1000000+" ms, "+
+                               processor.getExposures().size()+" exposures kept, heap "+lHeap/1024/1024+" MB");
+            processor   =null;
+
+            // Streaming, each exposure discarded after reading
+            lBaseHeap   =usedHeap();
+            lStart      =System.nanoTime();
+            reader      =new ExposureReader(new FileReader(file));
+            nExposures  =0;
+            while (reader.nextExposure()!=null)
+            {
+                nExposures++;
+            }
+            reader.close();
+            lHeap       =usedHeap()-lBaseHeap;
+            System.out.println("Streaming, discarded: "+(System.nanoTime()-lStart)/1000000+" ms, "+
+                               nExposures+" exposures, heap "+lHeap/1024/1024+" MB");
+
+            // Streaming while processing and printing each exposure
+            processor   =new Processor();
+            lStart      =System.nanoTime();
+            reader      =new ExposureReader(new FileReader(file));
+            nExposures  =processor.processExposures(reader, nullWriter, false);
+            reader.close();
+            System.out.println("Processing          : "+(System.nanoTime()-lStart)/1000000+" ms, "+
+                               nExposures+" exposures processed");
+        }
+    }
+
+    /**
+     *  Returns the heap in use after garbage collection; collects until the
+     *  heap in use no longer decreases
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime;
+        long    lUsed;
+        long    lPrevious;
+        int     i;
+
+        runtime =Runtime.getRuntime();
+        lUsed   =Long.MAX_VALUE;
+        i       =0;
+        do
+        {
+            lPrevious=lUsed;
+            System.gc();
+            lUsed=runtime.totalMemory()-runtime.freeMemory();
+            i++;
+        }
+        while (lUsed<lPrevious && i<10);
+        return lUsed;
+    }
+}
@@ -0,0 +1,643 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ *  This class holds the result of processing one exposure in primitive
+ *  arrays: the dive table and the decompression table of a dive, the gas
+ *  mixtures used and the tissue tensions of the diver at the end of the
+ *  exposure. It is the structured counterpart of Exposure.printExposure();
+ *  ResultExporter implementations write it as text, CSV or JSON.
+ *  <p>
+ *  Depths are in meters, rates in meters per minute, times in minutes
+ *  and tensions in bar. The arrays may be longer than the number of
+ *  entries; only the first size() (or getNumberOf...()) elements are
+ *  valid. An instance can be refilled by capture(), which reuses the
+ *  arrays, so a single instance can be used for a stream of exposures.
+ */
+public class ExposureResult
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int     SEGMENT_CONSTANT_DEPTH  =1;
+    public static final int     SEGMENT_ASCENT          =2;
+    public static final int     SEGMENT_DESCENT         =3;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Segment tables
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  A table of depth segments: the dive profile or the decompression
+     *  profile
+     */
+    public static class SegmentTable
+    {
+        private int         nSegments;
+        private int[]       segmentNumbers;
+        private int[]       types;
+        private int[]       gasIndices;
+        private double[]    periods;
+        private double[]    runTimes;
+        private double[]    startDepths;
+        private double[]    endDepths;
+        private double[]    depthChangeRates;
+        private double[]    stopTimes;
+
+        SegmentTable()
+        {
+            nSegments=0;
+            allocate(16);
+        }
+
+        private void allocate(int iCapacity)
+        {
+            segmentNumbers  =new int[iCapacity];
+            types           =new int[iCapacity];
+            gasIndices      =new int[iCapacity];
+            periods         =new double[iCapacity];
+            runTimes        =new double[iCapacity];
+            startDepths     =new double[iCapacity];
+            endDepths       =new double[iCapacity];
+            depthChangeRates=new double[iCapacity];
+            stopTimes       =new double[iCapacity];
+        }
+
+        /**
+         *  Fills the table from the segments
+         *  @param segments The segments
+         *  @param bStopTimes If true, the rounded stop time is calculated
+         *                    for constant depth segments, like the
+         *                    decompression table shows it
+         */
+        void capture(Vector<DepthSegment> segments, boolean bStopTimes)
+        {
+            DepthSegment    segment;
+            double          fRate;
+            int             i;
+
+            nSegments=segments.size();
+            if (nSegments>segmentNumbers.length)
+            {
+                allocate(Math.max(nSegments, segmentNumbers.length*2));
+            }
+            for (i=0; i<nSegments; i++)
+            {
+                segment             =segments.get(i);
+                segmentNumbers[i]   =segment.getSegmentNumber();
+                gasIndices[i]       =segment.getGasMixture().getIndex();
+                periods[i]          =segment.getExposurePeriod();
+                runTimes[i]         =segment.getRunTime()+segment.getExposurePeriod();
+                startDepths[i]      =segment.getDepthAtStart().getValue(Length.UNITS_METER);
+                endDepths[i]        =segment.getDepthAtEnd().getValue(Length.UNITS_METER);
+                stopTimes[i]        =0.0;
+                if (segment instanceof VaryingDepthSegment)
+                {
+                    fRate           =((VaryingDepthSegment)segment).getDepthChangeRate().getValue(Length.UNITS_METER);
+                    types[i]        =(fRate<0.0)?SEGMENT_ASCENT:SEGMENT_DESCENT;
+                    depthChangeRates[i]=fRate;
+                }
+                else
+                {
+                    types[i]        =SEGMENT_CONSTANT_DEPTH;
+                    depthChangeRates[i]=0.0;
+                    if (bStopTimes)
+                    {
+                        stopTimes[i]=(Math.round(periods[i]/Parameters.fMinimumDecoStopTime+0.5))*
+                                     Parameters.fMinimumDecoStopTime;
+                    }
+                }
+            }
+        }
+
+        void clear()
+        {
+            nSegments=0;
+        }
+
+        void writeTo(DataOutput out) throws IOException
+        {
+            int i;
+
+            out.writeInt(nSegments);
+            for (i=0; i<nSegments; i++)
+            {
+                out.writeInt(segmentNumbers[i]);
+                out.writeInt(types[i]);
+                out.writeInt(gasIndices[i]);
+                out.writeDouble(periods[i]);
+                out.writeDouble(runTimes[i]);
+                out.writeDouble(startDepths[i]);
+                out.writeDouble(endDepths[i]);
+                out.writeDouble(depthChangeRates[i]);
+                out.writeDouble(stopTimes[i]);
+            }
+        }
+
+        void readFrom(DataInput in) throws IOException
+        {
+            int i;
+
+            nSegments=in.readInt();
+            if (nSegments>segmentNumbers.length)
+            {
+                allocate(nSegments);
+            }
+            for (i=0; i<nSegments; i++)
+            {
+                segmentNumbers[i]   =in.readInt();
+                types[i]            =in.readInt();
+                gasIndices[i]       =in.readInt();
+                periods[i]          =in.readDouble();
+                runTimes[i]         =in.readDouble();
+                startDepths[i]      =in.readDouble();
+                endDepths[i]        =in.readDouble();
+                depthChangeRates[i] =in.readDouble();
+                stopTimes[i]        =in.readDouble();
+            }
+        }
+
+        /** Returns the number of segments */
+        public int size()
+        {
+            return nSegments;
+        }
+
+        public int getSegmentNumber(int i)
+        {
+            return segmentNumbers[i];
+        }
+
+        /** Returns SEGMENT_CONSTANT_DEPTH, SEGMENT_ASCENT or SEGMENT_DESCENT */
+        public int getType(int i)
+        {
+            return types[i];
+        }
+
+        public int getGasIndex(int i)
+        {
+            return gasIndices[i];
+        }
+
+        /** Returns the duration of the segment */
+        public double getPeriod(int i)
+        {
+            return periods[i];
+        }
+
+        /** Returns the run time at the end of the segment */
+        public double getRunTime(int i)
+        {
+            return runTimes[i];
+        }
+
+        public double getStartDepth(int i)
+        {
+            return startDepths[i];
+        }
+
+        public double getEndDepth(int i)
+        {
+            return endDepths[i];
+        }
+
+        /** Returns the rate of depth change; positive for descents, 0 for
+         *  constant depth segments */
+        public double getDepthChangeRate(int i)
+        {
+            return depthChangeRates[i];
+        }
+
+        /** Returns the stop time rounded up to the minimum deco stop time;
+         *  only set for stops in the decompression table */
+        public double getStopTime(int i)
+        {
+            return stopTimes[i];
+        }
+
+        public int[] getSegmentNumbers()
+        {
+            return segmentNumbers;
+        }
+
+        public int[] getTypes()
+        {
+            return types;
+        }
+
+        public int[] getGasIndices()
+        {
+            return gasIndices;
+        }
+
+        public double[] getPeriods()
+        {
+            return periods;
+        }
+
+        public double[] getRunTimes()
+        {
+            return runTimes;
+        }
+
+        public double[] getStartDepths()
+        {
+            return startDepths;
+        }
+
+        public double[] getEndDepths()
+        {
+            return endDepths;
+        }
+
+        public double[] getDepthChangeRates()
+        {
+            return depthChangeRates;
+        }
+
+        public double[] getStopTimes()
+        {
+            return stopTimes;
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private String          sExposureName;
+    private boolean         bDive;
+    private String          sDescription;
+    private String          sAlgorithmDescription;
+    private double          fRunTime;
+    private double          fStartOfDecoZoneDepth;
+    private double          fDeepestDecoStopDepth;
+
+    private SegmentTable    diveTable;
+    private SegmentTable    decoTable;
+
+    private int             nGasMixtures;
+    private int[]           gasMixtureIndices;
+    private double[]        o2Fractions;
+    private double[]        he2Fractions;
+    private double[]        n2Fractions;
+
+    private int             nCompartments;
+    private double[]        he2Tensions;
+    private double[]        n2Tensions;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates an empty result, to be filled by capture().
+     */
+    public ExposureResult()
+    {
+        diveTable           =new SegmentTable();
+        decoTable           =new SegmentTable();
+        gasMixtureIndices   =new int[8];
+        o2Fractions         =new double[8];
+        he2Fractions        =new double[8];
+        n2Fractions         =new double[8];
+        he2Tensions         =new double[16];
+        n2Tensions          =new double[16];
+    }
+
+    /**
+     *  Constructor. Captures the result of the exposure.
+     *  @param exposure The exposure, just processed
+     *  @param diver The diver the exposure has been applied to
+     */
+    public ExposureResult(Exposure exposure, Diver diver)
+    {
+        this();
+        capture(exposure, diver);
+    }
+
+    /**
+     *  Fills this result from the exposure and the state of the diver. It
+     *  must be called directly after the exposure has been processed, since
+     *  the diver's tissue tensions are copied.
+     *  @param exposure The exposure, just processed
+     *  @param diver The diver the exposure has been applied to
+     */
+    public void capture(Exposure exposure, Diver diver)
+    {
+        Dive                        dive;
+        Decompression               decompression;
+        Vector<GasMixture>          mixtures;
+        Vector<TissueCompartment>   compartments;
+        GasMixture                  gasMixture;
+        int                         i;
+
+        sExposureName   =exposure.getExposureName();
+        fRunTime        =exposure.getRunTime();
+        bDive           =(exposure instanceof Dive);
+
+        if (bDive)
+        {
+            dive                    =(Dive)exposure;
+            decompression           =dive.getDecompression();
+            sDescription            =dive.getDescription();
+            sAlgorithmDescription   =decompression.getAlgorithmDescription();
+            fStartOfDecoZoneDepth   =meters(decompression.getStartOfDecoZoneDepth());
+            fDeepestDecoStopDepth   =meters(decompression.getDeepestDecoStopDepth());
+            diveTable.capture(dive.getDiveSegments(), false);
+            decoTable.capture(decompression.getDecoSegments(), true);
+
+            mixtures    =dive.getGasMixtures();
+            nGasMixtures=mixtures.size();
+            if (nGasMixtures>gasMixtureIndices.length)
+            {
+                gasMixtureIndices   =new int[nGasMixtures];
+                o2Fractions         =new double[nGasMixtures];
+                he2Fractions        =new double[nGasMixtures];
+                n2Fractions         =new double[nGasMixtures];
+            }
+            for (i=0; i<nGasMixtures; i++)
+            {
+                gasMixture          =mixtures.get(i);
+                gasMixtureIndices[i]=gasMixture.getIndex();
+                o2Fractions[i]      =gasMixture.getO2Fraction();
+                he2Fractions[i]     =gasMixture.getHe2Fraction();
+                n2Fractions[i]      =gasMixture.getN2Fraction();
+            }
+        }
+        else
+        {
+            sDescription            =null;
+            sAlgorithmDescription   =null;
+            fStartOfDecoZoneDepth   =Double.NaN;
+            fDeepestDecoStopDepth   =Double.NaN;
+            diveTable.clear();
+            decoTable.clear();
+            nGasMixtures            =0;
+        }
+
+        compartments    =diver.getCompartments();
+        nCompartments   =compartments.size();
+        if (nCompartments>he2Tensions.length)
+        {
+            he2Tensions =new double[nCompartments];
+            n2Tensions  =new double[nCompartments];
+        }
+        for (i=0; i<nCompartments; i++)
+        {
+            he2Tensions[i]  =compartments.get(i).getHe2TissueTension().getValue(Pressure.UNITS_BAR);
+            n2Tensions[i]   =compartments.get(i).getN2TissueTension().getValue(Pressure.UNITS_BAR);
+        }
+    }
+
+    private static double meters(Length length)
+    {
+        return (length!=null)?length.getValue(Length.UNITS_METER):Double.NaN;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Binary representation
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the result in binary form, to be read by readFrom()
+     *  @param out The output to write to
+     *  @exception IOException
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        int i;
+
+        writeString(out, sExposureName);
+        out.writeBoolean(bDive);
+        writeString(out, sDescription);
+        writeString(out, sAlgorithmDescription);
+        out.writeDouble(fRunTime);
+        out.writeDouble(fStartOfDecoZoneDepth);
+        out.writeDouble(fDeepestDecoStopDepth);
+        diveTable.writeTo(out);
+        decoTable.writeTo(out);
+
+        out.writeInt(nGasMixtures);
+        for (i=0; i<nGasMixtures; i++)
+        {
+            out.writeInt(gasMixtureIndices[i]);
+            out.writeDouble(o2Fractions[i]);
+            out.writeDouble(he2Fractions[i]);
+            out.writeDouble(n2Fractions[i]);
+        }
+
+        out.writeInt(nCompartments);
+        for (i=0; i<nCompartments; i++)
+        {
+            out.writeDouble(he2Tensions[i]);
+            out.writeDouble(n2Tensions[i]);
+        }
+    }
+
+    /**
+     *  Fills this result from its binary form, as written by writeTo()
+     *  @param in The input to read from
+     *  @exception IOException
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        int i;
+
+        sExposureName           =readString(in);
+        bDive                   =in.readBoolean();
+        sDescription            =readString(in);
+        sAlgorithmDescription   =readString(in);
+        fRunTime                =in.readDouble();
+        fStartOfDecoZoneDepth   =in.readDouble();
+        fDeepestDecoStopDepth   =in.readDouble();
+        diveTable.readFrom(in);
+        decoTable.readFrom(in);
+
+        nGasMixtures=in.readInt();
+        if (nGasMixtures>gasMixtureIndices.length)
+        {
+            gasMixtureIndices   =new int[nGasMixtures];
+            o2Fractions         =new double[nGasMixtures];
+            he2Fractions        =new double[nGasMixtures];
+            n2Fractions         =new double[nGasMixtures];
+        }
+        for (i=0; i<nGasMixtures; i++)
+        {
+            gasMixtureIndices[i]=in.readInt();
+            o2Fractions[i]      =in.readDouble();
+            he2Fractions[i]     =in.readDouble();
+            n2Fractions[i]      =in.readDouble();
+        }
+
+        nCompartments=in.readInt();
+        if (nCompartments>he2Tensions.length)
+        {
+            he2Tensions =new double[nCompartments];
+            n2Tensions  =new double[nCompartments];
+        }
+        for (i=0; i<nCompartments; i++)
+        {
+            he2Tensions[i]  =in.readDouble();
+            n2Tensions[i]   =in.readDouble();
+        }
+    }
+
+    private static void writeString(DataOutput out, String sValue) throws IOException
+    {
+        out.writeBoolean(sValue!=null);
+        if (sValue!=null)
+        {
+            out.writeUTF(sValue);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        return in.readBoolean()?in.readUTF():null;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the name of the exposure (Dive, Saturation, ...)
+     *  @return The name
+     */
+    public String getExposureName()
+    {
+        return sExposureName;
+    }
+
+    /**
+     *  Returns whether the exposure is a dive. Only dives have segment
+     *  tables, gas mixtures, a description and an algorithm.
+     *  @return True for a dive
+     */
+    public boolean isDive()
+    {
+        return bDive;
+    }
+
+    public String getDescription()
+    {
+        return sDescription;
+    }
+
+    public String getAlgorithmDescription()
+    {
+        return sAlgorithmDescription;
+    }
+
+    /**
+     *  Returns the run time at the end of the exposure
+     *  @return The run time in minutes
+     */
+    public double getRunTime()
+    {
+        return fRunTime;
+    }
+
+    /**
+     *  Returns the depth at which the leading compartment enters the
+     *  decompression zone
+     *  @return The depth in meters, NaN if not known
+     */
+    public double getStartOfDecoZoneDepth()
+    {
+        return fStartOfDecoZoneDepth;
+    }
+
+    /**
+     *  Returns the deepest possible decompression stop
+     *  @return The depth in meters, NaN if not known
+     */
+    public double getDeepestDecoStopDepth()
+    {
+        return fDeepestDecoStopDepth;
+    }
+
+    public SegmentTable getDiveTable()
+    {
+        return diveTable;
+    }
+
+    public SegmentTable getDecoTable()
+    {
+        return decoTable;
+    }
+
+    public int getNumberOfGasMixtures()
+    {
+        return nGasMixtures;
+    }
+
+    public int getGasMixtureIndex(int i)
+    {
+        return gasMixtureIndices[i];
+    }
+
+    public double getO2Fraction(int i)
+    {
+        return o2Fractions[i];
+    }
+
+    public double getHe2Fraction(int i)
+    {
+        return he2Fractions[i];
+    }
+
+    public double getN2Fraction(int i)
+    {
+        return n2Fractions[i];
+    }
+
+    public int getNumberOfCompartments()
+    {
+        return nCompartments;
+    }
+
+    /**
+     *  Returns the helium tension of a compartment at the end of the
+     *  exposure
+     *  @param i Index of the compartment
+     *  @return The tension in bar
+     */
+    public double getHe2Tension(int i)
+    {
+        return he2Tensions[i];
+    }
+
+    /**
+     *  Returns the nitrogen tension of a compartment at the end of the
+     *  exposure
+     *  @param i Index of the compartment
+     *  @return The tension in bar
+     */
+    public double getN2Tension(int i)
+    {
+        return n2Tensions[i];
+    }
+
+    public double[] getHe2Tensions()
+    {
+        return he2Tensions;
+    }
+
+    public double[] getN2Tensions()
+    {
+        return n2Tensions;
+    }
+}
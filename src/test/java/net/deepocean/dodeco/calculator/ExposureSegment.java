@@ -14,7 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -154,6 +156,19 @@ public class ExposureSegment
         }
     }
 
+    /** Applies the exposure of this segment to all compartments of a
+     *  TissueState at once. Crushing pressures are not calculated.
+     *  Subclasses that can be exposed override this method.
+     *  @param          state The tissue state to be updated
+     *  @exception CalculationException if the segment does not support
+     *             exposing a TissueState
+     */
+    public void exposeTissueState(TissueState state)
+                throws CalculationException
+    {
+        throw new CalculationException(getClass().getSimpleName()+" cannot expose a TissueState");
+    }
+
 
 
     /** Calculates the crushing pressure and updates the tissue compartment
@@ -182,4 +197,16 @@ public class ExposureSegment
         
         return element;
     }    
+
+    /**
+     *  This method writes the XML representation of the ExposureSegment to
+     *  the writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("Exposure");
+        writer.element("Empty", "Empty");
+        writer.endElement();
+    }
 }
\ No newline at end of file
@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 /**
  * This class represents a breathing gas mixture. The mixture
@@ -306,6 +309,21 @@ public class GasMixture
         
         return element;
     }     
+
+    /**
+     *  This method writes the XML representation of the GasMixture to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("GasMixture");
+        writer.element("Name", sName);
+        writer.element("OxygenPercentage", this.getO2Percentage());
+        writer.element("HeliumPercentage", this.getHe2Percentage());
+        writer.element("NitrogenPercentage", this.getN2Percentage());
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the GasMixture.
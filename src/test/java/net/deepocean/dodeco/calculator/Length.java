@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 
 /**
@@ -102,6 +105,18 @@ public class Length
      *  @return         The length value in units indicated by iUnits
      */
     public double getValue(int iUnits)
+    {
+        return convertFromMeter(fLengthInMeter, iUnits);
+    }
+
+    /** Converts a length value in meter to the indicated units, without
+     *  creating a Length instance
+     *  @param          fLengthInMeter The length value in meter
+     *  @param          iUnits Units in which length value should be returned.
+     *                  Possible values: UNITS_METER and UNITS_FEET.
+     *  @return         The length value in units indicated by iUnits
+     */
+    public static double convertFromMeter(double fLengthInMeter, int iUnits)
     {
         double fLength;
 
@@ -271,6 +286,41 @@ public class Length
     {
         return this.getXmlRepresentation(UNITS_METER);
     }     
+
+    /**
+     *  This method writes the XML representation of the Length to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     *  @param iLengthUnits The units that are used to write the length
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer, int iLengthUnits) throws MyXMLException, IOException
+    {
+        writer.startElement("Length");
+        if (iLengthUnits==UNITS_METER)
+        {
+            writer.element("Units", "Meter");
+        }
+        else if (iLengthUnits==UNITS_FEET)
+        {
+            writer.element("Units", "Feet");
+        }
+        else
+        {
+            writer.element("Units", "Unit error");
+        }
+        writer.element("LengthValue", this.getValue(iLengthUnits));
+        writer.endElement();
+    }
+
+    /**
+     *  This method writes the XML representation of the Length to the
+     *  writer, using meter as units
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        this.writeXmlRepresentation(writer, UNITS_METER);
+    }
     
     /**
      *  This method initialises the parameters characterising the GasMixture.
@@ -40,10 +40,21 @@ public class Nucleus
 
     private void initialize(Length initialCriticalRadius)
     {
-        this.initialCriticalRadius       =(Length)initialCriticalRadius.clone();
-        this.adjustedCriticalRadius      =(Length)initialCriticalRadius.clone();
-        this.criticalRadius              =(Length)initialCriticalRadius.clone();
-        this.regeneratedCriticalRadius   =(Length)initialCriticalRadius.clone();
+        if (this.initialCriticalRadius==null)
+        {
+            this.initialCriticalRadius       =(Length)initialCriticalRadius.clone();
+            this.adjustedCriticalRadius      =(Length)initialCriticalRadius.clone();
+            this.criticalRadius              =(Length)initialCriticalRadius.clone();
+            this.regeneratedCriticalRadius   =(Length)initialCriticalRadius.clone();
+        }
+        else
+        {
+            // Reinitialising: reuse the Length instances
+            this.initialCriticalRadius      .equalsLength(initialCriticalRadius);
+            this.adjustedCriticalRadius     .equalsLength(initialCriticalRadius);
+            this.criticalRadius             .equalsLength(initialCriticalRadius);
+            this.regeneratedCriticalRadius  .equalsLength(initialCriticalRadius);
+        }
     }
 
 
@@ -216,6 +216,12 @@ public class Parameters
     
     public static Length            decoStepSize=new Length(10.0, Length.UNITS_FEET);
 
+    /** Indicates whether the array based TissueKernels are used for the
+     *  tissue tension limit checks. If false, the per compartment
+     *  calculation is used. Off by default: TissueKernelsBenchmark found
+     *  the array based check slower, because the tensions are first
+     *  copied out of the Diver */
+    public static boolean           bUseTissueKernels=false;
     
     
     
@@ -662,4 +668,59 @@ public class Parameters
         }        
        
     }
+
+    /**
+     *  This method writes the values of all parameters that influence the
+     *  calculation results to the output, in a fixed order. Two snapshots
+     *  are equal if and only if the parameters are equal, so a digest of
+     *  the snapshot can be used as part of a cache key (see ScheduleCache).
+     *  @param out The output to write to
+     *  @exception IOException
+     */
+    public static void writeSnapshot(DataOutput out) throws IOException
+    {
+        out.writeInt(nCompartments);
+        writeArray(out, fHalfTimeN2);
+        writeArray(out, fHalfTimeHe2);
+        out.writeDouble(pressureH2O.getValue(Pressure.UNITS_BAR));
+        out.writeDouble(pressureCO2.getValue(Pressure.UNITS_BAR));
+        out.writeDouble(pressureOtherGasses.getValue(Pressure.UNITS_BAR));
+        out.writeDouble(fRq);
+
+        out.writeDouble(fGamma);
+        out.writeDouble(fGammaC);
+        out.writeDouble(lambda.getValue(Pressure.UNITS_BAR));
+        out.writeDouble(initialCriticalRadiusN2.getValue(Length.UNITS_METER));
+        out.writeDouble(initialCriticalRadiusHe2.getValue(Length.UNITS_METER));
+        out.writeBoolean(bCriticalVolumeAlgorithm);
+        out.writeDouble(fRegenTimeConstant);
+        out.writeDouble(gradientOnsetOfImpermeability.getValue(Pressure.UNITS_BAR));
+
+        writeArray(out, He2A);
+        writeArray(out, He2B);
+        writeArray(out, N2A_ASeries);
+        writeArray(out, N2A_BSeries);
+        writeArray(out, N2A_CSeries);
+        writeArray(out, N2B);
+        out.writeDouble(fLowGradientFactor);
+        out.writeDouble(fHighGradientFactor);
+
+        out.writeInt(iPresentationPressureUnits);
+        out.writeInt(iLengthUnits);
+        out.writeDouble(fMinimumDecoStopTime);
+        out.writeDouble(ascentRate.getValue(Length.UNITS_METER));
+        out.writeDouble(descentRate.getValue(Length.UNITS_METER));
+        out.writeDouble(decoStepSize.getValue(Length.UNITS_METER));
+    }
+
+    private static void writeArray(DataOutput out, double[] values) throws IOException
+    {
+        int i;
+
+        out.writeInt(values.length);
+        for (i=0; i<values.length; i++)
+        {
+            out.writeDouble(values[i]);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,747 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ *  This class reads a plan archive: a compact binary file containing
+ *  plans (exposure sequences) and, optionally, the decompression schedules
+ *  computed for the dives in them. The file is memory mapped, so opening
+ *  an archive only reads the header and any plan can be accessed directly.
+ *  Archives are written by PlanArchiveWriter.
+ *  <p>
+ *  Layout (big endian, version 1). The header is followed by the tables in
+ *  the order below; each table consists of fixed width records.
+ *  <pre>
+ *  Header       128 bytes  int magic 'DDPA', int version, 2 ints reserved,
+ *                          per table: long offset, long number of records
+ *  Plans         24 bytes  int name, int algorithm (-1: not processed),
+ *                          long first exposure, int exposures, int reserved
+ *  Exposures     88 bytes  int type, int description, int gas, int reserved,
+ *                          long first segment, int segments, int deco stages,
+ *                          long first deco stage, long first schedule entry,
+ *                          int schedule entries, int reserved, double[4] values
+ *  Segments      32 bytes  int type, int gas, double start depth,
+ *                          double end depth, double period or rate
+ *  Deco stages   40 bytes  int gas, int reserved, double start depth,
+ *                          double end depth, double ascent rate, double step size
+ *  Schedule      40 bytes  int type, int gas, double start depth,
+ *                          double end depth, double period, double run time
+ *                          at start
+ *  Gases         24 bytes  int name, int reserved, double O2, double He
+ *  Strings       16 bytes  long offset, int length, int reserved; followed
+ *                          by the UTF-8 bytes of all strings
+ *  </pre>
+ *  Strings (names, descriptions) and gases are referred to by their index
+ *  in the string and gas tables; -1 means none. Depths and heights are in
+ *  meters, rates in meters per minute and periods in minutes.
+ *  The exposure values are: saturation height; dive height; surface
+ *  interval height and period; acclimatisation start height, end height,
+ *  ascent period and acclimatisation period.
+ *  <p>
+ *  The tables are mapped read only and are only read with absolute gets,
+ *  so an archive can be shared by several threads.
+ */
+public class PlanArchive
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int     MAGIC                   =0x44445041;
+    public static final int     VERSION                 =1;
+    public static final int     HEADER_SIZE             =128;
+
+    public static final int     TABLE_PLANS             =0;
+    public static final int     TABLE_EXPOSURES         =1;
+    public static final int     TABLE_SEGMENTS          =2;
+    public static final int     TABLE_DECOSTAGES        =3;
+    public static final int     TABLE_SCHEDULE          =4;
+    public static final int     TABLE_GASES             =5;
+    public static final int     TABLE_STRINGS           =6;
+    public static final int     NUMBER_OF_TABLES        =7;
+
+    public static final int     PLAN_RECORD_SIZE        =24;
+    public static final int     EXPOSURE_RECORD_SIZE    =88;
+    public static final int     SEGMENT_RECORD_SIZE     =32;
+    public static final int     DECOSTAGE_RECORD_SIZE   =40;
+    public static final int     SCHEDULE_RECORD_SIZE    =40;
+    public static final int     GAS_RECORD_SIZE         =24;
+    public static final int     STRING_RECORD_SIZE      =16;
+
+    /** Record sizes, indexed by table */
+    static final int[]          RECORD_SIZES            ={PLAN_RECORD_SIZE, EXPOSURE_RECORD_SIZE,
+                                                          SEGMENT_RECORD_SIZE, DECOSTAGE_RECORD_SIZE,
+                                                          SCHEDULE_RECORD_SIZE, GAS_RECORD_SIZE,
+                                                          STRING_RECORD_SIZE};
+
+    public static final int     EXPOSURE_SATURATION     =1;
+    public static final int     EXPOSURE_DIVE           =2;
+    public static final int     EXPOSURE_SURFACE_INTERVAL=3;
+    public static final int     EXPOSURE_ACCLIMATISATION=4;
+
+    public static final int     SEGMENT_CONSTANT_DEPTH  =1;
+    public static final int     SEGMENT_VARYING_DEPTH   =2;
+
+    /** Maximum size of a single mapping */
+    private static final int    MAX_CHUNK_SIZE          =1<<30;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Mapped tables
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  A table of fixed width records, mapped in chunks of at most
+     *  MAX_CHUNK_SIZE bytes. Chunks contain whole records, so a record
+     *  never crosses a chunk boundary.
+     */
+    private static class MappedTable
+    {
+        private MappedByteBuffer[]  chunks;
+        private int                 iRecordSize;
+        private int                 nRecordsPerChunk;
+        private long                nRecords;
+
+        MappedTable(FileChannel channel, long lOffset, long nRecords, int iRecordSize) throws IOException
+        {
+            long    lChunkRecords;
+            int     nChunks;
+            int     i;
+
+            this.iRecordSize    =iRecordSize;
+            this.nRecords       =nRecords;
+            nRecordsPerChunk    =MAX_CHUNK_SIZE/iRecordSize;
+            nChunks             =(int)((nRecords+nRecordsPerChunk-1)/nRecordsPerChunk);
+            chunks              =new MappedByteBuffer[nChunks];
+            for (i=0; i<nChunks; i++)
+            {
+                lChunkRecords=Math.min(nRecordsPerChunk, nRecords-(long)i*nRecordsPerChunk);
+                chunks[i]=channel.map(FileChannel.MapMode.READ_ONLY,
+                                      lOffset+(long)i*nRecordsPerChunk*iRecordSize,
+                                      lChunkRecords*iRecordSize);
+            }
+        }
+
+        long size()
+        {
+            return nRecords;
+        }
+
+        /** Returns the chunk holding the record */
+        ByteBuffer chunk(long lRecord)
+        {
+            if (lRecord<0 || lRecord>=nRecords)
+            {
+                throw new IndexOutOfBoundsException("Record "+lRecord+" of "+nRecords);
+            }
+            return chunks[(int)(lRecord/nRecordsPerChunk)];
+        }
+
+        /** Returns the position of a field of the record within its chunk */
+        int position(long lRecord, int iField)
+        {
+            return (int)(lRecord%nRecordsPerChunk)*iRecordSize+iField;
+        }
+
+        int getInt(long lRecord, int iField)
+        {
+            return chunk(lRecord).getInt(position(lRecord, iField));
+        }
+
+        long getLong(long lRecord, int iField)
+        {
+            return chunk(lRecord).getLong(position(lRecord, iField));
+        }
+
+        double getDouble(long lRecord, int iField)
+        {
+            return chunk(lRecord).getDouble(position(lRecord, iField));
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Schedule entries
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  One segment of a computed decompression schedule
+     */
+    public static class ScheduleEntry
+    {
+        private boolean     bConstantDepth;
+        private Length      startDepth;
+        private Length      endDepth;
+        private double      fPeriod;
+        private double      fRunTime;
+        private GasMixture  gasMixture;
+
+        ScheduleEntry(boolean bConstantDepth, double fStartDepth, double fEndDepth,
+                      double fPeriod, double fRunTime, GasMixture gasMixture)
+        {
+            this.bConstantDepth =bConstantDepth;
+            this.startDepth     =new Length(fStartDepth, Length.UNITS_METER);
+            this.endDepth       =new Length(fEndDepth, Length.UNITS_METER);
+            this.fPeriod        =fPeriod;
+            this.fRunTime       =fRunTime;
+            this.gasMixture     =gasMixture;
+        }
+
+        /** Returns true for a stop, false for an ascent */
+        public boolean isConstantDepth()
+        {
+            return bConstantDepth;
+        }
+
+        public Length getStartDepth()
+        {
+            return startDepth;
+        }
+
+        public Length getEndDepth()
+        {
+            return endDepth;
+        }
+
+        /** Returns the duration of the segment in minutes */
+        public double getPeriod()
+        {
+            return fPeriod;
+        }
+
+        /** Returns the run time at the start of the segment in minutes */
+        public double getRunTime()
+        {
+            return fRunTime;
+        }
+
+        public GasMixture getGasMixture()
+        {
+            return gasMixture;
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private RandomAccessFile    file;
+    private FileChannel         channel;
+    private MappedTable[]       tables;
+    private MappedTable         stringData;
+    private Charset             charset;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Opens and maps the archive.
+     *  @param archiveFile The archive file
+     *  @exception IOException if the file cannot be read or is not a plan
+     *             archive
+     */
+    public PlanArchive(File archiveFile) throws IOException
+    {
+        ByteBuffer  header;
+        long        lOffset;
+        long        nRecords;
+        long        lStringData;
+        int         i;
+
+        file    =new RandomAccessFile(archiveFile, "r");
+        channel =file.getChannel();
+        charset =Charset.forName("UTF-8");
+        try
+        {
+            header=ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header, header.position())<0)
+                {
+                    throw new IOException("Not a plan archive: "+archiveFile);
+                }
+            }
+            header.flip();
+            if (header.getInt(0)!=MAGIC)
+            {
+                throw new IOException("Not a plan archive: "+archiveFile);
+            }
+            if (header.getInt(4)!=VERSION)
+            {
+                throw new IOException("Unsupported plan archive version "+header.getInt(4));
+            }
+
+            tables=new MappedTable[NUMBER_OF_TABLES];
+            for (i=0; i<NUMBER_OF_TABLES; i++)
+            {
+                lOffset =header.getLong(16+i*16);
+                nRecords=header.getLong(24+i*16);
+                if (lOffset<HEADER_SIZE || nRecords<0 ||
+                    lOffset+nRecords*RECORD_SIZES[i]>channel.size())
+                {
+                    throw new IOException("Corrupt plan archive: "+archiveFile);
+                }
+                tables[i]=new MappedTable(channel, lOffset, nRecords, RECORD_SIZES[i]);
+            }
+
+            // The string bytes follow the string table, mapped as one byte
+            // records
+            lStringData =header.getLong(16+TABLE_STRINGS*16)+
+                         tables[TABLE_STRINGS].size()*STRING_RECORD_SIZE;
+            stringData  =new MappedTable(channel, lStringData, channel.size()-lStringData, 1);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Closes the archive. The mapped buffers are released when they are
+     *  garbage collected.
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+        file.close();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Strings and gases
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns a string from the string table
+     *  @param iString Index of the string
+     *  @return The string or null if iString is -1
+     */
+    public String getString(int iString)
+    {
+        MappedTable table;
+        byte[]      bytes;
+        long        lOffset;
+        int         i;
+
+        if (iString<0)
+        {
+            return null;
+        }
+        table   =tables[TABLE_STRINGS];
+        lOffset =table.getLong(iString, 0);
+        bytes   =new byte[table.getInt(iString, 8)];
+        for (i=0; i<bytes.length; i++)
+        {
+            bytes[i]=stringData.chunk(lOffset+i).get(stringData.position(lOffset+i, 0));
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     *  Returns the number of gas mixtures in the gas table
+     *  @return The number of gas mixtures
+     */
+    public int getNumberOfGasMixtures()
+    {
+        return (int)tables[TABLE_GASES].size();
+    }
+
+    /**
+     *  Returns a new instance of a gas mixture from the gas table
+     *  @param iGas Index of the gas mixture
+     *  @return The gas mixture or null if iGas is -1
+     *  @exception IllegalActionException if the stored fractions are not valid
+     */
+    public GasMixture getGasMixture(int iGas) throws IllegalActionException
+    {
+        MappedTable table;
+
+        if (iGas<0)
+        {
+            return null;
+        }
+        table=tables[TABLE_GASES];
+        return new GasMixture(table.getDouble(iGas, 8), table.getDouble(iGas, 16));
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Plans
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the number of plans in the archive
+     *  @return The number of plans
+     */
+    public int getNumberOfPlans()
+    {
+        return (int)tables[TABLE_PLANS].size();
+    }
+
+    /**
+     *  Returns the name of the plan
+     *  @param iPlan Index of the plan
+     *  @return The name
+     */
+    public String getPlanName(int iPlan)
+    {
+        return getString(tables[TABLE_PLANS].getInt(iPlan, 0));
+    }
+
+    /**
+     *  Returns the algorithm the plan has been processed with
+     *  @param iPlan Index of the plan
+     *  @return The algorithm (Processor.ALGORITHM_ constant) or -1 if no
+     *          schedules have been stored
+     */
+    public int getPlanAlgorithm(int iPlan)
+    {
+        return tables[TABLE_PLANS].getInt(iPlan, 4);
+    }
+
+    /**
+     *  Returns the number of exposures in the plan
+     *  @param iPlan Index of the plan
+     *  @return The number of exposures
+     */
+    public int getNumberOfExposures(int iPlan)
+    {
+        return tables[TABLE_PLANS].getInt(iPlan, 16);
+    }
+
+    /**
+     *  Returns the index of the exposure record of an exposure of the plan
+     */
+    private long exposureRecord(int iPlan, int iExposure)
+    {
+        if (iExposure<0 || iExposure>=getNumberOfExposures(iPlan))
+        {
+            throw new IndexOutOfBoundsException("Exposure "+iExposure+" of plan "+iPlan);
+        }
+        return tables[TABLE_PLANS].getLong(iPlan, 8)+iExposure;
+    }
+
+    /**
+     *  Creates the exposures of the plan. The exposures have not been
+     *  processed yet.
+     *  @param iPlan Index of the plan
+     *  @return The exposures
+     *  @exception IllegalActionException if an exposure is not valid
+     */
+    public Vector<Exposure> getExposures(int iPlan) throws IllegalActionException
+    {
+        Vector<Exposure>    exposures;
+        int                 nExposures;
+        int                 i;
+
+        nExposures  =getNumberOfExposures(iPlan);
+        exposures   =new Vector<Exposure>(nExposures);
+        for (i=0; i<nExposures; i++)
+        {
+            exposures.add(getExposure(iPlan, i));
+        }
+        return exposures;
+    }
+
+    /**
+     *  Creates one exposure of the plan
+     *  @param iPlan Index of the plan
+     *  @param iExposure Index of the exposure within the plan
+     *  @return The exposure
+     *  @exception IllegalActionException if the exposure is not valid
+     */
+    public Exposure getExposure(int iPlan, int iExposure) throws IllegalActionException
+    {
+        MappedTable table;
+        Exposure    exposure;
+        long        lRecord;
+        int         iType;
+        GasMixture  gasMixture;
+
+        table       =tables[TABLE_EXPOSURES];
+        lRecord     =exposureRecord(iPlan, iExposure);
+        iType       =table.getInt(lRecord, 0);
+        gasMixture  =getGasMixture(table.getInt(lRecord, 8));
+
+        switch (iType)
+        {
+            case EXPOSURE_SATURATION:
+                exposure=new Saturation(meters(table.getDouble(lRecord, 56)), gasMixture);
+                break;
+            case EXPOSURE_DIVE:
+                exposure=createDive(lRecord);
+                break;
+            case EXPOSURE_SURFACE_INTERVAL:
+                exposure=new SurfaceInterval(meters(table.getDouble(lRecord, 56)), gasMixture,
+                                             table.getDouble(lRecord, 64));
+                break;
+            case EXPOSURE_ACCLIMATISATION:
+                exposure=new Acclimatisation(meters(table.getDouble(lRecord, 56)),
+                                             meters(table.getDouble(lRecord, 64)),
+                                             table.getDouble(lRecord, 72),
+                                             table.getDouble(lRecord, 80),
+                                             gasMixture);
+                break;
+            default:
+                throw new IllegalActionException("Unknown exposure type "+iType+" in plan archive");
+        }
+        return exposure;
+    }
+
+    /**
+     *  Creates a dive from its exposure record, with its segments and
+     *  deco stages
+     */
+    private Dive createDive(long lRecord) throws IllegalActionException
+    {
+        MappedTable exposures;
+        MappedTable segments;
+        MappedTable decoStages;
+        Dive        dive;
+        long        lFirst;
+        int         nRecords;
+        long        l;
+
+        exposures   =tables[TABLE_EXPOSURES];
+        segments    =tables[TABLE_SEGMENTS];
+        decoStages  =tables[TABLE_DECOSTAGES];
+
+        dive=new Dive(getString(exposures.getInt(lRecord, 4)),
+                      meters(exposures.getDouble(lRecord, 56)));
+
+        lFirst  =exposures.getLong(lRecord, 16);
+        nRecords=exposures.getInt(lRecord, 24);
+        for (l=lFirst; l<lFirst+nRecords; l++)
+        {
+            if (segments.getInt(l, 0)==SEGMENT_CONSTANT_DEPTH)
+            {
+                dive.addConstantDepthSegment(meters(segments.getDouble(l, 8)),
+                                             segments.getDouble(l, 24),
+                                             getGasMixture(segments.getInt(l, 4)));
+            }
+            else
+            {
+                dive.addVaryingDepthSegment(meters(segments.getDouble(l, 8)),
+                                            meters(segments.getDouble(l, 16)),
+                                            meters(segments.getDouble(l, 24)),
+                                            getGasMixture(segments.getInt(l, 4)));
+            }
+        }
+
+        lFirst  =exposures.getLong(lRecord, 32);
+        nRecords=exposures.getInt(lRecord, 28);
+        for (l=lFirst; l<lFirst+nRecords; l++)
+        {
+            dive.addDecoStage(meters(decoStages.getDouble(l, 8)),
+                              meters(decoStages.getDouble(l, 16)),
+                              meters(decoStages.getDouble(l, 24)),
+                              getGasMixture(decoStages.getInt(l, 0)),
+                              meters(decoStages.getDouble(l, 32)));
+        }
+        return dive;
+    }
+
+    /**
+     *  Returns the decompression schedule stored for a dive of the plan
+     *  @param iPlan Index of the plan
+     *  @param iExposure Index of the exposure within the plan
+     *  @return The schedule; empty if the exposure is not a dive or no
+     *          schedule has been stored
+     *  @exception IllegalActionException if a gas mixture is not valid
+     */
+    public Vector<ScheduleEntry> getSchedule(int iPlan, int iExposure) throws IllegalActionException
+    {
+        MappedTable             exposures;
+        MappedTable             schedule;
+        Vector<ScheduleEntry>   entries;
+        long                    lRecord;
+        long                    lFirst;
+        int                     nRecords;
+        long                    l;
+
+        exposures   =tables[TABLE_EXPOSURES];
+        schedule    =tables[TABLE_SCHEDULE];
+        lRecord     =exposureRecord(iPlan, iExposure);
+        lFirst      =exposures.getLong(lRecord, 40);
+        nRecords    =exposures.getInt(lRecord, 48);
+        entries     =new Vector<ScheduleEntry>(nRecords);
+        for (l=lFirst; l<lFirst+nRecords; l++)
+        {
+            entries.add(new ScheduleEntry(schedule.getInt(l, 0)==SEGMENT_CONSTANT_DEPTH,
+                                          schedule.getDouble(l, 8),
+                                          schedule.getDouble(l, 16),
+                                          schedule.getDouble(l, 24),
+                                          schedule.getDouble(l, 32),
+                                          getGasMixture(schedule.getInt(l, 4))));
+        }
+        return entries;
+    }
+
+    private static Length meters(double fMeters)
+    {
+        return new Length(fMeters, Length.UNITS_METER);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Conversion
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Converts exposure list XML files to a plan archive, one plan per file.
+     *  The plan is named after the file.
+     *  @param xmlFiles The exposure list files
+     *  @param archiveFile The archive to create
+     *  @param iAlgorithm If not -1, each plan is processed with this
+     *                  algorithm and the schedules are stored as well
+     *  @exception IllegalActionException
+     *  @exception CalculationException
+     *  @exception IOException
+     */
+    public static void convertToArchive(File[] xmlFiles, File archiveFile, int iAlgorithm)
+                       throws IllegalActionException, CalculationException, IOException
+    {
+        PlanArchiveWriter   writer;
+        Processor           processor;
+        String              sName;
+        int                 i;
+
+        writer=new PlanArchiveWriter(archiveFile);
+        for (i=0; i<xmlFiles.length; i++)
+        {
+            processor=new Processor();
+            if (iAlgorithm>=0)
+            {
+                processor.setDecoAlgorithm(iAlgorithm);
+            }
+            processor.loadExposures(xmlFiles[i]);
+            if (iAlgorithm>=0)
+            {
+                processor.process();
+            }
+            sName=xmlFiles[i].getName();
+            if (sName.endsWith(".xml"))
+            {
+                sName=sName.substring(0, sName.length()-4);
+            }
+            writer.addPlan(sName, processor.getExposures(), iAlgorithm);
+        }
+        writer.close();
+    }
+
+    /**
+     *  Converts a plan from the archive to an exposure list XML file
+     *  @param archiveFile The archive
+     *  @param iPlan Index of the plan
+     *  @param xmlFile The file to write
+     *  @exception IllegalActionException
+     *  @exception IOException
+     */
+    public static void convertToXml(File archiveFile, int iPlan, File xmlFile)
+                       throws IllegalActionException, IOException
+    {
+        PlanArchive archive;
+        Processor   processor;
+
+        archive=new PlanArchive(archiveFile);
+        try
+        {
+            processor=new Processor();
+            processor.loadExposures(archive, iPlan);
+            processor.saveExposures(xmlFile);
+        }
+        finally
+        {
+            archive.close();
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Usage:
+     *  <pre>
+     *  PlanArchive toArchive archive algorithm|none file.xml...
+     *  PlanArchive toXml archive plan file.xml
+     *  PlanArchive list archive
+     *  PlanArchive bench archive [lookups]
+     *  </pre>
+     *  bench measures opening the archive and creating randomly chosen
+     *  plans.
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        PlanArchive archive;
+        File[]      xmlFiles;
+        Random      random;
+        long        lStart;
+        long        lOpen;
+        int         nLookups;
+        int         nExposures;
+        int         iAlgorithm;
+        int         i;
+
+        if (args.length>=3 && args[0].equals("toArchive"))
+        {
+            iAlgorithm=args[2].equals("none")?-1:Integer.parseInt(args[2]);
+            xmlFiles=new File[args.length-3];
+            for (i=0; i<xmlFiles.length; i++)
+            {
+                xmlFiles[i]=new File(args[i+3]);
+            }
+            convertToArchive(xmlFiles, new File(args[1]), iAlgorithm);
+        }
+        else if (args.length==4 && args[0].equals("toXml"))
+        {
+            convertToXml(new File(args[1]), Integer.parseInt(args[2]), new File(args[3]));
+        }
+        else if (args.length==2 && args[0].equals("list"))
+        {
+            archive=new PlanArchive(new File(args[1]));
+            for (i=0; i<archive.getNumberOfPlans(); i++)
+            {
+                System.out.println(i+"\t"+archive.getPlanName(i)+"\t"+
+                                   archive.getNumberOfExposures(i)+" exposures\talgorithm "+
+                                   archive.getPlanAlgorithm(i));
+            }
+            archive.close();
+        }
+        else if (args.length>=2 && args[0].equals("bench"))
+        {
+            nLookups    =(args.length>2)?Integer.parseInt(args[2]):10000;
+            lStart      =System.nanoTime();
+            archive     =new PlanArchive(new File(args[1]));
+            lOpen       =System.nanoTime()-lStart;
+            random      =new Random(1);
+            nExposures  =0;
+            lStart      =System.nanoTime();
+            for (i=0; i<nLookups; i++)
+            {
+                nExposures+=archive.getExposures(random.nextInt(archive.getNumberOfPlans())).size();
+            }
+            System.out.println(String.format("%d plans, open %.2f ms, %d random plans (%d exposures) in %.1f ms",
+                                             archive.getNumberOfPlans(), lOpen/1.0e6, nLookups,
+                                             nExposures, (System.nanoTime()-lStart)/1.0e6));
+            archive.close();
+        }
+        else
+        {
+            System.err.println("Usage: PlanArchive toArchive archive algorithm|none file.xml...");
+            System.err.println("       PlanArchive toXml archive plan file.xml");
+            System.err.println("       PlanArchive list archive");
+            System.err.println("       PlanArchive bench archive [lookups]");
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ *  This class writes a plan archive: the binary format read by
+ *  PlanArchive. Plans (exposure sequences) are added one by one; the
+ *  records are written to temporary files next to the archive, which are
+ *  combined into the archive when it is closed. Only the gas and string
+ *  tables are held in memory.
+ *  See PlanArchive for the layout of the file.
+ */
+public class PlanArchiveWriter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private File                        file;
+    private File[]                      tableFiles;
+    private DataOutputStream[]          tables;
+    private long[]                      recordCounts;
+
+    private HashMap<String, Integer>    stringIndices;
+    private Vector<String>              strings;
+    private Vector<GasMixture>          gasMixtures;
+    private Charset                     charset;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates the archive file.
+     *  @param file The archive file
+     *  @exception IOException
+     */
+    public PlanArchiveWriter(File file) throws IOException
+    {
+        File    directory;
+        int     i;
+
+        this.file       =file;
+        directory       =file.getAbsoluteFile().getParentFile();
+        tableFiles      =new File[PlanArchive.TABLE_SCHEDULE+1];
+        tables          =new DataOutputStream[PlanArchive.TABLE_SCHEDULE+1];
+        recordCounts    =new long[PlanArchive.NUMBER_OF_TABLES];
+
+        for (i=0; i<tables.length; i++)
+        {
+            tableFiles[i]=File.createTempFile("plans", ".tmp", directory);
+            tables[i]   =new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tableFiles[i]), 65536));
+        }
+
+        stringIndices   =new HashMap<String, Integer>();
+        strings         =new Vector<String>();
+        gasMixtures     =new Vector<GasMixture>();
+        charset         =Charset.forName("UTF-8");
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Adding plans
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Adds a plan. If the exposures have been processed, the computed
+     *  decompression schedules of the dives can be stored as well.
+     *  The exposures are checked before anything is written, so a plan
+     *  that cannot be stored leaves the archive unchanged.
+     *  @param sName Name of the plan
+     *  @param exposures The exposures
+     *  @param iAlgorithm The algorithm (Processor.ALGORITHM_ constant) the
+     *                  exposures have been processed with, or -1 if they have
+     *                  not been processed. The schedules are stored only if
+     *                  an algorithm is given.
+     *  @return The index of the plan in the archive
+     *  @exception IllegalActionException if an exposure or segment type is
+     *             not supported
+     *  @exception IOException
+     */
+    public int addPlan(String sName, Vector<Exposure> exposures, int iAlgorithm)
+               throws IllegalActionException, IOException
+    {
+        DataOutputStream    out;
+        Enumeration<Exposure> elements;
+        Exposure            exposure;
+        int                 iPlan;
+
+        elements=exposures.elements();
+        while (elements.hasMoreElements())
+        {
+            exposure=elements.nextElement();
+            checkExposure(exposure, iAlgorithm>=0);
+        }
+
+        iPlan=(int)recordCounts[PlanArchive.TABLE_PLANS];
+
+        out=tables[PlanArchive.TABLE_PLANS];
+        out.writeInt(stringIndex(sName));
+        out.writeInt(iAlgorithm);
+        out.writeLong(recordCounts[PlanArchive.TABLE_EXPOSURES]);
+        out.writeInt(exposures.size());
+        out.writeInt(0);
+        recordCounts[PlanArchive.TABLE_PLANS]++;
+
+        elements=exposures.elements();
+        while (elements.hasMoreElements())
+        {
+            exposure=elements.nextElement();
+            addExposure(exposure, iAlgorithm>=0);
+        }
+        return iPlan;
+    }
+
+    /**
+     *  Checks that the exposure can be written by addExposure()
+     */
+    private void checkExposure(Exposure exposure, boolean bSchedule) throws IllegalActionException
+    {
+        Dive                dive;
+        Enumeration<DepthSegment> elements;
+
+        if (exposure instanceof Dive)
+        {
+            dive=(Dive)exposure;
+            elements=dive.getDiveSegments().elements();
+            while (elements.hasMoreElements())
+            {
+                segmentType(elements.nextElement());
+            }
+            if (bSchedule)
+            {
+                elements=dive.getDecompression().getDecoSegments().elements();
+                while (elements.hasMoreElements())
+                {
+                    segmentType(elements.nextElement());
+                }
+            }
+        }
+        else if (!(exposure instanceof Saturation) &&
+                 !(exposure instanceof SurfaceInterval) &&
+                 !(exposure instanceof Acclimatisation))
+        {
+            throw new IllegalActionException("Exposure type not supported by plan archive: "+
+                                             exposure.getExposureName());
+        }
+    }
+
+    /**
+     *  Writes the exposure record and the segment, deco stage and schedule
+     *  records of the exposure
+     */
+    private void addExposure(Exposure exposure, boolean bSchedule) throws IllegalActionException, IOException
+    {
+        DataOutputStream    out;
+        Saturation          saturation;
+        Dive                dive;
+        SurfaceInterval     surfaceInterval;
+        Acclimatisation     acclimatisation;
+        Vector<DepthSegment> schedule;
+        int                 iType;
+        int                 iDescription;
+        int                 iGas;
+        long                lFirstSegment;
+        long                lFirstDecoStage;
+        long                lFirstScheduleEntry;
+        int                 nSegments;
+        int                 nDecoStages;
+        int                 nScheduleEntries;
+        double[]            fValues;
+
+        iDescription        =-1;
+        iGas                =-1;
+        lFirstSegment       =recordCounts[PlanArchive.TABLE_SEGMENTS];
+        lFirstDecoStage     =recordCounts[PlanArchive.TABLE_DECOSTAGES];
+        lFirstScheduleEntry =recordCounts[PlanArchive.TABLE_SCHEDULE];
+        nSegments           =0;
+        nDecoStages         =0;
+        nScheduleEntries    =0;
+        fValues             =new double[4];
+
+        if (exposure instanceof Saturation)
+        {
+            saturation  =(Saturation)exposure;
+            iType       =PlanArchive.EXPOSURE_SATURATION;
+            iGas        =gasIndex(saturation.getGasMixture());
+            fValues[0]  =saturation.getSaturationHeight().getValue(Length.UNITS_METER);
+        }
+        else if (exposure instanceof Dive)
+        {
+            dive        =(Dive)exposure;
+            iType       =PlanArchive.EXPOSURE_DIVE;
+            iDescription=stringIndex(dive.getDescription());
+            fValues[0]  =dive.getDiveHeight().getValue(Length.UNITS_METER);
+            nSegments   =addSegments(dive.getDiveSegments());
+            nDecoStages =addDecoStages(dive.getDecoStages());
+            if (bSchedule)
+            {
+                schedule        =dive.getDecompression().getDecoSegments();
+                nScheduleEntries=addSchedule(schedule);
+            }
+        }
+        else if (exposure instanceof SurfaceInterval)
+        {
+            surfaceInterval=(SurfaceInterval)exposure;
+            iType       =PlanArchive.EXPOSURE_SURFACE_INTERVAL;
+            iGas        =gasIndex(surfaceInterval.getGasMixture());
+            fValues[0]  =surfaceInterval.getIntervalHeight().getValue(Length.UNITS_METER);
+            fValues[1]  =surfaceInterval.getIntervalPeriod();
+        }
+        else if (exposure instanceof Acclimatisation)
+        {
+            acclimatisation=(Acclimatisation)exposure;
+            iType       =PlanArchive.EXPOSURE_ACCLIMATISATION;
+            iGas        =gasIndex(acclimatisation.getGasMixture());
+            fValues[0]  =acclimatisation.getStartHeight().getValue(Length.UNITS_METER);
+            fValues[1]  =acclimatisation.getEndHeight().getValue(Length.UNITS_METER);
+            fValues[2]  =acclimatisation.getAscentPeriod();
+            fValues[3]  =acclimatisation.getAcclimatisationPeriod();
+        }
+        else
+        {
+            throw new IllegalActionException("Exposure type not supported by plan archive: "+
+                                             exposure.getExposureName());
+        }
+
+        out=tables[PlanArchive.TABLE_EXPOSURES];
+        out.writeInt(iType);
+        out.writeInt(iDescription);
+        out.writeInt(iGas);
+        out.writeInt(0);
+        out.writeLong(lFirstSegment);
+        out.writeInt(nSegments);
+        out.writeInt(nDecoStages);
+        out.writeLong(lFirstDecoStage);
+        out.writeLong(lFirstScheduleEntry);
+        out.writeInt(nScheduleEntries);
+        out.writeInt(0);
+        out.writeDouble(fValues[0]);
+        out.writeDouble(fValues[1]);
+        out.writeDouble(fValues[2]);
+        out.writeDouble(fValues[3]);
+        recordCounts[PlanArchive.TABLE_EXPOSURES]++;
+    }
+
+    private int addSegments(Vector<DepthSegment> segments) throws IllegalActionException, IOException
+    {
+        DataOutputStream    out;
+        Enumeration<DepthSegment> elements;
+        DepthSegment        segment;
+
+        out=tables[PlanArchive.TABLE_SEGMENTS];
+        elements=segments.elements();
+        while (elements.hasMoreElements())
+        {
+            segment=elements.nextElement();
+            out.writeInt(segmentType(segment));
+            out.writeInt(gasIndex(segment.getGasMixture()));
+            out.writeDouble(segment.getDepthAtStart().getValue(Length.UNITS_METER));
+            out.writeDouble(segment.getDepthAtEnd().getValue(Length.UNITS_METER));
+            if (segment instanceof VaryingDepthSegment)
+            {
+                out.writeDouble(((VaryingDepthSegment)segment).getDepthChangeRate().getValue(Length.UNITS_METER));
+            }
+            else
+            {
+                out.writeDouble(segment.getExposurePeriod());
+            }
+        }
+        recordCounts[PlanArchive.TABLE_SEGMENTS]+=segments.size();
+        return segments.size();
+    }
+
+    private int addDecoStages(Vector<DecoStage> decoStages) throws IOException
+    {
+        DataOutputStream    out;
+        Enumeration<DecoStage> elements;
+        DecoStage           stage;
+
+        out=tables[PlanArchive.TABLE_DECOSTAGES];
+        elements=decoStages.elements();
+        while (elements.hasMoreElements())
+        {
+            stage=elements.nextElement();
+            out.writeInt(gasIndex(stage.getGasMixture()));
+            out.writeInt(0);
+            out.writeDouble(stage.getStartDepth().getValue(Length.UNITS_METER));
+            out.writeDouble(stage.getEndDepth().getValue(Length.UNITS_METER));
+            out.writeDouble(stage.getAscentRate().getValue(Length.UNITS_METER));
+            out.writeDouble(stage.getDecoStepSize().getValue(Length.UNITS_METER));
+        }
+        recordCounts[PlanArchive.TABLE_DECOSTAGES]+=decoStages.size();
+        return decoStages.size();
+    }
+
+    private int addSchedule(Vector<DepthSegment> schedule) throws IllegalActionException, IOException
+    {
+        DataOutputStream    out;
+        Enumeration<DepthSegment> elements;
+        DepthSegment        segment;
+
+        out=tables[PlanArchive.TABLE_SCHEDULE];
+        elements=schedule.elements();
+        while (elements.hasMoreElements())
+        {
+            segment=elements.nextElement();
+            out.writeInt(segmentType(segment));
+            out.writeInt(gasIndex(segment.getGasMixture()));
+            out.writeDouble(segment.getDepthAtStart().getValue(Length.UNITS_METER));
+            out.writeDouble(segment.getDepthAtEnd().getValue(Length.UNITS_METER));
+            out.writeDouble(segment.getExposurePeriod());
+            out.writeDouble(segment.getRunTime());
+        }
+        recordCounts[PlanArchive.TABLE_SCHEDULE]+=schedule.size();
+        return schedule.size();
+    }
+
+    private int segmentType(DepthSegment segment) throws IllegalActionException
+    {
+        if (segment instanceof ConstantDepthSegment)
+        {
+            return PlanArchive.SEGMENT_CONSTANT_DEPTH;
+        }
+        if (segment instanceof VaryingDepthSegment)
+        {
+            return PlanArchive.SEGMENT_VARYING_DEPTH;
+        }
+        throw new IllegalActionException("Segment type not supported by plan archive");
+    }
+
+    /**
+     *  Returns the index of the gas mixture in the gas table, adding it if
+     *  needed
+     */
+    private int gasIndex(GasMixture gasMixture)
+    {
+        GasMixture  gas;
+        int         i;
+
+        for (i=0; i<gasMixtures.size(); i++)
+        {
+            gas=gasMixtures.get(i);
+            if (gas.getO2Fraction()==gasMixture.getO2Fraction() &&
+                gas.getHe2Fraction()==gasMixture.getHe2Fraction())
+            {
+                return i;
+            }
+        }
+        gasMixtures.add(gasMixture);
+        stringIndex(gasMixture.getName());
+        return gasMixtures.size()-1;
+    }
+
+    /**
+     *  Returns the index of the string in the string table, adding it if
+     *  needed
+     */
+    private int stringIndex(String sString)
+    {
+        Integer iIndex;
+
+        if (sString==null)
+        {
+            return -1;
+        }
+        iIndex=stringIndices.get(sString);
+        if (iIndex==null)
+        {
+            iIndex=Integer.valueOf(strings.size());
+            strings.add(sString);
+            stringIndices.put(sString, iIndex);
+        }
+        return iIndex.intValue();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Closing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the archive: header, record tables, gas table and string
+     *  table. The temporary files are removed.
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        FileOutputStream    outputStream;
+        FileChannel         channel;
+        FileInputStream     inputStream;
+        ByteBuffer          header;
+        ByteBuffer          buffer;
+        byte[][]            encoded;
+        long[]              offsets;
+        long                lOffset;
+        long                lBlobOffset;
+        int                 i;
+
+        for (i=0; i<tables.length; i++)
+        {
+            tables[i].close();
+        }
+
+        recordCounts[PlanArchive.TABLE_GASES]   =gasMixtures.size();
+        recordCounts[PlanArchive.TABLE_STRINGS] =strings.size();
+
+        encoded=new byte[strings.size()][];
+        for (i=0; i<strings.size(); i++)
+        {
+            encoded[i]=strings.get(i).getBytes(charset);
+        }
+
+        // Tables follow the header in order of their index
+        offsets=new long[PlanArchive.NUMBER_OF_TABLES];
+        lOffset=PlanArchive.HEADER_SIZE;
+        for (i=0; i<PlanArchive.NUMBER_OF_TABLES; i++)
+        {
+            offsets[i]=lOffset;
+            lOffset+=recordCounts[i]*PlanArchive.RECORD_SIZES[i];
+        }
+
+        header=ByteBuffer.allocate(PlanArchive.HEADER_SIZE);
+        header.putInt(PlanArchive.MAGIC);
+        header.putInt(PlanArchive.VERSION);
+        header.putInt(0);
+        header.putInt(0);
+        for (i=0; i<PlanArchive.NUMBER_OF_TABLES; i++)
+        {
+            header.putLong(offsets[i]);
+            header.putLong(recordCounts[i]);
+        }
+        header.flip();
+
+        outputStream=new FileOutputStream(file);
+        channel=outputStream.getChannel();
+        try
+        {
+            write(channel, header);
+
+            for (i=0; i<tableFiles.length; i++)
+            {
+                inputStream=new FileInputStream(tableFiles[i]);
+                try
+                {
+                    lOffset=0;
+                    while (lOffset<tableFiles[i].length())
+                    {
+                        lOffset+=inputStream.getChannel().transferTo(lOffset, tableFiles[i].length()-lOffset, channel);
+                    }
+                }
+                finally
+                {
+                    inputStream.close();
+                }
+            }
+
+            buffer=ByteBuffer.allocate(PlanArchive.GAS_RECORD_SIZE);
+            for (i=0; i<gasMixtures.size(); i++)
+            {
+                buffer.clear();
+                buffer.putInt(stringIndex(gasMixtures.get(i).getName()));
+                buffer.putInt(0);
+                buffer.putDouble(gasMixtures.get(i).getO2Fraction());
+                buffer.putDouble(gasMixtures.get(i).getHe2Fraction());
+                buffer.flip();
+                write(channel, buffer);
+            }
+
+            // String index, followed by the UTF-8 bytes of the strings
+            buffer=ByteBuffer.allocate(PlanArchive.STRING_RECORD_SIZE);
+            lBlobOffset=0;
+            for (i=0; i<encoded.length; i++)
+            {
+                buffer.clear();
+                buffer.putLong(lBlobOffset);
+                buffer.putInt(encoded[i].length);
+                buffer.putInt(0);
+                buffer.flip();
+                write(channel, buffer);
+                lBlobOffset+=encoded[i].length;
+            }
+            for (i=0; i<encoded.length; i++)
+            {
+                write(channel, ByteBuffer.wrap(encoded[i]));
+            }
+        }
+        finally
+        {
+            channel.close();
+            for (i=0; i<tableFiles.length; i++)
+            {
+                tableFiles[i].delete();
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ *  This class is a Processor that is meant to be reused for many
+ *  consecutive plans. Instead of creating a new Diver, Saturation, Dive
+ *  and Decompression for every plan, the session keeps these objects and
+ *  resets them in place.
+ *  A plan is made as follows:
+ *  <pre>
+ *      session=PlanningSession.forCurrentThread();
+ *      session.newSequence();
+ *      dive=session.newDive("Dive", seaLevel);
+ *      dive.addConstantDepthSegment(...);
+ *      dive.addDecoStage(...);
+ *      session.process();
+ *  </pre>
+ *  The objects returned by the session (the Diver, the Dives) are only
+ *  valid until the next call to newSequence(). A PlanningSession is not
+ *  thread safe; use one session per thread, e.g. through forCurrentThread().
+ */
+public class PlanningSession extends Processor
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    /** One session per thread */
+    private static final ThreadLocal<PlanningSession> threadSessions=
+        new ThreadLocal<PlanningSession>()
+        {
+            protected PlanningSession initialValue()
+            {
+                return new PlanningSession();
+            }
+        };
+
+    private Saturation                                  saturation;
+    private GasMixture                                  air;
+    private Length                                      seaLevel;
+
+    /** Dives handed out by newDive(); the first iDivesInUse are in use */
+    private Vector<Dive>                                dives;
+    private int                                         iDivesInUse;
+
+    /** Per pooled Dive (same index) the Decompressions per algorithm */
+    private Vector<HashMap<Integer, Decompression>>     decompressions;
+
+    /** Number of sequences processed by this session */
+    private long                                        lSequences;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction and reinitialising
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. The algorithm is set to the Processor default.
+     */
+    public PlanningSession()
+    {
+        super();
+    }
+
+    /**
+     *  Returns the PlanningSession of the current thread. It is created
+     *  the first time it is requested.
+     *  @return The session
+     */
+    public static PlanningSession forCurrentThread()
+    {
+        return threadSessions.get();
+    }
+
+    /**
+     *  Creates the pools. Called lazily, since the Processor constructor
+     *  already calls newSequence() before the fields of this class are
+     *  initialised.
+     */
+    private void initPools()
+    {
+        if (dives==null)
+        {
+            dives               =new Vector<Dive>();
+            iDivesInUse         =0;
+            decompressions      =new Vector<HashMap<Integer, Decompression>>();
+            seaLevel            =new Length(0.0, Length.UNITS_METER);
+        }
+    }
+
+    /**
+     *  Empty the exposure list and start a new one. The Diver is reset
+     *  and the Saturation of the previous sequence is reused as first
+     *  exposure. All Dives handed out return to the session.
+     */
+    public void newSequence()
+    {
+        initPools();
+
+        getExposures().clear();
+        getDiver().resetDiver();
+        iDivesInUse=0;
+        lSequences++;
+
+        try
+        {
+            if (saturation==null)
+            {
+                air         =new GasMixture(0.21, 0.00);
+                saturation  =new Saturation(seaLevel, air);
+            }
+            else
+            {
+                saturation.setParameters(seaLevel, air);
+            }
+            addExposure(saturation);
+        }
+        catch (IllegalActionException e)
+        {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     *  This method returns a Dive from the session and appends it to the
+     *  exposure list. The Dive is empty; segments and deco stages
+     *  must be added by the caller.
+     *  @param sDescription A description of the dive.
+     *  @param diveHeight   Height at which the dive takes place
+     *  @return The dive
+     */
+    public Dive newDive(String sDescription, Length diveHeight)
+    {
+        Dive dive;
+
+        initPools();
+
+        if (iDivesInUse<dives.size())
+        {
+            dive=dives.get(iDivesInUse);
+            dive.resetDive(sDescription, diveHeight);
+        }
+        else
+        {
+            dive=new Dive(sDescription, diveHeight);
+            dives.add(dive);
+            decompressions.add(new HashMap<Integer, Decompression>());
+        }
+        iDivesInUse++;
+
+        addExposure(dive);
+
+        return dive;
+    }
+
+    /**
+     *  This method returns the Decompression for the algorithm. Each
+     *  Dive owned by the session keeps one Decompression per algorithm,
+     *  which is reset and reused. For other Dives a new Decompression is
+     *  created.
+     *  @param dive The dive the decompression is meant for
+     *  @param iAlgorithm The algorithm, one of the ALGORITHM_ constants
+     *  @return The decompression or null if the algorithm is not supported
+     */
+    protected Decompression createDecoAlgorithm(Dive dive, int iAlgorithm)
+    {
+        HashMap<Integer, Decompression> diveDecompressions;
+        Decompression                   decompression;
+        int                             iIndex;
+
+        initPools();
+
+        iIndex=dives.indexOf(dive);
+        if (iIndex<0)
+        {
+            return super.createDecoAlgorithm(dive, iAlgorithm);
+        }
+
+        diveDecompressions=decompressions.get(iIndex);
+        decompression=diveDecompressions.get(iAlgorithm);
+        if (decompression==null)
+        {
+            decompression=super.createDecoAlgorithm(dive, iAlgorithm);
+            if (decompression!=null)
+            {
+                diveDecompressions.put(iAlgorithm, decompression);
+            }
+        }
+        else
+        {
+            decompression.resetDecompression();
+        }
+
+        return decompression;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the number of sequences started on this session
+     *  @return The number of sequences
+     */
+    public long getNumberOfSequences()
+    {
+        return lSequences;
+    }
+
+    /**
+     *  Returns the number of Dive instances owned by this session
+     *  @return The number of dives
+     */
+    public int getNumberOfPooledDives()
+    {
+        initPools();
+        return dives.size();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ *  This class compares the throughput and garbage of planning with a
+ *  PlanningSession with planning with a fresh Processor per plan. Every
+ *  plan is a 40 m / 25 min dive on air with a deco stage to the surface.
+ *  Per algorithm (ZH-L16B with gradient factors and VPM-B) both paths plan
+ *  the same number of dives, in alternating order over a number of
+ *  rounds, the first of which is a warm-up. Reported are the plans per
+ *  second, the bytes allocated per plan and the number and time of the
+ *  garbage collections. The final tissue tensions of both paths are
+ *  compared.
+ *  Usage: PlanningSessionBenchmark [plans per round [rounds]]
+ */
+public class PlanningSessionBenchmark
+{
+    private static final Length     SURFACE =new Length(0.0, Length.UNITS_METER);
+    private static final Length     DEPTH   =new Length(40.0, Length.UNITS_METER);
+    private static GasMixture       air;
+
+    /**
+     *  Totals of one path: time, allocation and garbage collection
+     */
+    private static class Totals
+    {
+        long    lNanos;
+        long    lAllocated;
+        long    lCollections;
+        long    lCollectionMillis;
+        long    lPlans;
+        double[] fTensions;
+    }
+
+    /**
+     *  Returns the number of bytes allocated by the current thread, or -1
+     *  if the JVM does not support measuring it
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean;
+
+        bean=ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     *  Returns the number of collections (index 0) and their time in ms
+     *  (index 1) of all garbage collectors
+     */
+    private static long[] collections()
+    {
+        long[]  lTotals;
+
+        lTotals=new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            lTotals[0]+=Math.max(0, bean.getCollectionCount());
+            lTotals[1]+=Math.max(0, bean.getCollectionTime());
+        }
+        return lTotals;
+    }
+
+    private static void addDive(Dive dive) throws IllegalActionException
+    {
+        dive.addVaryingDepthSegment(SURFACE, DEPTH, new Length(18.0, Length.UNITS_METER), air);
+        dive.addConstantDepthSegment(DEPTH, 25.0-40.0/18.0, air);
+        dive.addDecoStage(DEPTH, SURFACE, new Length(-9.0, Length.UNITS_METER), air,
+                          new Length(3.0, Length.UNITS_METER));
+    }
+
+    /**
+     *  Plans the dives with a new Processor per plan
+     */
+    private static Diver planFresh(int iAlgorithm, int nPlans) throws IllegalActionException, CalculationException
+    {
+        Processor   processor;
+        Dive        dive;
+        int         i;
+
+        processor=null;
+        for (i=0; i<nPlans; i++)
+        {
+            processor   =new Processor();
+            processor.setDecoAlgorithm(iAlgorithm);
+            dive        =new Dive("Dive", SURFACE);
+            addDive(dive);
+            processor.addExposure(dive);
+            processor.process();
+        }
+        return processor.getDiver();
+    }
+
+    /**
+     *  Plans the dives with the session of the current thread
+     */
+    private static Diver planWithSession(int iAlgorithm, int nPlans) throws IllegalActionException, CalculationException
+    {
+        PlanningSession session;
+        int             i;
+
+        session=PlanningSession.forCurrentThread();
+        for (i=0; i<nPlans; i++)
+        {
+            session.newSequence();
+            session.setDecoAlgorithm(iAlgorithm);
+            addDive(session.newDive("Dive", SURFACE));
+            session.process();
+        }
+        return session.getDiver();
+    }
+
+    private static void run(int iAlgorithm, boolean bSession, int nPlans, Totals totals, boolean bMeasure)
+                        throws IllegalActionException, CalculationException
+    {
+        TissueState state;
+        Diver       diver;
+        long[]      lCollections;
+        long        lAllocated;
+        long        lStart;
+
+        System.gc();
+        lCollections=collections();
+        lAllocated  =allocatedBytes();
+        lStart      =System.nanoTime();
+        diver       =bSession?planWithSession(iAlgorithm, nPlans):planFresh(iAlgorithm, nPlans);
+        if (bMeasure)
+        {
+            totals.lNanos           +=System.nanoTime()-lStart;
+            totals.lAllocated       +=allocatedBytes()-lAllocated;
+            totals.lCollections     +=collections()[0]-lCollections[0];
+            totals.lCollectionMillis+=collections()[1]-lCollections[1];
+            totals.lPlans           +=nPlans;
+        }
+        state               =new TissueState(diver);
+        totals.fTensions    =new double[state.size()*2];
+        System.arraycopy(state.getN2Tensions() , 0, totals.fTensions, 0           , state.size());
+        System.arraycopy(state.getHe2Tensions(), 0, totals.fTensions, state.size(), state.size());
+    }
+
+    private static void report(String sName, Totals totals)
+    {
+        System.out.println(String.format("  %-16s %8.0f plans/s  %8.0f bytes/plan  %5d collections, %5d ms",
+                                         sName, totals.lPlans*1.0e9/totals.lNanos,
+                                         (double)totals.lAllocated/totals.lPlans,
+                                         totals.lCollections, totals.lCollectionMillis));
+    }
+
+    private static void benchmark(int iAlgorithm, String sName, int nPlans, int nRounds)
+                        throws IllegalActionException, CalculationException
+    {
+        Totals  fresh;
+        Totals  session;
+        double  fMaxError;
+        int     iRound;
+        int     i;
+
+        fresh   =new Totals();
+        session =new Totals();
+        for (iRound=0; iRound<nRounds; iRound++)
+        {
+            // Alternate the order, so that neither path profits from running second
+            if (iRound%2==0)
+            {
+                run(iAlgorithm, false, nPlans, fresh  , iRound>0);
+                run(iAlgorithm, true , nPlans, session, iRound>0);
+            }
+            else
+            {
+                run(iAlgorithm, true , nPlans, session, iRound>0);
+                run(iAlgorithm, false, nPlans, fresh  , iRound>0);
+            }
+        }
+        fMaxError=0.0;
+        for (i=0; i<fresh.fTensions.length; i++)
+        {
+            fMaxError=Math.max(fMaxError, Math.abs(fresh.fTensions[i]-session.fTensions[i]));
+        }
+        System.out.println(sName+", "+fresh.lPlans+" plans per path, max tension difference "+fMaxError+" bar");
+        report("Fresh Processor", fresh);
+        report("PlanningSession", session);
+    }
+
+    /**
+     *  Usage: PlanningSessionBenchmark [plans per round [rounds]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int nPlans;
+        int nRounds;
+
+        nPlans  =(args.length>0)?Integer.parseInt(args[0]):20000;
+        nRounds =(args.length>1)?Integer.parseInt(args[1]):5;
+
+        air     =new GasMixture(0.21, 0.0);
+        System.out.println("Heap "+Runtime.getRuntime().maxMemory()/1048576+" MB");
+        benchmark(Processor.ALGORITHM_BUHLMANNBWITHGRADIENT, "ZH-L16B gradient", nPlans, nRounds);
+        benchmark(Processor.ALGORITHM_VPMB, "VPM-B", nPlans/10, nRounds);
+    }
+}
@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 /**
  * This class represents a Pressure value. The class contains functionality
@@ -329,6 +332,19 @@ public class Pressure
        
         return element;
     }     
+
+    /**
+     *  This method writes the XML representation of the Pressure to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("Pressure");
+        writer.element("Units", "Bar");
+        writer.element("PressureValue", this.fPressureInBar);
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the GasMixture.
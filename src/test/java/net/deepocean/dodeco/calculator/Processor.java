@@ -12,7 +12,10 @@
 
 package net.deepocean.dodeco.calculator;
 
+import net.deepocean.dodeco.report.TextResultExporter;
 import net.deepocean.dodeco.tools.MyXML;
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
 import java.io.*;
 import java.util.Enumeration;
@@ -41,6 +44,15 @@ public class Processor
     
     public static final int                     MAX_EXPOSURES=20;
     private             Vector<Exposure>        theExposures;
+    private             Vector<ExposureResult>  theResults;
+    private             ScheduleCache           scheduleCache;
+    private             boolean                 bResultsFromCache;
+    private             DominanceCache          dominanceCache;
+    private             boolean                 bConservativeReuse;
+    private             boolean                 bResultsApproximate;
+    private             boolean                 bDiverUnknown;
+    private             TissueTimeline          timeline;
+    private             TissueState             timelineState;
     private             GasMixture[]            gasMixtures;
     private Diver diver;
 
@@ -54,6 +66,15 @@ public class Processor
         // Initialise main variables
         diver           =new Diver();
         theExposures    =new Vector<Exposure>();
+        theResults      =new Vector<ExposureResult>();
+        scheduleCache   =null;
+        bResultsFromCache=false;
+        dominanceCache  =null;
+        bConservativeReuse=false;
+        bResultsApproximate=false;
+        bDiverUnknown   =false;
+        timeline        =null;
+        timelineState   =null;
         gasMixtures     =null;
         
         iAlgorithm      =ALGORITHM_VPM;
@@ -70,6 +91,9 @@ public class Processor
     {
         // Reset the Exposure array
         theExposures.clear();
+        theResults.clear();
+        bResultsFromCache=false;
+        bResultsApproximate=false;
     }
 
     public void setDecoAlgorithm(int iAlgorithm)
@@ -102,6 +126,23 @@ public class Processor
      *  @param dive The dive to modify
      */
     private void addDecoAlgorithm(Dive dive)
+    {
+        Decompression decoAlgorithm;
+        
+        decoAlgorithm=createDecoAlgorithm(dive, iAlgorithm);
+        if (decoAlgorithm!=null)
+        {
+            dive.setDecompression(decoAlgorithm);
+        }
+    }
+
+    /**
+     *  This method creates the Decompression for the algorithm indicated.
+     *  @param dive The dive the decompression is meant for
+     *  @param iAlgorithm The algorithm, one of the ALGORITHM_ constants
+     *  @return The decompression or null if the algorithm is not supported
+     */
+    protected Decompression createDecoAlgorithm(Dive dive, int iAlgorithm)
     {
         Decompression decoAlgorithm=null;
         
@@ -137,10 +178,7 @@ public class Processor
         {
             // To be defined
         }
-        if (decoAlgorithm!=null)
-        {
-            dive.setDecompression(decoAlgorithm);
-        }
+        return decoAlgorithm;
     }
     
     /**
@@ -290,6 +328,10 @@ public class Processor
         Enumeration         exposures;
         Exposure            exposure;
 
+        theResults.clear();
+        bResultsFromCache=false;
+        bResultsApproximate=false;
+
         // Reset the Exposures
         exposures=theExposures.elements();
         while (exposures.hasMoreElements())
@@ -301,8 +343,23 @@ public class Processor
    
     
     /** This routine processes the exposures. The diver is updated for the
-     *  exposures.
-     *  @exception IllegalActionException
+     *  exposures. The result of each exposure is captured, see getResults().
+     *  A sequence starting with a Saturation starts from a reset diver;
+     *  other sequences continue from the diver as the previous call left
+     *  it. Only sequences starting with a Saturation are cached.
+     *  If a schedule cache is set and it contains the results of the
+     *  exposure sequence, the results are taken from the cache and the
+     *  exposures and diver are not updated (see isResultFromCache()).
+     *  In the conservative reuse mode, the results may be those of a
+     *  dominating dive from the dominance cache (see isResultApproximate()).
+     *  After results from a cache the diver does not reflect the sequence,
+     *  so the next sequence must start with a Saturation.
+     *  If timeline recording is on, the tissue tensions are recorded in the
+     *  timeline (see getTimeline()); the timeline stays empty for results
+     *  taken from a cache.
+     *  @exception IllegalActionException if there are no exposures, or the
+     *             sequence does not start with a Saturation and the
+     *             previous results were taken from a cache
      *  @exception      CalculationException
      */
     public void process() throws IllegalActionException, CalculationException
@@ -310,6 +367,9 @@ public class Processor
         Enumeration exposures;
         Exposure    exposure;
         double      fRunTime;
+        byte[]      cacheKey;
+        Vector<ExposureResult> cachedResults;
+        DominanceCache.Signature signature;
 
       
         if (theExposures.size()==0)
@@ -317,8 +377,57 @@ public class Processor
              throw new IllegalActionException("No exposures defined");
         }        
 
+        if (startsWithSaturation(theExposures))
+        {
+            diver.resetDiver();
+            bDiverUnknown=false;
+        }
+        else if (bDiverUnknown)
+        {
+            throw new IllegalActionException("Diver state unknown after cached results, "+
+                                             "start the sequence with a saturation");
+        }
+
         resetProcessing();
+        if (timeline!=null)
+        {
+            timeline.clear();
+        }
         
+        cacheKey=null;
+        if (scheduleCache!=null)
+        {
+            cacheKey=ScheduleCache.createKey(theExposures, iAlgorithm);
+            if (cacheKey!=null)
+            {
+                cachedResults=scheduleCache.get(cacheKey);
+                if (cachedResults!=null)
+                {
+                    theResults.addAll(cachedResults);
+                    bResultsFromCache=true;
+                    bDiverUnknown=true;
+                    return;
+                }
+            }
+        }
+
+        signature=null;
+        if (dominanceCache!=null)
+        {
+            signature=DominanceCache.createSignature(theExposures, iAlgorithm);
+            if (signature!=null && bConservativeReuse)
+            {
+                cachedResults=dominanceCache.findDominating(signature);
+                if (cachedResults!=null)
+                {
+                    theResults.addAll(cachedResults);
+                    bResultsFromCache=true;
+                    bResultsApproximate=true;
+                    bDiverUnknown=true;
+                    return;
+                }
+            }
+        }
         
         fRunTime=0.0;
         exposures=theExposures.elements();
@@ -326,10 +435,129 @@ public class Processor
         while(exposures.hasMoreElements())
         {
             exposure=(Exposure)exposures.nextElement();
+            if (timeline!=null)
+            {
+                timelineState.load(diver);
+            }
             exposure.exposeDiver(diver, fRunTime);
+            if (timeline!=null)
+            {
+                timeline.recordExposure(exposure, timelineState, diver);
+            }
             fRunTime=exposure.getRunTime();            
+            theResults.add(new ExposureResult(exposure, diver));
+        }
+
+        if (cacheKey!=null)
+        {
+            scheduleCache.put(cacheKey, theResults);
+        }
+        if (signature!=null)
+        {
+            dominanceCache.put(signature, theResults);
         }
-   
+    }
+
+    /**
+     *  Returns whether the exposure sequence starts with a Saturation. The
+     *  results of such a sequence do not depend on the state of the diver
+     *  before it.
+     *  @param exposures The exposures
+     *  @return True if the first exposure is a Saturation
+     */
+    static boolean startsWithSaturation(Vector<Exposure> exposures)
+    {
+        return exposures.size()>0 && exposures.firstElement() instanceof Saturation;
+    }
+
+    /**
+     *  Sets the schedule cache process() reads from and writes to
+     *  @param scheduleCache The cache or null for no caching
+     */
+    public void setScheduleCache(ScheduleCache scheduleCache)
+    {
+        this.scheduleCache=scheduleCache;
+    }
+
+    public ScheduleCache getScheduleCache()
+    {
+        return scheduleCache;
+    }
+
+    /**
+     *  Sets the dominance cache. Calculated dives are added to it; it is
+     *  only used to answer requests in the conservative reuse mode.
+     *  @param dominanceCache The cache or null
+     */
+    public void setDominanceCache(DominanceCache dominanceCache)
+    {
+        this.dominanceCache=dominanceCache;
+    }
+
+    public DominanceCache getDominanceCache()
+    {
+        return dominanceCache;
+    }
+
+    /**
+     *  Sets the conservative reuse mode. In this mode process() may answer
+     *  with the schedule of a deeper or longer dive on the same gases,
+     *  taken from the dominance cache, instead of calculating the dive.
+     *  Schedules are only reused for the algorithms for which
+     *  DominanceCache.isMonotone() holds.
+     *  @param bConservativeReuse True to allow conservative reuse
+     */
+    public void setConservativeReuse(boolean bConservativeReuse)
+    {
+        this.bConservativeReuse=bConservativeReuse;
+    }
+
+    /**
+     *  Switches recording of the tissue tensions by process() on or off
+     *  @param bRecord True to record a TissueTimeline
+     */
+    public void setTimelineRecording(boolean bRecord)
+    {
+        if (bRecord && timeline==null)
+        {
+            timeline        =new TissueTimeline();
+            timelineState   =new TissueState();
+        }
+        else if (!bRecord)
+        {
+            timeline        =null;
+            timelineState   =null;
+        }
+    }
+
+    /**
+     *  Returns the tissue tensions recorded by the last call to process()
+     *  @return The timeline or null if recording is off
+     */
+    public TissueTimeline getTimeline()
+    {
+        return timeline;
+    }
+
+    /**
+     *  Returns whether the results of the last call to process() are
+     *  those of a dominating dive rather than of the exposures themselves.
+     *  @return True if conservatively reused
+     */
+    public boolean isResultApproximate()
+    {
+        return bResultsApproximate;
+    }
+
+    /**
+     *  Returns whether the results of the last call to process() came from
+     *  the schedule cache. In that case the exposures have not been
+     *  calculated and only the results are valid.
+     *  @return True if taken from the cache
+     */
+    public boolean isResultFromCache()
+    {
+        return bResultsFromCache;
     }
 
     /*------------------------------------------------------------------------------------------------*\
@@ -496,6 +724,34 @@ public class Processor
         }
     }
 
+    /**
+     *  Returns the results of the exposures, captured by the last call to
+     *  process()
+     *  @return The results, one per exposure
+     */
+    public Vector<ExposureResult> getResults()
+    {
+        return theResults;
+    }
+
+    /**
+     *  This method exports the results of the last call to process()
+     *  @param exporter The exporter to write the results with
+     *  @exception IOException
+     */
+    public void exportResults(ResultExporter exporter) throws IOException
+    {
+        Enumeration<ExposureResult> results;
+
+        exporter.startDocument();
+        results=theResults.elements();
+        while (results.hasMoreElements())
+        {
+            exporter.exportResult(results.nextElement());
+        }
+        exporter.endDocument();
+    }
+
     /**
      * This method prints an overview of the exposures. In fact, it is the dive
      * plan.
@@ -507,6 +763,16 @@ public class Processor
 
         try
         {
+            if (bResultsFromCache)
+            {
+                // The exposures have not been calculated: print the results
+                if (bResultsApproximate)
+                {
+                    writer.write(Text.sReport25);
+                }
+                exportResults(new TextResultExporter(writer));
+                return;
+            }
             exposures=theExposures.elements();
             while(exposures.hasMoreElements())
             {
@@ -525,96 +791,237 @@ public class Processor
      * XML parsing and writing
     \*------------------------------------------------------------------------------------------------*/
     /**
-     *  This method loads the list of exposures from XML file
+     *  This method loads the list of exposures from XML file. The
+     *  exposures are streamed from the file, but they replace the list only
+     *  when the whole file has been read: if reading fails, the list of
+     *  exposures is not changed.
      *  @param file The file to read from
      */
     public void loadExposures(File file)
     {
         FileReader          reader;
         BufferedReader      bufferedReader;
-        MyXML               root;
-        MyXML               element;
-        int                 i;
-        String              tag;
+        ExposureReader      exposureReader;
         Exposure            exposure;
-        
-        // Empty
-        this.clear();
+        Vector<Exposure>    exposures;
+        int                 i;
+
+        exposures=new Vector<Exposure>();
         try
         {
             reader          =new FileReader(file);
             bufferedReader  =new BufferedReader(reader);
-            root=new MyXML(bufferedReader);
-            
-            i=0;
-            while (i<root.size())
+            exposureReader  =new ExposureReader(bufferedReader);
+            try
             {
-                element=root.getElement(i);
-                tag=element.getTag();
-                if (tag.equals("Saturation"))
-                {
-                    exposure=new Saturation(element);
-                    this.addExposure(exposure);
-                }
-                else if (tag.equals("Dive"))
-                {
-                    exposure=new Dive(element);
-                    this.addExposure(exposure);
-                }
-                else if (tag.equals("SurfaceInterval"))
+                exposure=exposureReader.nextExposure();
+                while (exposure!=null)
                 {
-                    exposure=new SurfaceInterval(element);
-                    this.addExposure(exposure);
+                    exposures.add(exposure);
+                    exposure=exposureReader.nextExposure();
                 }
-                else if (tag.equals("Acclimatisation"))
-                {
-                    exposure=new Acclimatisation(element);
-                    this.addExposure(exposure);
-                }
-                i++;
+            }
+            finally
+            {
+                exposureReader.close();
             }
         }
         catch (Exception e)
         {
             System.err.println("Error "+e.getMessage());
-        }        
-        
+            return;
+        }
+
+        // Empty
+        this.clear();
+        for (i=0; i<exposures.size(); i++)
+        {
+            this.addExposure(exposures.get(i));
+        }
+    }
+
+    /**
+     *  This method replaces the list of exposures by the exposures in the
+     *  XML representation (an ExposureList element)
+     *  @param root The XML representation of the exposure list
+     *  @exception MyXMLException if the representation is not valid
+     *  @exception IllegalActionException if an exposure is not valid
+     */
+    public void loadExposures(MyXML root) throws MyXMLException, IllegalActionException
+    {
+        int                 i;
+        Exposure            exposure;
+
+        // Empty
+        this.clear();
+
+        i=0;
+        while (i<root.size())
+        {
+            exposure=ExposureReader.createExposure(root.getElement(i));
+            if (exposure!=null)
+            {
+                this.addExposure(exposure);
+            }
+            i++;
+        }
+    }
+
+    /**
+     *  This method replaces the list of exposures by the exposures of a
+     *  plan in a plan archive
+     *  @param archive The plan archive
+     *  @param iPlan Index of the plan in the archive
+     *  @exception IllegalActionException if an exposure is not valid
+     */
+    public void loadExposures(PlanArchive archive, int iPlan) throws IllegalActionException
+    {
+        int                 i;
+
+        // Empty
+        this.clear();
+
+        for (i=0; i<archive.getNumberOfExposures(iPlan); i++)
+        {
+            this.addExposure(archive.getExposure(iPlan, i));
+        }
+    }
+
+    /**
+     *  This method replaces the list of exposures by the exposures read
+     *  from the reader and processes each exposure as soon as it has been
+     *  read. The exposure is printed to the writer directly after
+     *  processing. This way, large exposure files can be processed while
+     *  they are read, without holding all exposures in memory.
+     *  @param reader The reader supplying the exposures
+     *  @param writer The writer to print the exposures to
+     *  @param bKeepExposures If true, the exposures are kept in the
+     *                  exposure list; if false only the last exposure is
+     *  @return The number of exposures processed
+     *  @exception MyXMLException if the document is not valid
+     *  @exception IllegalActionException
+     *  @exception CalculationException
+     *  @exception IOException
+     */
+    public int processExposures(ExposureReader reader, Writer writer, boolean bKeepExposures)
+               throws MyXMLException, IllegalActionException, CalculationException, IOException
+    {
+        Exposure    exposure;
+        double      fRunTime;
+        int         nExposures;
+
+        // Empty
+        this.clear();
+
+        fRunTime    =0.0;
+        nExposures  =0;
+        exposure    =reader.nextExposure();
+        while (exposure!=null)
+        {
+            if (!bKeepExposures)
+            {
+                theExposures.clear();
+            }
+            this.addExposure(exposure);
+
+            exposure.exposeDiver(diver, fRunTime);
+            fRunTime=exposure.getRunTime();
+            exposure.printExposure(writer);
+
+            nExposures++;
+            exposure=reader.nextExposure();
+        }
+        writer.flush();
+
+        if (nExposures==0)
+        {
+            throw new IllegalActionException("No exposures defined");
+        }
+        return nExposures;
+    }
+
+    /**
+     *  This method replaces the list of exposures by the exposures read
+     *  from the reader and processes each exposure as soon as it has been
+     *  read, like processExposures(ExposureReader, Writer, boolean). The
+     *  result of each exposure is passed to the exporter directly after
+     *  processing; a single ExposureResult instance is reused for all
+     *  exposures, so getResults() stays empty.
+     *  @param reader The reader supplying the exposures
+     *  @param exporter The exporter to write the results with
+     *  @param bKeepExposures If true, the exposures are kept in the
+     *                  exposure list; if false only the last exposure is
+     *  @return The number of exposures processed
+     *  @exception MyXMLException if the document is not valid
+     *  @exception IllegalActionException
+     *  @exception CalculationException
+     *  @exception IOException
+     */
+    public int processExposures(ExposureReader reader, ResultExporter exporter, boolean bKeepExposures)
+               throws MyXMLException, IllegalActionException, CalculationException, IOException
+    {
+        Exposure        exposure;
+        ExposureResult  result;
+        double          fRunTime;
+        int             nExposures;
+
+        // Empty
+        this.clear();
+
+        result      =new ExposureResult();
+        fRunTime    =0.0;
+        nExposures  =0;
+        exporter.startDocument();
+        exposure    =reader.nextExposure();
+        while (exposure!=null)
+        {
+            if (!bKeepExposures)
+            {
+                theExposures.clear();
+            }
+            this.addExposure(exposure);
+
+            exposure.exposeDiver(diver, fRunTime);
+            fRunTime=exposure.getRunTime();
+            result.capture(exposure, diver);
+            exporter.exportResult(result);
+
+            nExposures++;
+            exposure=reader.nextExposure();
+        }
+        exporter.endDocument();
+
+        if (nExposures==0)
+        {
+            throw new IllegalActionException("No exposures defined");
+        }
+        return nExposures;
     }
     
     /**
-     *  This method saves the list of exposures to XML file
+     *  This method saves the list of exposures to XML file. The file is
+     *  written directly, without creating the MyXML tree first.
      *  @param file The file to write to
      */
     public void saveExposures(File file)
     {
-        FileWriter          fileWriter;
-        BufferedWriter      bufferedWriter;
-        PrintWriter         printWriter;
-        
-        Enumeration         exposures;
-        Exposure            exposure;
+        FileOutputStream    outputStream;
+        MyXMLWriter         writer;
         
         try
         {
-            fileWriter=new FileWriter(file);
-            bufferedWriter=new BufferedWriter(fileWriter);
-            printWriter=new PrintWriter(bufferedWriter);
-
-            MyXML root = new MyXML("ExposureList");
-            
-            exposures=theExposures.elements();
-            while (exposures.hasMoreElements())
+            outputStream=new FileOutputStream(file);
+            writer=new MyXMLWriter(outputStream.getChannel());
+            try
             {
-                exposure=(Exposure)exposures.nextElement();
-                root.addElement(exposure.getXmlRepresentation());
+                writer.startDocument();
+                writeXmlRepresentation(writer);
+                writer.endDocument();
+            }
+            finally
+            {
+                writer.close();
             }
-            
-            root.serialize(printWriter);
-
-            printWriter.flush();
-            bufferedWriter.flush();
-            printWriter.close();
-
         }
         catch(Exception e)
         {
@@ -623,4 +1030,49 @@ public class Processor
         
     }
 
+    /**
+     *  This method creates the XML representation of the list of exposures
+     *  @return The ExposureList element
+     *  @exception MyXMLException
+     */
+    public MyXML getXmlRepresentation() throws MyXMLException
+    {
+        MyXML               root;
+        Enumeration         exposures;
+        Exposure            exposure;
+
+        root = new MyXML("ExposureList");
+
+        exposures=theExposures.elements();
+        while (exposures.hasMoreElements())
+        {
+            exposure=(Exposure)exposures.nextElement();
+            root.addElement(exposure.getXmlRepresentation());
+        }
+        return root;
+    }
+
+    /**
+     *  This method writes the XML representation of the list of exposures
+     *  (an ExposureList element) to the writer
+     *  @param writer The writer
+     *  @exception MyXMLException
+     *  @exception IOException
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        Enumeration         exposures;
+        Exposure            exposure;
+
+        writer.startElement("ExposureList");
+
+        exposures=theExposures.elements();
+        while (exposures.hasMoreElements())
+        {
+            exposure=(Exposure)exposures.nextElement();
+            exposure.writeXmlRepresentation(writer);
+        }
+        writer.endElement();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.IOException;
+
+/**
+ *  This interface is implemented by the exporters that write exposure
+ *  results to a stream (see the net.deepocean.dodeco.report package).
+ *  startDocument() is called once, exportResult() for each exposure in
+ *  order and endDocument() at the end. The result passed to
+ *  exportResult() may be reused for the next exposure, so exporters must
+ *  not keep a reference to it.
+ */
+public interface ResultExporter
+{
+    /**
+     *  Writes anything preceding the results
+     *  @exception IOException
+     */
+    public void startDocument() throws IOException;
+
+    /**
+     *  Writes the result of one exposure
+     *  @param result The result
+     *  @exception IOException
+     */
+    public void exportResult(ExposureResult result) throws IOException;
+
+    /**
+     *  Writes anything following the results and flushes the output
+     *  @exception IOException
+     */
+    public void endDocument() throws IOException;
+}
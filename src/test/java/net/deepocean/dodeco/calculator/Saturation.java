@@ -14,7 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -61,7 +63,7 @@ public class Saturation extends Exposure
     public void setParameters(Length heightAboveSeaLevel, GasMixture gasMixture)
     {
         saturationHeight.equalsLength(heightAboveSeaLevel);
-        gasMixture.equalsGasMixture(gasMixture);    
+        this.gasMixture.equalsGasMixture(gasMixture);    
         
         ambientSaturationPressure.setHeight(saturationHeight);
     }
@@ -109,8 +111,8 @@ public class Saturation extends Exposure
         {
             compartment=(TissueCompartment)elements.nextElement();
             
-            compartment.setN2TissueTension (new Pressure(fAlveolarPressureN2 , Pressure.UNITS_BAR));
-            compartment.setHe2TissueTension(new Pressure(fAlveolarPressureHe2, Pressure.UNITS_BAR));
+            compartment.getN2TissueTension() .setValue(fAlveolarPressureN2 , Pressure.UNITS_BAR);
+            compartment.getHe2TissueTension().setValue(fAlveolarPressureHe2, Pressure.UNITS_BAR);
             compartment.setN2InitialCriticalRadius(Parameters.initialCriticalRadiusN2);
             compartment.setHe2InitialCriticalRadius(Parameters.initialCriticalRadiusHe2);
         }
@@ -162,6 +164,24 @@ public class Saturation extends Exposure
         element.addElement(gasMixture.getXmlRepresentation());
         return element;
     }    
+
+    /**
+     *  This method writes the XML representation of the Saturation to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("Saturation");
+
+        writer.startElement("SaturationHeight");
+        saturationHeight.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Saturation.
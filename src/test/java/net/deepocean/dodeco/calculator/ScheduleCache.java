@@ -0,0 +1,1151 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ *  This class is a disk based cache of calculated schedules: the
+ *  ExposureResults of processing an exposure sequence. It survives
+ *  restarts, so a planning service does not have to recalculate its
+ *  popular plans after a deploy. A Processor uses it when it is set by
+ *  Processor.setScheduleCache(): process() looks the sequence up first
+ *  (read through) and hands new results to the cache, which writes them
+ *  on a background thread (write behind).
+ *  <p>
+ *  The key is the SHA-256 digest of the exposure sequence (its XML
+ *  representation), the algorithm and the Parameters snapshot, so a
+ *  change of any parameter results in different keys.
+ *  <p>
+ *  The cache consists of two files in a directory:
+ *  <ul>
+ *  <li>schedules.log: header followed by records, appended only. A record
+ *      is: int magic, int payload length, 32 byte key, payload (the
+ *      results, see ExposureResult.writeTo()), int CRC32 of key and
+ *      payload.</li>
+ *  <li>schedules.idx: memory mapped open addressing hash table. Header:
+ *      int magic, int version, int capacity, int count, long log length
+ *      covered by the index, long access clock. Slots of 24 bytes: long
+ *      key hash (0 is empty), long record offset, long last access.</li>
+ *  </ul>
+ *  On opening, records appended after the index was last updated are
+ *  added to it; a missing or damaged index is rebuilt from the log.
+ *  Every record read is checked against its key and CRC, a bad record is
+ *  a miss. If the log grows beyond the size limit it is compacted: the
+ *  most recently used schedules are copied to a new log until
+ *  COMPACTION_TARGET of the limit is reached.
+ *  <p>
+ *  The cache is thread safe; it must not be opened by two processes at
+ *  the same time.
+ */
+public class ScheduleCache
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final String  LOG_FILENAME        ="schedules.log";
+    public static final String  INDEX_FILENAME      ="schedules.idx";
+    public static final long    DEFAULT_MAX_SIZE    =256L*1024*1024;
+    /** Fraction of the size limit the log is compacted to */
+    public static final double  COMPACTION_TARGET   =0.75;
+
+    private static final int    LOG_MAGIC           =0x4444534c;    // DDSL
+    private static final int    RECORD_MAGIC        =0x44445352;    // DDSR
+    private static final int    INDEX_MAGIC         =0x44445349;    // DDSI
+    private static final int    VERSION             =1;
+    /** Changes when the key or payload layout changes */
+    private static final int    KEY_VERSION         =1;
+    private static final int    KEY_SIZE            =32;
+    private static final int    LOG_HEADER_SIZE     =16;
+    private static final int    RECORD_OVERHEAD     =4+4+KEY_SIZE+4;
+    private static final int    INDEX_HEADER_SIZE   =64;
+    private static final int    SLOT_SIZE           =24;
+    private static final int    MIN_CAPACITY        =1024;
+    private static final double MAX_LOAD            =0.7;
+    private static final int    WRITE_QUEUE_SIZE    =1024;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private File                                    directory;
+    private long                                    lMaxSize;
+
+    private RandomAccessFile                        logFile;
+    private FileChannel                             logChannel;
+    private long                                    lLogLength;
+
+    private RandomAccessFile                        indexFile;
+    private MappedByteBuffer                        index;
+    private int                                     iCapacity;
+    private int                                     nEntries;
+
+    private ReentrantReadWriteLock                  lock;
+    /** Results handed to put() that have not been written yet */
+    private ConcurrentHashMap<ByteBuffer, byte[]>   pending;
+    private ThreadPoolExecutor                      writer;
+
+    private AtomicLong                              hits;
+    private AtomicLong                              misses;
+    private AtomicLong                              writes;
+    private AtomicLong                              dropped;
+    private AtomicLong                              compactions;
+    private AtomicLong                              accessClock;
+    private long                                    lOpenNanos;
+    private int                                     nRecovered;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction, opening and closing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Opens the cache in the directory, creating it if
+     *  necessary.
+     *  @param directory The directory holding the cache files
+     *  @param lMaxSize Maximum size of the log in bytes
+     *  @exception IOException
+     */
+    public ScheduleCache(File directory, long lMaxSize) throws IOException
+    {
+        long lStart;
+
+        lStart          =System.nanoTime();
+        this.directory  =directory;
+        this.lMaxSize   =lMaxSize;
+        lock            =new ReentrantReadWriteLock();
+        pending         =new ConcurrentHashMap<ByteBuffer, byte[]>();
+        hits            =new AtomicLong();
+        misses          =new AtomicLong();
+        writes          =new AtomicLong();
+        dropped         =new AtomicLong();
+        compactions     =new AtomicLong();
+        accessClock     =new AtomicLong();
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create cache directory "+directory);
+        }
+        openFiles();
+
+        writer=new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<Runnable>(WRITE_QUEUE_SIZE),
+                                      new ThreadFactory()
+                                      {
+                                          public Thread newThread(Runnable runnable)
+                                          {
+                                              Thread thread;
+
+                                              thread=new Thread(runnable, "schedule-cache-writer");
+                                              thread.setDaemon(true);
+                                              return thread;
+                                          }
+                                      },
+                                      new ThreadPoolExecutor.AbortPolicy());
+        lOpenNanos=System.nanoTime()-lStart;
+    }
+
+    /**
+     *  Constructor. Opens the cache with the default size limit.
+     *  @param directory The directory holding the cache files
+     *  @exception IOException
+     */
+    public ScheduleCache(File directory) throws IOException
+    {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     *  Opens the log and the index. The index is rebuilt if it does not
+     *  match the log.
+     */
+    private void openFiles() throws IOException
+    {
+        ByteBuffer  header;
+        long        lCovered;
+        boolean     bValid;
+
+        logFile     =new RandomAccessFile(new File(directory, LOG_FILENAME), "rw");
+        logChannel  =logFile.getChannel();
+        header      =ByteBuffer.allocate(LOG_HEADER_SIZE);
+        if (logChannel.size()<LOG_HEADER_SIZE)
+        {
+            header.putInt(LOG_MAGIC).putInt(VERSION).putLong(0L);
+            header.flip();
+            logChannel.truncate(0);
+            writeFully(logChannel, header, 0);
+        }
+        else
+        {
+            readFully(logChannel, header, 0);
+            if (header.getInt(0)!=LOG_MAGIC || header.getInt(4)!=VERSION)
+            {
+                throw new IOException("Not a schedule cache: "+new File(directory, LOG_FILENAME));
+            }
+        }
+        lLogLength=logChannel.size();
+
+        indexFile=new RandomAccessFile(new File(directory, INDEX_FILENAME), "rw");
+        bValid=false;
+        if (indexFile.length()>=INDEX_HEADER_SIZE)
+        {
+            index   =indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+            lCovered=index.getLong(16);
+            bValid  =index.getInt(0)==INDEX_MAGIC && index.getInt(4)==VERSION &&
+                     index.getInt(8)>=MIN_CAPACITY &&
+                     indexFile.length()==INDEX_HEADER_SIZE+(long)index.getInt(8)*SLOT_SIZE &&
+                     lCovered>=LOG_HEADER_SIZE && lCovered<=lLogLength;
+        }
+        else
+        {
+            lCovered=LOG_HEADER_SIZE;
+        }
+
+        if (bValid)
+        {
+            iCapacity   =index.getInt(8);
+            nEntries    =index.getInt(12);
+            accessClock.set(index.getLong(24));
+        }
+        else
+        {
+            createIndex(MIN_CAPACITY);
+            lCovered=LOG_HEADER_SIZE;
+        }
+        nRecovered=recover(lCovered);
+    }
+
+    /**
+     *  Creates an empty index file with the given capacity and maps it
+     */
+    private void createIndex(int iNewCapacity) throws IOException
+    {
+        indexFile.setLength(0);
+        indexFile.setLength(INDEX_HEADER_SIZE+(long)iNewCapacity*SLOT_SIZE);
+        index       =indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+        iCapacity   =iNewCapacity;
+        nEntries    =0;
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, iCapacity);
+        index.putInt(12, 0);
+        index.putLong(16, LOG_HEADER_SIZE);
+        index.putLong(24, accessClock.get());
+    }
+
+    /**
+     *  Adds the records from lOffset to the end of the log to the index.
+     *  A damaged record at the end (partly written) is cut off.
+     *  @return The number of records added
+     */
+    private int recover(long lOffset) throws IOException
+    {
+        ByteBuffer  header;
+        byte[]      key;
+        int         iLength;
+        int         nAdded;
+
+        header  =ByteBuffer.allocate(8+KEY_SIZE);
+        key     =new byte[KEY_SIZE];
+        nAdded  =0;
+        while (lOffset+RECORD_OVERHEAD<=lLogLength)
+        {
+            header.clear();
+            readFully(logChannel, header, lOffset);
+            iLength=header.getInt(4);
+            if (header.getInt(0)!=RECORD_MAGIC || iLength<0 ||
+                lOffset+RECORD_OVERHEAD+iLength>lLogLength)
+            {
+                break;
+            }
+            header.position(8);
+            header.get(key);
+            if (readRecord(lOffset, key)==null)
+            {
+                break;
+            }
+            if (findSlot(key)<0)
+            {
+                insert(key, lOffset);
+                nAdded++;
+            }
+            lOffset+=RECORD_OVERHEAD+iLength;
+        }
+        if (lOffset<lLogLength)
+        {
+            logChannel.truncate(lOffset);
+            lLogLength=lOffset;
+        }
+        index.putLong(16, lLogLength);
+        return nAdded;
+    }
+
+    /**
+     *  Writes the pending results, and closes the files
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        flush();
+        writer.shutdown();
+        lock.writeLock().lock();
+        try
+        {
+            index.putLong(24, accessClock.get());
+            index.force();
+            logChannel.force(false);
+            logChannel.close();
+            indexFile.close();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Waits until all results handed to put() before have been written
+     *  @exception IOException
+     */
+    public void flush() throws IOException
+    {
+        Future<?> marker;
+
+        try
+        {
+            marker=writer.submit(new Runnable()
+            {
+                public void run()
+                {
+                }
+            });
+            marker.get();
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Already closed
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Flushing the schedule cache failed: "+e);
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Keys
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Creates the key of an exposure sequence: the SHA-256 digest of the
+     *  XML representation of the exposures, the algorithm and the
+     *  Parameters snapshot. Only sequences starting with a Saturation get
+     *  a key: the results of other sequences depend on the state of the
+     *  diver before them, which is not part of the key.
+     *  @param exposures The exposures
+     *  @param iAlgorithm The algorithm (Processor.ALGORITHM_ constant)
+     *  @return The key (32 bytes) or null if the sequence does not start
+     *          with a Saturation or the exposures cannot be represented
+     */
+    public static byte[] createKey(Vector<Exposure> exposures, int iAlgorithm)
+    {
+        MessageDigest       digest;
+        DigestOutputStream  digestStream;
+        DataOutputStream    out;
+        MyXMLWriter         xmlWriter;
+        Enumeration<Exposure> elements;
+
+        if (!Processor.startsWithSaturation(exposures))
+        {
+            return null;
+        }
+
+        try
+        {
+            digest      =MessageDigest.getInstance("SHA-256");
+            digestStream=new DigestOutputStream(new OutputStream()
+            {
+                public void write(int b)
+                {
+                }
+
+                public void write(byte[] buffer, int iOffset, int iLength)
+                {
+                }
+            }, digest);
+            out         =new DataOutputStream(digestStream);
+            out.writeInt(KEY_VERSION);
+            out.writeInt(iAlgorithm);
+            Parameters.writeSnapshot(out);
+            out.flush();
+
+            xmlWriter   =new MyXMLWriter(new OutputStreamWriter(digestStream, "UTF-8"));
+            elements    =exposures.elements();
+            while (elements.hasMoreElements())
+            {
+                elements.nextElement().writeXmlRepresentation(xmlWriter);
+            }
+            xmlWriter.flush();
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+        catch (Exception e)
+        {
+            // MyXMLException or IOException: exposure not representable
+            return null;
+        }
+    }
+
+    /**
+     *  Returns the hash table key of a key: its first 8 bytes, never 0
+     */
+    private static long keyHash(byte[] key)
+    {
+        long    lHash;
+        int     i;
+
+        lHash=0;
+        for (i=0; i<8; i++)
+        {
+            lHash=(lHash<<8)|(key[i]&0xff);
+        }
+        return (lHash==0)?1:lHash;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Looking up and storing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Looks up the results for the key
+     *  @param key The key, see createKey()
+     *  @return The results or null if not cached
+     */
+    public Vector<ExposureResult> get(byte[] key)
+    {
+        byte[]  payload;
+
+        payload=pending.get(ByteBuffer.wrap(key));
+        if (payload==null)
+        {
+            lock.readLock().lock();
+            try
+            {
+                payload=lookup(key);
+            }
+            catch (IOException e)
+            {
+                payload=null;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        if (payload==null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        try
+        {
+            hits.incrementAndGet();
+            return decode(payload);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     *  Stores the results for the key. The results are serialized
+     *  immediately and written by the background writer; if its queue is
+     *  full, they are dropped.
+     *  @param key The key, see createKey()
+     *  @param results The results
+     */
+    public void put(byte[] key, Vector<ExposureResult> results)
+    {
+        final ByteBuffer    wrappedKey;
+        final byte[]        payload;
+
+        try
+        {
+            payload=encode(results);
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+        wrappedKey=ByteBuffer.wrap(key.clone());
+        if (pending.putIfAbsent(wrappedKey, payload)!=null)
+        {
+            return;
+        }
+        try
+        {
+            writer.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        append(wrappedKey.array(), payload);
+                    }
+                    catch (IOException e)
+                    {
+                        System.err.println("Schedule cache write failed: "+e.getMessage());
+                    }
+                    finally
+                    {
+                        pending.remove(wrappedKey);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            pending.remove(wrappedKey);
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static byte[] encode(Vector<ExposureResult> results) throws IOException
+    {
+        ByteArrayOutputStream   bytes;
+        DataOutputStream        out;
+        int                     i;
+
+        bytes   =new ByteArrayOutputStream(4096);
+        out     =new DataOutputStream(bytes);
+        out.writeInt(results.size());
+        for (i=0; i<results.size(); i++)
+        {
+            results.get(i).writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Vector<ExposureResult> decode(byte[] payload) throws IOException
+    {
+        DataInputStream         in;
+        Vector<ExposureResult>  results;
+        ExposureResult          result;
+        int                     nResults;
+        int                     i;
+
+        in      =new DataInputStream(new ByteArrayInputStream(payload));
+        nResults=in.readInt();
+        results =new Vector<ExposureResult>(nResults);
+        for (i=0; i<nResults; i++)
+        {
+            result=new ExposureResult();
+            result.readFrom(in);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Log and index
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Appends a record and adds it to the index. Runs on the writer
+     *  thread.
+     */
+    private void append(byte[] key, byte[] payload) throws IOException
+    {
+        ByteBuffer  record;
+        CRC32       crc;
+
+        lock.writeLock().lock();
+        try
+        {
+            if (findSlot(key)>=0)
+            {
+                return;
+            }
+            crc=new CRC32();
+            crc.update(key);
+            crc.update(payload);
+            record=ByteBuffer.allocate(RECORD_OVERHEAD+payload.length);
+            record.putInt(RECORD_MAGIC);
+            record.putInt(payload.length);
+            record.put(key);
+            record.put(payload);
+            record.putInt((int)crc.getValue());
+            record.flip();
+            writeFully(logChannel, record, lLogLength);
+            insert(key, lLogLength);
+            lLogLength+=RECORD_OVERHEAD+payload.length;
+            index.putLong(16, lLogLength);
+            writes.incrementAndGet();
+
+            if (lLogLength>lMaxSize)
+            {
+                compact((long)(lMaxSize*COMPACTION_TARGET));
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Reads and checks the record at the offset
+     *  @return The payload or null if the record is damaged or does not
+     *          belong to the key
+     */
+    private byte[] readRecord(long lOffset, byte[] key) throws IOException
+    {
+        ByteBuffer  record;
+        byte[]      recordKey;
+        byte[]      payload;
+        CRC32       crc;
+        int         iLength;
+
+        record=ByteBuffer.allocate(8);
+        readFully(logChannel, record, lOffset);
+        iLength=record.getInt(4);
+        if (record.getInt(0)!=RECORD_MAGIC || iLength<0 ||
+            lOffset+RECORD_OVERHEAD+iLength>lLogLength)
+        {
+            return null;
+        }
+        record=ByteBuffer.allocate(KEY_SIZE+iLength+4);
+        readFully(logChannel, record, lOffset+8);
+        recordKey   =new byte[KEY_SIZE];
+        payload     =new byte[iLength];
+        record.flip();
+        record.get(recordKey);
+        record.get(payload);
+        crc=new CRC32();
+        crc.update(recordKey);
+        crc.update(payload);
+        if (!Arrays.equals(recordKey, key) || record.getInt()!=(int)crc.getValue())
+        {
+            return null;
+        }
+        return payload;
+    }
+
+    private static int slotPosition(int iSlot)
+    {
+        return INDEX_HEADER_SIZE+iSlot*SLOT_SIZE;
+    }
+
+    /**
+     *  Finds the slot of the key by linear probing. Only the 64 bit hash
+     *  is compared.
+     *  @return The slot or -1 if not present
+     */
+    private int findSlot(byte[] key)
+    {
+        long    lHash;
+        long    lSlotHash;
+        int     iSlot;
+
+        lHash=keyHash(key);
+        iSlot=(int)((lHash>>>1)%iCapacity);
+        while ((lSlotHash=index.getLong(slotPosition(iSlot)))!=0)
+        {
+            if (lSlotHash==lHash)
+            {
+                return iSlot;
+            }
+            iSlot=(iSlot+1)%iCapacity;
+        }
+        return -1;
+    }
+
+    /**
+     *  Finds the record of the key by linear probing, comparing the key of
+     *  the record, and marks it as used
+     *  @return The payload or null if not present
+     */
+    private byte[] lookup(byte[] key) throws IOException
+    {
+        byte[]  payload;
+        long    lHash;
+        long    lSlotHash;
+        int     iSlot;
+
+        lHash=keyHash(key);
+        iSlot=(int)((lHash>>>1)%iCapacity);
+        while ((lSlotHash=index.getLong(slotPosition(iSlot)))!=0)
+        {
+            if (lSlotHash==lHash)
+            {
+                payload=readRecord(index.getLong(slotPosition(iSlot)+8), key);
+                if (payload!=null)
+                {
+                    index.putLong(slotPosition(iSlot)+16, accessClock.incrementAndGet());
+                    return payload;
+                }
+            }
+            iSlot=(iSlot+1)%iCapacity;
+        }
+        return null;
+    }
+
+    /**
+     *  Puts the key in the first free slot. The index is doubled when it
+     *  gets too full.
+     */
+    private void insert(byte[] key, long lOffset) throws IOException
+    {
+        int iSlot;
+
+        if (nEntries+1>iCapacity*MAX_LOAD)
+        {
+            rehash(iCapacity*2);
+        }
+        iSlot=insertSlot(index, iCapacity, keyHash(key));
+        index.putLong(slotPosition(iSlot)+8, lOffset);
+        index.putLong(slotPosition(iSlot)+16, accessClock.incrementAndGet());
+        nEntries++;
+        index.putInt(12, nEntries);
+    }
+
+    private static int insertSlot(ByteBuffer table, int iTableCapacity, long lHash)
+    {
+        int iSlot;
+
+        iSlot=(int)((lHash>>>1)%iTableCapacity);
+        while (table.getLong(slotPosition(iSlot))!=0)
+        {
+            iSlot=(iSlot+1)%iTableCapacity;
+        }
+        table.putLong(slotPosition(iSlot), lHash);
+        return iSlot;
+    }
+
+    /**
+     *  Returns the occupied slots as {hash, offset, last access} triples
+     */
+    private long[][] collectSlots()
+    {
+        long[][]    slots;
+        int         iSlot;
+        int         n;
+
+        slots=new long[nEntries][];
+        n=0;
+        for (iSlot=0; iSlot<iCapacity && n<nEntries; iSlot++)
+        {
+            if (index.getLong(slotPosition(iSlot))!=0)
+            {
+                slots[n++]=new long[] {index.getLong(slotPosition(iSlot)),
+                                       index.getLong(slotPosition(iSlot)+8),
+                                       index.getLong(slotPosition(iSlot)+16)};
+            }
+        }
+        return Arrays.copyOf(slots, n);
+    }
+
+    /**
+     *  Rebuilds the index with a new capacity
+     */
+    private void rehash(int iNewCapacity) throws IOException
+    {
+        long[][]    slots;
+        long        lCovered;
+        int         iSlot;
+        int         i;
+
+        slots   =collectSlots();
+        lCovered=index.getLong(16);
+        createIndex(iNewCapacity);
+        for (i=0; i<slots.length; i++)
+        {
+            iSlot=insertSlot(index, iCapacity, slots[i][0]);
+            index.putLong(slotPosition(iSlot)+8, slots[i][1]);
+            index.putLong(slotPosition(iSlot)+16, slots[i][2]);
+        }
+        nEntries=slots.length;
+        index.putInt(12, nEntries);
+        index.putLong(16, lCovered);
+    }
+
+    /**
+     *  Compacts the log to at most lTargetSize bytes, keeping the most
+     *  recently used schedules. Waits for pending writes first.
+     *  @param lTargetSize The maximum size of the compacted log
+     *  @exception IOException
+     */
+    public void compact(long lTargetSize) throws IOException
+    {
+        long[][]            slots;
+        File                newLogFile;
+        RandomAccessFile    newLog;
+        FileChannel         newChannel;
+        ByteBuffer          header;
+        long                lNewLength;
+        long                lRecordLength;
+        int                 nKept;
+        int                 i;
+
+        if (!lock.isWriteLockedByCurrentThread())
+        {
+            flush();
+        }
+        lock.writeLock().lock();
+        try
+        {
+            // Most recently used first
+            slots=collectSlots();
+            Arrays.sort(slots, new Comparator<long[]>()
+            {
+                public int compare(long[] slot1, long[] slot2)
+                {
+                    return Long.compare(slot2[2], slot1[2]);
+                }
+            });
+            header      =ByteBuffer.allocate(8);
+            lNewLength  =LOG_HEADER_SIZE;
+            nKept       =0;
+            while (nKept<slots.length)
+            {
+                header.clear();
+                readFully(logChannel, header, slots[nKept][1]);
+                lRecordLength=RECORD_OVERHEAD+header.getInt(4);
+                if (lNewLength+lRecordLength>lTargetSize)
+                {
+                    break;
+                }
+                lNewLength+=lRecordLength;
+                nKept++;
+            }
+
+            // Copy the kept records in log order, so the log stays in
+            // order of writing
+            slots=Arrays.copyOf(slots, nKept);
+            Arrays.sort(slots, new Comparator<long[]>()
+            {
+                public int compare(long[] slot1, long[] slot2)
+                {
+                    return Long.compare(slot1[1], slot2[1]);
+                }
+            });
+
+            newLogFile  =new File(directory, LOG_FILENAME+".tmp");
+            newLog      =new RandomAccessFile(newLogFile, "rw");
+            newChannel  =newLog.getChannel();
+            newChannel.truncate(0);
+            header      =ByteBuffer.allocate(LOG_HEADER_SIZE);
+            header.putInt(LOG_MAGIC).putInt(VERSION).putLong(0L);
+            header.flip();
+            writeFully(newChannel, header, 0);
+            lNewLength  =LOG_HEADER_SIZE;
+            for (i=0; i<slots.length; i++)
+            {
+                header=ByteBuffer.allocate(8);
+                readFully(logChannel, header, slots[i][1]);
+                lRecordLength=RECORD_OVERHEAD+header.getInt(4);
+                transfer(logChannel, slots[i][1], lRecordLength, newChannel, lNewLength);
+                slots[i][1]=lNewLength;
+                lNewLength+=lRecordLength;
+            }
+            newChannel.force(false);
+            newLog.close();
+
+            logChannel.close();
+            Files.move(newLogFile.toPath(), new File(directory, LOG_FILENAME).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logFile     =new RandomAccessFile(new File(directory, LOG_FILENAME), "rw");
+            logChannel  =logFile.getChannel();
+            lLogLength  =logChannel.size();
+
+            createIndex(Math.max(MIN_CAPACITY, iCapacity));
+            for (i=0; i<slots.length; i++)
+            {
+                int iSlot;
+
+                iSlot=insertSlot(index, iCapacity, slots[i][0]);
+                index.putLong(slotPosition(iSlot)+8, slots[i][1]);
+                index.putLong(slotPosition(iSlot)+16, slots[i][2]);
+            }
+            nEntries=slots.length;
+            index.putInt(12, nEntries);
+            index.putLong(16, lLogLength);
+            compactions.incrementAndGet();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void transfer(FileChannel source, long lPosition, long lCount,
+                                 FileChannel target, long lTargetPosition) throws IOException
+    {
+        long lTransferred;
+
+        target.position(lTargetPosition);
+        lTransferred=0;
+        while (lTransferred<lCount)
+        {
+            lTransferred+=source.transferTo(lPosition+lTransferred, lCount-lTransferred, target);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long lPosition) throws IOException
+    {
+        int iRead;
+
+        while (buffer.hasRemaining())
+        {
+            iRead=channel.read(buffer, lPosition);
+            if (iRead<0)
+            {
+                throw new IOException("Unexpected end of schedule cache");
+            }
+            lPosition+=iRead;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long lPosition) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            lPosition+=channel.write(buffer, lPosition);
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    public int getNumberOfEntries()
+    {
+        return nEntries;
+    }
+
+    /**
+     *  Returns the size of the log
+     *  @return The size in bytes
+     */
+    public long getLogSize()
+    {
+        return lLogLength;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     *  Returns the number of schedules written to the log
+     *  @return The number of writes
+     */
+    public long getWrites()
+    {
+        return writes.get();
+    }
+
+    /**
+     *  Returns the number of schedules not written because the write
+     *  queue was full
+     *  @return The number of dropped writes
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    public long getCompactions()
+    {
+        return compactions.get();
+    }
+
+    /**
+     *  Returns the time it took to open the cache
+     *  @return The time in nanoseconds
+     */
+    public long getOpenTime()
+    {
+        return lOpenNanos;
+    }
+
+    /**
+     *  Returns the number of records that were added to the index when
+     *  opening, because they were written after the index was last
+     *  updated (or because the index was rebuilt)
+     *  @return The number of records
+     */
+    public int getNumberOfRecoveredEntries()
+    {
+        return nRecovered;
+    }
+
+    /**
+     *  Returns the statistics as JSON
+     *  @return The JSON text
+     */
+    public String toJson()
+    {
+        return "{\"entries\":"+nEntries+
+               ",\"logSize\":"+lLogLength+
+               ",\"hits\":"+hits.get()+
+               ",\"misses\":"+misses.get()+
+               ",\"writes\":"+writes.get()+
+               ",\"dropped\":"+dropped.get()+
+               ",\"compactions\":"+compactions.get()+"}";
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Creates a plan: saturation and a dive to the depth for the bottom
+     *  time on air or EAN32, ascending on the same gas
+     */
+    private static void createPlan(Processor processor, int iDepth, int iBottomTime, boolean bNitrox)
+                        throws IllegalActionException
+    {
+        GasMixture  gas;
+        Dive        dive;
+        Length      surface;
+        Length      depth;
+
+        surface =new Length(0.0, Length.UNITS_METER);
+        depth   =new Length(iDepth, Length.UNITS_METER);
+        gas     =bNitrox?new GasMixture(0.32, 0.0):new GasMixture(0.21, 0.0);
+        processor.newSequence();
+        dive    =new Dive(iDepth+" m for "+iBottomTime+" min", surface);
+        dive.addVaryingDepthSegment(surface, depth, new Length(20.0, Length.UNITS_METER), gas);
+        dive.addConstantDepthSegment(depth, iBottomTime-iDepth/20.0, gas);
+        dive.addDecoStage(depth, surface, new Length(-9.0, Length.UNITS_METER), gas,
+                          new Length(3.0, Length.UNITS_METER));
+        processor.addExposure(dive);
+    }
+
+    /**
+     *  Runs a stream of requests with a skewed popularity: a few plans are
+     *  requested often, most plans rarely
+     *  @return The time taken in nanoseconds
+     */
+    private static long runRequests(ScheduleCache cache, int nRequests, long lSeed) throws Exception
+    {
+        Processor   processor;
+        Random      random;
+        long        lStart;
+        int         iPlan;
+        int         i;
+
+        processor=new Processor();
+        processor.setDecoAlgorithm(Processor.ALGORITHM_VPMB);
+        processor.setScheduleCache(cache);
+        random=new Random(lSeed);
+        lStart=System.nanoTime();
+        for (i=0; i<nRequests; i++)
+        {
+            // Roughly Zipf distributed over 17 depths x 11 times x 2 gases
+            iPlan=(int)(374*Math.pow(random.nextDouble(), 3));
+            createPlan(processor, 12+3*(iPlan%17), 10+5*((iPlan/17)%11), iPlan>=187);
+            processor.process();
+        }
+        return System.nanoTime()-lStart;
+    }
+
+    /**
+     *  Measures startup time and hit rate after a restart.
+     *  Usage: ScheduleCache directory [requests]
+     *  The directory is emptied first. A planning run fills the cache, the
+     *  cache is closed and reopened (restart) and a second run with other
+     *  requests of the same popularity is made. For comparison the same
+     *  run is made without cache, and the index is removed to measure
+     *  opening by rebuilding it from the log.
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File            directory;
+        ScheduleCache   cache;
+        int             nRequests;
+        long            lNanos;
+
+        if (args.length<1)
+        {
+            System.err.println("Usage: ScheduleCache directory [requests]");
+            return;
+        }
+        directory=new File(args[0]);
+        nRequests=(args.length>1)?Integer.parseInt(args[1]):2000;
+        new File(directory, LOG_FILENAME).delete();
+        new File(directory, INDEX_FILENAME).delete();
+
+        lNanos=runRequests(null, nRequests, 2);
+        System.out.println(String.format("No cache           : %8.1f ms", lNanos/1.0e6));
+
+        cache=new ScheduleCache(directory);
+        lNanos=runRequests(cache, nRequests, 1);
+        cache.close();
+        System.out.println(String.format("Cold cache         : %8.1f ms, hit rate %5.1f %%, %d entries, log %d kB",
+                                         lNanos/1.0e6, 100.0*cache.getHits()/(cache.getHits()+cache.getMisses()),
+                                         cache.getNumberOfEntries(), cache.getLogSize()/1024));
+
+        cache=new ScheduleCache(directory);
+        System.out.println(String.format("Restart            : open %.2f ms, %d entries",
+                                         cache.getOpenTime()/1.0e6, cache.getNumberOfEntries()));
+        lNanos=runRequests(cache, nRequests, 2);
+        cache.close();
+        System.out.println(String.format("After restart      : %8.1f ms, hit rate %5.1f %%",
+                                         lNanos/1.0e6, 100.0*cache.getHits()/(cache.getHits()+cache.getMisses())));
+
+        new File(directory, INDEX_FILENAME).delete();
+        cache=new ScheduleCache(directory);
+        System.out.println(String.format("Restart, no index  : open %.2f ms, %d entries rebuilt from the log",
+                                         cache.getOpenTime()/1.0e6, cache.getNumberOfRecoveredEntries()));
+        cache.close();
+    }
+}
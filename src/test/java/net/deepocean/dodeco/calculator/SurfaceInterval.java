@@ -14,7 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -214,6 +216,15 @@ public class SurfaceInterval extends Exposure
     }
     
     
+    /**
+     *  This method returns the segment the SurfaceInterval consists of
+     *  @return The surface segment
+     */
+    ConstantHeightSegment getSurfaceSegment()
+    {
+        return surfaceSegment;
+    }
+
     /**
      *  This method returns the GasMixture that is used during the SurfaceInterval
      *  @return The GasMixture
@@ -250,6 +261,18 @@ public class SurfaceInterval extends Exposure
        
         return xmlSurfaceInterval;
     }    
+
+    /**
+     *  This method writes the XML representation of the SurfaceInterval to
+     *  the writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("SurfaceInterval");
+        surfaceSegment.writeXmlRepresentation(writer);
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
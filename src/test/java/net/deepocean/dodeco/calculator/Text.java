@@ -99,6 +99,10 @@ public class Text
             "                          Gasmix #{0, number,00}  {1, number, 0.000}"+
             "  {2, number,0.000}  {3, number,0.000}\n";
 
+    // Conservative reuse of a schedule (Processor.setConservativeReuse())
+    public static final String sReport25=
+            "NOTE: CONSERVATIVE SCHEDULE, CALCULATED FOR A DEEPER OR LONGER DIVE ON THE SAME GASES\n";
+
     // units
     public static final String sReport50a="fswg";
     public static final String sReport50b="mswg";
@@ -397,6 +397,36 @@ public class TissueCompartment
         maxActualGradient.setValue(0.0, Pressure.UNITS_BAR);
     }
 
+    /**
+     *  This method resets the compartment to the state right after
+     *  construction, with the nuclei set to the initial critical radii
+     *  defined in Parameters. Existing Pressure and Length instances
+     *  are reused, so no objects are created.
+     */
+    public void resetCompartment()
+    {
+        partialPressureN2           .setValue(0.0, Pressure.UNITS_BAR);
+        partialPressureHe2          .setValue(0.0, Pressure.UNITS_BAR);
+        maxCrushingPressureHe2      .setValue(0.0, Pressure.UNITS_BAR);
+        maxCrushingPressureN2       .setValue(0.0, Pressure.UNITS_BAR);
+        adjMaxCrushingPressureHe2   .setValue(0.0, Pressure.UNITS_BAR);
+        adjMaxCrushingPressureN2    .setValue(0.0, Pressure.UNITS_BAR);
+        initialAllowableGradientHe2 .setValue(0.0, Pressure.UNITS_BAR);
+        initialAllowableGradientN2  .setValue(0.0, Pressure.UNITS_BAR);
+        allowableGradientHe2        .setValue(0.0, Pressure.UNITS_BAR);
+        allowableGradientN2         .setValue(0.0, Pressure.UNITS_BAR);
+        decoGradientHe2             .setValue(0.0, Pressure.UNITS_BAR);
+        decoGradientN2              .setValue(0.0, Pressure.UNITS_BAR);
+        maxActualGradient           .setValue(0.0, Pressure.UNITS_BAR);
+
+        criticalNucleusN2 .setInitialCriticalRadius(Parameters.initialCriticalRadiusN2);
+        criticalNucleusHe2.setInitialCriticalRadius(Parameters.initialCriticalRadiusHe2);
+
+        fPhaseVolumeTime            =0.0;
+        fSurfacePhaseVolumeTime     =0.0;
+        fLastPhaseVolumeTime        =0.0;
+    }
+
     
     
     /** Regenerate the critical radius of nuclei (Helium and Nitrogen) for the
@@ -0,0 +1,237 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+/**
+ *   This class defines static methods that apply the Haldane and Schreiner
+ *   equations and the Buhlmann limits to all tissue compartments at once.
+ *   The methods work on plain double arrays (see TissueState): each loop
+ *   is a straight, branch free loop over the compartments, which the JIT
+ *   compiler can unroll and vectorise. The arithmetic is identical to the
+ *   scalar methods in Tools and ZHL16Decompression, so the results are
+ *   the same to the last bit.
+ */
+public class TissueKernels
+{
+
+    public TissueKernels()
+    {
+    }
+
+    /**
+     *  This method calculates the decay factors exp(-k*t) for the given
+     *  exposure period.
+     *  @param fK Time constants in 1/min
+     *  @param fPeriod Exposure period in min
+     *  @param fFactor Array receiving the factors
+     *  @param n Number of compartments
+     */
+    public static void decayFactors(double[] fK, double fPeriod, double[] fFactor, int n)
+    {
+        int i;
+
+        for (i=0; i<n; i++)
+        {
+            fFactor[i]=Math.exp(-fPeriod*fK[i]);
+        }
+    }
+
+    /**
+     *  Haldane equation applied to all compartments.
+     *  @param fTension Tissue tensions in bar, updated in place
+     *  @param fAlvPressure Alveolar pressure of the inert gas in bar
+     *  @param fFactor Decay factors exp(-k*t)
+     *  @param n Number of compartments
+     */
+    public static void haldane(double[] fTension, double fAlvPressure, double[] fFactor, int n)
+    {
+        int i;
+
+        for (i=0; i<n; i++)
+        {
+            fTension[i]=fAlvPressure+(fTension[i]-fAlvPressure)*fFactor[i];
+        }
+    }
+
+    /**
+     *  Schreiner equation applied to all compartments.
+     *  @param fTension Tissue tensions in bar, updated in place
+     *  @param fAlvPressure Alveolar pressure of the inert gas at start in bar
+     *  @param fAlvRate Rate of change of the alveolar pressure in bar/min
+     *  @param fPeriod Exposure period in min
+     *  @param fK Time constants in 1/min
+     *  @param fFactor Decay factors exp(-k*t)
+     *  @param n Number of compartments
+     */
+    public static void schreiner(double[] fTension, double fAlvPressure, double fAlvRate,
+                                 double fPeriod, double[] fK, double[] fFactor, int n)
+    {
+        int i;
+
+        for (i=0; i<n; i++)
+        {
+            fTension[i]=fAlvPressure+fAlvRate*(fPeriod-1.0/fK[i])-
+                        (fAlvPressure-fTension[i]-fAlvRate/fK[i])*fFactor[i];
+        }
+    }
+
+    /**
+     *  Buhlmann tension limits for all compartments. The a and b factors
+     *  are weighted by the Nitrogen and Helium tensions.
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fN2Tension Nitrogen tensions in bar
+     *  @param fHe2Tension Helium tensions in bar
+     *  @param N2A Nitrogen a factors
+     *  @param N2B Nitrogen b factors
+     *  @param He2A Helium a factors
+     *  @param He2B Helium b factors
+     *  @param fLimit Array receiving the limits in bar
+     *  @param n Number of compartments
+     */
+    public static void buhlmannLimits(double fAmbientPressure,
+                                      double[] fN2Tension, double[] fHe2Tension,
+                                      double[] N2A, double[] N2B, double[] He2A, double[] He2B,
+                                      double[] fLimit, int n)
+    {
+        int     i;
+        double  fA;
+        double  fB;
+
+        for (i=0; i<n; i++)
+        {
+            fA=(N2A[i]*fN2Tension[i]+He2A[i]*fHe2Tension[i])/(fN2Tension[i]+fHe2Tension[i]);
+            fB=(N2B[i]*fN2Tension[i]+He2B[i]*fHe2Tension[i])/(fN2Tension[i]+fHe2Tension[i]);
+            fLimit[i]=fAmbientPressure/fB+fA;
+        }
+    }
+
+    /**
+     *  Buhlmann tension limits for all compartments, with gradient
+     *  factor (Baker style).
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fGradientFactor The gradient factor (0.0 - 1.0)
+     *  @param fN2Tension Nitrogen tensions in bar
+     *  @param fHe2Tension Helium tensions in bar
+     *  @param N2A Nitrogen a factors
+     *  @param N2B Nitrogen b factors
+     *  @param He2A Helium a factors
+     *  @param He2B Helium b factors
+     *  @param fLimit Array receiving the limits in bar
+     *  @param n Number of compartments
+     */
+    public static void gradientFactorLimits(double fAmbientPressure, double fGradientFactor,
+                                            double[] fN2Tension, double[] fHe2Tension,
+                                            double[] N2A, double[] N2B, double[] He2A, double[] He2B,
+                                            double[] fLimit, int n)
+    {
+        int     i;
+        double  fA;
+        double  fB;
+
+        for (i=0; i<n; i++)
+        {
+            fA=(N2A[i]*fN2Tension[i]+He2A[i]*fHe2Tension[i])/(fN2Tension[i]+fHe2Tension[i]);
+            fB=(N2B[i]*fN2Tension[i]+He2B[i]*fHe2Tension[i])/(fN2Tension[i]+fHe2Tension[i]);
+            fLimit[i]=fAmbientPressure*(fGradientFactor/fB-fGradientFactor+1.0)+fA*fGradientFactor;
+        }
+    }
+
+    /**
+     *  Buhlmann ceilings for all compartments: the lowest ambient pressure
+     *  at which the tension of the compartment is within its limit. The a
+     *  and b factors are weighted by the Nitrogen and Helium tensions.
+     *  @param fN2Tension Nitrogen tensions in bar
+     *  @param fHe2Tension Helium tensions in bar
+     *  @param N2A Nitrogen a factors
+     *  @param N2B Nitrogen b factors
+     *  @param He2A Helium a factors
+     *  @param He2B Helium b factors
+     *  @param fCeiling Array receiving the ceilings as ambient pressure in bar
+     *  @param n Number of compartments
+     */
+    public static void buhlmannCeilings(double[] fN2Tension, double[] fHe2Tension,
+                                        double[] N2A, double[] N2B, double[] He2A, double[] He2B,
+                                        double[] fCeiling, int n)
+    {
+        int     i;
+        double  fTension;
+        double  fA;
+        double  fB;
+
+        for (i=0; i<n; i++)
+        {
+            fTension=fN2Tension[i]+fHe2Tension[i];
+            fA=(N2A[i]*fN2Tension[i]+He2A[i]*fHe2Tension[i])/fTension;
+            fB=(N2B[i]*fN2Tension[i]+He2B[i]*fHe2Tension[i])/fTension;
+            fCeiling[i]=(fTension-fA)*fB;
+        }
+    }
+
+    /**
+     *  Current gradient factors of all compartments: the supersaturation
+     *  (tension - ambient pressure) as a fraction of the allowed
+     *  supersaturation (Buhlmann limit - ambient pressure). 1.0 means the
+     *  tension equals the limit, values below 0.0 mean the compartment is
+     *  not supersaturated.
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fN2Tension Nitrogen tensions in bar
+     *  @param fHe2Tension Helium tensions in bar
+     *  @param N2A Nitrogen a factors
+     *  @param N2B Nitrogen b factors
+     *  @param He2A Helium a factors
+     *  @param He2B Helium b factors
+     *  @param fGradient Array receiving the gradient factors
+     *  @param n Number of compartments
+     */
+    public static void gradientFactors(double fAmbientPressure,
+                                       double[] fN2Tension, double[] fHe2Tension,
+                                       double[] N2A, double[] N2B, double[] He2A, double[] He2B,
+                                       double[] fGradient, int n)
+    {
+        int     i;
+        double  fTension;
+        double  fA;
+        double  fB;
+
+        for (i=0; i<n; i++)
+        {
+            fTension=fN2Tension[i]+fHe2Tension[i];
+            fA=(N2A[i]*fN2Tension[i]+He2A[i]*fHe2Tension[i])/fTension;
+            fB=(N2B[i]*fN2Tension[i]+He2B[i]*fHe2Tension[i])/fTension;
+            fGradient[i]=(fTension-fAmbientPressure)/(fAmbientPressure/fB+fA-fAmbientPressure);
+        }
+    }
+
+    /**
+     *  Returns the index of the first compartment of which the total inert
+     *  gas tension exceeds the limit.
+     *  @param fN2Tension Nitrogen tensions in bar
+     *  @param fHe2Tension Helium tensions in bar
+     *  @param fLimit Tension limits in bar
+     *  @param n Number of compartments
+     *  @return The index or -1 if all compartments are within limits
+     */
+    public static int firstUnsafe(double[] fN2Tension, double[] fHe2Tension, double[] fLimit, int n)
+    {
+        int i;
+
+        for (i=0; i<n; i++)
+        {
+            if (fN2Tension[i]+fHe2Tension[i]>fLimit[i])
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ *  This class compares the array based TissueKernels with the per
+ *  compartment calculation, for speed and accuracy:
+ *  <ol>
+ *  <li>exposure: random constant and varying depth segments applied to a
+ *      Diver (exposeDiver()) and to a TissueState (exposeTissueState())</li>
+ *  <li>limit check: ZHL16Decompression.checkDiverSafety() at random
+ *      depths and tensions, with Parameters.bUseTissueKernels false and
+ *      true</li>
+ *  <li>planning: random recreational dives processed by ZH-L16B and
+ *      ZH-L16B with gradient factors, with Parameters.bUseTissueKernels
+ *      false and true</li>
+ *  </ol>
+ *  For each, the time per operation of both paths and the maximum
+ *  difference of the results are reported; planning reports whether the
+ *  schedules are identical.
+ *  Usage: TissueKernelsBenchmark [segments [checks [dives]]]
+ */
+public class TissueKernelsBenchmark
+{
+    private static final Length SURFACE =new Length(0.0, Length.UNITS_METER);
+    private static final int    ROUNDS  =9;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Exposure
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Creates pairs of segments: a constant depth segment (5-50 m, 1-30
+     *  min) followed by an ascent or descent to a random depth
+     */
+    private static ExposureSegment[] createSegments(int nPairs, Random random) throws IllegalActionException
+    {
+        ExposureSegment[]   segments;
+        GasMixture          gas;
+        double              fDepth;
+        double              fNextDepth;
+        int                 i;
+
+        segments=new ExposureSegment[nPairs*2];
+        fDepth  =5.0+random.nextDouble()*45.0;
+        for (i=0; i<nPairs; i++)
+        {
+            gas         =new GasMixture(0.18+random.nextDouble()*0.14, random.nextDouble()*0.4);
+            fNextDepth  =5.0+random.nextDouble()*45.0;
+            segments[2*i]  =new ConstantDepthSegment(SURFACE, new Length(fDepth, Length.UNITS_METER),
+                                                     1.0+random.nextDouble()*29.0, gas);
+            segments[2*i+1]=new VaryingDepthSegment(SURFACE, new Length(fDepth, Length.UNITS_METER),
+                                                    new Length(fNextDepth, Length.UNITS_METER),
+                                                    new Length((fNextDepth>fDepth)?18.0:-9.0, Length.UNITS_METER),
+                                                    gas);
+            fDepth      =fNextDepth;
+        }
+        return segments;
+    }
+
+    private static double maxDifference(TissueState state, Diver diver)
+    {
+        TissueState diverState;
+        double      fMax;
+        int         i;
+
+        diverState  =new TissueState(diver);
+        fMax        =0.0;
+        for (i=0; i<state.size(); i++)
+        {
+            fMax=Math.max(fMax, Math.abs(state.getN2Tensions()[i]-diverState.getN2Tensions()[i]));
+            fMax=Math.max(fMax, Math.abs(state.getHe2Tensions()[i]-diverState.getHe2Tensions()[i]));
+        }
+        return fMax;
+    }
+
+    private static void benchmarkExposure(int nPairs) throws IllegalActionException, CalculationException
+    {
+        ExposureSegment[]   segments;
+        Diver               diver;
+        TissueState         state;
+        double              fMaxError;
+        long                lScalarNanos;
+        long                lKernelNanos;
+        long                lStart;
+        int                 iRound;
+        int                 i;
+
+        segments    =createSegments(nPairs, new Random(1));
+        fMaxError   =0.0;
+        lScalarNanos=0;
+        lKernelNanos=0;
+        for (iRound=0; iRound<ROUNDS; iRound++)
+        {
+            diver   =new Diver();
+            state   =new TissueState(diver);
+            lStart  =System.nanoTime();
+            for (i=0; i<segments.length; i++)
+            {
+                segments[i].exposeDiver(diver);
+            }
+            if (iRound>0)
+            {
+                lScalarNanos+=System.nanoTime()-lStart;
+            }
+            lStart  =System.nanoTime();
+            for (i=0; i<segments.length; i++)
+            {
+                segments[i].exposeTissueState(state);
+            }
+            if (iRound>0)
+            {
+                lKernelNanos+=System.nanoTime()-lStart;
+            }
+            fMaxError=Math.max(fMaxError, maxDifference(state, diver));
+        }
+        report("Exposure", segments.length*(ROUNDS-1), "segment", lScalarNanos, lKernelNanos);
+        System.out.println(String.format("  max tension difference %.3e bar after %d segments",
+                                         fMaxError, segments.length));
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Limit check
+    \*------------------------------------------------------------------------------------------------*/
+    private static void benchmarkLimitCheck(int nChecks) throws IllegalActionException, CalculationException
+    {
+        ZHL16Decompression  decompression;
+        ExposureSegment[]   segments;
+        Diver[]             divers;
+        Length[]            depths;
+        boolean[]           bSafe;
+        Random              random;
+        TissueState         state;
+        Pressure            ambientPressure;
+        double              fMaxError;
+        long                lScalarNanos;
+        long                lKernelNanos;
+        long                lStart;
+        int                 nDisagree;
+        int                 nUnsafe;
+        int                 iRound;
+        int                 iLimit;
+        int                 i;
+
+        // Divers with random tensions, checked at random depths
+        random      =new Random(2);
+        divers      =new Diver[64];
+        segments    =createSegments(divers.length, random);
+        for (i=0; i<divers.length; i++)
+        {
+            divers[i]=new Diver();
+            segments[2*i].exposeDiver(divers[i]);
+            segments[2*i+1].exposeDiver(divers[i]);
+        }
+        depths=new Length[nChecks];
+        for (i=0; i<nChecks; i++)
+        {
+            depths[i]=new Length(random.nextDouble()*30.0, Length.UNITS_METER);
+        }
+
+        decompression           =new ZHL16Decompression();
+        decompression.setModel(ZHL16Decompression.ZH_L16B);
+        decompression.diveHeight=SURFACE;
+        bSafe                   =new boolean[nChecks];
+        nDisagree               =0;
+        nUnsafe                 =0;
+        lScalarNanos            =0;
+        lKernelNanos            =0;
+        for (iRound=0; iRound<ROUNDS; iRound++)
+        {
+            Parameters.bUseTissueKernels=false;
+            lStart=System.nanoTime();
+            for (i=0; i<nChecks; i++)
+            {
+                decompression.diver=divers[i%divers.length];
+                bSafe[i]=decompression.checkDiverSafety(depths[i]);
+            }
+            if (iRound>0)
+            {
+                lScalarNanos+=System.nanoTime()-lStart;
+            }
+            Parameters.bUseTissueKernels=true;
+            lStart=System.nanoTime();
+            for (i=0; i<nChecks; i++)
+            {
+                decompression.diver=divers[i%divers.length];
+                if (decompression.checkDiverSafety(depths[i])!=bSafe[i])
+                {
+                    nDisagree++;
+                }
+            }
+            if (iRound>0)
+            {
+                lKernelNanos+=System.nanoTime()-lStart;
+            }
+        }
+        for (i=0; i<nChecks; i++)
+        {
+            if (!bSafe[i])
+            {
+                nUnsafe++;
+            }
+        }
+
+        // The limits themselves
+        fMaxError=0.0;
+        for (i=0; i<nChecks; i++)
+        {
+            ambientPressure =new DepthPressure(depths[i], SURFACE);
+            state           =decompression.calculateTissueTensionLimits(divers[i%divers.length],
+                                                   ambientPressure.getValue(Pressure.UNITS_BAR));
+            for (iLimit=0; iLimit<state.size(); iLimit++)
+            {
+                fMaxError=Math.max(fMaxError, Math.abs(decompression.fTensionLimits[iLimit]-
+                                   decompression.calculateTissueTensionLimit(iLimit, ambientPressure,
+                                                                             state.getN2Tensions()[iLimit],
+                                                                             state.getHe2Tensions()[iLimit])));
+            }
+        }
+        report("Limit check", nChecks*(ROUNDS-1), "check", lScalarNanos, lKernelNanos);
+        System.out.println(String.format("  max limit difference %.3e bar, %d of %d results differ (%d unsafe)",
+                                         fMaxError, nDisagree, nChecks*ROUNDS, nUnsafe));
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Planning
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Creates a recreational plan: saturation and a dive on air to the
+     *  depth, descending at 18 m/min, staying until the bottom time
+     */
+    private static void createPlan(Processor processor, double fDepth, double fBottomTime)
+                        throws IllegalActionException
+    {
+        GasMixture  air;
+        Dive        dive;
+        Length      depth;
+
+        depth   =new Length(fDepth, Length.UNITS_METER);
+        air     =new GasMixture(0.21, 0.0);
+        processor.newSequence();
+        dive    =new Dive("Recreational dive", SURFACE);
+        dive.addVaryingDepthSegment(SURFACE, depth, new Length(18.0, Length.UNITS_METER), air);
+        dive.addConstantDepthSegment(depth, fBottomTime-fDepth/18.0, air);
+        dive.addDecoStage(depth, SURFACE, new Length(-9.0, Length.UNITS_METER), air,
+                          new Length(3.0, Length.UNITS_METER));
+        processor.addExposure(dive);
+    }
+
+    /**
+     *  Plans the dives with the kernels on or off
+     *  @return The reports of all dives
+     */
+    private static String[] plan(int iAlgorithm, double[] fDepths, double[] fBottomTimes, boolean bUseTissueKernels,
+                                 long[] lNanos, double[] fTensions)
+                          throws IllegalActionException, CalculationException
+    {
+        Processor       processor;
+        StringWriter    writer;
+        String[]        reports;
+        TissueState     state;
+        long            lStart;
+        int             i;
+
+        Parameters.bUseTissueKernels=bUseTissueKernels;
+        processor   =new Processor();
+        processor.setDecoAlgorithm(iAlgorithm);
+        reports     =new String[fDepths.length];
+        for (i=0; i<fDepths.length; i++)
+        {
+            createPlan(processor, fDepths[i], fBottomTimes[i]);
+            lStart  =System.nanoTime();
+            processor.process();
+            lNanos[0]+=System.nanoTime()-lStart;
+            writer  =new StringWriter();
+            processor.printExposures(writer);
+            reports[i]=writer.toString();
+            state   =new TissueState(processor.getDiver());
+            System.arraycopy(state.getN2Tensions(), 0, fTensions, i*state.size(), state.size());
+        }
+        return reports;
+    }
+
+    private static void benchmarkPlanning(int iAlgorithm, String sName, int nDives)
+                        throws IllegalActionException, CalculationException
+    {
+        Random      random;
+        double[]    fDepths;
+        double[]    fBottomTimes;
+        double[]    fScalarTensions;
+        double[]    fKernelTensions;
+        String[]    scalarReports;
+        String[]    kernelReports;
+        long[]      lScalarNanos;
+        long[]      lKernelNanos;
+        double      fMaxError;
+        int         nDifferent;
+        int         iRound;
+        int         i;
+
+        random      =new Random(3);
+        fDepths     =new double[nDives];
+        fBottomTimes=new double[nDives];
+        for (i=0; i<nDives; i++)
+        {
+            fDepths[i]      =10.0+Math.round(random.nextDouble()*300.0)/10.0;
+            fBottomTimes[i] =20.0+random.nextInt(41);
+        }
+        fScalarTensions =new double[nDives*new TissueState().size()];
+        fKernelTensions =new double[fScalarTensions.length];
+        lScalarNanos    =new long[1];
+        lKernelNanos    =new long[1];
+        scalarReports   =null;
+        kernelReports   =null;
+        for (iRound=0; iRound<ROUNDS; iRound++)
+        {
+            if (iRound==1)
+            {
+                lScalarNanos[0]=0;
+                lKernelNanos[0]=0;
+            }
+            // Alternate the order, so that neither path profits from running second
+            if (iRound%2==0)
+            {
+                scalarReports=plan(iAlgorithm, fDepths, fBottomTimes, false, lScalarNanos, fScalarTensions);
+                kernelReports=plan(iAlgorithm, fDepths, fBottomTimes, true , lKernelNanos, fKernelTensions);
+            }
+            else
+            {
+                kernelReports=plan(iAlgorithm, fDepths, fBottomTimes, true , lKernelNanos, fKernelTensions);
+                scalarReports=plan(iAlgorithm, fDepths, fBottomTimes, false, lScalarNanos, fScalarTensions);
+            }
+        }
+
+        nDifferent=0;
+        for (i=0; i<nDives; i++)
+        {
+            if (!scalarReports[i].equals(kernelReports[i]))
+            {
+                nDifferent++;
+            }
+        }
+        fMaxError=0.0;
+        for (i=0; i<fScalarTensions.length; i++)
+        {
+            fMaxError=Math.max(fMaxError, Math.abs(fScalarTensions[i]-fKernelTensions[i]));
+        }
+        report(sName, nDives*(ROUNDS-1), "dive", lScalarNanos[0], lKernelNanos[0]);
+        System.out.println(String.format("  %d of %d schedules differ, max tension difference at the surface %.3e bar",
+                                         nDifferent, nDives, fMaxError));
+    }
+
+    private static void report(String sName, int nOperations, String sOperation, long lScalarNanos, long lKernelNanos)
+    {
+        System.out.println(String.format("%-22s per compartment %9.3f us, kernels %9.3f us per %s (%.2fx)",
+                                         sName, lScalarNanos/1.0e3/nOperations, lKernelNanos/1.0e3/nOperations,
+                                         sOperation, (double)lScalarNanos/lKernelNanos));
+    }
+
+    /**
+     *  Usage: TissueKernelsBenchmark [segments [checks [dives]]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        boolean bUseTissueKernels;
+        int     nPairs;
+        int     nChecks;
+        int     nDives;
+
+        nPairs  =(args.length>0)?Integer.parseInt(args[0])/2:50000;
+        nChecks =(args.length>1)?Integer.parseInt(args[1]):200000;
+        nDives  =(args.length>2)?Integer.parseInt(args[2]):500;
+
+        bUseTissueKernels=Parameters.bUseTissueKernels;
+        try
+        {
+            benchmarkExposure(nPairs);
+            benchmarkLimitCheck(nChecks);
+            benchmarkPlanning(Processor.ALGORITHM_BUHLMANNB, "ZH-L16B", nDives);
+            benchmarkPlanning(Processor.ALGORITHM_BUHLMANNBWITHGRADIENT, "ZH-L16B gradient", nDives);
+        }
+        finally
+        {
+            Parameters.bUseTissueKernels=bUseTissueKernels;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.util.Vector;
+
+/**
+ *  This class represents the inert gas loading of the tissue compartments
+ *  of a Diver as plain arrays of doubles (one array per quantity, indexed
+ *  by compartment). It is the working state of the TissueKernels. A
+ *  TissueState can be loaded from and stored to a Diver, so that it can be
+ *  used next to the TissueCompartment objects.
+ *  Tensions are in bar, time constants in 1/minute.
+ */
+public class TissueState
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int         nCompartments;
+
+    private double[]    fN2Tension;
+    private double[]    fHe2Tension;
+    private double[]    fN2K;
+    private double[]    fHe2K;
+
+    /** Decay factors exp(-k*t) for the last exposure period used */
+    private double[]    fN2Factor;
+    private double[]    fHe2Factor;
+    private double      fFactorPeriod;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction and reinitialising
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates a state for the compartments defined in
+     *  Parameters. Tensions are set to 0.0.
+     */
+    public TissueState()
+    {
+        int i;
+
+        allocate(Parameters.nCompartments);
+
+        i=0;
+        while (i<nCompartments)
+        {
+            fN2K[i] =Math.log(2.0)/Parameters.fHalfTimeN2[i];
+            fHe2K[i]=Math.log(2.0)/Parameters.fHalfTimeHe2[i];
+            i++;
+        }
+    }
+
+    /**
+     *  Constructor. Creates a state that is a copy of the tissue
+     *  tensions of the Diver.
+     *  @param diver The diver to copy the tissue tensions from
+     */
+    public TissueState(Diver diver)
+    {
+        allocate(diver.getCompartments().size());
+        load(diver);
+    }
+
+    /**
+     *  This method allocates the arrays
+     *  @param nCompartments Number of compartments
+     */
+    private void allocate(int nCompartments)
+    {
+        this.nCompartments  =nCompartments;
+        fN2Tension          =new double[nCompartments];
+        fHe2Tension         =new double[nCompartments];
+        fN2K                =new double[nCompartments];
+        fHe2K               =new double[nCompartments];
+        fN2Factor           =new double[nCompartments];
+        fHe2Factor          =new double[nCompartments];
+        fFactorPeriod       =Double.NaN;
+    }
+
+    /**
+     *  This method copies the tissue tensions and time constants of the
+     *  Diver into this state.
+     *  @param diver The diver
+     */
+    public void load(Diver diver)
+    {
+        Vector<TissueCompartment>   compartments;
+        TissueCompartment           compartment;
+        int                         i;
+
+        compartments=diver.getCompartments();
+        if (compartments.size()!=nCompartments)
+        {
+            allocate(compartments.size());
+        }
+
+        i=0;
+        while (i<nCompartments)
+        {
+            compartment     =compartments.get(i);
+            fN2Tension[i]   =compartment.getN2TissueTension().getValue(Pressure.UNITS_BAR);
+            fHe2Tension[i]  =compartment.getHe2TissueTension().getValue(Pressure.UNITS_BAR);
+            if (fN2K[i]!=compartment.getN2K() || fHe2K[i]!=compartment.getHe2K())
+            {
+                fN2K[i]     =compartment.getN2K();
+                fHe2K[i]    =compartment.getHe2K();
+                fFactorPeriod=Double.NaN;
+            }
+            i++;
+        }
+    }
+
+    /**
+     *  This method copies the tissue tensions of this state back into
+     *  the tissue compartments of the Diver. The Pressure instances of the
+     *  compartments are updated in place.
+     *  @param diver The diver
+     */
+    public void store(Diver diver)
+    {
+        Vector<TissueCompartment>   compartments;
+        TissueCompartment           compartment;
+        int                         i;
+
+        compartments=diver.getCompartments();
+        i=0;
+        while (i<nCompartments)
+        {
+            compartment     =compartments.get(i);
+            compartment.getN2TissueTension().setValue(fN2Tension[i], Pressure.UNITS_BAR);
+            compartment.getHe2TissueTension().setValue(fHe2Tension[i], Pressure.UNITS_BAR);
+            i++;
+        }
+    }
+
+    /**
+     *  This method copies the tensions of another state into this state.
+     *  Both states should have the same number of compartments.
+     *  @param other The state to copy
+     */
+    public void copyFrom(TissueState other)
+    {
+        System.arraycopy(other.fN2Tension , 0, fN2Tension , 0, nCompartments);
+        System.arraycopy(other.fHe2Tension, 0, fHe2Tension, 0, nCompartments);
+        if (fN2K!=other.fN2K)
+        {
+            System.arraycopy(other.fN2K , 0, fN2K , 0, nCompartments);
+            System.arraycopy(other.fHe2K, 0, fHe2K, 0, nCompartments);
+            fFactorPeriod=Double.NaN;
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the number of compartments
+     *  @return The number of compartments
+     */
+    public int size()
+    {
+        return nCompartments;
+    }
+
+    /**
+     *  Returns the Nitrogen tensions in bar. The array is the internal
+     *  array of this state, not a copy.
+     *  @return The tensions, indexed by compartment
+     */
+    public double[] getN2Tensions()
+    {
+        return fN2Tension;
+    }
+
+    /**
+     *  Returns the Helium tensions in bar. The array is the internal
+     *  array of this state, not a copy.
+     *  @return The tensions, indexed by compartment
+     */
+    public double[] getHe2Tensions()
+    {
+        return fHe2Tension;
+    }
+
+    public double[] getN2K()
+    {
+        return fN2K;
+    }
+
+    public double[] getHe2K()
+    {
+        return fHe2K;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Calculation
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  This method exposes the state to a constant ambient pressure
+     *  (Haldane equation).
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fN2Fraction Nitrogen fraction of the breathing gas
+     *  @param fHe2Fraction Helium fraction of the breathing gas
+     *  @param fPeriod Exposure period in minutes
+     */
+    public void exposeToConstantPressure(double fAmbientPressure,
+                                         double fN2Fraction, double fHe2Fraction,
+                                         double fPeriod)
+    {
+        updateFactors(fPeriod);
+
+        TissueKernels.haldane(fN2Tension , Tools.alveolarPressure(fAmbientPressure, fN2Fraction) , fN2Factor , nCompartments);
+        TissueKernels.haldane(fHe2Tension, Tools.alveolarPressure(fAmbientPressure, fHe2Fraction), fHe2Factor, nCompartments);
+    }
+
+    /**
+     *  This method exposes the state to a linear changing ambient pressure
+     *  (Schreiner equation).
+     *  @param fAmbientPressure Ambient pressure at start in bar
+     *  @param fPressureChangeRate Change of ambient pressure in bar/min
+     *  @param fN2Fraction Nitrogen fraction of the breathing gas
+     *  @param fHe2Fraction Helium fraction of the breathing gas
+     *  @param fPeriod Exposure period in minutes
+     */
+    public void exposeToVaryingPressure(double fAmbientPressure, double fPressureChangeRate,
+                                        double fN2Fraction, double fHe2Fraction,
+                                        double fPeriod)
+    {
+        updateFactors(fPeriod);
+
+        TissueKernels.schreiner(fN2Tension , Tools.alveolarPressure(fAmbientPressure, fN2Fraction) ,
+                                fPressureChangeRate*fN2Fraction , fPeriod, fN2K , fN2Factor , nCompartments);
+        TissueKernels.schreiner(fHe2Tension, Tools.alveolarPressure(fAmbientPressure, fHe2Fraction),
+                                fPressureChangeRate*fHe2Fraction, fPeriod, fHe2K, fHe2Factor, nCompartments);
+    }
+
+    /**
+     *  Recalculates the decay factors if the period differs from the
+     *  period of the previous exposure. Subsequent exposures of equal
+     *  length (e.g. simulation ticks) do not need to evaluate Math.exp.
+     *  @param fPeriod The exposure period in minutes
+     */
+    private void updateFactors(double fPeriod)
+    {
+        if (fPeriod!=fFactorPeriod)
+        {
+            TissueKernels.decayFactors(fN2K , fPeriod, fN2Factor , nCompartments);
+            TissueKernels.decayFactors(fHe2K, fPeriod, fHe2Factor, nCompartments);
+            fFactorPeriod=fPeriod;
+        }
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.calculator;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ *  This class records the tissue tensions of the diver as a function of
+ *  the run time, so that the tensions at any moment can be obtained
+ *  without replaying the exposures. It is filled by Processor.process()
+ *  when recording is switched on (Processor.setTimelineRecording()).
+ *  <p>
+ *  For every exposure segment a checkpoint is stored: run time at start,
+ *  period, ambient pressure at start and its rate of change, the inert
+ *  gas fractions and the tensions of all compartments at the start. The
+ *  checkpoints are kept in parallel arrays, the tensions in one array
+ *  per gas with nCompartments values per checkpoint. A query finds the
+ *  checkpoint by binary search on the start times and applies the Haldane
+ *  or Schreiner equation from it: O(log segments) per query.
+ *  <p>
+ *  Dives are recorded from their dive segments and the decompression
+ *  segments of the final schedule; the tensions are obtained by exposing
+ *  a TissueState to these segments. Surface intervals are recorded from
+ *  their surface segment, acclimatisations from their height segments. A
+ *  saturation has no period; it is recorded as a step to the saturated
+ *  tensions. At the end of each exposure a checkpoint with the tensions
+ *  of the diver is added, so differences with the calculation do not
+ *  accumulate.
+ *  <p>
+ *  Times are in minutes from the start of the first exposure (the run
+ *  times of the exposures themselves restart with every dive), pressures
+ *  and tensions in bar.
+ */
+public class TissueTimeline
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    private static final int    INITIAL_CAPACITY=64;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int         nCompartments;
+    private double[]    fN2K;
+    private double[]    fHe2K;
+
+    private int         nCheckpoints;
+    private double[]    fStartTimes;
+    private double[]    fPeriods;
+    private double[]    fAmbientPressures;
+    private double[]    fPressureRates;
+    private double[]    fN2Fractions;
+    private double[]    fHe2Fractions;
+    private double[]    fN2Tensions;
+    private double[]    fHe2Tensions;
+
+    /** Scratch state used while recording */
+    private TissueState state;
+    /** Scratch decay factors used by queries */
+    private double[]    fN2Factor;
+    private double[]    fHe2Factor;
+    private double      fFactorPeriod;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction and reinitialising
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates an empty timeline for the compartments defined
+     *  in Parameters.
+     */
+    public TissueTimeline()
+    {
+        state           =new TissueState();
+        nCompartments   =state.size();
+        fN2K            =state.getN2K().clone();
+        fHe2K           =state.getHe2K().clone();
+        fN2Factor       =new double[nCompartments];
+        fHe2Factor      =new double[nCompartments];
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int iCapacity)
+    {
+        fStartTimes     =new double[iCapacity];
+        fPeriods        =new double[iCapacity];
+        fAmbientPressures=new double[iCapacity];
+        fPressureRates  =new double[iCapacity];
+        fN2Fractions    =new double[iCapacity];
+        fHe2Fractions   =new double[iCapacity];
+        fN2Tensions     =new double[iCapacity*nCompartments];
+        fHe2Tensions    =new double[iCapacity*nCompartments];
+    }
+
+    private void ensureCapacity()
+    {
+        int iCapacity;
+
+        if (nCheckpoints==fStartTimes.length)
+        {
+            iCapacity       =2*fStartTimes.length;
+            fStartTimes     =Arrays.copyOf(fStartTimes, iCapacity);
+            fPeriods        =Arrays.copyOf(fPeriods, iCapacity);
+            fAmbientPressures=Arrays.copyOf(fAmbientPressures, iCapacity);
+            fPressureRates  =Arrays.copyOf(fPressureRates, iCapacity);
+            fN2Fractions    =Arrays.copyOf(fN2Fractions, iCapacity);
+            fHe2Fractions   =Arrays.copyOf(fHe2Fractions, iCapacity);
+            fN2Tensions     =Arrays.copyOf(fN2Tensions, iCapacity*nCompartments);
+            fHe2Tensions    =Arrays.copyOf(fHe2Tensions, iCapacity*nCompartments);
+        }
+    }
+
+    /**
+     *  Removes all checkpoints
+     */
+    public void clear()
+    {
+        nCheckpoints=0;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Recording
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Adds a checkpoint with the tensions of the scratch state
+     */
+    private void addCheckpoint(double fStartTime, double fPeriod, double fAmbientPressure,
+                               double fPressureRate, double fN2Fraction, double fHe2Fraction)
+    {
+        ensureCapacity();
+        fStartTimes[nCheckpoints]       =fStartTime;
+        fPeriods[nCheckpoints]          =fPeriod;
+        fAmbientPressures[nCheckpoints] =fAmbientPressure;
+        fPressureRates[nCheckpoints]    =fPressureRate;
+        fN2Fractions[nCheckpoints]      =fN2Fraction;
+        fHe2Fractions[nCheckpoints]     =fHe2Fraction;
+        System.arraycopy(state.getN2Tensions() , 0, fN2Tensions , nCheckpoints*nCompartments, nCompartments);
+        System.arraycopy(state.getHe2Tensions(), 0, fHe2Tensions, nCheckpoints*nCompartments, nCompartments);
+        nCheckpoints++;
+    }
+
+    /**
+     *  Adds a checkpoint for the segment and exposes the scratch state to it
+     */
+    private double addSegment(ExposureSegment segment, double fStartTime) throws CalculationException
+    {
+        double fPeriod;
+        double fRate;
+        double fAmbientPressure;
+
+        fPeriod         =segment.getExposurePeriod();
+        fAmbientPressure=segment.getAmbientPressureAtStart().getValue(Pressure.UNITS_BAR);
+        if (segment instanceof ConstantDepthSegment || segment instanceof ConstantHeightSegment || fPeriod<=0.0)
+        {
+            fRate=0.0;
+        }
+        else
+        {
+            fRate=(segment.getAmbientPressureAtEnd().getValue(Pressure.UNITS_BAR)-fAmbientPressure)/fPeriod;
+        }
+        addCheckpoint(fStartTime, fPeriod, fAmbientPressure, fRate,
+                      segment.getGasMixture().getN2Fraction(), segment.getGasMixture().getHe2Fraction());
+        segment.exposeTissueState(state);
+        return fStartTime+fPeriod;
+    }
+
+    /**
+     *  Records an exposure. Called by the Processor after the diver has
+     *  been exposed. The exposure starts at the end of the timeline.
+     *  @param exposure The exposure
+     *  @param stateAtStart The tensions of the diver at the start of the exposure
+     *  @param diver The diver, exposed to the exposure
+     *  @exception CalculationException
+     */
+    public void recordExposure(Exposure exposure, TissueState stateAtStart, Diver diver)
+                throws CalculationException
+    {
+        Vector<DepthSegment>    segments;
+        Dive                    dive;
+        Acclimatisation         acclimatisation;
+        double                  fTime;
+        int                     i;
+
+        state.copyFrom(stateAtStart);
+        fTime=getEndTime();
+        if (exposure instanceof Dive)
+        {
+            dive        =(Dive)exposure;
+            segments    =dive.getDiveSegments();
+            for (i=0; i<segments.size(); i++)
+            {
+                fTime=addSegment(segments.get(i), fTime);
+            }
+            if (dive.getDecoStages().size()>0)
+            {
+                segments=dive.getDecompression().getDecoSegments();
+                for (i=0; i<segments.size(); i++)
+                {
+                    fTime=addSegment(segments.get(i), fTime);
+                }
+            }
+        }
+        else if (exposure instanceof SurfaceInterval)
+        {
+            fTime=addSegment(((SurfaceInterval)exposure).getSurfaceSegment(), fTime);
+        }
+        else if (exposure instanceof Acclimatisation)
+        {
+            // Acclimatisation.exposeDiver() applies the ascent segment
+            // twice; record what the diver was exposed to
+            acclimatisation=(Acclimatisation)exposure;
+            fTime=addSegment(acclimatisation.getAscentSegment(), fTime);
+            fTime=addSegment(acclimatisation.getAscentSegment(), fTime);
+        }
+
+        // Synchronise with the diver; holds until the next exposure
+        state.load(diver);
+        addCheckpoint(fTime, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Queries
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the index of the last checkpoint starting at or before the
+     *  time, or -1 if the time is before the first checkpoint
+     */
+    private int findCheckpoint(double fTime)
+    {
+        int iLow;
+        int iHigh;
+        int iMiddle;
+
+        iLow    =-1;
+        iHigh   =nCheckpoints;
+        while (iHigh-iLow>1)
+        {
+            iMiddle=(iLow+iHigh)>>>1;
+            if (fStartTimes[iMiddle]<=fTime)
+            {
+                iLow=iMiddle;
+            }
+            else
+            {
+                iHigh=iMiddle;
+            }
+        }
+        return iLow;
+    }
+
+    /**
+     *  Evaluates the tensions fDt minutes after fOffset minutes into the
+     *  segment of checkpoint iCheckpoint, starting from the given tensions
+     *  at fOffset
+     */
+    private void evaluate(int iCheckpoint, double[] fN2, double[] fHe2, double fOffset, double fDt)
+    {
+        double fAmbientPressure;
+        double fRate;
+
+        if (fPeriods[iCheckpoint]==0.0 || fDt<=0.0)
+        {
+            return;
+        }
+        fRate           =fPressureRates[iCheckpoint];
+        fAmbientPressure=fAmbientPressures[iCheckpoint]+fRate*fOffset;
+        if (fDt!=fFactorPeriod)
+        {
+            TissueKernels.decayFactors(fN2K , fDt, fN2Factor , nCompartments);
+            TissueKernels.decayFactors(fHe2K, fDt, fHe2Factor, nCompartments);
+            fFactorPeriod=fDt;
+        }
+        if (fRate==0.0)
+        {
+            TissueKernels.haldane(fN2 , Tools.alveolarPressure(fAmbientPressure, fN2Fractions[iCheckpoint]) ,
+                                  fN2Factor , nCompartments);
+            TissueKernels.haldane(fHe2, Tools.alveolarPressure(fAmbientPressure, fHe2Fractions[iCheckpoint]),
+                                  fHe2Factor, nCompartments);
+        }
+        else
+        {
+            TissueKernels.schreiner(fN2 , Tools.alveolarPressure(fAmbientPressure, fN2Fractions[iCheckpoint]) ,
+                                    fRate*fN2Fractions[iCheckpoint] , fDt, fN2K , fN2Factor , nCompartments);
+            TissueKernels.schreiner(fHe2, Tools.alveolarPressure(fAmbientPressure, fHe2Fractions[iCheckpoint]),
+                                    fRate*fHe2Fractions[iCheckpoint], fDt, fHe2K, fHe2Factor, nCompartments);
+        }
+    }
+
+    /**
+     *  Calculates the tensions at the run time. Before the first
+     *  checkpoint the tensions of the first checkpoint are returned, after
+     *  the last one those at the end.
+     *  @param fTime The run time in minutes
+     *  @param fN2 Array receiving the Nitrogen tensions (nCompartments)
+     *  @param fHe2 Array receiving the Helium tensions (nCompartments)
+     *  @return False if the timeline is empty
+     */
+    public boolean getTensions(double fTime, double[] fN2, double[] fHe2)
+    {
+        int iCheckpoint;
+
+        if (nCheckpoints==0)
+        {
+            return false;
+        }
+        iCheckpoint=Math.max(findCheckpoint(fTime), 0);
+        System.arraycopy(fN2Tensions , iCheckpoint*nCompartments, fN2 , 0, nCompartments);
+        System.arraycopy(fHe2Tensions, iCheckpoint*nCompartments, fHe2, 0, nCompartments);
+        evaluate(iCheckpoint, fN2, fHe2, 0.0,
+                 Math.min(fTime-fStartTimes[iCheckpoint], fPeriods[iCheckpoint]));
+        return true;
+    }
+
+    /**
+     *  Samples the tensions at nSamples equidistant times from fStartTime
+     *  to fEndTime, for charts. The checkpoints are walked once: within a
+     *  segment each sample is calculated from the previous one, using the
+     *  same decay factors.
+     *  @param fStartTime First run time in minutes
+     *  @param fEndTime Last run time in minutes
+     *  @param nSamples Number of samples (at least 2)
+     *  @return The samples
+     */
+    public Samples resample(double fStartTime, double fEndTime, int nSamples)
+    {
+        Samples     samples;
+        double[]    fN2;
+        double[]    fHe2;
+        double      fStep;
+        double      fTime;
+        double      fPrevious;
+        int         iCheckpoint;
+        int         iPrevious;
+        int         iSample;
+        int         c;
+
+        samples =new Samples(nSamples, nCompartments);
+        fN2     =new double[nCompartments];
+        fHe2    =new double[nCompartments];
+        fStep   =(fEndTime-fStartTime)/(nSamples-1);
+        iPrevious=-2;
+        fPrevious=0.0;
+        for (iSample=0; iSample<nSamples; iSample++)
+        {
+            fTime=(iSample==nSamples-1)?fEndTime:fStartTime+iSample*fStep;
+            samples.fTimes[iSample]=fTime;
+            if (nCheckpoints==0)
+            {
+                continue;
+            }
+
+            // Walk forward from the previous checkpoint
+            iCheckpoint=Math.max(iPrevious, 0);
+            while (iCheckpoint+1<nCheckpoints && fStartTimes[iCheckpoint+1]<=fTime)
+            {
+                iCheckpoint++;
+            }
+
+            if (iCheckpoint==iPrevious && fTime<=fStartTimes[iCheckpoint]+fPeriods[iCheckpoint])
+            {
+                // Same segment: continue from the previous sample. Using
+                // fStep keeps the decay factors of the previous step.
+                evaluate(iCheckpoint, fN2, fHe2, fPrevious-fStartTimes[iCheckpoint],
+                         (iSample==nSamples-1)?fTime-fPrevious:fStep);
+            }
+            else
+            {
+                System.arraycopy(fN2Tensions , iCheckpoint*nCompartments, fN2 , 0, nCompartments);
+                System.arraycopy(fHe2Tensions, iCheckpoint*nCompartments, fHe2, 0, nCompartments);
+                evaluate(iCheckpoint, fN2, fHe2, 0.0,
+                         Math.min(fTime-fStartTimes[iCheckpoint], fPeriods[iCheckpoint]));
+            }
+            iPrevious=iCheckpoint;
+            fPrevious=Math.min(fTime, fStartTimes[iCheckpoint]+fPeriods[iCheckpoint]);
+
+            for (c=0; c<nCompartments; c++)
+            {
+                samples.fN2[c][iSample] =fN2[c];
+                samples.fHe2[c][iSample]=fHe2[c];
+            }
+        }
+        return samples;
+    }
+
+    /**
+     *  Tensions sampled at equidistant times, per compartment
+     */
+    public static class Samples
+    {
+        private double[]    fTimes;
+        private double[][]  fN2;
+        private double[][]  fHe2;
+
+        Samples(int nSamples, int nCompartments)
+        {
+            fTimes  =new double[nSamples];
+            fN2     =new double[nCompartments][nSamples];
+            fHe2    =new double[nCompartments][nSamples];
+        }
+
+        public int size()
+        {
+            return fTimes.length;
+        }
+
+        public double[] getTimes()
+        {
+            return fTimes;
+        }
+
+        /**
+         *  Returns the Nitrogen tensions of a compartment
+         *  @param iCompartment The compartment
+         *  @return The tensions in bar, one per sample
+         */
+        public double[] getN2Tensions(int iCompartment)
+        {
+            return fN2[iCompartment];
+        }
+
+        /**
+         *  Returns the Helium tensions of a compartment
+         *  @param iCompartment The compartment
+         *  @return The tensions in bar, one per sample
+         */
+        public double[] getHe2Tensions(int iCompartment)
+        {
+            return fHe2[iCompartment];
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    public int getNumberOfCheckpoints()
+    {
+        return nCheckpoints;
+    }
+
+    public int getNumberOfCompartments()
+    {
+        return nCompartments;
+    }
+
+    /**
+     *  Returns the run time at the start of the first checkpoint
+     *  @return The run time in minutes
+     */
+    public double getStartTime()
+    {
+        return (nCheckpoints>0)?fStartTimes[0]:0.0;
+    }
+
+    /**
+     *  Returns the run time at the end of the last checkpoint
+     *  @return The run time in minutes
+     */
+    public double getEndTime()
+    {
+        return (nCheckpoints>0)?fStartTimes[nCheckpoints-1]+fPeriods[nCheckpoints-1]:0.0;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Checks and measures the timeline for the exposures in a file.
+     *  The tensions at the end of the timeline are compared with those of
+     *  the diver and random queries are compared with replaying the
+     *  checkpoints from the start.
+     *  Usage: TissueTimeline file [queries]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Processor       processor;
+        TissueTimeline  timeline;
+        TissueState     replay;
+        Samples         samples;
+        Random          random;
+        double[]        fN2;
+        double[]        fHe2;
+        double[]        fTimes;
+        double          fMaxDifference;
+        long            lStart;
+        long            lQueryNanos;
+        long            lReplayNanos;
+        int             nQueries;
+        int             i;
+        int             j;
+        int             c;
+
+        if (args.length<1)
+        {
+            System.err.println("Usage: TissueTimeline file [queries]");
+            return;
+        }
+        nQueries=(args.length>1)?Integer.parseInt(args[1]):10000;
+
+        processor=new Processor();
+        processor.setDecoAlgorithm(Processor.ALGORITHM_VPMB);
+        processor.loadExposures(new File(args[0]));
+        processor.setTimelineRecording(true);
+        lStart=System.nanoTime();
+        processor.process();
+        timeline=processor.getTimeline();
+        System.out.println(String.format("%d exposures, %d checkpoints, %.1f min, processed in %.1f ms",
+                                         processor.getExposures().size(), timeline.getNumberOfCheckpoints(),
+                                         timeline.getEndTime(), (System.nanoTime()-lStart)/1.0e6));
+
+        // End of the timeline against the diver
+        fN2 =new double[timeline.getNumberOfCompartments()];
+        fHe2=new double[timeline.getNumberOfCompartments()];
+        replay=new TissueState(processor.getDiver());
+        timeline.getTensions(timeline.getEndTime(), fN2, fHe2);
+        fMaxDifference=0.0;
+        for (c=0; c<fN2.length; c++)
+        {
+            fMaxDifference=Math.max(fMaxDifference, Math.abs(fN2[c]-replay.getN2Tensions()[c]));
+            fMaxDifference=Math.max(fMaxDifference, Math.abs(fHe2[c]-replay.getHe2Tensions()[c]));
+        }
+        System.out.println(String.format("End of timeline vs diver: max difference %.3g bar", fMaxDifference));
+
+        // Largest jump at a synchronisation checkpoint: replay against the diver
+        fMaxDifference=0.0;
+        for (i=1; i<timeline.nCheckpoints; i++)
+        {
+            if (timeline.fPeriods[i]==0.0 && timeline.fPeriods[i-1]>0.0)
+            {
+                timeline.getTensions(timeline.fStartTimes[i]-1.0e-12, fN2, fHe2);
+                for (c=0; c<fN2.length; c++)
+                {
+                    fMaxDifference=Math.max(fMaxDifference,
+                                            Math.abs(fN2[c]-timeline.fN2Tensions[i*fN2.length+c]));
+                }
+            }
+        }
+        System.out.println(String.format("Replayed segments vs diver at exposure ends: max difference %.3g bar",
+                                         fMaxDifference));
+
+        random=new Random(1);
+        fTimes=new double[nQueries];
+        for (i=0; i<nQueries; i++)
+        {
+            fTimes[i]=random.nextDouble()*timeline.getEndTime();
+        }
+
+        // Queries
+        lStart=System.nanoTime();
+        for (i=0; i<nQueries; i++)
+        {
+            timeline.getTensions(fTimes[i], fN2, fHe2);
+        }
+        lQueryNanos=System.nanoTime()-lStart;
+
+        // Replay from the first checkpoint, as without the timeline
+        fMaxDifference=0.0;
+        lStart=System.nanoTime();
+        for (i=0; i<nQueries && i<1000; i++)
+        {
+            replay.copyFrom(new TissueState());
+            System.arraycopy(timeline.fN2Tensions , 0, replay.getN2Tensions() , 0, fN2.length);
+            System.arraycopy(timeline.fHe2Tensions, 0, replay.getHe2Tensions(), 0, fN2.length);
+            for (j=0; j<timeline.nCheckpoints && timeline.fStartTimes[j]<=fTimes[i]; j++)
+            {
+                if (timeline.fPeriods[j]==0.0)
+                {
+                    System.arraycopy(timeline.fN2Tensions , j*fN2.length, replay.getN2Tensions() , 0, fN2.length);
+                    System.arraycopy(timeline.fHe2Tensions, j*fN2.length, replay.getHe2Tensions(), 0, fN2.length);
+                }
+                else if (timeline.fPressureRates[j]==0.0)
+                {
+                    replay.exposeToConstantPressure(timeline.fAmbientPressures[j], timeline.fN2Fractions[j],
+                                                    timeline.fHe2Fractions[j],
+                                                    Math.min(fTimes[i]-timeline.fStartTimes[j], timeline.fPeriods[j]));
+                }
+                else
+                {
+                    replay.exposeToVaryingPressure(timeline.fAmbientPressures[j], timeline.fPressureRates[j],
+                                                   timeline.fN2Fractions[j], timeline.fHe2Fractions[j],
+                                                   Math.min(fTimes[i]-timeline.fStartTimes[j], timeline.fPeriods[j]));
+                }
+            }
+            timeline.getTensions(fTimes[i], fN2, fHe2);
+            for (c=0; c<fN2.length; c++)
+            {
+                fMaxDifference=Math.max(fMaxDifference, Math.abs(fN2[c]-replay.getN2Tensions()[c]));
+            }
+        }
+        lReplayNanos=System.nanoTime()-lStart;
+        System.out.println(String.format("Query: %.2f us; replay from start: %.1f us; max difference %.3g bar",
+                                         lQueryNanos/1.0e3/nQueries, lReplayNanos/1.0e3/Math.min(nQueries, 1000),
+                                         fMaxDifference));
+
+        samples=null;
+        for (i=0; i<3; i++)
+        {
+            lStart=System.nanoTime();
+            samples=timeline.resample(timeline.getStartTime(), timeline.getEndTime(), 10000);
+        }
+        System.out.println(String.format("Resampled %d points in %.2f ms", samples.size(),
+                                         (System.nanoTime()-lStart)/1.0e6));
+        fMaxDifference=0.0;
+        for (i=0; i<samples.size(); i+=97)
+        {
+            timeline.getTensions(samples.getTimes()[i], fN2, fHe2);
+            for (c=0; c<fN2.length; c++)
+            {
+                fMaxDifference=Math.max(fMaxDifference, Math.abs(fN2[c]-samples.getN2Tensions(c)[i]));
+            }
+        }
+        System.out.println(String.format("Resampled vs queried: max difference %.3g bar", fMaxDifference));
+    }
+}
@@ -68,6 +68,21 @@ public class Tools
 
     }
 
+    /**
+     *  This method calculates the pressure of an inert gas fraction in the alveoli.
+     *  Same as above, but on plain values in bar, so no Pressure instances
+     *  are needed.
+     *  @param fAmbientPressure The ambient pressure in bar
+     *  @param fFractionInertGas Fraction (0.0 - 1.0) of the inert gas in the breathing mixture
+     *  @return The alveolar pressure in bar
+     */
+    public static double alveolarPressure(double fAmbientPressure, double fFractionInertGas)
+    {
+        return (fAmbientPressure-
+                Pressure.convertPressure(1.607, Pressure.UNITS_FSW, Pressure.UNITS_BAR))*
+                fFractionInertGas;
+    }
+
     public static double schreinerEquation( double fAlvPressure,
                                             double fAlvRate,
                                             double fExposurePeriod,
@@ -14,6 +14,7 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -272,6 +273,27 @@ public class VaryingDepthSegment extends DepthSegment
         }
     }
 
+    /** Applies the exposure of this segment to all compartments of the
+     *  TissueState (schreiner equation). Crushing pressures are not
+     *  calculated, the TissueState does not contain the VPM nuclei.
+     *  @param          state The tissue state to be updated
+     *  @exception CalculationException
+     */
+    public void exposeTissueState(TissueState state)
+                throws CalculationException
+    {
+        if (fExposurePeriod<0.0)
+        {
+            throw new CalculationException("Negative time value");
+        }
+
+        state.exposeToVaryingPressure(ambientPressureAtStart.getValue(Pressure.UNITS_BAR),
+                                      changeOfAmbientPressure.getValue(Pressure.UNITS_BAR),
+                                      gasMixture.getN2Fraction(),
+                                      gasMixture.getHe2Fraction(),
+                                      fExposurePeriod);
+    }
+
 
 
 
@@ -1106,6 +1128,32 @@ public class VaryingDepthSegment extends DepthSegment
         
         return xmlSegment;
     }    
+
+    /**
+     *  This method writes the XML representation of the Segment to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("DepthChange");
+
+        writer.startElement("StartDepth");
+        diveDepthAtStart.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("EndDepth");
+        diveDepthAtEnd.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("DepthChangeRate");
+        depthChangeRate.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
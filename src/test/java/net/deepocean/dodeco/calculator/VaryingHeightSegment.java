@@ -14,6 +14,9 @@ package net.deepocean.dodeco.calculator;
 
 import net.deepocean.dodeco.tools.MyXML;
 import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+import net.deepocean.dodeco.tools.MyXMLWriter;
+
+import java.io.IOException;
 
 /**
  *  This class represents an surface segment. During the stay
@@ -193,6 +196,26 @@ public class VaryingHeightSegment extends HeightSegment
 
     }
 
+    /** Applies the exposure of this segment to all compartments of the
+     *  TissueState (schreiner equation)
+     *  @param          state The tissue state to be updated
+     *  @exception CalculationException
+     */
+    public void exposeTissueState(TissueState state)
+                throws CalculationException
+    {
+        if (fExposurePeriod<0.0)
+        {
+            throw new CalculationException("Negative time value");
+        }
+
+        state.exposeToVaryingPressure(ambientPressureAtStart.getValue(Pressure.UNITS_BAR),
+                                      ambientPressureChangeRate.getValue(Pressure.UNITS_BAR),
+                                      gasMixture.getN2Fraction(),
+                                      gasMixture.getHe2Fraction(),
+                                      fExposurePeriod);
+    }
+
 
 
 
@@ -223,6 +246,30 @@ public class VaryingHeightSegment extends HeightSegment
         
         return xmlSegment;
     }    
+
+    /**
+     *  This method writes the XML representation of the Segment to the
+     *  writer, without creating the MyXML tree
+     *  @param writer The writer
+     */
+    public void writeXmlRepresentation(MyXMLWriter writer) throws MyXMLException, IOException
+    {
+        writer.startElement("HeightChange");
+
+        writer.startElement("StartHeight");
+        heightAtStart.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.startElement("EndHeight");
+        heightAtEnd.writeXmlRepresentation(writer);
+        writer.endElement();
+
+        writer.element("ChangePeriodInMinutes", this.fExposurePeriod);
+
+        gasMixture.writeXmlRepresentation(writer);
+
+        writer.endElement();
+    }
     
     /**
      *  This method initialises the parameters characterising the Segment
@@ -16,7 +16,11 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 /**
- *
+ *  ZH-L16 decompression. An instance keeps the diver, the dive and working
+ *  state (tissueState, fTensionLimits) of the calculation in progress, so
+ *  it must not be used by more than one thread at a time. Processor and
+ *  PlanningSession give every Dive its own instance and
+ *  SpeculativeDecoPlanner creates one per schedule.
  * @author Jorgen
  */
 public class ZHL16Decompression extends Decompression
@@ -66,6 +70,11 @@ public class ZHL16Decompression extends Decompression
     
     /** Variable indicating the current decompression stop during calculation */
     protected Length                      currentDecoStopDepth;
+
+    /** Working state and limits for the array based safety check,
+     *  overwritten by every check */
+    protected TissueState                 tissueState;
+    protected double[]                    fTensionLimits;
     
     /** Creates a new instance of ZH16LDecompression. By default
      *  the model is set to ZH-L16B. 
@@ -619,6 +628,49 @@ public class ZHL16Decompression extends Decompression
     }
     
     
+    /**
+     *  This method calculates the allowed tissue tension limits of all
+     *  compartments at once. It is the array based equivalent of
+     *  calculateTissueTensionLimit().
+     *  @param state The tissue tensions
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fLimit Array receiving the limits in bar, indexed by compartment
+     */
+    protected void calculateTissueTensionLimits(TissueState state, double fAmbientPressure, double[] fLimit)
+    {
+        TissueKernels.buhlmannLimits(fAmbientPressure,
+                                     state.getN2Tensions(), state.getHe2Tensions(),
+                                     N2A, N2B, He2A, He2B,
+                                     fLimit, state.size());
+    }
+
+    /**
+     *  This method loads the tissue tensions of the diver in the working
+     *  TissueState and calculates the limits at given ambient pressure.
+     *  @param diver The diver
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @return The tissue state holding the tensions of the diver; the limits
+     *          are in fTensionLimits
+     */
+    protected TissueState calculateTissueTensionLimits(Diver diver, double fAmbientPressure)
+    {
+        if (tissueState==null)
+        {
+            tissueState=new TissueState(diver);
+        }
+        else
+        {
+            tissueState.load(diver);
+        }
+        if (fTensionLimits==null || fTensionLimits.length!=tissueState.size())
+        {
+            fTensionLimits=new double[tissueState.size()];
+        }
+        calculateTissueTensionLimits(tissueState, fAmbientPressure, fTensionLimits);
+
+        return tissueState;
+    }
+
     /** 
      *  This method checks whether the Tissue Tension in all compartments
      *  of the Diver remains within Buhlmann limits at given depth
@@ -627,6 +679,30 @@ public class ZHL16Decompression extends Decompression
      *          TissueCompartment is not within limits
      */
     protected boolean checkDiverSafety(Length depth)
+    {
+        TissueState             state;
+
+        if (Parameters.bUseTissueKernels)
+        {
+            state=calculateTissueTensionLimits(diver,
+                        new DepthPressure(depth, diveHeight).getValue(Pressure.UNITS_BAR));
+            return TissueKernels.firstUnsafe(state.getN2Tensions(), state.getHe2Tensions(),
+                                             fTensionLimits, state.size())<0;
+        }
+        else
+        {
+            return checkDiverSafetyPerCompartment(depth);
+        }
+    }
+
+    /**
+     *  Same as checkDiverSafety(), calculating the limit compartment by
+     *  compartment.
+     *  @param depth Depth at which divers safety is checked
+     *  @return True if the diver is safe, false if tissue tension of at least one
+     *          TissueCompartment is not within limits
+     */
+    protected boolean checkDiverSafetyPerCompartment(Length depth)
     {
         Enumeration             compartments;
         TissueCompartment       compartment;     
@@ -158,7 +158,21 @@ public class ZHL16WithGradientDecompression extends ZHL16Decompression
         
         return fLimit;
     }
-    
+
+    /**
+     *  This method calculates the allowed tissue tension limits of all
+     *  compartments at once, using the current gradient factor.
+     *  @param state The tissue tensions
+     *  @param fAmbientPressure Ambient pressure in bar
+     *  @param fLimit Array receiving the limits in bar, indexed by compartment
+     */
+    protected void calculateTissueTensionLimits(TissueState state, double fAmbientPressure, double[] fLimit)
+    {
+        TissueKernels.gradientFactorLimits(fAmbientPressure, fCurrentGradientFactor,
+                                           state.getN2Tensions(), state.getHe2Tensions(),
+                                           N2A, N2B, He2A, He2B,
+                                           fLimit, state.size());
+    }
     
     
     /**
@@ -0,0 +1,91 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import net.deepocean.dodeco.calculator.ResultExporter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ *  Base class of the exporters. Output is collected in a StringBuilder
+ *  that is reused for every result and copied to the writer through a
+ *  char array, so no strings are created for the output itself.
+ */
+public abstract class AbstractResultExporter implements ResultExporter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    protected StringBuilder builder;
+    private Writer          writer;
+    private char[]          buffer;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param writer The writer to write to
+     */
+    protected AbstractResultExporter(Writer writer)
+    {
+        this.writer =writer;
+        builder     =new StringBuilder(8192);
+        buffer      =new char[8192];
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Output
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the contents of the builder to the writer and empties the
+     *  builder
+     *  @exception IOException
+     */
+    protected void writeBuilder() throws IOException
+    {
+        int iLength;
+        int iOffset;
+        int iChunk;
+
+        iLength=builder.length();
+        iOffset=0;
+        while (iOffset<iLength)
+        {
+            iChunk=Math.min(buffer.length, iLength-iOffset);
+            builder.getChars(iOffset, iOffset+iChunk, buffer, 0);
+            writer.write(buffer, 0, iChunk);
+            iOffset+=iChunk;
+        }
+        builder.setLength(0);
+    }
+
+    /**
+     *  Does nothing; override to write a header
+     *  @exception IOException
+     */
+    public void startDocument() throws IOException
+    {
+    }
+
+    /**
+     *  Writes what is left in the builder and flushes the writer
+     *  @exception IOException
+     */
+    public void endDocument() throws IOException
+    {
+        writeBuilder();
+        writer.flush();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import net.deepocean.dodeco.calculator.ExposureResult;
+import net.deepocean.dodeco.calculator.ExposureResult.SegmentTable;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ *  This class writes exposure results as CSV, one row per segment of the
+ *  dive and decompression tables and, optionally, one row per tissue
+ *  compartment with the tensions at the end of the exposure:
+ *  <pre>
+ *  exposure,name,table,index,type,gas,startDepth,endDepth,rate,period,runTime,stopTime,he2Tension,n2Tension
+ *  1,Dive,dive,1,descent,1,0.000,80.000,23.000,3.478,3.478,,,
+ *  1,Dive,deco,5,constant,2,21.000,21.000,0.000,0.541,34.019,1.000,,
+ *  1,Dive,tissue,0,,,,,,,,,1.23456,0.98765
+ *  </pre>
+ *  Exposures are numbered from 1; depths are in meters, rates in meters
+ *  per minute, times in minutes and tensions in bar.
+ */
+public class CsvResultExporter extends AbstractResultExporter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final String  HEADER          ="exposure,name,table,index,type,gas,startDepth,endDepth,"+
+                                                 "rate,period,runTime,stopTime,he2Tension,n2Tension\n";
+    public static final int     DEFAULT_DECIMALS=3;
+    private static final int    TENSION_DECIMALS=5;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int                 nDecimals;
+    private boolean             bTissues;
+    private int                 iExposure;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param writer The writer to write to
+     */
+    public CsvResultExporter(Writer writer)
+    {
+        super(writer);
+        nDecimals   =DEFAULT_DECIMALS;
+        bTissues    =true;
+        iExposure   =0;
+    }
+
+    /**
+     *  Sets the number of decimals for depths, rates and times
+     *  @param nDecimals Number of decimals (0-9)
+     */
+    public void setDecimals(int nDecimals)
+    {
+        this.nDecimals=nDecimals;
+    }
+
+    /**
+     *  Sets whether the tissue rows are written
+     *  @param bTissues True to write the tissue tensions
+     */
+    public void setIncludeTissues(boolean bTissues)
+    {
+        this.bTissues=bTissues;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Export
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the header row
+     *  @exception IOException
+     */
+    public void startDocument() throws IOException
+    {
+        iExposure=0;
+        builder.append(HEADER);
+        writeBuilder();
+    }
+
+    /**
+     *  Writes the rows of one exposure
+     *  @param result The result
+     *  @exception IOException
+     */
+    public void exportResult(ExposureResult result) throws IOException
+    {
+        int i;
+
+        iExposure++;
+        exportTable(result, "dive", result.getDiveTable(), false);
+        exportTable(result, "deco", result.getDecoTable(), true);
+        if (bTissues)
+        {
+            for (i=0; i<result.getNumberOfCompartments(); i++)
+            {
+                startRow(result, "tissue");
+                builder.append(i);
+                builder.append(",,,,,,,,,");
+                FixedFormat.appendFixed(builder, result.getHe2Tension(i), 1, TENSION_DECIMALS);
+                builder.append(',');
+                FixedFormat.appendFixed(builder, result.getN2Tension(i), 1, TENSION_DECIMALS);
+                builder.append('\n');
+            }
+        }
+        writeBuilder();
+    }
+
+    private void exportTable(ExposureResult result, String sTable, SegmentTable table, boolean bStopTimes)
+    {
+        int i;
+
+        for (i=0; i<table.size(); i++)
+        {
+            startRow(result, sTable);
+            builder.append(table.getSegmentNumber(i)).append(',');
+            switch (table.getType(i))
+            {
+                case ExposureResult.SEGMENT_CONSTANT_DEPTH:
+                    builder.append("constant,");
+                    break;
+                case ExposureResult.SEGMENT_ASCENT:
+                    builder.append("ascent,");
+                    break;
+                default:
+                    builder.append("descent,");
+                    break;
+            }
+            builder.append(table.getGasIndex(i)).append(',');
+            appendValue(table.getStartDepth(i));
+            appendValue(table.getEndDepth(i));
+            appendValue(table.getDepthChangeRate(i));
+            appendValue(table.getPeriod(i));
+            appendValue(table.getRunTime(i));
+            if (bStopTimes && table.getType(i)==ExposureResult.SEGMENT_CONSTANT_DEPTH)
+            {
+                FixedFormat.appendFixed(builder, table.getStopTime(i), 1, nDecimals);
+            }
+            builder.append(",,\n");
+        }
+    }
+
+    private void startRow(ExposureResult result, String sTable)
+    {
+        builder.append(iExposure).append(',');
+        builder.append(result.getExposureName()).append(',');
+        builder.append(sTable).append(',');
+    }
+
+    private void appendValue(double fValue)
+    {
+        FixedFormat.appendFixed(builder, fValue, 1, nDecimals);
+        builder.append(',');
+    }
+}
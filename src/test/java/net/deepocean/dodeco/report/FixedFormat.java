@@ -0,0 +1,149 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ *  This class appends numbers to a StringBuilder the way the number
+ *  patterns of the report texts ("000.0", "#####.#", ...) format them,
+ *  without boxing the value or creating a DecimalFormat. Rounding is half
+ *  even on the exact value of the double, like DecimalFormat does; only
+ *  values close to a tie are passed through BigDecimal to decide.
+ */
+public class FixedFormat
+{
+    private static final long[] POWERS_OF_TEN   ={1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L,
+                                                  10000000L, 100000000L, 1000000000L};
+    private static final double MAX_FAST_VALUE  =1.0e12;
+    private static final double TIE_MARGIN      =1.0e-6;
+
+    /**
+     *  Appends an integer with at least the given number of digits, like
+     *  pattern "000"
+     *  @param builder The builder to append to
+     *  @param iValue The value
+     *  @param nMinimumDigits Minimum number of digits; padded with zeros
+     */
+    public static void appendInteger(StringBuilder builder, long iValue, int nMinimumDigits)
+    {
+        int nDigits;
+        long lPower;
+
+        if (iValue<0)
+        {
+            builder.append('-');
+            iValue=-iValue;
+        }
+        nDigits=1;
+        lPower =10;
+        while (lPower<=iValue && nDigits<18)
+        {
+            nDigits++;
+            lPower*=10;
+        }
+        while (nDigits<nMinimumDigits)
+        {
+            builder.append('0');
+            nMinimumDigits--;
+        }
+        builder.append(iValue);
+    }
+
+    /**
+     *  Appends a value with a fixed number of decimals, like pattern
+     *  "0000.0" (4 integer digits, 1 decimal)
+     *  @param builder The builder to append to
+     *  @param fValue The value
+     *  @param nIntegerDigits Minimum number of integer digits
+     *  @param nDecimals Number of decimals (at most 9)
+     */
+    public static void appendFixed(StringBuilder builder, double fValue, int nIntegerDigits, int nDecimals)
+    {
+        append(builder, fValue, nIntegerDigits, nDecimals, false);
+    }
+
+    /**
+     *  Appends a value with at most the given number of decimals; trailing
+     *  zeros and a trailing decimal point are left out, like pattern
+     *  "#####.#"
+     *  @param builder The builder to append to
+     *  @param fValue The value
+     *  @param nDecimals Maximum number of decimals (at most 9)
+     */
+    public static void appendOptional(StringBuilder builder, double fValue, int nDecimals)
+    {
+        append(builder, fValue, 1, nDecimals, true);
+    }
+
+    private static void append(StringBuilder builder, double fValue, int nIntegerDigits,
+                               int nDecimals, boolean bOptionalDecimals)
+    {
+        boolean bNegative;
+        double  fAbsolute;
+        double  fScaled;
+        double  fFraction;
+        long    lScale;
+        long    lRounded;
+        long    lDecimals;
+        int     i;
+
+        if (Double.isNaN(fValue) || Double.isInfinite(fValue))
+        {
+            builder.append(fValue);
+            return;
+        }
+
+        // DecimalFormat keeps the sign of values that round to zero
+        bNegative   =(fValue<0.0) || (fValue==0.0 && 1.0/fValue<0.0);
+        fAbsolute   =Math.abs(fValue);
+        lScale      =POWERS_OF_TEN[nDecimals];
+        fScaled     =fAbsolute*lScale;
+        fFraction   =fScaled-Math.floor(fScaled);
+
+        if (fScaled>=MAX_FAST_VALUE || Math.abs(fFraction-0.5)<TIE_MARGIN)
+        {
+            lRounded=new BigDecimal(fAbsolute).setScale(nDecimals, RoundingMode.HALF_EVEN)
+                                              .unscaledValue().longValue();
+        }
+        else
+        {
+            lRounded=(long)Math.rint(fScaled);
+        }
+
+        if (bNegative)
+        {
+            builder.append('-');
+        }
+        appendInteger(builder, lRounded/lScale, nIntegerDigits);
+
+        lDecimals=lRounded%lScale;
+        if (bOptionalDecimals)
+        {
+            while (nDecimals>0 && lDecimals%10==0)
+            {
+                lDecimals/=10;
+                nDecimals--;
+            }
+        }
+        if (nDecimals>0)
+        {
+            builder.append('.');
+            for (i=nDecimals-1; i>=0; i--)
+            {
+                builder.append((char)('0'+(lDecimals/POWERS_OF_TEN[i])%10));
+            }
+        }
+    }
+}
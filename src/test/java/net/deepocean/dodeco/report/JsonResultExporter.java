@@ -0,0 +1,315 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import net.deepocean.dodeco.calculator.ExposureResult;
+import net.deepocean.dodeco.calculator.ExposureResult.SegmentTable;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ *  This class writes exposure results as a JSON array with one object
+ *  per exposure, on one line each. The segment tables are written column
+ *  wise, as arrays of equal length, mirroring ExposureResult:
+ *  <pre>
+ *  [
+ *  {"exposure":"Dive","runTime":60.4,"description":"...","algorithm":"...",
+ *   "startOfDecoZone":33.1,"deepestDecoStop":30.0,
+ *   "gasMixtures":[{"index":1,"o2":0.21,"he2":0.0,"n2":0.79}],
+ *   "diveSegments":{"segment":[1,2],"type":["descent","constant"],"gas":[1,1],
+ *                   "startDepth":[..],"endDepth":[..],"rate":[..],"period":[..],"runTime":[..]},
+ *   "decoSegments":{... ,"stopTime":[..]},
+ *   "tissues":{"he2":[..],"n2":[..]}}
+ *  ]
+ *  </pre>
+ *  The members description to decoSegments are written for dives only.
+ *  Depths are in meters, rates in meters per minute, times in minutes and tensions
+ *  in bar; unknown values are written as null.
+ */
+public class JsonResultExporter extends AbstractResultExporter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int     DEFAULT_DECIMALS=3;
+    private static final int    TENSION_DECIMALS=5;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private int                 nDecimals;
+    private boolean             bTissues;
+    private boolean             bFirst;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param writer The writer to write to
+     */
+    public JsonResultExporter(Writer writer)
+    {
+        super(writer);
+        nDecimals   =DEFAULT_DECIMALS;
+        bTissues    =true;
+        bFirst      =true;
+    }
+
+    /**
+     *  Sets the number of decimals for depths, rates and times
+     *  @param nDecimals Number of decimals (0-9)
+     */
+    public void setDecimals(int nDecimals)
+    {
+        this.nDecimals=nDecimals;
+    }
+
+    /**
+     *  Sets whether the tissue tensions are written
+     *  @param bTissues True to write the tissue tensions
+     */
+    public void setIncludeTissues(boolean bTissues)
+    {
+        this.bTissues=bTissues;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Export
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Opens the array
+     *  @exception IOException
+     */
+    public void startDocument() throws IOException
+    {
+        bFirst=true;
+        builder.append("[\n");
+    }
+
+    /**
+     *  Writes the object of one exposure
+     *  @param result The result
+     *  @exception IOException
+     */
+    public void exportResult(ExposureResult result) throws IOException
+    {
+        int i;
+
+        if (!bFirst)
+        {
+            builder.append(",\n");
+        }
+        bFirst=false;
+
+        builder.append("{\"exposure\":");
+        appendString(result.getExposureName());
+        builder.append(",\"runTime\":");
+        appendNumber(result.getRunTime(), nDecimals);
+
+        if (result.isDive())
+        {
+            builder.append(",\"description\":");
+            appendString(result.getDescription());
+            builder.append(",\"algorithm\":");
+            appendString(result.getAlgorithmDescription());
+            builder.append(",\"startOfDecoZone\":");
+            appendNumber(result.getStartOfDecoZoneDepth(), nDecimals);
+            builder.append(",\"deepestDecoStop\":");
+            appendNumber(result.getDeepestDecoStopDepth(), nDecimals);
+
+            builder.append(",\"gasMixtures\":[");
+            for (i=0; i<result.getNumberOfGasMixtures(); i++)
+            {
+                if (i>0)
+                {
+                    builder.append(',');
+                }
+                builder.append("{\"index\":").append(result.getGasMixtureIndex(i));
+                builder.append(",\"o2\":");
+                appendNumber(result.getO2Fraction(i), 4);
+                builder.append(",\"he2\":");
+                appendNumber(result.getHe2Fraction(i), 4);
+                builder.append(",\"n2\":");
+                appendNumber(result.getN2Fraction(i), 4);
+                builder.append('}');
+            }
+            builder.append(']');
+
+            builder.append(",\"diveSegments\":");
+            exportTable(result.getDiveTable(), false);
+            builder.append(",\"decoSegments\":");
+            exportTable(result.getDecoTable(), true);
+        }
+
+        if (bTissues)
+        {
+            builder.append(",\"tissues\":{\"he2\":");
+            appendArray(result.getHe2Tensions(), result.getNumberOfCompartments(), TENSION_DECIMALS);
+            builder.append(",\"n2\":");
+            appendArray(result.getN2Tensions(), result.getNumberOfCompartments(), TENSION_DECIMALS);
+            builder.append('}');
+        }
+        builder.append('}');
+        writeBuilder();
+    }
+
+    /**
+     *  Closes the array and flushes the output
+     *  @exception IOException
+     */
+    public void endDocument() throws IOException
+    {
+        builder.append("\n]\n");
+        super.endDocument();
+    }
+
+    private void exportTable(SegmentTable table, boolean bStopTimes)
+    {
+        int i;
+        int nSegments;
+
+        nSegments=table.size();
+        builder.append("{\"segment\":[");
+        for (i=0; i<nSegments; i++)
+        {
+            if (i>0)
+            {
+                builder.append(',');
+            }
+            builder.append(table.getSegmentNumber(i));
+        }
+        builder.append("],\"type\":[");
+        for (i=0; i<nSegments; i++)
+        {
+            if (i>0)
+            {
+                builder.append(',');
+            }
+            switch (table.getType(i))
+            {
+                case ExposureResult.SEGMENT_CONSTANT_DEPTH:
+                    builder.append("\"constant\"");
+                    break;
+                case ExposureResult.SEGMENT_ASCENT:
+                    builder.append("\"ascent\"");
+                    break;
+                default:
+                    builder.append("\"descent\"");
+                    break;
+            }
+        }
+        builder.append("],\"gas\":[");
+        for (i=0; i<nSegments; i++)
+        {
+            if (i>0)
+            {
+                builder.append(',');
+            }
+            builder.append(table.getGasIndex(i));
+        }
+        builder.append("],\"startDepth\":");
+        appendArray(table.getStartDepths(), nSegments, nDecimals);
+        builder.append(",\"endDepth\":");
+        appendArray(table.getEndDepths(), nSegments, nDecimals);
+        builder.append(",\"rate\":");
+        appendArray(table.getDepthChangeRates(), nSegments, nDecimals);
+        builder.append(",\"period\":");
+        appendArray(table.getPeriods(), nSegments, nDecimals);
+        builder.append(",\"runTime\":");
+        appendArray(table.getRunTimes(), nSegments, nDecimals);
+        if (bStopTimes)
+        {
+            builder.append(",\"stopTime\":");
+            appendArray(table.getStopTimes(), nSegments, nDecimals);
+        }
+        builder.append('}');
+    }
+
+    private void appendArray(double[] values, int nValues, int nValueDecimals)
+    {
+        int i;
+
+        builder.append('[');
+        for (i=0; i<nValues; i++)
+        {
+            if (i>0)
+            {
+                builder.append(',');
+            }
+            appendNumber(values[i], nValueDecimals);
+        }
+        builder.append(']');
+    }
+
+    private void appendNumber(double fValue, int nValueDecimals)
+    {
+        if (Double.isNaN(fValue) || Double.isInfinite(fValue))
+        {
+            builder.append("null");
+        }
+        else
+        {
+            FixedFormat.appendOptional(builder, fValue, nValueDecimals);
+        }
+    }
+
+    private void appendString(String sValue)
+    {
+        char    c;
+        int     i;
+
+        if (sValue==null)
+        {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (i=0; i<sValue.length(); i++)
+        {
+            c=sValue.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c<0x20)
+                    {
+                        builder.append("\\u00");
+                        builder.append(Character.forDigit(c>>4, 16));
+                        builder.append(Character.forDigit(c&15, 16));
+                    }
+                    else
+                    {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        builder.append('"');
+    }
+}
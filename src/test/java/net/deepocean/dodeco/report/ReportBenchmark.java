@@ -0,0 +1,148 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import net.deepocean.dodeco.calculator.Processor;
+import net.deepocean.dodeco.calculator.ResultExporter;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+
+/**
+ *  This class compares the report throughput of the MessageFormat path
+ *  (Processor.printExposures()) with the exporters working on the
+ *  captured ExposureResults. The exposures are read from a file and
+ *  processed once; each report is then written to a writer that only
+ *  counts the characters. Before measuring, the text exporter output is
+ *  compared with printExposures().
+ *  Usage: ReportBenchmark file [repetitions]
+ */
+public class ReportBenchmark
+{
+    /**
+     *  Writer discarding its output, counting the characters
+     */
+    private static class CountingWriter extends Writer
+    {
+        long nCharacters;
+
+        public void write(char[] buffer, int iOffset, int iLength)
+        {
+            nCharacters+=iLength;
+        }
+
+        public void write(String s)
+        {
+            nCharacters+=s.length();
+        }
+
+        public void flush()
+        {
+        }
+
+        public void close()
+        {
+        }
+    }
+
+    /**
+     *  Returns the number of bytes allocated by the current thread, or -1
+     *  if the JVM does not support measuring it
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean;
+
+        bean=ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void report(String sName, long lNanos, long lAllocated, long nCharacters)
+    {
+        System.out.println(String.format("%-15s %8.1f ms  %8.1f MB/s  allocated %8.1f MB  (%d chars)",
+                                         sName, lNanos/1.0e6, nCharacters/1.048576/(lNanos/1.0e3),
+                                         lAllocated/1048576.0, nCharacters));
+    }
+
+    private static void measure(String sName, Processor processor, ResultExporter exporter,
+                                CountingWriter writer) throws Exception
+    {
+        long lStart;
+        long lAllocated;
+
+        lAllocated  =allocatedBytes();
+        lStart      =System.nanoTime();
+        processor.exportResults(exporter);
+        report(sName, System.nanoTime()-lStart, allocatedBytes()-lAllocated, writer.nCharacters);
+    }
+
+    /**
+     *  Usage: ReportBenchmark file [repetitions]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Processor       processor;
+        StringWriter    messageFormatOutput;
+        StringWriter    exporterOutput;
+        CountingWriter  writer;
+        long            lStart;
+        long            lAllocated;
+        int             nRepetitions;
+        int             i;
+
+        if (args.length<1)
+        {
+            System.err.println("Usage: ReportBenchmark file [repetitions]");
+            return;
+        }
+        nRepetitions=(args.length>1)?Integer.parseInt(args[1]):3;
+
+        processor=new Processor();
+        processor.setDecoAlgorithm(Processor.ALGORITHM_VPMB);
+        processor.loadExposures(new File(args[0]));
+        processor.process();
+        System.out.println(processor.getExposures().size()+" exposures");
+
+        messageFormatOutput =new StringWriter();
+        exporterOutput      =new StringWriter();
+        processor.printExposures(messageFormatOutput);
+        processor.exportResults(new TextResultExporter(exporterOutput));
+        System.out.println("Text output identical: "+
+                           messageFormatOutput.toString().equals(exporterOutput.toString()));
+        messageFormatOutput =null;
+        exporterOutput      =null;
+
+        for (i=0; i<nRepetitions; i++)
+        {
+            writer      =new CountingWriter();
+            lAllocated  =allocatedBytes();
+            lStart      =System.nanoTime();
+            processor.printExposures(writer);
+            report("MessageFormat", System.nanoTime()-lStart, allocatedBytes()-lAllocated, writer.nCharacters);
+
+            writer=new CountingWriter();
+            measure("text exporter", processor, new TextResultExporter(writer), writer);
+            writer=new CountingWriter();
+            measure("CSV exporter", processor, new CsvResultExporter(writer), writer);
+            writer=new CountingWriter();
+            measure("JSON exporter", processor, new JsonResultExporter(writer), writer);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.report;
+
+import net.deepocean.dodeco.calculator.ExposureResult;
+import net.deepocean.dodeco.calculator.ExposureResult.SegmentTable;
+import net.deepocean.dodeco.calculator.Length;
+import net.deepocean.dodeco.calculator.Parameters;
+import net.deepocean.dodeco.calculator.Pressure;
+import net.deepocean.dodeco.calculator.Text;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Vector;
+
+/**
+ *  This class writes the dive report of Dive.printExposure(): the gas
+ *  mixtures, the dive profile and the decompression profile of each dive.
+ *  The output is the same, but the MessageFormat patterns from Text are
+ *  compiled once into templates, so no arguments are boxed and no
+ *  formatters are created per row. Other exposures print nothing, as
+ *  they do in Processor.printExposures().
+ */
+public class TextResultExporter extends AbstractResultExporter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Templates
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  A compiled MessageFormat pattern, supporting the elements used in
+     *  Text: {n}, {n, number,pattern} and {n, date,pattern}. Arguments are
+     *  passed as a double array for numbers and a String array for the
+     *  others; dates are expected as preformatted strings.
+     */
+    private static class Template
+    {
+        private static final int    ARGUMENT_STRING =0;
+        private static final int    ARGUMENT_NUMBER =1;
+
+        /** Literal text preceding each argument, and the trailing text */
+        private String[]    literals;
+        private int[]       argumentIndices;
+        private int[]       argumentTypes;
+        private int[]       integerDigits;
+        private int[]       decimals;
+        private boolean[]   optionalDecimals;
+
+        Template(String sPattern)
+        {
+            Vector<String>  parts;
+            Vector<String>  elements;
+            String          sElement;
+            String          sFormat;
+            int             iStart;
+            int             iEnd;
+            int             iComma;
+            int             i;
+            int             j;
+
+            parts   =new Vector<String>();
+            elements=new Vector<String>();
+            iStart  =0;
+            iEnd    =sPattern.indexOf('{');
+            while (iEnd>=0)
+            {
+                parts.add(sPattern.substring(iStart, iEnd));
+                iStart=sPattern.indexOf('}', iEnd)+1;
+                elements.add(sPattern.substring(iEnd+1, iStart-1));
+                iEnd=sPattern.indexOf('{', iStart);
+            }
+            parts.add(sPattern.substring(iStart));
+
+            literals        =parts.toArray(new String[parts.size()]);
+            argumentIndices =new int[elements.size()];
+            argumentTypes   =new int[elements.size()];
+            integerDigits   =new int[elements.size()];
+            decimals        =new int[elements.size()];
+            optionalDecimals=new boolean[elements.size()];
+
+            for (i=0; i<elements.size(); i++)
+            {
+                sElement=elements.get(i);
+                iComma  =sElement.indexOf(',');
+                if (iComma<0)
+                {
+                    argumentIndices[i]=Integer.parseInt(sElement.trim());
+                    argumentTypes[i]=ARGUMENT_STRING;
+                    continue;
+                }
+                argumentIndices[i]=Integer.parseInt(sElement.substring(0, iComma).trim());
+                sFormat=sElement.substring(iComma+1);
+                iComma =sFormat.indexOf(',');
+                if (!sFormat.substring(0, iComma).trim().equals("number"))
+                {
+                    argumentTypes[i]=ARGUMENT_STRING;
+                    continue;
+                }
+                argumentTypes[i]=ARGUMENT_NUMBER;
+                sFormat=sFormat.substring(iComma+1);
+
+                // A prefix (a space in " 0.000") is added to the preceding literal
+                j=0;
+                while (j<sFormat.length() && "0#.".indexOf(sFormat.charAt(j))<0)
+                {
+                    j++;
+                }
+                literals[i]+=sFormat.substring(0, j);
+                for (; j<sFormat.length() && sFormat.charAt(j)!='.'; j++)
+                {
+                    if (sFormat.charAt(j)=='0')
+                    {
+                        integerDigits[i]++;
+                    }
+                }
+                for (j++; j<sFormat.length(); j++)
+                {
+                    decimals[i]++;
+                    optionalDecimals[i]=(sFormat.charAt(j)=='#');
+                }
+            }
+        }
+
+        void format(StringBuilder builder, double[] numbers, String[] strings)
+        {
+            int i;
+
+            for (i=0; i<argumentIndices.length; i++)
+            {
+                builder.append(literals[i]);
+                if (argumentTypes[i]==ARGUMENT_NUMBER)
+                {
+                    if (optionalDecimals[i])
+                    {
+                        FixedFormat.appendOptional(builder, numbers[argumentIndices[i]], decimals[i]);
+                    }
+                    else
+                    {
+                        FixedFormat.appendFixed(builder, numbers[argumentIndices[i]],
+                                                Math.max(integerDigits[i], 1), decimals[i]);
+                    }
+                }
+                else
+                {
+                    builder.append(strings[argumentIndices[i]]);
+                }
+            }
+            builder.append(literals[literals.length-1]);
+        }
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private static final Template   PROGRAM_RUN     =new Template(Text.sReport03);
+    private static final Template   DESCRIPTION     =new Template(Text.sReport04);
+    private static final Template   DIVE_VARYING    =new Template(Text.sReport10);
+    private static final Template   DIVE_CONSTANT   =new Template(Text.sReport13);
+    private static final Template   DECO_ZONE       =new Template(Text.sReport15);
+    private static final Template   DEEPEST_STOP    =new Template(Text.sReport16);
+    private static final Template   DECO_UNITS      =new Template(Text.sReport19);
+    private static final Template   DECO_VARYING    =new Template(Text.sReport21);
+    private static final Template   DECO_CONSTANT   =new Template(Text.sReport22);
+    private static final Template   GAS_MIXTURE     =new Template(Text.sReport24);
+
+    private double[]                numbers;
+    private String[]                strings;
+
+    private SimpleDateFormat        dateFormat;
+    private SimpleDateFormat        timeFormat;
+    private long                    lDateMinute;
+    private String                  sDate;
+    private String                  sTime;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param writer The writer to write the report to
+     */
+    public TextResultExporter(Writer writer)
+    {
+        super(writer);
+        numbers     =new double[8];
+        strings     =new String[8];
+        dateFormat  =new SimpleDateFormat("dd-MM-yyyy");
+        timeFormat  =new SimpleDateFormat("hh:mm aa");
+        lDateMinute =-1;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Export
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the report of a dive
+     *  @param result The result
+     *  @exception IOException
+     */
+    public void exportResult(ExposureResult result) throws IOException
+    {
+        if (!result.isDive())
+        {
+            return;
+        }
+
+        builder.append(Text.sReport00);
+        builder.append(Text.sReport01a);
+        builder.append(Text.sReport01b);
+        builder.append(Text.sReport01c);
+        builder.append(Text.sReport02);
+
+        updateDate();
+        strings[0]=sDate;
+        strings[1]=sTime;
+        strings[2]=result.getAlgorithmDescription();
+        PROGRAM_RUN.format(builder, numbers, strings);
+        strings[0]=result.getDescription();
+        DESCRIPTION.format(builder, numbers, strings);
+
+        exportGasMixtures(result);
+        exportDiveTable(result.getDiveTable());
+        exportDecoTable(result);
+        writeBuilder();
+    }
+
+    /**
+     *  The date and time are formatted once per minute
+     */
+    private void updateDate()
+    {
+        long    lMillis;
+        Date    date;
+
+        lMillis=System.currentTimeMillis();
+        if (lMillis/60000!=lDateMinute)
+        {
+            lDateMinute =lMillis/60000;
+            date        =new Date(lMillis);
+            sDate       =dateFormat.format(date);
+            sTime       =timeFormat.format(date);
+        }
+    }
+
+    private void exportGasMixtures(ExposureResult result)
+    {
+        int i;
+
+        builder.append(Text.sReport23);
+        for (i=0; i<result.getNumberOfGasMixtures(); i++)
+        {
+            numbers[0]=result.getGasMixtureIndex(i);
+            numbers[1]=result.getO2Fraction(i);
+            numbers[2]=result.getHe2Fraction(i);
+            numbers[3]=result.getN2Fraction(i);
+            GAS_MIXTURE.format(builder, numbers, strings);
+        }
+        builder.append('\n');
+    }
+
+    private void exportDiveTable(SegmentTable table)
+    {
+        int iUnits;
+        int i;
+
+        iUnits=lengthUnits();
+
+        builder.append(Text.sReport05);
+        builder.append(Text.sReport06);
+        builder.append(Text.sReport07);
+        if (Parameters.iPresentationPressureUnits==Pressure.UNITS_FSW)
+        {
+            builder.append(Text.sReport08a);
+        }
+        else
+        {
+            builder.append(Text.sReport08b);
+        }
+        builder.append(Text.sReport09);
+
+        for (i=0; i<table.size(); i++)
+        {
+            numbers[0]=table.getSegmentNumber(i);
+            numbers[1]=table.getPeriod(i);
+            numbers[2]=table.getRunTime(i);
+            numbers[3]=table.getGasIndex(i);
+            if (table.getType(i)==ExposureResult.SEGMENT_CONSTANT_DEPTH)
+            {
+                numbers[4]=Length.convertFromMeter(table.getStartDepth(i), iUnits);
+                DIVE_CONSTANT.format(builder, numbers, strings);
+            }
+            else
+            {
+                strings[4]=(table.getType(i)==ExposureResult.SEGMENT_ASCENT)?Text.sReport11:Text.sReport12;
+                numbers[5]=Length.convertFromMeter(table.getStartDepth(i), iUnits);
+                numbers[6]=Length.convertFromMeter(table.getEndDepth(i), iUnits);
+                numbers[7]=Length.convertFromMeter(table.getDepthChangeRate(i), iUnits);
+                DIVE_VARYING.format(builder, numbers, strings);
+            }
+        }
+        builder.append('\n');
+    }
+
+    private void exportDecoTable(ExposureResult result)
+    {
+        SegmentTable    table;
+        int             iUnits;
+        int             i;
+
+        iUnits=lengthUnits();
+        table =result.getDecoTable();
+
+        builder.append(Text.sReport14);
+
+        strings[1]=(iUnits==Length.UNITS_FEET)?Text.sReport50a:Text.sReport50b;
+        numbers[0]=Length.convertFromMeter(result.getStartOfDecoZoneDepth(), iUnits);
+        DECO_ZONE.format(builder, numbers, strings);
+        numbers[0]=Length.convertFromMeter(result.getDeepestDecoStopDepth(), iUnits);
+        DEEPEST_STOP.format(builder, numbers, strings);
+
+        builder.append(Text.sReport17);
+        builder.append(Text.sReport18);
+        strings[0]=(iUnits==Length.UNITS_FEET)?Text.sReport50a:Text.sReport50b;
+        strings[1]=(iUnits==Length.UNITS_FEET)?Text.sReport51a:Text.sReport51b;
+        DECO_UNITS.format(builder, numbers, strings);
+        builder.append(Text.sReport20);
+
+        for (i=0; i<table.size(); i++)
+        {
+            numbers[0]=table.getSegmentNumber(i);
+            numbers[1]=table.getPeriod(i);
+            numbers[2]=table.getRunTime(i);
+            numbers[3]=table.getGasIndex(i);
+            if (table.getType(i)==ExposureResult.SEGMENT_CONSTANT_DEPTH)
+            {
+                numbers[4]=Length.convertFromMeter(table.getStartDepth(i), iUnits);
+                numbers[5]=table.getStopTime(i);
+                numbers[6]=table.getRunTime(i);
+                DECO_CONSTANT.format(builder, numbers, strings);
+            }
+            else
+            {
+                numbers[4]=Length.convertFromMeter(table.getEndDepth(i), iUnits);
+                numbers[5]=Length.convertFromMeter(table.getDepthChangeRate(i), iUnits);
+                DECO_VARYING.format(builder, numbers, strings);
+            }
+        }
+        builder.append('\n');
+    }
+
+    /**
+     *  Returns the length units matching the presentation pressure units,
+     *  like the segments use when printing
+     */
+    private static int lengthUnits()
+    {
+        if (Parameters.iPresentationPressureUnits==Pressure.UNITS_FSW)
+        {
+            return Length.UNITS_FEET;
+        }
+        return Length.UNITS_METER;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  This class records latencies in a fixed set of logarithmic buckets.
+ *  Each power of two (in microseconds) is split in SUB_BUCKETS linear
+ *  buckets, which gives a relative error below 1/SUB_BUCKETS for the
+ *  percentiles. Recording is lock free and does not allocate, so the
+ *  histogram can be updated from many threads.
+ */
+public class LatencyHistogram
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    private static final int    SUB_BUCKET_BITS =3;
+    private static final int    SUB_BUCKETS     =1<<SUB_BUCKET_BITS;
+    /** Up to 2^40 microseconds, which is about 12 days */
+    private static final int    MAX_EXPONENT    =40;
+    private static final int    NUMBER_OF_BUCKETS=(MAX_EXPONENT+1)*SUB_BUCKETS;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private AtomicLongArray     counts;
+    private AtomicLong          totalCount;
+    private AtomicLong          totalMicros;
+    private AtomicLong          maxMicros;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction and reinitialising
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        counts      =new AtomicLongArray(NUMBER_OF_BUCKETS);
+        totalCount  =new AtomicLong();
+        totalMicros =new AtomicLong();
+        maxMicros   =new AtomicLong();
+    }
+
+    /**
+     *  Empties the histogram
+     */
+    public void reset()
+    {
+        int i;
+
+        for (i=0; i<counts.length(); i++)
+        {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Recording
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Records a latency
+     *  @param lNanos The latency in nanoseconds
+     */
+    public void record(long lNanos)
+    {
+        long lMicros;
+        long lMax;
+
+        lMicros=Math.max(0, lNanos/1000);
+        counts.incrementAndGet(bucketIndex(lMicros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(lMicros);
+
+        lMax=maxMicros.get();
+        while (lMicros>lMax && !maxMicros.compareAndSet(lMax, lMicros))
+        {
+            lMax=maxMicros.get();
+        }
+    }
+
+    /**
+     *  Returns the bucket for a value. Values below SUB_BUCKETS have
+     *  their own bucket; above, the bucket is determined by the exponent
+     *  and the SUB_BUCKET_BITS bits following the highest bit.
+     *  @param lMicros The value
+     *  @return The bucket index
+     */
+    private static int bucketIndex(long lMicros)
+    {
+        int iExponent;
+        int iSub;
+
+        if (lMicros<SUB_BUCKETS)
+        {
+            return (int)lMicros;
+        }
+        iExponent=63-Long.numberOfLeadingZeros(lMicros);
+        if (iExponent>MAX_EXPONENT)
+        {
+            return NUMBER_OF_BUCKETS-1;
+        }
+        iSub=(int)((lMicros>>(iExponent-SUB_BUCKET_BITS))&(SUB_BUCKETS-1));
+        return (iExponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS+iSub;
+    }
+
+    /**
+     *  Returns the highest value that falls in the bucket
+     *  @param iIndex The bucket index
+     *  @return The value in microseconds
+     */
+    private static long bucketUpperBound(int iIndex)
+    {
+        int iExponent;
+        int iSub;
+
+        if (iIndex<SUB_BUCKETS)
+        {
+            return iIndex;
+        }
+        iExponent=iIndex/SUB_BUCKETS+SUB_BUCKET_BITS-1;
+        iSub=iIndex%SUB_BUCKETS;
+        return ((long)(SUB_BUCKETS+iSub+1)<<(iExponent-SUB_BUCKET_BITS))-1;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the number of recorded values
+     *  @return The count
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     *  Returns the mean latency
+     *  @return The mean in microseconds, 0 if nothing was recorded
+     */
+    public double getMeanMicros()
+    {
+        long lCount;
+
+        lCount=totalCount.get();
+        if (lCount==0)
+        {
+            return 0.0;
+        }
+        return (double)totalMicros.get()/lCount;
+    }
+
+    public long getMaxMicros()
+    {
+        return maxMicros.get();
+    }
+
+    /**
+     *  Returns the latency below which the given fraction of the recorded
+     *  values lies. The value returned is the upper bound of the bucket.
+     *  @param fPercentile The percentile, 0.0 - 100.0
+     *  @return The latency in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double fPercentile)
+    {
+        long lCount;
+        long lThreshold;
+        long lSum;
+        int  i;
+
+        lCount=totalCount.get();
+        if (lCount==0)
+        {
+            return 0;
+        }
+        lThreshold=Math.max(1, (long)Math.ceil(lCount*fPercentile/100.0));
+        lSum=0;
+        for (i=0; i<counts.length(); i++)
+        {
+            lSum+=counts.get(i);
+            if (lSum>=lThreshold)
+            {
+                return Math.min(bucketUpperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     *  Returns a JSON object with the count, mean, p50, p90, p99, p99.9
+     *  and max latency in microseconds
+     *  @return The JSON text
+     */
+    public String toJson()
+    {
+        return "{\"count\":"+getCount()+
+               ",\"meanMicros\":"+Math.round(getMeanMicros())+
+               ",\"p50Micros\":"+getPercentileMicros(50.0)+
+               ",\"p90Micros\":"+getPercentileMicros(90.0)+
+               ",\"p99Micros\":"+getPercentileMicros(99.0)+
+               ",\"p999Micros\":"+getPercentileMicros(99.9)+
+               ",\"maxMicros\":"+getMaxMicros()+"}";
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  This class is a simple load test client for the PlanningServer. It
+ *  posts the contents of a file a number of times from a number of
+ *  concurrent threads and reports throughput and latency percentiles.
+ *  To measure with or without request coalescing, the requests can be
+ *  spread over a number of variants: requests of different variants
+ *  differ in trailing white space, so they are never coalesced.
+ *  Usage:
+ *  <pre>
+ *  PlanningLoadTest url file [concurrency [requests [variants]]]
+ *  PlanningLoadTest http://localhost:8090/plan?algorithm=zhl16b-gf dive.xml 16 2000 2000
+ *  </pre>
+ */
+public class PlanningLoadTest
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private URL                 url;
+    private byte[]              body;
+    private int                 nVariants;
+
+    private LatencyHistogram    latency;
+    private AtomicLong          okCount;
+    private AtomicLong          busyCount;
+    private AtomicLong          errorCount;
+    private AtomicLong          coalescedCount;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param url The URL to post to
+     *  @param body The request body
+     *  @param nVariants Number of different request variants
+     */
+    public PlanningLoadTest(URL url, byte[] body, int nVariants)
+    {
+        this.url        =url;
+        this.body       =body;
+        this.nVariants  =Math.max(1, nVariants);
+
+        latency         =new LatencyHistogram();
+        okCount         =new AtomicLong();
+        busyCount       =new AtomicLong();
+        errorCount      =new AtomicLong();
+        coalescedCount  =new AtomicLong();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Running
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Runs the test and prints the results to System.out
+     *  @param nConcurrency Number of concurrent clients
+     *  @param nRequests Total number of requests
+     */
+    public void run(int nConcurrency, final int nRequests) throws InterruptedException
+    {
+        ExecutorService         clients;
+        final AtomicInteger     nextRequest;
+        long                    lStart;
+        double                  fSeconds;
+        int                     i;
+
+        clients     =Executors.newFixedThreadPool(nConcurrency);
+        nextRequest =new AtomicInteger();
+        lStart      =System.nanoTime();
+
+        for (i=0; i<nConcurrency; i++)
+        {
+            clients.execute(new Runnable()
+            {
+                public void run()
+                {
+                    int iRequest;
+
+                    iRequest=nextRequest.getAndIncrement();
+                    while (iRequest<nRequests)
+                    {
+                        post(iRequest%nVariants);
+                        iRequest=nextRequest.getAndIncrement();
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.DAYS);
+
+        fSeconds=(System.nanoTime()-lStart)/1.0e9;
+
+        System.out.println("Requests    : "+nRequests+" ("+nConcurrency+" concurrent, "+nVariants+" variants)");
+        System.out.println("OK          : "+okCount.get()+" (coalesced "+coalescedCount.get()+")");
+        System.out.println("Busy (503)  : "+busyCount.get());
+        System.out.println("Errors      : "+errorCount.get());
+        System.out.println("Throughput  : "+Math.round(nRequests/fSeconds)+" requests/s");
+        System.out.println("Latency (us): mean "+Math.round(latency.getMeanMicros())+
+                           ", p50 "+latency.getPercentileMicros(50.0)+
+                           ", p90 "+latency.getPercentileMicros(90.0)+
+                           ", p99 "+latency.getPercentileMicros(99.0)+
+                           ", max "+latency.getMaxMicros());
+    }
+
+    /**
+     *  Posts one request and records the result
+     *  @param iVariant The variant of the request
+     */
+    private void post(int iVariant)
+    {
+        HttpURLConnection   connection;
+        OutputStream        out;
+        InputStream         in;
+        byte[]              buffer;
+        long                lStart;
+        int                 iStatus;
+        int                 i;
+
+        lStart=System.nanoTime();
+        try
+        {
+            connection=(HttpURLConnection)url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            out=connection.getOutputStream();
+            out.write(body);
+            for (i=0; i<iVariant; i++)
+            {
+                out.write(' ');
+            }
+            out.close();
+
+            iStatus=connection.getResponseCode();
+            in=(iStatus<400)?connection.getInputStream():connection.getErrorStream();
+            if (in!=null)
+            {
+                buffer=new byte[8192];
+                while (in.read(buffer)>0)
+                {
+                }
+                in.close();
+            }
+
+            if (iStatus==200)
+            {
+                okCount.incrementAndGet();
+                if (connection.getHeaderField("X-Coalesced")!=null)
+                {
+                    coalescedCount.incrementAndGet();
+                }
+            }
+            else if (iStatus==503)
+            {
+                busyCount.incrementAndGet();
+            }
+            else
+            {
+                errorCount.incrementAndGet();
+            }
+        }
+        catch (IOException e)
+        {
+            errorCount.incrementAndGet();
+        }
+        latency.record(System.nanoTime()-lStart);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    private static byte[] readFile(File file) throws IOException
+    {
+        FileInputStream         in;
+        ByteArrayOutputStream   out;
+        byte[]                  buffer;
+        int                     iRead;
+
+        in=new FileInputStream(file);
+        out=new ByteArrayOutputStream();
+        buffer=new byte[8192];
+        try
+        {
+            while ((iRead=in.read(buffer))>0)
+            {
+                out.write(buffer, 0, iRead);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     *  Usage: PlanningLoadTest url file [concurrency [requests [variants]]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        PlanningLoadTest    test;
+        int                 nConcurrency;
+        int                 nRequests;
+        int                 nVariants;
+
+        if (args.length<2)
+        {
+            System.err.println("Usage: PlanningLoadTest url file [concurrency [requests [variants]]]");
+            return;
+        }
+        nConcurrency=(args.length>2)?Integer.parseInt(args[2]):8;
+        nRequests   =(args.length>3)?Integer.parseInt(args[3]):1000;
+        nVariants   =(args.length>4)?Integer.parseInt(args[4]):1;
+
+        test=new PlanningLoadTest(new URL(args[0]), readFile(new File(args[1])), nVariants);
+        test.run(nConcurrency, nRequests);
+    }
+}
@@ -0,0 +1,577 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.deepocean.dodeco.calculator.CalculationException;
+import net.deepocean.dodeco.calculator.DominanceCache;
+import net.deepocean.dodeco.calculator.IllegalActionException;
+import net.deepocean.dodeco.calculator.PlanningSession;
+import net.deepocean.dodeco.calculator.Processor;
+import net.deepocean.dodeco.calculator.ScheduleCache;
+import net.deepocean.dodeco.tools.JsonToMyXML;
+import net.deepocean.dodeco.tools.MyXML;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  This class is a small HTTP server that calculates exposure sequences.
+ *  It uses the HttpServer of the JDK, so no additional libraries are
+ *  needed.
+ *  <ul>
+ *  <li>POST /plan?algorithm=vpmb with an ExposureList as XML (the format of
+ *      Processor.saveExposures()) or as JSON (see JsonToMyXML) returns the
+ *      text report of the exposures. With mode=conservative the schedule
+ *      of a deeper or longer dive may be returned for the plain ZHL-16
+ *      algorithms (see DominanceCache); the response then has the header
+ *      X-Conservative-Reuse.</li>
+ *  <li>GET /stats returns counters and latency histograms as JSON</li>
+ *  </ul>
+ *  The calculations run on a bounded pool of worker threads, each worker
+ *  having its own PlanningSession. If the pool and its queue are full,
+ *  503 is returned. Identical requests (same body and algorithm) that
+ *  arrive while the calculation is in progress are not calculated again:
+ *  they wait for and share the result of the first request.
+ *  Optionally a ScheduleCache is used, so schedules calculated before a
+ *  restart do not have to be calculated again.
+ */
+public class PlanningServer
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int     DEFAULT_PORT        =8090;
+    public static final int     DEFAULT_QUEUE_SIZE  =64;
+    /** Maximum time a request waits for its result, in seconds */
+    public static final int     REQUEST_TIMEOUT     =60;
+
+    private static final Charset UTF8=Charset.forName("UTF-8");
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private HttpServer                                          server;
+    private ThreadPoolExecutor                                  workers;
+    private ExecutorService                                     handlers;
+
+    /** Calculations in progress, by request key */
+    private ConcurrentHashMap<String, PlanTask>                 inFlight;
+    private ScheduleCache                                       scheduleCache;
+    private DominanceCache                                      dominanceCache;
+
+    private LatencyHistogram                                    requestLatency;
+    private LatencyHistogram                                    computeLatency;
+    private AtomicLong                                          requests;
+    private AtomicLong                                          computations;
+    private AtomicLong                                          coalesced;
+    private AtomicLong                                          rejected;
+    private AtomicLong                                          failed;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction, starting and stopping
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Creates the server; it is started by start().
+     *  @param iPort The port to listen on (localhost only)
+     *  @param nWorkers Number of calculation threads
+     *  @param iQueueSize Number of calculations that may wait for a worker
+     *  @exception IOException if the port cannot be bound
+     */
+    public PlanningServer(int iPort, int nWorkers, int iQueueSize) throws IOException
+    {
+        server          =HttpServer.create(new InetSocketAddress("localhost", iPort), 0);
+        workers         =new ThreadPoolExecutor(nWorkers, nWorkers, 0L, TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<Runnable>(iQueueSize),
+                                                new ThreadPoolExecutor.AbortPolicy());
+        // Handlers mostly wait for results; enough of them to fill the workers and queue
+        handlers        =Executors.newFixedThreadPool(nWorkers+iQueueSize+1);
+
+        inFlight        =new ConcurrentHashMap<String, PlanTask>();
+        requestLatency  =new LatencyHistogram();
+        computeLatency  =new LatencyHistogram();
+        requests        =new AtomicLong();
+        computations    =new AtomicLong();
+        coalesced       =new AtomicLong();
+        rejected        =new AtomicLong();
+        failed          =new AtomicLong();
+
+        server.createContext("/plan" , new PlanHandler());
+        server.createContext("/stats", new StatsHandler());
+        server.setExecutor(handlers);
+    }
+
+    /**
+     *  Sets the schedule cache the calculations use. The cache is not
+     *  closed by stop().
+     *  @param scheduleCache The cache or null for no caching
+     */
+    public void setScheduleCache(ScheduleCache scheduleCache)
+    {
+        this.scheduleCache=scheduleCache;
+    }
+
+    /**
+     *  Sets the dominance cache used for requests in the conservative mode.
+     *  All calculated dives are added to it.
+     *  @param dominanceCache The cache or null for no conservative reuse
+     */
+    public void setDominanceCache(DominanceCache dominanceCache)
+    {
+        this.dominanceCache=dominanceCache;
+    }
+
+    /**
+     *  Starts the server
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     *  Stops the server and the worker threads
+     *  @param iDelay Maximum time in seconds to wait for running exchanges
+     */
+    public void stop(int iDelay)
+    {
+        server.stop(iDelay);
+        workers.shutdown();
+        handlers.shutdown();
+    }
+
+    /**
+     *  Returns the port the server listens on
+     *  @return The port
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Calculation
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  The result of a calculation: HTTP status and response text
+     */
+    private static class PlanResult
+    {
+        int     iStatus;
+        byte[]  response;
+        /** Schedule of a dominating dive */
+        boolean bApproximate;
+
+        PlanResult(int iStatus, String sResponse)
+        {
+            this.iStatus    =iStatus;
+            this.response   =sResponse.getBytes(UTF8);
+        }
+    }
+
+    /**
+     *  A calculation that removes itself from the in flight map when done
+     */
+    private class PlanTask extends FutureTask<PlanResult>
+    {
+        private String sKey;
+
+        PlanTask(String sKey, Callable<PlanResult> callable)
+        {
+            super(callable);
+            this.sKey=sKey;
+        }
+
+        /**
+         *  Completes the task without calculation, e.g. when the worker
+         *  pool rejected it; requests that joined get the same result.
+         *  @param result The result
+         */
+        void complete(PlanResult result)
+        {
+            set(result);
+        }
+
+        protected void done()
+        {
+            inFlight.remove(sKey, this);
+        }
+    }
+
+    /**
+     *  This method calculates the exposure sequence in the request.
+     *  Runs on a worker thread.
+     *  @param sBody The request body: XML or JSON
+     *  @param iAlgorithm The decompression algorithm
+     *  @param bConservative True to allow conservative reuse
+     *  @return The result
+     */
+    private PlanResult plan(String sBody, int iAlgorithm, boolean bConservative)
+    {
+        PlanningSession session;
+        MyXML           root;
+        StringWriter    writer;
+        PlanResult      result;
+        long            lStart;
+
+        lStart=System.nanoTime();
+        computations.incrementAndGet();
+        try
+        {
+            if (sBody.trim().startsWith("{"))
+            {
+                root=JsonToMyXML.convert(new StringReader(sBody));
+            }
+            else
+            {
+                root=new MyXML(new BufferedReader(new StringReader(sBody)));
+            }
+
+            session=PlanningSession.forCurrentThread();
+            session.newSequence();
+            session.setDecoAlgorithm(iAlgorithm);
+            session.setScheduleCache(scheduleCache);
+            session.setDominanceCache(dominanceCache);
+            session.setConservativeReuse(bConservative);
+            session.loadExposures(root);
+            session.process();
+
+            writer=new StringWriter();
+            session.printExposures(writer);
+
+            result=new PlanResult(200, writer.toString());
+            result.bApproximate=session.isResultApproximate();
+            return result;
+        }
+        catch (CalculationException e)
+        {
+            failed.incrementAndGet();
+            return new PlanResult(422, "Calculation error: "+e.getMessage()+"\n");
+        }
+        catch (IllegalActionException e)
+        {
+            failed.incrementAndGet();
+            return new PlanResult(400, "Invalid exposures: "+e.getMessage()+"\n");
+        }
+        catch (Exception e)
+        {
+            // MyXML parse errors and anything unexpected in the input
+            failed.incrementAndGet();
+            return new PlanResult(400, "Invalid request: "+e+"\n");
+        }
+        finally
+        {
+            computeLatency.record(System.nanoTime()-lStart);
+        }
+    }
+
+    /**
+     *  Translates the algorithm name in the query to the Processor constant
+     *  @param sName Algorithm name, null for the default
+     *  @return The algorithm or -1 if not known
+     */
+    private static int parseAlgorithm(String sName)
+    {
+        if (sName==null || sName.equals("vpm"))
+        {
+            return Processor.ALGORITHM_VPM;
+        }
+        else if (sName.equals("vpmb"))
+        {
+            return Processor.ALGORITHM_VPMB;
+        }
+        else if (sName.equals("zhl16a"))
+        {
+            return Processor.ALGORITHM_BUHLMANNA;
+        }
+        else if (sName.equals("zhl16b"))
+        {
+            return Processor.ALGORITHM_BUHLMANNB;
+        }
+        else if (sName.equals("zhl16c"))
+        {
+            return Processor.ALGORITHM_BUHLMANNC;
+        }
+        else if (sName.equals("zhl16b-gf"))
+        {
+            return Processor.ALGORITHM_BUHLMANNBWITHGRADIENT;
+        }
+        return -1;
+    }
+
+    /**
+     *  Returns the value of a query parameter
+     *  @param sQuery The query string, may be null
+     *  @param sName Name of the parameter
+     *  @return The value or null if not present
+     */
+    private static String getQueryParameter(String sQuery, String sName)
+    {
+        String[]    parameters;
+        int         i;
+
+        if (sQuery==null)
+        {
+            return null;
+        }
+        parameters=sQuery.split("&");
+        for (i=0; i<parameters.length; i++)
+        {
+            if (parameters[i].startsWith(sName+"="))
+            {
+                return parameters[i].substring(sName.length()+1);
+            }
+        }
+        return null;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * HTTP handling
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Handles /plan
+     */
+    private class PlanHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            long        lStart;
+            final String sBody;
+            final int   iAlgorithm;
+            final boolean bConservative;
+            String      sKey;
+            PlanTask    task;
+            PlanTask    existingTask;
+            PlanResult  result;
+            boolean     bCoalesced;
+
+            lStart=System.nanoTime();
+            requests.incrementAndGet();
+            try
+            {
+                if (!exchange.getRequestMethod().equals("POST"))
+                {
+                    send(exchange, new PlanResult(405, "Use POST\n"), false);
+                    return;
+                }
+                iAlgorithm=parseAlgorithm(getQueryParameter(exchange.getRequestURI().getQuery(), "algorithm"));
+                if (iAlgorithm<0)
+                {
+                    send(exchange, new PlanResult(400, "Unknown algorithm\n"), false);
+                    return;
+                }
+                bConservative="conservative".equals(getQueryParameter(exchange.getRequestURI().getQuery(), "mode"));
+                sBody=readBody(exchange.getRequestBody());
+
+                // Join a calculation of an identical request, or start one
+                sKey=iAlgorithm+(bConservative?"c\n":"\n")+sBody;
+                task=new PlanTask(sKey, new Callable<PlanResult>()
+                {
+                    public PlanResult call()
+                    {
+                        return plan(sBody, iAlgorithm, bConservative);
+                    }
+                });
+                existingTask=inFlight.putIfAbsent(sKey, task);
+                if (existingTask==null)
+                {
+                    bCoalesced=false;
+                    try
+                    {
+                        workers.execute(task);
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        rejected.incrementAndGet();
+                        task.complete(new PlanResult(503, "Server busy\n"));
+                    }
+                }
+                else
+                {
+                    bCoalesced=true;
+                    coalesced.incrementAndGet();
+                    task=existingTask;
+                }
+
+                try
+                {
+                    result=task.get(REQUEST_TIMEOUT, TimeUnit.SECONDS);
+                }
+                catch (TimeoutException e)
+                {
+                    result=new PlanResult(504, "Calculation timed out\n");
+                }
+                catch (ExecutionException e)
+                {
+                    result=new PlanResult(500, "Internal error: "+e.getCause()+"\n");
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    result=new PlanResult(503, "Interrupted\n");
+                }
+                send(exchange, result, bCoalesced);
+            }
+            finally
+            {
+                exchange.close();
+                requestLatency.record(System.nanoTime()-lStart);
+            }
+        }
+    }
+
+    /**
+     *  Handles /stats
+     */
+    private class StatsHandler implements HttpHandler
+    {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            try
+            {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                send(exchange, new PlanResult(200, getStatistics()), false);
+            }
+            finally
+            {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     *  Returns the counters and latency histograms as JSON
+     *  @return The JSON text
+     */
+    public String getStatistics()
+    {
+        return "{\"requests\":"+requests.get()+
+               ",\"computations\":"+computations.get()+
+               ",\"coalesced\":"+coalesced.get()+
+               ",\"rejected\":"+rejected.get()+
+               ",\"failed\":"+failed.get()+
+               ",\"activeWorkers\":"+workers.getActiveCount()+
+               ",\"queued\":"+workers.getQueue().size()+
+               ",\"scheduleCache\":"+((scheduleCache!=null)?scheduleCache.toJson():"null")+
+               ",\"dominanceCache\":"+((dominanceCache!=null)?dominanceCache.toJson():"null")+
+               ",\"requestLatency\":"+requestLatency.toJson()+
+               ",\"computeLatency\":"+computeLatency.toJson()+"}\n";
+    }
+
+    private static String readBody(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream   out;
+        byte[]                  buffer;
+        int                     iRead;
+
+        out=new ByteArrayOutputStream();
+        buffer=new byte[8192];
+        while ((iRead=in.read(buffer))>0)
+        {
+            out.write(buffer, 0, iRead);
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    private static void send(HttpExchange exchange, PlanResult result, boolean bCoalesced) throws IOException
+    {
+        OutputStream out;
+
+        if (!exchange.getResponseHeaders().containsKey("Content-Type"))
+        {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        }
+        if (bCoalesced)
+        {
+            exchange.getResponseHeaders().set("X-Coalesced", "true");
+        }
+        if (result.bApproximate)
+        {
+            exchange.getResponseHeaders().set("X-Conservative-Reuse", "true");
+        }
+        exchange.sendResponseHeaders(result.iStatus, result.response.length);
+        out=exchange.getResponseBody();
+        out.write(result.response);
+        out.flush();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Main
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Starts the server.
+     *  Usage: PlanningServer [port [workers [queueSize [cacheDirectory]]]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int                 iPort;
+        int                 nWorkers;
+        int                 iQueueSize;
+        PlanningServer      planningServer;
+        final ScheduleCache cache;
+
+        iPort       =(args.length>0)?Integer.parseInt(args[0]):DEFAULT_PORT;
+        nWorkers    =(args.length>1)?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+        iQueueSize  =(args.length>2)?Integer.parseInt(args[2]):DEFAULT_QUEUE_SIZE;
+
+        planningServer=new PlanningServer(iPort, nWorkers, iQueueSize);
+        planningServer.setDominanceCache(new DominanceCache());
+        if (args.length>3)
+        {
+            cache=new ScheduleCache(new File(args[3]));
+            planningServer.setScheduleCache(cache);
+            Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        cache.close();
+                    }
+                    catch (IOException e)
+                    {
+                        System.err.println(e.getMessage());
+                    }
+                }
+            });
+            System.out.println("Schedule cache "+args[3]+": "+cache.getNumberOfEntries()+
+                               " schedules, opened in "+cache.getOpenTime()/1000000+" ms");
+        }
+        planningServer.start();
+        System.out.println("Planning server on http://localhost:"+planningServer.getPort()+
+                           "/plan, "+nWorkers+" workers, queue "+iQueueSize);
+    }
+}
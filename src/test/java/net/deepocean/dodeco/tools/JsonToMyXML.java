@@ -0,0 +1,362 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.tools;
+
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ *  This class converts a JSON document to a MyXML tree, so that JSON
+ *  input can be processed by the same code that reads the XML files.
+ *  The mapping is:
+ *  <ul>
+ *  <li>an object member "name":value becomes a child element &lt;name&gt;</li>
+ *  <li>a string, number or boolean becomes the value of the element,
+ *      the number is taken literally as it appears in the document</li>
+ *  <li>null or an empty object becomes an empty element</li>
+ *  <li>an array of objects adds the members of each object, in order,
+ *      as children of the element. This is the way to define an ordered
+ *      list of differently named elements, like the exposures or the
+ *      dive segments</li>
+ *  <li>an array of values adds one element per value, all with the
+ *      name of the member</li>
+ *  </ul>
+ *  The document must be an object with a single member, which becomes
+ *  the root element. Example:
+ *  <pre>
+ *  {"ExposureList": [
+ *      {"Saturation": {"SaturationHeight": {"Length": {"Units": "Meter", "LengthValue": 0}},
+ *                      "GasMixture": {"Name": "Air", "OxygenPercentage": 21, ...}}},
+ *      {"Dive": {...}}
+ *  ]}
+ *  </pre>
+ */
+public class JsonToMyXML
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private Reader          reader;
+    private int             iNextChar;
+    private int             iPosition;
+    private StringBuilder   buffer;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor
+     *  @param reader The reader supplying the JSON document
+     */
+    private JsonToMyXML(Reader reader)
+    {
+        this.reader =reader;
+        iPosition   =0;
+        buffer      =new StringBuilder();
+    }
+
+    /**
+     *  This method reads the JSON document and converts it to MyXML
+     *  @param reader The reader supplying the JSON document
+     *  @return The root element
+     *  @exception MyXMLException if the document is not valid JSON or
+     *             cannot be mapped to XML
+     *  @exception IOException
+     */
+    public static MyXML convert(Reader reader) throws MyXMLException, IOException
+    {
+        JsonToMyXML converter;
+        MyXML       holder;
+        MyXML       root;
+
+        converter=new JsonToMyXML(reader);
+        converter.read();
+
+        // Parse into a holder element; the single member becomes the root
+        holder=new MyXML("holder");
+        converter.skipWhiteSpace();
+        converter.expect('{');
+        converter.parseMembers(holder);
+        converter.skipWhiteSpace();
+        if (converter.iNextChar!=-1)
+        {
+            throw converter.error("Unexpected data after document");
+        }
+        if (holder.size()!=1)
+        {
+            throw new MyXMLException("JSON document should contain exactly one root member");
+        }
+        root=holder.getElement(0);
+
+        return root;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Parsing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Parses the members of an object, the opening brace has been read.
+     *  Each member is added to the parent.
+     *  @param parent The element to add the members to
+     */
+    private void parseMembers(MyXML parent) throws MyXMLException, IOException
+    {
+        String sName;
+
+        skipWhiteSpace();
+        if (iNextChar=='}')
+        {
+            read();
+            return;
+        }
+        while (true)
+        {
+            skipWhiteSpace();
+            sName=parseString();
+            skipWhiteSpace();
+            expect(':');
+            parseValue(parent, sName);
+            skipWhiteSpace();
+            if (iNextChar==',')
+            {
+                read();
+            }
+            else
+            {
+                expect('}');
+                return;
+            }
+        }
+    }
+
+    /**
+     *  Parses a value and adds it to the parent as element with given name
+     *  @param parent The parent element
+     *  @param sName Name of the element
+     */
+    private void parseValue(MyXML parent, String sName) throws MyXMLException, IOException
+    {
+        MyXML element;
+
+        skipWhiteSpace();
+        switch (iNextChar)
+        {
+            case '{':
+                read();
+                element=parent.addElement(sName);
+                parseMembers(element);
+                break;
+            case '[':
+                read();
+                parseArray(parent, sName);
+                break;
+            case '"':
+                parent.addElement(sName, parseString());
+                break;
+            default:
+                parseLiteral(parent, sName);
+                break;
+        }
+    }
+
+    /**
+     *  Parses an array, the opening bracket has been read.
+     *  @param parent The parent element
+     *  @param sName Name of the member holding the array
+     */
+    private void parseArray(MyXML parent, String sName) throws MyXMLException, IOException
+    {
+        MyXML element;
+
+        element=null;
+        skipWhiteSpace();
+        if (iNextChar==']')
+        {
+            read();
+            parent.addElement(sName);
+            return;
+        }
+        while (true)
+        {
+            skipWhiteSpace();
+            if (iNextChar=='{')
+            {
+                // Array of objects: the members become children of one element
+                read();
+                if (element==null)
+                {
+                    element=parent.addElement(sName);
+                }
+                parseMembers(element);
+            }
+            else if (iNextChar=='[')
+            {
+                throw error("Nested arrays are not supported");
+            }
+            else
+            {
+                parseValue(parent, sName);
+            }
+            skipWhiteSpace();
+            if (iNextChar==',')
+            {
+                read();
+            }
+            else
+            {
+                expect(']');
+                return;
+            }
+        }
+    }
+
+    /**
+     *  Parses a number, true, false or null
+     *  @param parent The parent element
+     *  @param sName Name of the element
+     */
+    private void parseLiteral(MyXML parent, String sName) throws MyXMLException, IOException
+    {
+        String sLiteral;
+
+        buffer.setLength(0);
+        while (iNextChar!=-1 && (Character.isLetterOrDigit(iNextChar) ||
+               iNextChar=='-' || iNextChar=='+' || iNextChar=='.'))
+        {
+            buffer.append((char)iNextChar);
+            read();
+        }
+        sLiteral=buffer.toString();
+
+        if (sLiteral.equals("null"))
+        {
+            parent.addElement(sName);
+        }
+        else if (sLiteral.equals("true") || sLiteral.equals("false"))
+        {
+            parent.addElement(sName, sLiteral);
+        }
+        else
+        {
+            try
+            {
+                Double.parseDouble(sLiteral);
+            }
+            catch (NumberFormatException e)
+            {
+                throw error("Invalid value '"+sLiteral+"'");
+            }
+            parent.addElement(sName, sLiteral);
+        }
+    }
+
+    /**
+     *  Parses a string
+     *  @return The string, unescaped
+     */
+    private String parseString() throws MyXMLException, IOException
+    {
+        int iHex;
+        int i;
+
+        expect('"');
+        buffer.setLength(0);
+        while (iNextChar!='"')
+        {
+            if (iNextChar==-1)
+            {
+                throw error("Unterminated string");
+            }
+            if (iNextChar=='\\')
+            {
+                read();
+                switch (iNextChar)
+                {
+                    case 'n':
+                        buffer.append('\n');
+                        break;
+                    case 't':
+                        buffer.append('\t');
+                        break;
+                    case 'r':
+                        buffer.append('\r');
+                        break;
+                    case 'b':
+                        buffer.append('\b');
+                        break;
+                    case 'f':
+                        buffer.append('\f');
+                        break;
+                    case 'u':
+                        iHex=0;
+                        for (i=0; i<4; i++)
+                        {
+                            read();
+                            if (Character.digit(iNextChar, 16)<0)
+                            {
+                                throw error("Invalid unicode escape");
+                            }
+                            iHex=iHex*16+Character.digit(iNextChar, 16);
+                        }
+                        buffer.append((char)iHex);
+                        break;
+                    case -1:
+                        throw error("Unterminated string");
+                    default:
+                        buffer.append((char)iNextChar);
+                        break;
+                }
+            }
+            else
+            {
+                buffer.append((char)iNextChar);
+            }
+            read();
+        }
+        read();
+        return buffer.toString();
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Reading
+    \*------------------------------------------------------------------------------------------------*/
+    private void read() throws IOException
+    {
+        iNextChar=reader.read();
+        iPosition++;
+    }
+
+    private void skipWhiteSpace() throws IOException
+    {
+        while (iNextChar==' ' || iNextChar=='\t' || iNextChar=='\n' || iNextChar=='\r')
+        {
+            read();
+        }
+    }
+
+    private void expect(char cExpected) throws MyXMLException, IOException
+    {
+        if (iNextChar!=cExpected)
+        {
+            throw error("'"+cExpected+"' expected");
+        }
+        read();
+    }
+
+    private MyXMLException error(String sMessage)
+    {
+        return new MyXMLException("JSON error at position "+iPosition+": "+sMessage);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.tools;
+
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+
+/**
+ *  This class measures MyXML.findElement() on wide documents, with and
+ *  without the tag index:
+ *  <ul>
+ *  <li>settings: the lookups Parameters.loadSettingsFile() does on the
+ *      Buhlmann coefficient tables</li>
+ *  <li>dive: the lookups Dive.createFromXmlRepresentation() does on a
+ *      dive with many segments</li>
+ *  </ul>
+ *  Usage: MyXMLLookupBenchmark [segments [repetitions]]
+ */
+public class MyXMLLookupBenchmark
+{
+    private static final int    COMPARTMENTS=16;
+
+    /**
+     *  Creates a settings like tree with coefficient tables, as written
+     *  by Parameters.saveSettingsFile()
+     */
+    private static MyXML createSettings() throws MyXMLException
+    {
+        MyXML   root;
+        MyXML   buhlmann;
+        MyXML   coefficients;
+        String[] prefixes={"a_ZHL16A", "a_ZHL16B", "a_ZHL16C", "b"};
+        int     i;
+        int     j;
+
+        root        =new MyXML("Settings");
+        root.addElement("GasLoadingSettings").addElement("RespiratoryCoefficient", "0.8");
+        root.addElement("VpmSettings").addElement("SurfaceTensionGamma", "0.0179");
+        buhlmann    =root.addElement("BuhlmannSettings");
+        coefficients=buhlmann.addElement("CoefficientsHeliumInBar");
+        for (i=0; i<COMPARTMENTS; i++)
+        {
+            coefficients.addElement("a"+i, "1.0");
+        }
+        for (i=0; i<COMPARTMENTS; i++)
+        {
+            coefficients.addElement("b"+i, "0.5");
+        }
+        coefficients=buhlmann.addElement("CoefficientsNitrogenInBar");
+        for (j=0; j<prefixes.length; j++)
+        {
+            for (i=0; i<COMPARTMENTS; i++)
+            {
+                coefficients.addElement(prefixes[j]+i, "1.0");
+            }
+        }
+        return root;
+    }
+
+    /**
+     *  Looks up all coefficients
+     *  @return Number of elements found
+     */
+    private static int lookupSettings(MyXML root)
+    {
+        String[]    prefixes={"a_ZHL16A", "a_ZHL16B", "a_ZHL16C", "b"};
+        MyXML       buhlmann;
+        MyXML       coefficients;
+        int         nFound;
+        int         i;
+        int         j;
+
+        nFound      =0;
+        buhlmann    =root.findElement("BuhlmannSettings");
+        coefficients=buhlmann.findElement("CoefficientsHeliumInBar");
+        for (i=0; i<COMPARTMENTS; i++)
+        {
+            nFound+=(coefficients.findElement("a"+i)!=null)?1:0;
+            nFound+=(coefficients.findElement("b"+i)!=null)?1:0;
+        }
+        coefficients=buhlmann.findElement("CoefficientsNitrogenInBar");
+        for (j=0; j<prefixes.length; j++)
+        {
+            for (i=0; i<COMPARTMENTS; i++)
+            {
+                nFound+=(coefficients.findElement(prefixes[j]+i)!=null)?1:0;
+            }
+        }
+        return nFound;
+    }
+
+    /**
+     *  Creates a dive like tree with the given number of segments
+     */
+    private static MyXML createDive(int nSegments) throws MyXMLException
+    {
+        MyXML   dive;
+        MyXML   segments;
+        MyXML   segment;
+        MyXML   depth;
+        int     i;
+
+        dive    =new MyXML("Dive");
+        dive.addElement("Description", "Wide dive");
+        dive.addElement("DiveHeight").addElement("Length").addElement("LengthValue", "0.0");
+        segments=dive.addElement("DiveSegments");
+        for (i=0; i<nSegments; i++)
+        {
+            segment=segments.addElement("ConstantDepthSegment");
+            depth=segment.addElement("Depth").addElement("Length");
+            depth.addElement("Units", "Meter");
+            depth.addElement("LengthValue", Integer.toString(i%60));
+            segment.addElement("ExposurePeriodInMinutes", "1.0");
+            segment.addElement("GasMixture").addElement("Name", "Air");
+        }
+        dive.addElement("DecompressionStages").addElement("DecompressionStage");
+        return dive;
+    }
+
+    /**
+     *  Does the lookups of Dive.createFromXmlRepresentation()
+     */
+    private static int lookupDive(MyXML dive)
+    {
+        int nFound;
+
+        nFound=0;
+        nFound+=(dive.findElement("Description")!=null)?1:0;
+        nFound+=(dive.findElement("DiveHeight").findElement("Length")!=null)?1:0;
+        nFound+=(dive.findElement("DiveSegments")!=null)?1:0;
+        nFound+=(dive.findElement("DecompressionStages")!=null)?1:0;
+        nFound+=(dive.findElement("DiveSegments").findElement("DecompressionStage")==null)?1:0;
+        return nFound;
+    }
+
+    private static void measure(String sName, int iThreshold, int nSegments, int nRepetitions)
+                        throws MyXMLException
+    {
+        MyXML   settings;
+        MyXML   dive;
+        long    lStart;
+        long    lFirst;
+        long    lSettings;
+        long    lDive;
+        int     nFound;
+        int     i;
+
+        MyXML.setIndexThreshold(iThreshold);
+
+        // Settings: a fresh tree per load, like loadSettingsFile()
+        nFound  =0;
+        lStart  =System.nanoTime();
+        for (i=0; i<nRepetitions; i++)
+        {
+            settings=createSettings();
+            nFound+=lookupSettings(settings);
+        }
+        lSettings=System.nanoTime()-lStart;
+
+        // Dive: first lookup (builds the index), then repeated lookups
+        dive    =createDive(nSegments);
+        lStart  =System.nanoTime();
+        nFound+=lookupDive(dive);
+        lFirst  =System.nanoTime()-lStart;
+        lStart  =System.nanoTime();
+        for (i=0; i<nRepetitions; i++)
+        {
+            nFound+=lookupDive(dive);
+        }
+        lDive=System.nanoTime()-lStart;
+
+        System.out.println(String.format("%-10s settings %8.2f us/load   dive first %8.2f ms, repeated %10.2f us/lookup set   (%d)",
+                                         sName, lSettings/1000.0/nRepetitions, lFirst/1.0e6,
+                                         lDive/1000.0/nRepetitions, nFound));
+    }
+
+    /**
+     *  Usage: MyXMLLookupBenchmark [segments [repetitions]]
+     *  @param args Command line arguments
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int nSegments;
+        int nRepetitions;
+        int i;
+
+        nSegments   =(args.length>0)?Integer.parseInt(args[0]):5000;
+        nRepetitions=(args.length>1)?Integer.parseInt(args[1]):2000;
+
+        System.out.println("Dive with "+nSegments+" segments, "+nRepetitions+" repetitions");
+        for (i=0; i<3; i++)
+        {
+            measure("linear" , 0 , nSegments, nRepetitions);
+            measure("indexed", 16, nSegments, nRepetitions);
+        }
+    }
+}
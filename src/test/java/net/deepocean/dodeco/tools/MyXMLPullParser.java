@@ -0,0 +1,793 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.tools;
+
+import net.deepocean.dodeco.tools.MyXML.MyXMLEncodingException;
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ *  This class reads an XML document as a stream of events, rather than
+ *  building the complete MyXML tree in memory. It accepts the same documents
+ *  as the MyXML(BufferedReader) parser: comments, &lt;? ... ?&gt; and
+ *  DOCTYPE declarations are skipped, CDATA sections and the entities written
+ *  by MyXML.serialize() are supported.
+ *  Usage:
+ *  <pre>
+ *  parser=new MyXMLPullParser(reader);
+ *  while ((iEvent=parser.next())!=MyXMLPullParser.END_DOCUMENT)
+ *  {
+ *      if (iEvent==MyXMLPullParser.START_ELEMENT &amp;&amp; parser.getTag().equals("Dive"))
+ *      {
+ *          dive=new Dive(parser.readElement());
+ *      }
+ *  }
+ *  </pre>
+ *  readElement() builds the MyXML tree of the current element only, so
+ *  a large document can be processed one element at a time.
+ *  Element values are handled like the MyXML parser does: leading white
+ *  space is skipped and text consisting of white space only is ignored.
+ */
+public class MyXMLPullParser
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Events
+    \*------------------------------------------------------------------------------------------------*/
+    public static final int START_ELEMENT   =1;
+    public static final int END_ELEMENT     =2;
+    public static final int TEXT            =3;
+    public static final int END_DOCUMENT    =4;
+
+    private static final int BUFFER_SIZE    =16384;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private Reader          reader;
+    private char[]          buffer;
+    private int             iBufferPosition;
+    private int             iBufferLength;
+    private int             iPushBack;
+
+    private int             iLine;
+    private int             iColumn;
+
+    private int             iEvent;
+    private String          sTag;
+    private String          sText;
+    private StringBuilder   text;
+    private StringBuilder   entity;
+
+    /** The open elements */
+    private String[]        openTags;
+    private int             iDepth;
+    private boolean         bEmptyElement;
+
+    private String[]        attributeNames;
+    private String[]        attributeValues;
+    private int             nAttributes;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. The reader does not need to be buffered; the parser
+     *  buffers the input itself.
+     *  @param reader The reader supplying the XML document
+     */
+    public MyXMLPullParser(Reader reader)
+    {
+        this.reader     =reader;
+        buffer          =new char[BUFFER_SIZE];
+        iBufferPosition =0;
+        iBufferLength   =0;
+        iPushBack       =-1;
+        iLine           =1;
+        iColumn         =0;
+
+        text            =new StringBuilder();
+        entity          =new StringBuilder();
+        openTags        =new String[16];
+        iDepth          =0;
+        attributeNames  =new String[4];
+        attributeValues =new String[4];
+        nAttributes     =0;
+        iEvent          =0;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Parsing
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Reads the next event
+     *  @return START_ELEMENT, END_ELEMENT, TEXT or END_DOCUMENT
+     *  @exception MyXMLEncodingException if the document is not well formed
+     *  @exception IOException
+     */
+    public int next() throws MyXMLEncodingException, IOException
+    {
+        int c;
+
+        // An empty element <tag/> gives a start and an end event
+        if (bEmptyElement)
+        {
+            bEmptyElement   =false;
+            nAttributes     =0;
+            iDepth--;
+            iEvent          =END_ELEMENT;
+            return iEvent;
+        }
+        if (iEvent==END_ELEMENT)
+        {
+            nAttributes=0;
+        }
+
+        sText=null;
+        while (true)
+        {
+            c=read();
+            if (c==-1)
+            {
+                if (iDepth>0)
+                {
+                    throw error("Missing end tag");
+                }
+                sTag    =null;
+                iEvent  =END_DOCUMENT;
+                return iEvent;
+            }
+            if (c=='<')
+            {
+                c=read();
+                if (c=='/')
+                {
+                    readEndTag();
+                    return iEvent;
+                }
+                else if (c=='?')
+                {
+                    skipTo('>');
+                }
+                else if (c=='!')
+                {
+                    if (readDeclaration())
+                    {
+                        return iEvent;
+                    }
+                }
+                else
+                {
+                    unread(c);
+                    readStartTag();
+                    return iEvent;
+                }
+            }
+            else if (iDepth>0 && !Character.isWhitespace((char)c))
+            {
+                unread(c);
+                readText();
+                return iEvent;
+            }
+        }
+    }
+
+    /**
+     *  Reads the current element, including all its sub-elements, into a
+     *  MyXML tree. The current event must be START_ELEMENT. After the call
+     *  the current event is the END_ELEMENT of the element.
+     *  @return The element
+     *  @exception MyXMLException if the current event is not START_ELEMENT
+     *             or the element combines a value with sub-elements
+     *  @exception MyXMLEncodingException if the document is not well formed
+     *  @exception IOException
+     */
+    public MyXML readElement() throws MyXMLException, MyXMLEncodingException, IOException
+    {
+        MyXML[]     elements;
+        MyXML       element;
+        int         iStartDepth;
+        int         iLevel;
+
+        if (iEvent!=START_ELEMENT)
+        {
+            throw new MyXMLException("Start of element expected");
+        }
+
+        iStartDepth =iDepth;
+        elements    =new MyXML[8];
+        iLevel      =0;
+        elements[0] =new MyXML(sTag);
+        addAttributes(elements[0]);
+
+        while (iLevel>=0)
+        {
+            switch (next())
+            {
+                case START_ELEMENT:
+                    element=elements[iLevel].addElement(sTag);
+                    addAttributes(element);
+                    iLevel++;
+                    if (iLevel==elements.length)
+                    {
+                        elements=grow(elements);
+                    }
+                    elements[iLevel]=element;
+                    break;
+                case TEXT:
+                    elements[iLevel].setValue(sText);
+                    break;
+                case END_ELEMENT:
+                    iLevel--;
+                    break;
+                default:
+                    throw error("Missing end tag");
+            }
+        }
+        if (iDepth!=iStartDepth-1)
+        {
+            throw error("Element structure error");
+        }
+        return elements[0];
+    }
+
+    /**
+     *  Skips the current element, including all its sub-elements. The current
+     *  event must be START_ELEMENT. After the call the current event is the
+     *  END_ELEMENT of the element.
+     *  @exception MyXMLEncodingException if the document is not well formed
+     *  @exception IOException
+     */
+    public void skipElement() throws MyXMLEncodingException, IOException
+    {
+        int iStartDepth;
+
+        iStartDepth=iDepth;
+        while (iDepth>=iStartDepth)
+        {
+            if (next()==END_DOCUMENT)
+            {
+                throw error("Missing end tag");
+            }
+        }
+    }
+
+    /**
+     *  Reads a start tag with its attributes; the '&lt;' has been read
+     */
+    private void readStartTag() throws MyXMLEncodingException, IOException
+    {
+        String  sName;
+        int     c;
+        int     iQuote;
+
+        sTag        =readName();
+        nAttributes =0;
+
+        c=skipWhiteSpace();
+        while (c!='>' && c!='/')
+        {
+            if (c==-1)
+            {
+                throw error("Unexpected end of document in tag <"+sTag+">");
+            }
+            unread(c);
+            sName=readName();
+            if (sName.length()==0 || skipWhiteSpace()!='=')
+            {
+                throw error("Error in attribute processing");
+            }
+            iQuote=skipWhiteSpace();
+            if (iQuote!='"' && iQuote!='\'')
+            {
+                throw error("Error in attribute processing");
+            }
+            addAttribute(sName, readAttributeValue(iQuote));
+            c=skipWhiteSpace();
+        }
+        if (c=='/')
+        {
+            if (read()!='>')
+            {
+                throw error("Expected > for tag <"+sTag+"/>");
+            }
+            bEmptyElement=true;
+        }
+
+        if (iDepth==openTags.length)
+        {
+            openTags=grow(openTags);
+        }
+        openTags[iDepth]=sTag;
+        iDepth++;
+        iEvent=START_ELEMENT;
+    }
+
+    /**
+     *  Reads an end tag; the '&lt;/' has been read
+     */
+    private void readEndTag() throws MyXMLEncodingException, IOException
+    {
+        sTag=readName();
+        if (skipWhiteSpace()!='>')
+        {
+            throw error("Expected > for tag </"+sTag+">");
+        }
+        if (iDepth==0 || !openTags[iDepth-1].equals(sTag))
+        {
+            throw error("Mismatched close tag");
+        }
+        iDepth--;
+        openTags[iDepth]=null;
+        iEvent=END_ELEMENT;
+    }
+
+    /**
+     *  Reads a comment, CDATA section or DOCTYPE declaration; the
+     *  '&lt;!' has been read.
+     *  @return True if a CDATA section has been read, which is
+     *          reported as TEXT event
+     */
+    private boolean readDeclaration() throws MyXMLEncodingException, IOException
+    {
+        int c;
+
+        c=read();
+        if (c=='-')
+        {
+            if (read()!='-')
+            {
+                throw error("Invalid comment");
+            }
+            skipTo("-->");
+            return false;
+        }
+        if (c=='[')
+        {
+            text.setLength(0);
+            while (!(text.length()>=2 && text.charAt(text.length()-1)==']' &&
+                     text.charAt(text.length()-2)==']' && peek()=='>'))
+            {
+                c=read();
+                if (c==-1)
+                {
+                    throw error("Unterminated CDATA section");
+                }
+                text.append((char)c);
+            }
+            read();
+            if (text.length()<8 || !text.substring(0, 6).equals("CDATA["))
+            {
+                throw error("Invalid CDATA section");
+            }
+            sText   =text.substring(6, text.length()-2);
+            iEvent  =TEXT;
+            return true;
+        }
+        skipTo('>');
+        return false;
+    }
+
+    /**
+     *  Reads the value of an element up to the next '&lt;'
+     */
+    private void readText() throws MyXMLEncodingException, IOException
+    {
+        int c;
+
+        text.setLength(0);
+        c=read();
+        while (c!='<')
+        {
+            if (c==-1)
+            {
+                throw error("Missing end tag");
+            }
+            if (c=='&')
+            {
+                text.append(readEntity());
+            }
+            else
+            {
+                text.append((char)c);
+            }
+            c=read();
+        }
+        unread(c);
+        sText   =text.toString();
+        iEvent  =TEXT;
+    }
+
+    /**
+     *  Reads an attribute value up to the closing quote
+     *  @param iQuote The quote character
+     */
+    private String readAttributeValue(int iQuote) throws MyXMLEncodingException, IOException
+    {
+        int c;
+
+        text.setLength(0);
+        c=read();
+        while (c!=iQuote)
+        {
+            if (c==-1)
+            {
+                throw error("Unterminated attribute value");
+            }
+            if (c=='&')
+            {
+                text.append(readEntity());
+            }
+            else if (c=='\n' || c=='\t')
+            {
+                text.append(' ');
+            }
+            else
+            {
+                text.append((char)c);
+            }
+            c=read();
+        }
+        return text.toString();
+    }
+
+    /**
+     *  Reads an entity; the '&amp;' has been read
+     *  @return The character represented by the entity
+     */
+    private char readEntity() throws MyXMLEncodingException, IOException
+    {
+        String  sEntity;
+        int     c;
+
+        entity.setLength(0);
+        c=read();
+        while (c!=';')
+        {
+            if (c==-1 || c=='<')
+            {
+                throw error("Unterminated entity");
+            }
+            entity.append((char)c);
+            c=read();
+        }
+        sEntity=entity.toString();
+        if (sEntity.equals("lt"))
+        {
+            return '<';
+        }
+        else if (sEntity.equals("gt"))
+        {
+            return '>';
+        }
+        else if (sEntity.equals("amp"))
+        {
+            return '&';
+        }
+        else if (sEntity.equals("quot"))
+        {
+            return '"';
+        }
+        else if (sEntity.equals("apos"))
+        {
+            return '\'';
+        }
+        else if (sEntity.startsWith("#"))
+        {
+            try
+            {
+                return (char)Integer.parseInt(sEntity.substring(1));
+            }
+            catch (NumberFormatException e)
+            {
+                // handled below
+            }
+        }
+        throw error("Unknown entity: &"+sEntity+";");
+    }
+
+    /**
+     *  Reads a tag or attribute name
+     */
+    private String readName() throws IOException
+    {
+        int c;
+
+        text.setLength(0);
+        c=read();
+        while (c!=-1 && c!='>' && c!='/' && c!='=' && !Character.isWhitespace((char)c))
+        {
+            text.append((char)c);
+            c=read();
+        }
+        unread(c);
+        return text.toString();
+    }
+
+    /**
+     *  Skips white space
+     *  @return The first character that is not white space
+     */
+    private int skipWhiteSpace() throws IOException
+    {
+        int c;
+
+        c=read();
+        while (c!=-1 && Character.isWhitespace((char)c))
+        {
+            c=read();
+        }
+        return c;
+    }
+
+    private void skipTo(char cEnd) throws MyXMLEncodingException, IOException
+    {
+        int c;
+
+        c=read();
+        while (c!=cEnd)
+        {
+            if (c==-1)
+            {
+                throw error("Unexpected end of document");
+            }
+            c=read();
+        }
+    }
+
+    private void skipTo(String sEnd) throws MyXMLEncodingException, IOException
+    {
+        int iMatched;
+        int c;
+
+        iMatched=0;
+        while (iMatched<sEnd.length())
+        {
+            c=read();
+            if (c==-1)
+            {
+                throw error("Unexpected end of document");
+            }
+            if (c==sEnd.charAt(iMatched))
+            {
+                iMatched++;
+            }
+            else
+            {
+                iMatched=(c==sEnd.charAt(0))?1:0;
+            }
+        }
+    }
+
+    private void addAttribute(String sName, String sValue)
+    {
+        if (nAttributes==attributeNames.length)
+        {
+            attributeNames  =grow(attributeNames);
+            attributeValues =grow(attributeValues);
+        }
+        attributeNames[nAttributes] =sName;
+        attributeValues[nAttributes]=sValue;
+        nAttributes++;
+    }
+
+    private void addAttributes(MyXML element)
+    {
+        int i;
+
+        for (i=0; i<nAttributes; i++)
+        {
+            element.Attribute.add(attributeNames[i], attributeValues[i]);
+        }
+    }
+
+    private static String[] grow(String[] array)
+    {
+        String[] newArray;
+
+        newArray=new String[array.length*2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static MyXML[] grow(MyXML[] array)
+    {
+        MyXML[] newArray;
+
+        newArray=new MyXML[array.length*2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private MyXMLEncodingException error(String sMessage)
+    {
+        return new MyXMLEncodingException(sMessage+" near line "+iLine+", column "+iColumn);
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Reading characters
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Reads the next character. A \r or \r\n is returned as \n.
+     *  @return The character or -1 at the end of the document
+     */
+    private int read() throws IOException
+    {
+        int c;
+
+        if (iPushBack>=0)
+        {
+            c           =iPushBack;
+            iPushBack   =-1;
+            return c;
+        }
+        c=readRaw();
+        if (c=='\r')
+        {
+            if (peekRaw()=='\n')
+            {
+                iBufferPosition++;
+            }
+            c='\n';
+        }
+        if (c=='\n')
+        {
+            iLine++;
+            iColumn=0;
+        }
+        else
+        {
+            iColumn++;
+        }
+        return c;
+    }
+
+    /**
+     *  Pushes back one character. Only one character can be pushed back.
+     */
+    private void unread(int c)
+    {
+        iPushBack=c;
+    }
+
+    private int peek() throws IOException
+    {
+        int c;
+
+        c=read();
+        unread(c);
+        return c;
+    }
+
+    private int readRaw() throws IOException
+    {
+        if (iBufferPosition>=iBufferLength && !fill())
+        {
+            return -1;
+        }
+        return buffer[iBufferPosition++];
+    }
+
+    private int peekRaw() throws IOException
+    {
+        if (iBufferPosition>=iBufferLength && !fill())
+        {
+            return -1;
+        }
+        return buffer[iBufferPosition];
+    }
+
+    private boolean fill() throws IOException
+    {
+        int iRead;
+
+        iRead=reader.read(buffer, 0, buffer.length);
+        while (iRead==0)
+        {
+            iRead=reader.read(buffer, 0, buffer.length);
+        }
+        iBufferPosition =0;
+        iBufferLength   =Math.max(0, iRead);
+        return iRead>0;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Get information
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Returns the current event
+     *  @return START_ELEMENT, END_ELEMENT, TEXT or END_DOCUMENT; 0 before
+     *          the first call to next()
+     */
+    public int getEventType()
+    {
+        return iEvent;
+    }
+
+    /**
+     *  Returns the tag of the current START_ELEMENT or END_ELEMENT
+     *  @return The tag
+     */
+    public String getTag()
+    {
+        return sTag;
+    }
+
+    /**
+     *  Returns the text of the current TEXT event
+     *  @return The text, entities replaced
+     */
+    public String getText()
+    {
+        return sText;
+    }
+
+    /**
+     *  Returns the number of open elements. The root element has depth 1
+     *  on its START_ELEMENT; after its END_ELEMENT the depth is 0.
+     *  @return The depth
+     */
+    public int getDepth()
+    {
+        return iDepth;
+    }
+
+    public int getAttributeCount()
+    {
+        return nAttributes;
+    }
+
+    public String getAttributeName(int iIndex)
+    {
+        return attributeNames[iIndex];
+    }
+
+    public String getAttributeValue(int iIndex)
+    {
+        return attributeValues[iIndex];
+    }
+
+    /**
+     *  Returns the value of an attribute of the current START_ELEMENT
+     *  @param sName Name of the attribute
+     *  @return The value or null if the element has no such attribute
+     */
+    public String getAttribute(String sName)
+    {
+        int i;
+
+        for (i=0; i<nAttributes; i++)
+        {
+            if (attributeNames[i].equals(sName))
+            {
+                return attributeValues[i];
+            }
+        }
+        return null;
+    }
+
+    public int getLineNumber()
+    {
+        return iLine;
+    }
+
+    /**
+     *  Closes the reader
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
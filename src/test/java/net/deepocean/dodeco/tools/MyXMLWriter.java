@@ -0,0 +1,435 @@
+/*
+ * Title:        DoDeco
+ * Description:  DoDeco generates decompression profiles. Several algoritms
+ *               have been implemented.
+ * Copyright:    GNU Public Licence
+ * Author:       Jorgen van der Velde
+ *               Original VPMDeco and VPM-B from Fortran code by Erik C. Baker
+ * Disclaimer:   Do not use for real diving. Software may contain errors.
+ *               For experimental and educational use only
+ * Version:      1.0
+ */
+
+package net.deepocean.dodeco.tools;
+
+import net.deepocean.dodeco.tools.MyXML.MyXMLException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ *  This class writes an XML document directly to a Writer or a channel,
+ *  without building a MyXML tree first. The output has the same layout
+ *  as MyXML.serialize(), so it can be read by the MyXML parser:
+ *  <pre>
+ *  writer.startDocument();
+ *  writer.startElement("Length");
+ *  writer.element("Units", "Meter");
+ *  writer.element("LengthValue", 10.0);
+ *  writer.endElement();
+ *  writer.endDocument();
+ *  </pre>
+ *  Characters are collected in a buffer; when writing to a channel they
+ *  are encoded into a direct byte buffer, so no intermediate strings are
+ *  created for indentation, tags or attributes.
+ *  Element values are escaped (&amp;, &lt; and &gt;), attribute values
+ *  the way MyXML does it.
+ */
+public class MyXMLWriter
+{
+    /*------------------------------------------------------------------------------------------------*\
+     * Constants
+    \*------------------------------------------------------------------------------------------------*/
+    private static final String XML_HEADER      ="<?xml version=\"1.0\" standalone=\"yes\"?>";
+    private static final String XML_COMMENT     ="<!-- Written by WiSH XML writer -->";
+    private static final String LINE_SEPARATOR  =System.getProperty("line.separator");
+    private static final int    BUFFER_SIZE     =65536;
+    private static final int    INDENT          =2;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Variables
+    \*------------------------------------------------------------------------------------------------*/
+    private Writer                  writer;
+    private WritableByteChannel     channel;
+    private CharsetEncoder          encoder;
+    private ByteBuffer              byteBuffer;
+
+    private char[]                  buffer;
+    private int                     iBufferPosition;
+
+    private String[]                openTags;
+    private int                     iDepth;
+    /** The start tag of the last element is not yet closed with '&gt;' */
+    private boolean                 bStartTagOpen;
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Construction
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Constructor. Writes to a Writer.
+     *  @param writer The writer to write to
+     */
+    public MyXMLWriter(Writer writer)
+    {
+        this.writer =writer;
+        init();
+    }
+
+    /**
+     *  Constructor. Writes to a channel, using the default character set
+     *  like FileWriter does. As FileWriter, characters the character set
+     *  cannot encode are replaced (by '?').
+     *  @param channel The channel to write to
+     */
+    public MyXMLWriter(WritableByteChannel channel)
+    {
+        this.channel=channel;
+        encoder     =Charset.defaultCharset().newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byteBuffer  =ByteBuffer.allocateDirect(BUFFER_SIZE*2);
+        init();
+    }
+
+    private void init()
+    {
+        buffer          =new char[BUFFER_SIZE];
+        iBufferPosition =0;
+        openTags        =new String[16];
+        iDepth          =0;
+        bStartTagOpen   =false;
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Writing the document
+    \*------------------------------------------------------------------------------------------------*/
+    /**
+     *  Writes the XML header
+     *  @exception IOException
+     */
+    public void startDocument() throws IOException
+    {
+        write(XML_HEADER);
+        write(LINE_SEPARATOR);
+        write(XML_COMMENT);
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     *  Finishes the document and flushes the output
+     *  @exception MyXMLException if not all elements have been ended
+     *  @exception IOException
+     */
+    public void endDocument() throws MyXMLException, IOException
+    {
+        if (iDepth>0)
+        {
+            throw new MyXMLException("Element <"+openTags[iDepth-1]+"> not ended");
+        }
+        flush();
+    }
+
+    /**
+     *  Starts an element. Attributes may be added until the first
+     *  sub-element is started.
+     *  @param sTag The tag of the element
+     *  @exception IOException
+     */
+    public void startElement(String sTag) throws IOException
+    {
+        closeStartTag();
+        writeIndent();
+        write('<');
+        write(sTag);
+
+        if (iDepth==openTags.length)
+        {
+            String[] newTags;
+
+            newTags=new String[openTags.length*2];
+            System.arraycopy(openTags, 0, newTags, 0, openTags.length);
+            openTags=newTags;
+        }
+        openTags[iDepth]=sTag;
+        iDepth++;
+        bStartTagOpen=true;
+    }
+
+    /**
+     *  Adds an attribute to the element just started
+     *  @param sName Name of the attribute
+     *  @param sValue Value of the attribute
+     *  @exception MyXMLException if there is no element to add it to
+     *  @exception IOException
+     */
+    public void attribute(String sName, String sValue) throws MyXMLException, IOException
+    {
+        if (!bStartTagOpen)
+        {
+            throw new MyXMLException("Attribute "+sName+" must follow a start tag");
+        }
+        write(' ');
+        write(sName);
+        write("=\"");
+        writeEscaped(sValue, true);
+        write('"');
+    }
+
+    /**
+     *  Ends the current element
+     *  @exception MyXMLException if there is no element to end
+     *  @exception IOException
+     */
+    public void endElement() throws MyXMLException, IOException
+    {
+        if (iDepth==0)
+        {
+            throw new MyXMLException("No element to end");
+        }
+        iDepth--;
+        if (bStartTagOpen)
+        {
+            write("/>");
+            bStartTagOpen=false;
+        }
+        else
+        {
+            writeIndent();
+            write("</");
+            write(openTags[iDepth]);
+            write('>');
+        }
+        write(LINE_SEPARATOR);
+        openTags[iDepth]=null;
+    }
+
+    /**
+     *  Writes an element with a value: &lt;tag&gt;value&lt;/tag&gt;
+     *  @param sTag The tag
+     *  @param sValue The value
+     *  @exception IOException
+     */
+    public void element(String sTag, String sValue) throws IOException
+    {
+        closeStartTag();
+        writeIndent();
+        write('<');
+        write(sTag);
+        write('>');
+        writeEscaped(sValue, false);
+        write("</");
+        write(sTag);
+        write('>');
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     *  Writes an element with a numeric value, formatted like
+     *  Double.toString()
+     *  @param sTag The tag
+     *  @param fValue The value
+     *  @exception IOException
+     */
+    public void element(String sTag, double fValue) throws IOException
+    {
+        element(sTag, Double.toString(fValue));
+    }
+
+    /**
+     *  Writes an element with an integer value
+     *  @param sTag The tag
+     *  @param iValue The value
+     *  @exception IOException
+     */
+    public void element(String sTag, int iValue) throws IOException
+    {
+        element(sTag, Integer.toString(iValue));
+    }
+
+    /*------------------------------------------------------------------------------------------------*\
+     * Output
+    \*------------------------------------------------------------------------------------------------*/
+    private void closeStartTag() throws IOException
+    {
+        if (bStartTagOpen)
+        {
+            write('>');
+            write(LINE_SEPARATOR);
+            bStartTagOpen=false;
+        }
+    }
+
+    /**
+     *  Writes the indent for the current depth. For a start or value
+     *  element this is the depth of the parent.
+     */
+    private void writeIndent() throws IOException
+    {
+        int nSpaces;
+
+        nSpaces=iDepth*INDENT;
+        while (nSpaces>0)
+        {
+            if (iBufferPosition==buffer.length)
+            {
+                flushBuffer();
+            }
+            buffer[iBufferPosition++]=' ';
+            nSpaces--;
+        }
+    }
+
+    private void write(char c) throws IOException
+    {
+        if (iBufferPosition==buffer.length)
+        {
+            flushBuffer();
+        }
+        buffer[iBufferPosition++]=c;
+    }
+
+    private void write(String s) throws IOException
+    {
+        int iLength;
+        int iOffset;
+        int iChunk;
+
+        iLength=s.length();
+        iOffset=0;
+        while (iOffset<iLength)
+        {
+            if (iBufferPosition==buffer.length)
+            {
+                flushBuffer();
+            }
+            iChunk=Math.min(iLength-iOffset, buffer.length-iBufferPosition);
+            s.getChars(iOffset, iOffset+iChunk, buffer, iBufferPosition);
+            iBufferPosition+=iChunk;
+            iOffset+=iChunk;
+        }
+    }
+
+    /**
+     *  Writes a value, replacing the characters the parser would choke on
+     *  @param s The value
+     *  @param bAttribute True for attribute values, which are escaped
+     *                    like MyXML does
+     */
+    private void writeEscaped(String s, boolean bAttribute) throws IOException
+    {
+        char    c;
+        int     i;
+
+        for (i=0; i<s.length(); i++)
+        {
+            c=s.charAt(i);
+            switch (c)
+            {
+                case '&':
+                    write("&amp;");
+                    break;
+                case '<':
+                    write("&lt;");
+                    break;
+                case '>':
+                    write("&gt;");
+                    break;
+                case '"':
+                    write(bAttribute?"&quot;":"\"");
+                    break;
+                case '\'':
+                    write(bAttribute?"&apos;":"'");
+                    break;
+                case '/':
+                    write(bAttribute?"&#47;":"/");
+                    break;
+                case '!':
+                    write(bAttribute?"&#33;":"!");
+                    break;
+                default:
+                    write(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     *  Passes the buffered characters to the writer or encodes them to the
+     *  channel
+     */
+    private void flushBuffer() throws IOException
+    {
+        CharBuffer  chars;
+        CoderResult result;
+        int         iRemaining;
+
+        if (writer!=null)
+        {
+            writer.write(buffer, 0, iBufferPosition);
+        }
+        else
+        {
+            chars=CharBuffer.wrap(buffer, 0, iBufferPosition);
+            do
+            {
+                result=encoder.encode(chars, byteBuffer, false);
+                if (result.isError())
+                {
+                    result.throwException();
+                }
+                byteBuffer.flip();
+                while (byteBuffer.hasRemaining())
+                {
+                    channel.write(byteBuffer);
+                }
+                byteBuffer.clear();
+            }
+            while (result.isOverflow());
+
+            // Keep a character that cannot be encoded yet (half of a
+            // surrogate pair) for the next flush
+            iRemaining=chars.remaining();
+            chars.get(buffer, 0, iRemaining);
+            iBufferPosition=iRemaining;
+            return;
+        }
+        iBufferPosition=0;
+    }
+
+    /**
+     *  Writes all buffered output
+     *  @exception IOException
+     */
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        if (writer!=null)
+        {
+            writer.flush();
+        }
+    }
+
+    /**
+     *  Flushes and closes the writer or channel
+     *  @exception IOException
+     */
+    public void close() throws IOException
+    {
+        flush();
+        if (writer!=null)
+        {
+            writer.close();
+        }
+        else
+        {
+            channel.close();
+        }
+    }
+}